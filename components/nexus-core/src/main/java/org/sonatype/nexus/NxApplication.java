@@ -40,6 +40,7 @@ import org.sonatype.sisu.goodies.eventbus.EventBus;
 import org.sonatype.sisu.goodies.lifecycle.LifecycleSupport;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -129,15 +130,26 @@ public class NxApplication
     try {
       // force configuration load, validation and probable upgrade if needed
       // applies configuration and notifies listeners
+      final Stopwatch total = Stopwatch.createStarted();
+      Stopwatch phase = Stopwatch.createStarted();
       nexusConfiguration.loadConfiguration(true);
+      log.info("Startup phase configuration load took {}", phase);
       // essential services
+      phase = Stopwatch.createStarted();
       securitySystem.start();
       securitySystem.getAnonymousUsername();
+      log.info("Startup phase security took {}", phase);
+      phase = Stopwatch.createStarted();
       nexusConfiguration.createInternals();
+      log.info("Startup phase repositories took {}", phase);
+      phase = Stopwatch.createStarted();
       nexusScheduler.initializeTasks();
+      log.info("Startup phase scheduled tasks took {}", phase);
 
       // notify about start other components participating in configuration framework
+      phase = Stopwatch.createStarted();
       eventBus.post(new ConfigurationChangeEvent(nexusConfiguration, null, null));
+      log.info("Startup phase configuration change notification took {}", phase);
 
       applicationStatusSource.getSystemStatus().setLastConfigChange(new Date());
       applicationStatusSource.getSystemStatus().setFirstStart(nexusConfiguration.isConfigurationDefaulted());
@@ -167,7 +179,7 @@ public class NxApplication
           }
         }
         log.info("Nexus Work Directory : {}", workDirPath);
-        log.info("Started {}", getNexusNameForLogs());
+        log.info("Started {} in {}", getNexusNameForLogs(), total);
       }
       eventBus.post(new NexusStartedEvent(this));
     }
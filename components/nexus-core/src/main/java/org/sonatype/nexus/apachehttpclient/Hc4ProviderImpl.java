@@ -13,8 +13,10 @@
 package org.sonatype.nexus.apachehttpclient;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -22,6 +24,7 @@ import javax.inject.Singleton;
 import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
 import org.sonatype.nexus.configuration.application.GlobalRemoteConnectionSettings;
 import org.sonatype.nexus.proxy.events.NexusStoppedEvent;
+import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.remote.RemoteStorageContext;
 import org.sonatype.nexus.proxy.utils.UserAgentBuilder;
 import org.sonatype.nexus.util.SystemPropertiesHelper;
@@ -30,15 +33,24 @@ import org.sonatype.sisu.goodies.eventbus.EventBus;
 import com.google.common.base.Preconditions;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.primitives.Ints;
+import com.yammer.metrics.Metrics;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.NoConnectionReuseStrategy;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 
 /**
  * Default implementation of {@link Hc4Provider}.
@@ -100,6 +112,48 @@ public class Hc4ProviderImpl
    */
   private static final long CONNECTION_POOL_TIMEOUT_DEFAULT = TimeUnit.SECONDS.toMillis(30);
 
+  /**
+   * Key for enabling adaptive connection pool. When enabled, the per route pool size is not fixed but adjusted
+   * based on observed latency and concurrency of the route, kept between the floor and cap of the route. Value
+   * should be boolean.
+   */
+  private static final String CONNECTION_POOL_ADAPTIVE_KEY = "nexus.apacheHttpClient4x.connectionPoolAdaptive";
+
+  /**
+   * Default adaptive pool: disabled.
+   */
+  private static final boolean CONNECTION_POOL_ADAPTIVE_DEFAULT = false;
+
+  /**
+   * Key for customizing adaptive connection pool floor, the least count of connections any route may use. Might be
+   * customized per proxy repository by suffixing the key with "." and repository ID. Value should be a positive
+   * integer.
+   */
+  private static final String CONNECTION_POOL_ADAPTIVE_FLOOR_KEY = "nexus.apacheHttpClient4x.connectionPoolAdaptiveFloor";
+
+  /**
+   * Default adaptive pool floor: 2.
+   */
+  private static final int CONNECTION_POOL_ADAPTIVE_FLOOR_DEFAULT = 2;
+
+  /**
+   * Key for customizing adaptive connection pool cap, the most count of connections any route may use. Might be
+   * customized per proxy repository by suffixing the key with "." and repository ID. Value should be a positive
+   * integer. Defaults to pool size per route.
+   */
+  private static final String CONNECTION_POOL_ADAPTIVE_CAP_KEY = "nexus.apacheHttpClient4x.connectionPoolAdaptiveCap";
+
+  /**
+   * Key for customizing how often are per route pool sizes adjusted in adaptive mode. Value is milliseconds.
+   */
+  private static final String CONNECTION_POOL_ADAPTIVE_INTERVAL_KEY =
+      "nexus.apacheHttpClient4x.connectionPoolAdaptiveInterval";
+
+  /**
+   * Default adaptive pool adjustment interval: 10 seconds.
+   */
+  private static final long CONNECTION_POOL_ADAPTIVE_INTERVAL_DEFAULT = TimeUnit.SECONDS.toMillis(10);
+
   // ==
 
   /**
@@ -150,12 +204,13 @@ public class Hc4ProviderImpl
     this.eventBus.register(this);
     this.jmxInstaller.register(sharedConnectionManager);
     log.info(
-        "Started (connectionPoolMaxSize {}, connectionPoolSize {}, connectionPoolIdleTime {} ms, connectionPoolTimeout {} ms, keepAliveMaxDuration {} ms)",
+        "Started (connectionPoolMaxSize {}, connectionPoolSize {}, connectionPoolIdleTime {} ms, connectionPoolTimeout {} ms, keepAliveMaxDuration {} ms, connectionPoolAdaptive {})",
         getConnectionPoolMaxSize(),
         getConnectionPoolSize(),
         getConnectionPoolIdleTime(),
         getConnectionPoolTimeout(),
-        getKeepAliveMaxDuration()
+        getKeepAliveMaxDuration(),
+        isConnectionPoolAdaptive()
     );
   }
 
@@ -189,6 +244,52 @@ public class Hc4ProviderImpl
     return SystemPropertiesHelper.getLong(CONNECTION_POOL_TIMEOUT_KEY, CONNECTION_POOL_TIMEOUT_DEFAULT);
   }
 
+  /**
+   * Returns {@code true} if per route pool sizes are adjusted based on observed route demand.
+   *
+   * @since 3.0
+   */
+  protected boolean isConnectionPoolAdaptive() {
+    return SystemPropertiesHelper.getBoolean(CONNECTION_POOL_ADAPTIVE_KEY, CONNECTION_POOL_ADAPTIVE_DEFAULT);
+  }
+
+  /**
+   * Returns the adaptive pool floor for routes of given repository, or the default floor if {@code null}.
+   *
+   * @since 3.0
+   */
+  protected int getConnectionPoolAdaptiveFloor(final @Nullable String repositoryId) {
+    final int floor =
+        SystemPropertiesHelper.getInteger(CONNECTION_POOL_ADAPTIVE_FLOOR_KEY, CONNECTION_POOL_ADAPTIVE_FLOOR_DEFAULT);
+    if (repositoryId == null) {
+      return floor;
+    }
+    return SystemPropertiesHelper.getInteger(CONNECTION_POOL_ADAPTIVE_FLOOR_KEY + "." + repositoryId, floor);
+  }
+
+  /**
+   * Returns the adaptive pool cap for routes of given repository, or the default cap if {@code null}.
+   *
+   * @since 3.0
+   */
+  protected int getConnectionPoolAdaptiveCap(final @Nullable String repositoryId) {
+    final int cap = SystemPropertiesHelper.getInteger(CONNECTION_POOL_ADAPTIVE_CAP_KEY, getConnectionPoolSize());
+    if (repositoryId == null) {
+      return cap;
+    }
+    return SystemPropertiesHelper.getInteger(CONNECTION_POOL_ADAPTIVE_CAP_KEY + "." + repositoryId, cap);
+  }
+
+  /**
+   * Returns the adaptive pool adjustment interval in milliseconds.
+   *
+   * @since 3.0
+   */
+  protected long getConnectionPoolAdaptiveInterval() {
+    return SystemPropertiesHelper.getLong(CONNECTION_POOL_ADAPTIVE_INTERVAL_KEY,
+        CONNECTION_POOL_ADAPTIVE_INTERVAL_DEFAULT);
+  }
+
   // ==
 
   /**
@@ -259,7 +360,24 @@ public class Hc4ProviderImpl
 
   @Override
   public Builder prepareHttpClient(final RemoteStorageContext context) {
-    return prepareHttpClient(context, sharedConnectionManager);
+    final Builder builder = prepareHttpClient(context, sharedConnectionManager);
+    if (sharedConnectionManager.routePoolSizer.isAdaptive()) {
+      // request interceptors are invoked before the connection is leased, having route already determined
+      builder.getHttpClientBuilder().addInterceptorLast(new HttpRequestInterceptor()
+      {
+        @Override
+        public void process(final HttpRequest request, final HttpContext httpContext) {
+          final Object repository = httpContext.getAttribute(HTTP_CTX_KEY_REPOSITORY);
+          final Object route = httpContext.getAttribute(HttpClientContext.HTTP_ROUTE);
+          if (repository instanceof Repository && route instanceof HttpRoute) {
+            final String repositoryId = ((Repository) repository).getId();
+            sharedConnectionManager.routePoolSizer.limit((HttpRoute) route,
+                getConnectionPoolAdaptiveFloor(repositoryId), getConnectionPoolAdaptiveCap(repositoryId));
+          }
+        }
+      });
+    }
+    return builder;
   }
 
   // ==
@@ -280,9 +398,13 @@ public class Hc4ProviderImpl
             (javax.net.ssl.SSLSocketFactory) javax.net.ssl.SSLSocketFactory.getDefault(),
             SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER, selectors)).build();
 
-    final ManagedClientConnectionManager connManager = new ManagedClientConnectionManager(registry);
     final int maxConnectionCount = getConnectionPoolMaxSize();
     final int perRouteConnectionCount = Math.min(getConnectionPoolSize(), maxConnectionCount);
+    final boolean adaptive = isConnectionPoolAdaptive();
+    final int floor = Math.max(1, getConnectionPoolAdaptiveFloor(null));
+    final ManagedClientConnectionManager connManager = new ManagedClientConnectionManager(registry, adaptive,
+        floor, Math.max(floor, Math.min(getConnectionPoolAdaptiveCap(null), maxConnectionCount)),
+        getConnectionPoolAdaptiveInterval());
 
     connManager.setMaxTotal(maxConnectionCount);
     connManager.setDefaultMaxPerRoute(perRouteConnectionCount);
@@ -293,9 +415,45 @@ public class Hc4ProviderImpl
   private class ManagedClientConnectionManager
       extends PoolingHttpClientConnectionManager
   {
+    private final RoutePoolSizer routePoolSizer;
 
-    public ManagedClientConnectionManager(final Registry<ConnectionSocketFactory> schemeRegistry) {
+    public ManagedClientConnectionManager(final Registry<ConnectionSocketFactory> schemeRegistry,
+                                          final boolean adaptive, final int floor, final int cap,
+                                          final long interval)
+    {
       super(schemeRegistry);
+      this.routePoolSizer = new RoutePoolSizer(this, Metrics.defaultRegistry(), adaptive, floor, cap, interval);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+      routePoolSizer.requesting(route);
+      final ConnectionRequest connectionRequest = super.requestConnection(route, state);
+      return new ConnectionRequest()
+      {
+        @Override
+        public HttpClientConnection get(final long timeout, final TimeUnit tunit)
+            throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+        {
+          final long started = System.nanoTime();
+          final HttpClientConnection connection = connectionRequest.get(timeout, tunit);
+          routePoolSizer.leased(route, connection, System.nanoTime() - started);
+          return connection;
+        }
+
+        @Override
+        public boolean cancel() {
+          return connectionRequest.cancel();
+        }
+      };
+    }
+
+    @Override
+    public void releaseConnection(final HttpClientConnection managedConn, final Object state, final long keepalive,
+                                  final TimeUnit tunit)
+    {
+      routePoolSizer.released(managedConn);
+      super.releaseConnection(managedConn, state, keepalive, tunit);
     }
 
     @Override
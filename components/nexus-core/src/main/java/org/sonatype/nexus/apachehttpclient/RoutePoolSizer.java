@@ -0,0 +1,305 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.apachehttpclient;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Observes leases of a {@link PoolingHttpClientConnectionManager} per {@link HttpRoute}, publishes per route leased,
+ * pending and wait time histograms into a {@link MetricsRegistry} and, when adaptive, resizes the per route limits
+ * of the pool based on observed demand. The demand of a route is estimated with Little's law (lease rate multiplied
+ * by mean lease duration), with some headroom added, and is always kept between the floor and cap of the route.
+ * Hence, a slow remote (long leases) will not get more connections than its cap, while fast remotes will need and
+ * get only a few connections.
+ *
+ * @since 3.0
+ */
+class RoutePoolSizer
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(RoutePoolSizer.class);
+
+  /**
+   * Headroom multiplier applied to estimated demand of a route.
+   */
+  private static final double HEADROOM = 1.5d;
+
+  private final PoolingHttpClientConnectionManager pool;
+
+  private final MetricsRegistry metricsRegistry;
+
+  private final boolean adaptive;
+
+  private final int defaultFloor;
+
+  private final int defaultCap;
+
+  private final long intervalNanos;
+
+  private final ConcurrentMap<HttpRoute, RouteStats> routes;
+
+  private final Map<HttpClientConnection, Lease> leases;
+
+  private final AtomicLong nextAdjustment;
+
+  /**
+   * @param pool            the pool to observe and resize, must not be {@code null}.
+   * @param metricsRegistry the registry to publish metrics into, must not be {@code null}.
+   * @param adaptive        if {@code true}, per route limits of the pool are adjusted, otherwise only metrics are
+   *                        published.
+   * @param defaultFloor    the floor of routes not having explicit limits.
+   * @param defaultCap      the cap of routes not having explicit limits.
+   * @param intervalMillis  the period of adjustments in milliseconds.
+   */
+  RoutePoolSizer(final PoolingHttpClientConnectionManager pool, final MetricsRegistry metricsRegistry,
+                 final boolean adaptive, final int defaultFloor, final int defaultCap, final long intervalMillis)
+  {
+    checkArgument(defaultFloor > 0, "Floor must be positive");
+    checkArgument(defaultCap >= defaultFloor, "Cap must not be less than floor");
+    checkArgument(intervalMillis > 0, "Interval must be positive");
+    this.pool = checkNotNull(pool);
+    this.metricsRegistry = checkNotNull(metricsRegistry);
+    this.adaptive = adaptive;
+    this.defaultFloor = defaultFloor;
+    this.defaultCap = defaultCap;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    this.routes = new ConcurrentHashMap<HttpRoute, RouteStats>();
+    // pooled connections are dynamic proxies, do not rely on their equals/hashCode
+    this.leases = Collections.synchronizedMap(new IdentityHashMap<HttpClientConnection, Lease>());
+    this.nextAdjustment = new AtomicLong(System.nanoTime() + intervalNanos);
+  }
+
+  boolean isAdaptive() {
+    return adaptive;
+  }
+
+  /**
+   * Sets the floor and cap of given route. When multiple repositories share same route, the highest floor and
+   * highest cap wins.
+   */
+  void limit(final HttpRoute route, final int floor, final int cap) {
+    final RouteStats stats = stats(route);
+    final int newFloor = Math.max(1, floor);
+    final int newCap = Math.max(newFloor, cap);
+    if (!stats.limited) {
+      stats.limited = true;
+      stats.floor = newFloor;
+      stats.cap = newCap;
+    }
+    else if (newFloor > stats.floor || newCap > stats.cap) {
+      stats.floor = Math.max(stats.floor, newFloor);
+      stats.cap = Math.max(stats.cap, newCap);
+    }
+    else {
+      return;
+    }
+    if (adaptive) {
+      clamp(route, stats);
+    }
+  }
+
+  /**
+   * To be invoked before a connection of given route is requested from pool.
+   */
+  void requesting(final HttpRoute route) {
+    final RouteStats stats = stats(route);
+    stats.pending.update(pool.getStats(route).getPending());
+  }
+
+  /**
+   * To be invoked when a connection of given route was leased from pool.
+   */
+  void leased(final HttpRoute route, final HttpClientConnection connection, final long waitNanos) {
+    final long now = System.nanoTime();
+    final RouteStats stats = stats(route);
+    stats.wait.update(waitNanos, TimeUnit.NANOSECONDS);
+    stats.leased.update(pool.getStats(route).getLeased());
+    stats.leaseCount.incrementAndGet();
+    leases.put(connection, new Lease(stats, now));
+    maybeAdjust(now);
+  }
+
+  /**
+   * To be invoked when a connection is released back to pool.
+   */
+  void released(final HttpClientConnection connection) {
+    final Lease lease = leases.remove(connection);
+    if (lease != null) {
+      lease.stats.releaseCount.incrementAndGet();
+      lease.stats.holdNanos.addAndGet(System.nanoTime() - lease.started);
+    }
+  }
+
+  /**
+   * Returns the current max per route limit of given route.
+   */
+  int getMaxPerRoute(final HttpRoute route) {
+    return pool.getMaxPerRoute(route);
+  }
+
+  private void maybeAdjust(final long now) {
+    final long next = nextAdjustment.get();
+    if (adaptive && now - next >= 0 && nextAdjustment.compareAndSet(next, now + intervalNanos)) {
+      // adjustments happen on leases only, so actual period might be longer than interval
+      adjust(now - next + intervalNanos);
+    }
+  }
+
+  /**
+   * Resizes the per route limits of the pool according to demand observed in last period of given length.
+   */
+  void adjust(final long periodNanos) {
+    if (!adaptive) {
+      return;
+    }
+    for (Map.Entry<HttpRoute, RouteStats> entry : routes.entrySet()) {
+      final HttpRoute route = entry.getKey();
+      final RouteStats stats = entry.getValue();
+      final long leaseCount = stats.leaseCount.getAndSet(0);
+      final long releaseCount = stats.releaseCount.getAndSet(0);
+      final long holdNanos = stats.holdNanos.getAndSet(0);
+
+      final int current = pool.getMaxPerRoute(route);
+      int target;
+      if (leaseCount == 0 || releaseCount == 0) {
+        // nothing to estimate from: shrink to floor only if route is completely idle
+        target = leaseCount == 0 && pool.getStats(route).getLeased() == 0 ? stats.floor : current;
+      }
+      else {
+        final double rate = (double) leaseCount / periodNanos;
+        final double meanHold = (double) holdNanos / releaseCount;
+        target = (int) Math.ceil(rate * meanHold * HEADROOM) + 1;
+        if (target < current) {
+          // shrink gradually, to not flap on bursty load
+          target = current - (current - target + 1) / 2;
+        }
+      }
+      target = Math.max(stats.floor, Math.min(stats.cap, target));
+      if (target != current) {
+        LOGGER.debug("Resizing pool of route {}: {} -> {}", route, current, target);
+        pool.setMaxPerRoute(route, target);
+      }
+    }
+  }
+
+  private RouteStats stats(final HttpRoute route) {
+    RouteStats stats = routes.get(route);
+    if (stats == null) {
+      stats = new RouteStats(route);
+      final RouteStats existing = routes.putIfAbsent(route, stats);
+      if (existing != null) {
+        stats = existing;
+      }
+      else {
+        if (adaptive) {
+          clamp(route, stats);
+        }
+        registerGauge(route);
+      }
+    }
+    return stats;
+  }
+
+  private void clamp(final HttpRoute route, final RouteStats stats) {
+    final int current = pool.getMaxPerRoute(route);
+    final int clamped = Math.max(stats.floor, Math.min(stats.cap, current));
+    if (clamped != current) {
+      pool.setMaxPerRoute(route, clamped);
+    }
+  }
+
+  private void registerGauge(final HttpRoute route) {
+    metricsRegistry.newGauge(RoutePoolSizer.class, "maxPerRoute", scope(route), new Gauge<Integer>()
+    {
+      @Override
+      public Integer value() {
+        return pool.getMaxPerRoute(route);
+      }
+    });
+    metricsRegistry.newGauge(RoutePoolSizer.class, "available", scope(route), new Gauge<Integer>()
+    {
+      @Override
+      public Integer value() {
+        final PoolStats stats = pool.getStats(route);
+        return stats.getAvailable();
+      }
+    });
+  }
+
+  private static String scope(final HttpRoute route) {
+    return route.getTargetHost().toURI();
+  }
+
+  // ==
+
+  private class RouteStats
+  {
+    private final Histogram leased;
+
+    private final Histogram pending;
+
+    private final Timer wait;
+
+    private final AtomicLong leaseCount = new AtomicLong();
+
+    private final AtomicLong releaseCount = new AtomicLong();
+
+    private final AtomicLong holdNanos = new AtomicLong();
+
+    private volatile boolean limited;
+
+    private volatile int floor;
+
+    private volatile int cap;
+
+    private RouteStats(final HttpRoute route) {
+      final String scope = scope(route);
+      this.leased = metricsRegistry.newHistogram(RoutePoolSizer.class, "leased", scope, true);
+      this.pending = metricsRegistry.newHistogram(RoutePoolSizer.class, "pending", scope, true);
+      this.wait = metricsRegistry.newTimer(RoutePoolSizer.class, "wait", scope);
+      this.floor = defaultFloor;
+      this.cap = defaultCap;
+    }
+  }
+
+  private static class Lease
+  {
+    private final RouteStats stats;
+
+    private final long started;
+
+    private Lease(final RouteStats stats, final long started) {
+      this.stats = stats;
+      this.started = started;
+    }
+  }
+}
@@ -22,7 +22,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -68,6 +73,8 @@ import org.sonatype.nexus.proxy.storage.local.LocalStorageContext;
 import org.sonatype.nexus.proxy.storage.remote.DefaultRemoteStorageContext;
 import org.sonatype.nexus.proxy.storage.remote.RemoteStorageContext;
 import org.sonatype.nexus.tasks.descriptors.ScheduledTaskDescriptor;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.security.SecuritySystem;
 import org.sonatype.security.authentication.AuthenticationException;
 import org.sonatype.security.usermanagement.NoSuchUserManagerException;
@@ -79,8 +86,11 @@ import org.sonatype.sisu.goodies.common.ComponentSupport;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 
 import com.google.common.base.Function;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Lists;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.subject.Subject;
@@ -101,6 +111,12 @@ public class DefaultNexusConfiguration
     extends ComponentSupport
     implements NexusConfiguration
 {
+  /**
+   * The maximum count of threads used to create hosted and proxy repositories at startup.
+   */
+  private static final int STARTUP_THREADS = SystemPropertiesHelper.getInteger(
+      DefaultNexusConfiguration.class.getName() + ".startupThreads", Runtime.getRuntime().availableProcessors());
+
   /**
    * Only to have UTs work
    */
@@ -628,18 +644,147 @@ public class DefaultNexusConfiguration
   protected void createRepositories()
       throws ConfigurationException
   {
-    List<CRepository> reposes = getConfigurationModel().getRepositories();
+    final List<CRepository> reposes = getConfigurationModel().getRepositories();
 
+    // hosted and proxy repositories do not depend on each other, shadows need their masters and groups their members
+    // registered, hence they are created in later phases, in configuration order
+    final List<CRepository> members = Lists.newArrayList();
+    final List<CRepository> shadows = Lists.newArrayList();
+    final List<CRepository> groups = Lists.newArrayList();
     for (CRepository repo : reposes) {
+      if (repo.getProviderRole().equals(GroupRepository.class.getName())) {
+        groups.add(repo);
+      }
+      else if (repo.getProviderRole().equals(ShadowRepository.class.getName())) {
+        shadows.add(repo);
+      }
+      else {
+        members.add(repo);
+      }
+    }
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    instantiateRepositoriesConcurrently(getConfigurationModel(), members);
+    log.info("Created {} hosted and proxy repositories in {}", members.size(), stopwatch);
+
+    stopwatch = Stopwatch.createStarted();
+    for (CRepository repo : shadows) {
+      instantiateRepository(getConfigurationModel(), repo);
+    }
+    for (CRepository repo : groups) {
+      instantiateRepository(getConfigurationModel(), repo);
+    }
+    log.info("Created {} shadow and {} group repositories in {}", shadows.size(), groups.size(), stopwatch);
+  }
 
-      if (!repo.getProviderRole().equals(GroupRepository.class.getName())) {
-        instantiateRepository(getConfigurationModel(), repo);
+  /**
+   * Creates and configures passed in repositories using at most {@link #STARTUP_THREADS} threads, and registers them
+   * in passed in order, hence registry events are fired in same order as with sequential creation. The repositories
+   * must not depend on each other.
+   */
+  private void instantiateRepositoriesConcurrently(final Configuration configuration,
+                                                   final List<CRepository> repositoryModels)
+      throws ConfigurationException
+  {
+    final int threads = Math.min(STARTUP_THREADS, repositoryModels.size());
+    if (threads <= 1) {
+      for (CRepository repo : repositoryModels) {
+        instantiateRepository(configuration, repo);
       }
+      return;
     }
 
-    for (CRepository repo : reposes) {
-      if (repo.getProviderRole().equals(GroupRepository.class.getName())) {
-        instantiateRepository(getConfigurationModel(), repo);
+    final List<Class<Repository>> klazzes = Lists.newArrayListWithCapacity(repositoryModels.size());
+    for (CRepository repo : repositoryModels) {
+      klazzes.add(loadRepositoryClass(repo));
+    }
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threads, new NexusThreadFactory("repo-startup", "Repository Startup"));
+    try {
+      final List<Future<Repository>> futures = Lists.newArrayListWithCapacity(repositoryModels.size());
+      for (int i = 0; i < repositoryModels.size(); i++) {
+        final CRepository repo = repositoryModels.get(i);
+        final Class<Repository> klazz = klazzes.get(i);
+        futures.add(executor.submit(new Callable<Repository>()
+        {
+          @Override
+          public Repository call() throws ConfigurationException {
+            return createRepository(klazz, repo);
+          }
+        }));
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        final CRepository repo = repositoryModels.get(i);
+        final Repository repository;
+        try {
+          repository = futures.get(i).get();
+        }
+        catch (ExecutionException e) {
+          releaseUnregistered(futures.subList(i + 1, futures.size()));
+          Throwables.propagateIfInstanceOf(e.getCause(), ConfigurationException.class);
+          throw new ConfigurationException("Cannot instantiate repository " + repo.getProviderRole() + ":"
+              + repo.getProviderHint(), e.getCause());
+        }
+        catch (InterruptedException e) {
+          releaseUnregistered(futures.subList(i, futures.size()));
+          Thread.currentThread().interrupt();
+          throw new ConfigurationException("Interrupted while creating repository " + repo.getId(), e);
+        }
+
+        try {
+          // instance count is maintained by registry, hence checked at registration time
+          checkRepositoryMaxInstanceCountForCreation(klazzes.get(i), repo.getProviderHint(), repo);
+        }
+        catch (ConfigurationException e) {
+          runtimeConfigurationBuilder.releaseRepository(repository);
+          releaseUnregistered(futures.subList(i + 1, futures.size()));
+          throw e;
+        }
+        repositoryRegistry.addRepository(repository);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Class<Repository> loadRepositoryClass(final CRepository repositoryModel)
+      throws ConfigurationException
+  {
+    try {
+      // core realm will search child/plugin realms too
+      return (Class<Repository>) uberClassLoader.loadClass(repositoryModel.getProviderRole());
+    }
+    catch (Exception e) {
+      throw new ConfigurationException("Cannot instantiate repository " + repositoryModel.getProviderRole() + ":"
+          + repositoryModel.getProviderHint(), e);
+    }
+  }
+
+  /**
+   * Creates and configures, but does not register the repository.
+   */
+  private Repository createRepository(final Class<Repository> klazz, final CRepository repositoryModel)
+      throws ConfigurationException
+  {
+    final Repository repository = runtimeConfigurationBuilder.createRepository(klazz, repositoryModel.getProviderHint());
+    if (repository instanceof Configurable) {
+      ((Configurable) repository).configure(repositoryModel);
+    }
+    return repository;
+  }
+
+  private void releaseUnregistered(final List<Future<Repository>> futures) {
+    for (Future<Repository> future : futures) {
+      // running ones are let finish, to have them released
+      future.cancel(false);
+      try {
+        runtimeConfigurationBuilder.releaseRepository(future.get());
+      }
+      catch (Exception e) {
+        // failed or cancelled, nothing to release
       }
     }
   }
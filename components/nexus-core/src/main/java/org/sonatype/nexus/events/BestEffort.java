@@ -0,0 +1,27 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.events;
+
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
+
+/**
+ * Marker interface to mark an {@link Asynchronous} {@link EventSubscriber} as non-critical for
+ * {@link RepositoryItemEvent}s. Item events queued for such subscriber are coalesced (a newer event of same type for
+ * same item replaces the one still waiting in queue), and are dropped when its queue is full, instead of making the
+ * posting thread wait for room in it.
+ *
+ * @since 3.0
+ */
+public interface BestEffort
+{
+}
@@ -13,6 +13,9 @@
 package org.sonatype.nexus.events;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
@@ -23,6 +26,7 @@ import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
 import org.sonatype.nexus.threads.NexusExecutorService;
 import org.sonatype.nexus.threads.NexusThreadFactory;
 import org.sonatype.nexus.util.SystemPropertiesHelper;
@@ -38,6 +42,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * A default host for {@link EventSubscriber}. This is an internal Nexus component and should not be used in
  * any plugin code, and hence, is subject of change without prior notice.
+ * <p/>
+ * High volume {@link RepositoryItemEvent}s are not dispatched through the host thread pool: each {@link Asynchronous}
+ * subscriber handling them gets its own bounded {@link ItemEventQueue}, so that request threads posting them do not
+ * execute the subscribers (when pool is exhausted) nor wait for them.
  *
  * @since 2.7.0
  */
@@ -49,6 +57,15 @@ public class EventSubscriberHost
   private final int HOST_THREAD_POOL_SIZE = SystemPropertiesHelper.getInteger(
       EventSubscriberHost.class.getName() + ".poolSize", 500);
 
+  private final int ITEM_EVENT_QUEUE_SIZE = SystemPropertiesHelper.getInteger(
+      EventSubscriberHost.class.getName() + ".itemEventQueueSize", 10000);
+
+  private final int ITEM_EVENT_BATCH_SIZE = SystemPropertiesHelper.getInteger(
+      EventSubscriberHost.class.getName() + ".itemEventBatchSize", 100);
+
+  private final long ITEM_EVENT_OFFER_TIMEOUT = SystemPropertiesHelper.getLong(
+      EventSubscriberHost.class.getName() + ".itemEventOfferTimeout", 5000L);
+
   private final EventBus eventBus;
 
   private final List<Provider<EventSubscriber>> eventSubscriberProviders;
@@ -57,6 +74,10 @@ public class EventSubscriberHost
 
   private final com.google.common.eventbus.AsyncEventBus asyncBus;
 
+  private final NexusExecutorService itemEventThreadPool;
+
+  private final Map<Object, ItemEventQueue> itemEventQueues = new ConcurrentHashMap<Object, ItemEventQueue>();
+
   @Inject
   public EventSubscriberHost(final EventBus eventBus, final List<Provider<EventSubscriber>> eventSubscriberProviders) {
     this.eventBus = checkNotNull(eventBus);
@@ -68,6 +89,9 @@ public class EventSubscriberHost
             new NexusThreadFactory("esh", "Event Subscriber Host"), new CallerRunsPolicy());
     this.hostThreadPool = NexusExecutorService.forCurrentSubject(target);
     this.asyncBus = new com.google.common.eventbus.AsyncEventBus("esh-async", hostThreadPool);
+    // one long running worker per item event queue
+    this.itemEventThreadPool = NexusExecutorService.forCurrentSubject(
+        Executors.newCachedThreadPool(new NexusThreadFactory("esh-item", "Event Subscriber Host Item Events")));
 
     eventBus.register(this);
     log.info("Initialized");
@@ -103,9 +127,14 @@ public class EventSubscriberHost
     }
 
     // we need clean shutdown, wait all background event inspectors to finish to have consistent state
+    for (ItemEventQueue queue : itemEventQueues.values()) {
+      queue.stop();
+    }
     hostThreadPool.shutdown();
+    itemEventThreadPool.shutdown();
     try {
       hostThreadPool.awaitTermination(5L, TimeUnit.SECONDS);
+      itemEventThreadPool.awaitTermination(5L, TimeUnit.SECONDS);
     }
     catch (InterruptedException e) {
       log.debug("Interrupted while waiting for termination", e);
@@ -115,6 +144,13 @@ public class EventSubscriberHost
   public void register(final Object object) {
     if (object instanceof Asynchronous) {
       asyncBus.register(object);
+      final List<Class<?>> itemEventTypes = ItemEventQueue.itemEventTypes(object);
+      if (!itemEventTypes.isEmpty()) {
+        final ItemEventQueue queue = new ItemEventQueue(object, itemEventTypes, ITEM_EVENT_QUEUE_SIZE,
+            ITEM_EVENT_BATCH_SIZE, ITEM_EVENT_OFFER_TIMEOUT);
+        itemEventQueues.put(object, queue);
+        itemEventThreadPool.execute(queue);
+      }
     }
     else {
       eventBus.register(object);
@@ -125,6 +161,11 @@ public class EventSubscriberHost
   public void unregister(final Object object) {
     if (object instanceof Asynchronous) {
       asyncBus.unregister(object);
+      final ItemEventQueue queue = itemEventQueues.remove(object);
+      if (queue != null) {
+        queue.stop();
+        queue.close();
+      }
     }
     else {
       eventBus.unregister(object);
@@ -137,14 +178,29 @@ public class EventSubscriberHost
    */
   @VisibleForTesting
   public boolean isCalmPeriod() {
-    // "calm period" is when we have no queued nor active threads
-    return ((ThreadPoolExecutor) hostThreadPool.getTargetExecutorService()).getQueue().isEmpty()
-        && ((ThreadPoolExecutor) hostThreadPool.getTargetExecutorService()).getActiveCount() == 0;
+    // "calm period" is when we have no queued nor active threads, and no queued nor dispatched item events
+    if (!((ThreadPoolExecutor) hostThreadPool.getTargetExecutorService()).getQueue().isEmpty()
+        || ((ThreadPoolExecutor) hostThreadPool.getTargetExecutorService()).getActiveCount() != 0) {
+      return false;
+    }
+    for (ItemEventQueue queue : itemEventQueues.values()) {
+      if (!queue.isIdle()) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Subscribe
   @AllowConcurrentEvents
   public void onEvent(final Object evt) {
-    asyncBus.post(evt);
+    if (evt instanceof RepositoryItemEvent) {
+      for (ItemEventQueue queue : itemEventQueues.values()) {
+        queue.post((RepositoryItemEvent) evt);
+      }
+    }
+    else {
+      asyncBus.post(evt);
+    }
   }
 }
@@ -0,0 +1,314 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.events;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bounded queue of {@link RepositoryItemEvent}s for one {@link Asynchronous} subscriber, drained in batches by a
+ * dedicated worker (this runnable), delivering events in order they were posted. When the queue is full, posting
+ * thread waits for room in it, unless subscriber is {@link BestEffort}, in which case event is dropped. If there is
+ * still no room after waiting, or the queue is stopped, the event is delivered on the posting thread. Exposes queue
+ * depth, dispatch lag, and dropped, coalesced and overflowed event counts as metrics scoped by subscriber class.
+ *
+ * @since 3.0
+ */
+class ItemEventQueue
+    extends ComponentSupport
+    implements Runnable
+{
+  private final Object subscriber;
+
+  private final List<Class<?>> eventTypes;
+
+  private final boolean bestEffort;
+
+  private final int capacity;
+
+  private final int batchSize;
+
+  private final long offerTimeoutMillis;
+
+  private final EventBus bus;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition notEmpty = lock.newCondition();
+
+  private final Condition notFull = lock.newCondition();
+
+  private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+
+  /**
+   * Queued entries by item key, maintained for {@link BestEffort} subscribers only.
+   */
+  private final Map<String, Entry> pending = Maps.newHashMap();
+
+  private boolean dispatching;
+
+  private boolean stopped;
+
+  private final String scope;
+
+  private final Counter dropped;
+
+  private final Counter coalesced;
+
+  private final Counter overflowed;
+
+  private final Timer lag;
+
+  ItemEventQueue(final Object subscriber, final List<Class<?>> eventTypes, final int capacity,
+                 final int batchSize, final long offerTimeoutMillis)
+  {
+    checkArgument(capacity > 0, "Capacity must be positive");
+    checkArgument(batchSize > 0, "Batch size must be positive");
+    this.subscriber = checkNotNull(subscriber);
+    this.eventTypes = checkNotNull(eventTypes);
+    this.bestEffort = subscriber instanceof BestEffort;
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.offerTimeoutMillis = offerTimeoutMillis;
+    this.bus = new EventBus("esh-item-" + subscriber.getClass().getSimpleName());
+    bus.register(subscriber);
+
+    this.scope = subscriber.getClass().getSimpleName();
+    final MetricsRegistry metricsRegistry = Metrics.defaultRegistry();
+    metricsRegistry.newGauge(ItemEventQueue.class, "depth", scope, new Gauge<Integer>()
+    {
+      @Override
+      public Integer value() {
+        return size();
+      }
+    });
+    this.dropped = metricsRegistry.newCounter(ItemEventQueue.class, "dropped", scope);
+    this.coalesced = metricsRegistry.newCounter(ItemEventQueue.class, "coalesced", scope);
+    this.overflowed = metricsRegistry.newCounter(ItemEventQueue.class, "overflowed", scope);
+    this.lag = metricsRegistry.newTimer(ItemEventQueue.class, "lag", scope, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Returns the types of {@link RepositoryItemEvent}s (or their supertypes) the subscriber has {@link Subscribe}
+   * methods for, or empty list if it does not handle item events at all.
+   */
+  static List<Class<?>> itemEventTypes(final Object subscriber) {
+    final List<Class<?>> result = new ArrayList<Class<?>>();
+    for (Method method : subscriber.getClass().getMethods()) {
+      if (method.isAnnotationPresent(Subscribe.class) && method.getParameterTypes().length == 1) {
+        final Class<?> type = method.getParameterTypes()[0];
+        if ((type.isAssignableFrom(RepositoryItemEvent.class) || RepositoryItemEvent.class.isAssignableFrom(type))
+            && !result.contains(type)) {
+          result.add(type);
+        }
+      }
+    }
+    return result;
+  }
+
+  public Object getSubscriber() {
+    return subscriber;
+  }
+
+  /**
+   * Enqueues the event for the subscriber, if subscriber handles it.
+   */
+  public void post(final RepositoryItemEvent event) {
+    if (!accepts(event)) {
+      return;
+    }
+    final String key = bestEffort ? key(event) : null;
+    lock.lock();
+    try {
+      if (bestEffort) {
+        final Entry queued = pending.get(key);
+        if (queued != null) {
+          queued.event = event;
+          coalesced.inc();
+          return;
+        }
+      }
+      if (!stopped && queue.size() >= capacity) {
+        if (bestEffort) {
+          dropped.inc();
+          log.debug("Queue full, dropping {}", event);
+          return;
+        }
+        long nanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+        while (!stopped && queue.size() >= capacity && nanos > 0) {
+          nanos = notFull.awaitNanos(nanos);
+        }
+      }
+      if (!stopped && queue.size() < capacity) {
+        final Entry entry = new Entry(key, event);
+        queue.add(entry);
+        if (bestEffort) {
+          pending.put(key, entry);
+        }
+        notEmpty.signal();
+        return;
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      lock.unlock();
+    }
+
+    // stopped, or still full after waiting: deliver it on this thread
+    overflowed.inc();
+    log.debug("Queue full or stopped, dispatching {} on caller thread", event);
+    bus.post(event);
+  }
+
+  @Override
+  public void run() {
+    final List<Entry> batch = new ArrayList<Entry>(batchSize);
+    while (true) {
+      lock.lock();
+      try {
+        dispatching = false;
+        while (queue.isEmpty() && !stopped) {
+          notEmpty.await();
+        }
+        if (queue.isEmpty()) {
+          // stopped and drained
+          return;
+        }
+        while (batch.size() < batchSize && !queue.isEmpty()) {
+          final Entry entry = queue.poll();
+          if (bestEffort) {
+            pending.remove(entry.key);
+          }
+          batch.add(entry);
+        }
+        dispatching = true;
+        notFull.signalAll();
+      }
+      catch (InterruptedException e) {
+        log.debug("Interrupted, {} item events not dispatched", queue.size());
+        return;
+      }
+      finally {
+        lock.unlock();
+      }
+
+      final long now = System.nanoTime();
+      for (Entry entry : batch) {
+        lag.update(now - entry.enqueued, TimeUnit.NANOSECONDS);
+        // subscriber exceptions are caught and logged by bus
+        bus.post(entry.event);
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Stops accepting events into the queue, worker will exit once it dispatched already queued events.
+   */
+  public void stop() {
+    lock.lock();
+    try {
+      stopped = true;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes metrics of this queue.
+   */
+  public void close() {
+    final MetricsRegistry metricsRegistry = Metrics.defaultRegistry();
+    metricsRegistry.removeMetric(ItemEventQueue.class, "depth", scope);
+    metricsRegistry.removeMetric(ItemEventQueue.class, "dropped", scope);
+    metricsRegistry.removeMetric(ItemEventQueue.class, "coalesced", scope);
+    metricsRegistry.removeMetric(ItemEventQueue.class, "overflowed", scope);
+    metricsRegistry.removeMetric(ItemEventQueue.class, "lag", scope);
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return queue.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns {@code true} if there are no queued events nor is worker dispatching any.
+   */
+  public boolean isIdle() {
+    lock.lock();
+    try {
+      return queue.isEmpty() && !dispatching;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean accepts(final RepositoryItemEvent event) {
+    for (Class<?> type : eventTypes) {
+      if (type.isInstance(event)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String key(final RepositoryItemEvent event) {
+    return event.getClass().getName() + ":" + event.getItemUid().getKey();
+  }
+
+  private static class Entry
+  {
+    private final String key;
+
+    private final long enqueued = System.nanoTime();
+
+    private RepositoryItemEvent event;
+
+    private Entry(final String key, final RepositoryItemEvent event) {
+      this.key = key;
+      this.event = event;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy;
+
+import org.sonatype.nexus.proxy.repository.ProxyRepository;
+import org.sonatype.nexus.proxy.storage.remote.RemoteRequestAborter;
+
+/**
+ * Exception to be thrown in cases when outbound request was aborted by the issuer of the request using
+ * {@link RemoteRequestAborter}, ie. a group that got the item from a preceding member. It tells nothing about the
+ * remote peer, hence it does not lead to auto blocking.
+ *
+ * @since 3.0
+ */
+public class RemoteStorageTransportAbortedException
+    extends RemoteStorageTransportException
+{
+  private static final long serialVersionUID = 2830165339482416207L;
+
+  public RemoteStorageTransportAbortedException(final ProxyRepository repository, final String message,
+                                                final Throwable cause)
+  {
+    super(repository, message, cause);
+  }
+}
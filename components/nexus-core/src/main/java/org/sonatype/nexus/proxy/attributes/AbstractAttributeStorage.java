@@ -12,6 +12,7 @@
  */
 package org.sonatype.nexus.proxy.attributes;
 
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
 
 /**
@@ -24,5 +25,26 @@ public abstract class AbstractAttributeStorage
     extends ComponentSupport
     implements AttributeStorage
 {
+  /**
+   * Applies the needed fixes on attributes of given UID freshly loaded from persistent storage.
+   *
+   * @since 3.0
+   */
+  protected Attributes fixLoadedAttributes(final RepositoryItemUid uid, final Attributes attributes) {
+    attributes.setRepositoryId(uid.getRepository().getId());
+    attributes.setPath(uid.getPath());
 
+    // fixing remoteChecked
+    if (attributes.getCheckedRemotely() == 0 || attributes.getCheckedRemotely() == 1) {
+      attributes.setCheckedRemotely(System.currentTimeMillis());
+      attributes.setExpired(true);
+    }
+
+    // fixing lastRequested
+    if (attributes.getLastRequested() == 0) {
+      attributes.setLastRequested(System.currentTimeMillis());
+    }
+
+    return attributes;
+  }
 }
@@ -0,0 +1,115 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Compact binary Attribute marshaller: a magic header and version, followed by the count of entries and the entries
+ * as length prefixed UTF-8 keys and values.
+ *
+ * @since 3.0
+ */
+public class BinaryMarshaller
+    implements Marshaller
+{
+  private static final int MAGIC = 0x4E584154; // "NXAT"
+
+  private static final int VERSION = 1;
+
+  /**
+   * Sanity limit for lengths read, to not allocate huge arrays when reading corrupted input.
+   */
+  private static final int MAX_LENGTH = 16 * 1024 * 1024;
+
+  @Override
+  public void marshal(final Attributes item, final OutputStream outputStream)
+      throws IOException
+  {
+    final Map<String, String> attrs = item.asMap();
+    final DataOutputStream dos = new DataOutputStream(outputStream);
+    dos.writeInt(MAGIC);
+    dos.writeByte(VERSION);
+    dos.writeInt(attrs.size());
+    for (Map.Entry<String, String> entry : attrs.entrySet()) {
+      writeString(dos, entry.getKey());
+      writeString(dos, entry.getValue());
+    }
+    dos.flush();
+  }
+
+  @Override
+  public Attributes unmarshal(final InputStream inputStream)
+      throws IOException, InvalidInputException
+  {
+    final DataInputStream dis = new DataInputStream(inputStream);
+    try {
+      if (dis.readInt() != MAGIC) {
+        throw new InvalidInputException("Persisted attribute malformed: no magic header!");
+      }
+      final int version = dis.readUnsignedByte();
+      if (version != VERSION) {
+        throw new InvalidInputException("Persisted attribute malformed: unknown version " + version + "!");
+      }
+      final int size = dis.readInt();
+      if (size < 0 || size > MAX_LENGTH) {
+        throw new InvalidInputException("Persisted attribute malformed: invalid entry count " + size + "!");
+      }
+      final Map<String, String> attributesMap = new HashMap<String, String>();
+      for (int i = 0; i < size; i++) {
+        attributesMap.put(readString(dis), readString(dis));
+      }
+      return new DefaultAttributes(attributesMap);
+    }
+    catch (EOFException e) {
+      throw new InvalidInputException("Persisted attribute malformed: truncated!", e);
+    }
+  }
+
+  private void writeString(final DataOutputStream dos, final String value)
+      throws IOException
+  {
+    final byte[] bytes = value.getBytes(Charsets.UTF_8);
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+  }
+
+  private String readString(final DataInputStream dis)
+      throws IOException
+  {
+    final int length = dis.readInt();
+    if (length < 0 || length > MAX_LENGTH) {
+      throw new InvalidInputException("Persisted attribute malformed: invalid string length " + length + "!");
+    }
+    final byte[] bytes = new byte[length];
+    dis.readFully(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  // ==
+
+  public String toString() {
+    return "Binary";
+  }
+}
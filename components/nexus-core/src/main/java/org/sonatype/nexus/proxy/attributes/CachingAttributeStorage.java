@@ -0,0 +1,347 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.sonatype.nexus.proxy.access.Action;
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
+import org.sonatype.nexus.proxy.events.NexusStoppingEvent;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.Subscribe;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * AttributeStorage that keeps a bounded in-memory copy of recently used attributes in front of another
+ * AttributeStorage, and persists "last requested" timestamp updates (see {@link #touchLastRequested(RepositoryItemUid,
+ * long)}) in a write-behind manner: updates of same item are coalesced and are written to the delegate periodically,
+ * and when Nexus is stopping. Once stopping, updates are not accepted anymore, and callers should write them
+ * directly.
+ * <p/>
+ * Callers are handed copies of cached attributes, as they freely modify the instances they get. Writes and deletes
+ * go directly to delegate, and evict the cached copy.
+ *
+ * @since 3.0
+ */
+public class CachingAttributeStorage
+    extends ComponentSupport
+    implements AttributeStorage
+{
+  /**
+   * Count of stripes of invalidation counters, used to detect invalidation of an entry while it was loaded.
+   */
+  private static final int STRIPES = 64;
+
+  private final AttributeStorage delegate;
+
+  private final EventBus eventBus;
+
+  private final ConcurrentMap<String, Attributes> cache;
+
+  private final AtomicLongArray invalidations;
+
+  private final ConcurrentMap<String, LastRequestedTouch> pendingTouches;
+
+  private final ScheduledExecutorService flusher;
+
+  /**
+   * Guards {@link #stopped}, so that no update is recorded after the last flush.
+   */
+  private final ReadWriteLock stopLock;
+
+  private boolean stopped;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  public CachingAttributeStorage(final AttributeStorage delegate, final EventBus eventBus, final int maximumSize,
+                                 final long flushInterval)
+  {
+    checkArgument(maximumSize > 0);
+    checkArgument(flushInterval > 0);
+    this.delegate = checkNotNull(delegate);
+    this.eventBus = checkNotNull(eventBus);
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).<String, Attributes>build().asMap();
+    this.invalidations = new AtomicLongArray(STRIPES);
+    this.pendingTouches = Maps.newConcurrentMap();
+    this.stopLock = new ReentrantReadWriteLock();
+    this.flusher = new ScheduledThreadPoolExecutor(1,
+        new NexusThreadFactory("attrcache", "Attributes cache flusher", Thread.NORM_PRIORITY, true));
+    this.flusher.scheduleWithFixedDelay(new Runnable()
+    {
+      @Override
+      public void run() {
+        flush();
+      }
+    }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+
+    final MetricsRegistry metricsRegistry = Metrics.defaultRegistry();
+    this.hits = metricsRegistry.newCounter(CachingAttributeStorage.class, "hits");
+    this.misses = metricsRegistry.newCounter(CachingAttributeStorage.class, "misses");
+
+    eventBus.register(this);
+  }
+
+  /**
+   * Returns the AttributeStorage this instance caches.
+   */
+  public AttributeStorage getDelegate() {
+    return delegate;
+  }
+
+  @VisibleForTesting
+  long getHitCount() {
+    return hits.count();
+  }
+
+  @VisibleForTesting
+  long getMissCount() {
+    return misses.count();
+  }
+
+  @Override
+  public Attributes getAttributes(final RepositoryItemUid uid)
+      throws IOException
+  {
+    final String key = uid.getKey();
+    Attributes cached = cache.get(key);
+    if (cached != null) {
+      hits.inc();
+    }
+    else {
+      misses.inc();
+      final long invalidation = invalidations.get(stripe(key));
+      final Attributes loaded = delegate.getAttributes(uid);
+      if (loaded == null) {
+        return null;
+      }
+      cached = copy(loaded);
+      final Attributes existing = cache.putIfAbsent(key, cached);
+      if (existing != null) {
+        cached = existing;
+      }
+      else if (invalidations.get(stripe(key)) != invalidation) {
+        // invalidated while we loaded it, might be stale
+        cache.remove(key, cached);
+      }
+    }
+
+    final Attributes result = copy(cached);
+    final LastRequestedTouch touch = pendingTouches.get(key);
+    if (touch != null && touch.appliesTo(result)) {
+      result.setLastRequested(touch.timestamp);
+    }
+    return result;
+  }
+
+  @Override
+  public void putAttributes(final RepositoryItemUid uid, final Attributes attributes)
+      throws IOException
+  {
+    try {
+      delegate.putAttributes(uid, attributes);
+    }
+    finally {
+      invalidate(uid.getKey());
+    }
+  }
+
+  @Override
+  public boolean deleteAttributes(final RepositoryItemUid uid)
+      throws IOException
+  {
+    pendingTouches.remove(uid.getKey());
+    try {
+      return delegate.deleteAttributes(uid);
+    }
+    finally {
+      invalidate(uid.getKey());
+    }
+  }
+
+  /**
+   * Records the "last requested" timestamp of item with given UID, that is visible for reads immediately, and is
+   * persisted later. Multiple updates of same item before persisting are coalesced into one write, the newest
+   * timestamp wins.
+   *
+   * @return {@code true} if update was recorded, {@code false} if this instance is stopped, and caller should persist
+   *         the update.
+   */
+  public boolean touchLastRequested(final RepositoryItemUid uid, final long timestamp) {
+    return record(uid, timestamp, false);
+  }
+
+  /**
+   * Records the exact "last requested" timestamp of item with given UID, even if it is older than the current one
+   * (ie. resetting it to some past point). Is visible for reads immediately, and is persisted later.
+   *
+   * @return {@code true} if update was recorded, {@code false} if this instance is stopped, and caller should persist
+   *         the update.
+   */
+  public boolean setLastRequested(final RepositoryItemUid uid, final long timestamp) {
+    return record(uid, timestamp, true);
+  }
+
+  /**
+   * Persists all the pending "last requested" updates.
+   */
+  public void flush() {
+    for (Map.Entry<String, LastRequestedTouch> entry : pendingTouches.entrySet()) {
+      final LastRequestedTouch touch = entry.getValue();
+      if (!pendingTouches.remove(entry.getKey(), touch)) {
+        // updated meanwhile, will be flushed next time
+        continue;
+      }
+      try {
+        persist(touch);
+      }
+      catch (Exception e) {
+        log.warn("Could not persist last requested timestamp of {}", touch.uid, e);
+      }
+    }
+  }
+
+  /**
+   * Flushes pending updates when Nexus is stopping, as attribute storage might be closed once it is stopped.
+   */
+  @Subscribe
+  public void on(final NexusStoppingEvent e) {
+    stopLock.writeLock().lock();
+    try {
+      stopped = true;
+    }
+    finally {
+      stopLock.writeLock().unlock();
+    }
+    eventBus.unregister(this);
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  // ==
+
+  private boolean record(final RepositoryItemUid uid, final long timestamp, final boolean exact) {
+    stopLock.readLock().lock();
+    try {
+      if (stopped) {
+        return false;
+      }
+      final String key = uid.getKey();
+      while (true) {
+        final LastRequestedTouch existing = pendingTouches.get(key);
+        if (existing == null) {
+          if (pendingTouches.putIfAbsent(key, new LastRequestedTouch(uid, timestamp, exact)) == null) {
+            return true;
+          }
+        }
+        else if (!exact && existing.timestamp >= timestamp) {
+          return true;
+        }
+        else {
+          // newer touch replacing a pending exact one is exact too, it happened after it
+          final LastRequestedTouch touch = new LastRequestedTouch(uid, timestamp, exact || existing.exact);
+          if (pendingTouches.replace(key, existing, touch)) {
+            return true;
+          }
+        }
+      }
+    }
+    finally {
+      stopLock.readLock().unlock();
+    }
+  }
+
+  protected void persist(final LastRequestedTouch touch)
+      throws IOException
+  {
+    final RepositoryItemUidLock uidLock = touch.uid.getLock();
+
+    // read-modify-write must not interleave with other writers
+    uidLock.lock(Action.create);
+
+    try {
+      final Attributes attributes = delegate.getAttributes(touch.uid);
+      if (attributes != null && touch.appliesTo(attributes)) {
+        attributes.setLastRequested(touch.timestamp);
+        delegate.putAttributes(touch.uid, attributes);
+        invalidate(touch.uid.getKey());
+      }
+    }
+    finally {
+      uidLock.unlock();
+    }
+  }
+
+  private void invalidate(final String key) {
+    invalidations.incrementAndGet(stripe(key));
+    cache.remove(key);
+  }
+
+  private static int stripe(final String key) {
+    return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+  }
+
+  private static Attributes copy(final Attributes attributes) {
+    return new DefaultAttributes(attributes.asMap());
+  }
+
+  private static class LastRequestedTouch
+  {
+    private final RepositoryItemUid uid;
+
+    private final long timestamp;
+
+    /**
+     * If {@code true}, timestamp is applied as is, otherwise only if newer than current one.
+     */
+    private final boolean exact;
+
+    private LastRequestedTouch(final RepositoryItemUid uid, final long timestamp, final boolean exact) {
+      this.uid = uid;
+      this.timestamp = timestamp;
+      this.exact = exact;
+    }
+
+    private boolean appliesTo(final Attributes attributes) {
+      return exact ? attributes.getLastRequested() != timestamp : attributes.getLastRequested() < timestamp;
+    }
+  }
+}
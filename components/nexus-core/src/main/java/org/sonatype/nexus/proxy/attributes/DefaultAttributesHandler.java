@@ -33,6 +33,7 @@ import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.repository.RepositoryKind;
 import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -41,6 +42,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * uses. It uses {@link StorageItemInspector} and {@link StorageFileItemInspector} components for "expansion" of core
  * (and custom) attributes (those components might come from plugins too). This class also implements some
  * "optimizations" for attribute "lastRequested", by using coarser resolution for it (saving it very n-th hour or so).
+ * Unless disabled, attributes are cached in memory and "lastRequested" updates are persisted in write-behind manner,
+ * see {@link CachingAttributeStorage}.
  *
  * @author cstamas
  */
@@ -84,6 +87,24 @@ public class DefaultAttributesHandler
       "org.sonatype.nexus.proxy.attributes.DefaultAttributesHandler.lastRequested.enabled.proxy",
       LAST_REQUEST_ATTRIBUTE_ENABLED);
 
+  /**
+   * Flag to enable/disable the in-memory cache of attributes.
+   */
+  private static final boolean ATTRIBUTES_CACHE_ENABLED = SystemPropertiesHelper.getBoolean(
+      "org.sonatype.nexus.proxy.attributes.DefaultAttributesHandler.cache.enabled", true);
+
+  /**
+   * The maximum count of attributes kept in memory.
+   */
+  private static final int ATTRIBUTES_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+      "org.sonatype.nexus.proxy.attributes.DefaultAttributesHandler.cache.size", 10000);
+
+  /**
+   * The interval in milliseconds in which cached lastRequested attribute updates are persisted.
+   */
+  private static final long LAST_REQUESTED_ATTRIBUTE_FLUSH_INTERVAL = SystemPropertiesHelper.getLong(
+      "org.sonatype.nexus.proxy.attributes.DefaultAttributesHandler.lastRequested.flushInterval", 10000L);
+
   /**
    * The actual value of lastRequest attribute's resolution. Note: is not final due to UT access, see
    * setter method that is visible for testing.
@@ -95,16 +116,31 @@ public class DefaultAttributesHandler
    */
   private final AttributeStorage attributeStorage;
 
+  /**
+   * The attributes cache, is {@code null} if cache is disabled.
+   */
+  private final CachingAttributeStorage attributesCache;
+
   /**
    * The item inspector list.
    */
   private final List<StorageItemInspector> itemInspectorList;
 
   @Inject
-  public DefaultAttributesHandler(@Named("ls") AttributeStorage attributeStorage,
+  public DefaultAttributesHandler(EventBus eventBus,
+                                  @Named("${nexus.attributeStorage:-ls}") AttributeStorage attributeStorage,
                                   List<StorageItemInspector> itemInspectorList)
   {
-    this.attributeStorage = checkNotNull(attributeStorage);
+    checkNotNull(attributeStorage);
+    if (ATTRIBUTES_CACHE_ENABLED) {
+      this.attributesCache = new CachingAttributeStorage(attributeStorage, eventBus, ATTRIBUTES_CACHE_SIZE,
+          LAST_REQUESTED_ATTRIBUTE_FLUSH_INTERVAL);
+      this.attributeStorage = attributesCache;
+    }
+    else {
+      this.attributesCache = null;
+      this.attributeStorage = attributeStorage;
+    }
     this.itemInspectorList = checkNotNull(itemInspectorList);
   }
 
@@ -292,7 +328,14 @@ public class DefaultAttributesHandler
         if (diff < 0 || ((diff > 0) && (diff > lastRequestedResolution))) {
           attributes.setLastRequested(timestamp);
 
-          getAttributeStorage().putAttributes(uid, attributes);
+          // coalesced and persisted later, unless cache is disabled or stopped
+          // resetting to past point is applied as is, while concurrent "usual" updates keep the newest
+          final boolean recorded = attributesCache != null
+              && (diff < 0 ? attributesCache.setLastRequested(uid, timestamp)
+                  : attributesCache.touchLastRequested(uid, timestamp));
+          if (!recorded) {
+            getAttributeStorage().putAttributes(uid, attributes);
+          }
         }
       }
     }
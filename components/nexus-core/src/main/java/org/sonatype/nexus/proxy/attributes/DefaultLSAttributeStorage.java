@@ -48,7 +48,7 @@ public class DefaultLSAttributeStorage
     extends AbstractAttributeStorage
     implements AttributeStorage
 {
-  private static final String ATTRIBUTE_PATH_PREFIX = "/.nexus/attributes";
+  static final String ATTRIBUTE_PATH_PREFIX = "/.nexus/attributes";
 
   private final Marshaller marshaller;
 
@@ -222,19 +222,7 @@ public class DefaultLSAttributeStorage
           result = marshaller.unmarshal(attributeStream);
         }
 
-        result.setRepositoryId(uid.getRepository().getId());
-        result.setPath(uid.getPath());
-
-        // fixing remoteChecked
-        if (result.getCheckedRemotely() == 0 || result.getCheckedRemotely() == 1) {
-          result.setCheckedRemotely(System.currentTimeMillis());
-          result.setExpired(true);
-        }
-
-        // fixing lastRequested
-        if (result.getLastRequested() == 0) {
-          result.setLastRequested(System.currentTimeMillis());
-        }
+        fixLoadedAttributes(uid, result);
       }
     }
     catch (InvalidInputException e) {
@@ -0,0 +1,389 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.Typed;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.configuration.application.ApplicationDirectories;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.access.Action;
+import org.sonatype.nexus.proxy.attributes.internal.AttributeLog;
+import org.sonatype.nexus.proxy.events.NexusStoppedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.scheduling.TaskUtil;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.Subscribe;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * AttributeStorage implementation that keeps attributes of each repository in one append-only log file (see
+ * {@link AttributeLog}), using compact binary encoding and batched writes, instead of one file per item. The logs
+ * are kept in {@code attributes} directory of Nexus work directory.
+ * <p/>
+ * Attributes still stored by {@link DefaultLSAttributeStorage} are migrated on the fly, when first read, and can be
+ * migrated eagerly using {@link #migrateLegacyAttributes(Repository)}. To have it used, set the
+ * {@code nexus.attributeStorage} property to {@code log}.
+ *
+ * @since 3.0
+ */
+@Typed(AttributeStorage.class)
+@Named(LogStructuredAttributeStorage.ID)
+@Singleton
+public class LogStructuredAttributeStorage
+    extends AbstractAttributeStorage
+    implements AttributeStorage
+{
+  public static final String ID = "log";
+
+  /**
+   * The name of the directory, within Nexus work directory, where attribute logs are kept.
+   */
+  public static final String ATTRIBUTES_DIRECTORY = "attributes";
+
+  private static final int BATCH_SIZE = SystemPropertiesHelper.getInteger(
+      LogStructuredAttributeStorage.class.getName() + ".batchSize", 500);
+
+  private static final long FLUSH_INTERVAL = SystemPropertiesHelper.getLong(
+      LogStructuredAttributeStorage.class.getName() + ".flushInterval", 1000L);
+
+  private static final boolean FORCE_ON_FLUSH = SystemPropertiesHelper.getBoolean(
+      LogStructuredAttributeStorage.class.getName() + ".forceOnFlush", true);
+
+  private static final boolean MIGRATE_LEGACY = SystemPropertiesHelper.getBoolean(
+      LogStructuredAttributeStorage.class.getName() + ".migrateLegacy", true);
+
+  private final EventBus eventBus;
+
+  private final File attributesDirectory;
+
+  private final AttributeStorage legacyAttributeStorage;
+
+  private final Marshaller marshaller;
+
+  private final ConcurrentMap<String, AttributeLog> attributeLogs;
+
+  private final ScheduledExecutorService flusher;
+
+  @Inject
+  public LogStructuredAttributeStorage(final EventBus eventBus, final ApplicationDirectories applicationDirectories,
+                                       final @Named("ls") AttributeStorage legacyAttributeStorage)
+  {
+    this.eventBus = checkNotNull(eventBus);
+    this.attributesDirectory = applicationDirectories.getWorkDirectory(ATTRIBUTES_DIRECTORY);
+    this.legacyAttributeStorage = checkNotNull(legacyAttributeStorage);
+    this.marshaller = new BinaryMarshaller();
+    this.attributeLogs = Maps.newConcurrentMap();
+    this.flusher = new ScheduledThreadPoolExecutor(1, new NexusThreadFactory("attrlog", "Attribute log flusher"));
+    this.flusher.scheduleWithFixedDelay(new Runnable()
+    {
+      @Override
+      public void run() {
+        flushAll();
+      }
+    }, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    eventBus.register(this);
+    log.info("Log structured AttributeStorage in place, using {} marshaller, logs in {}.", marshaller,
+        attributesDirectory);
+  }
+
+  /**
+   * Returns the attribute log file of given repository, in given attributes directory.
+   */
+  public static File getAttributeLogFile(final File attributesDirectory, final String repositoryId) {
+    return new File(attributesDirectory, repositoryId + ".log");
+  }
+
+  @Override
+  public boolean deleteAttributes(final RepositoryItemUid uid)
+      throws IOException
+  {
+    final RepositoryItemUidLock uidLock = uid.getLock();
+
+    uidLock.lock(Action.delete);
+
+    try {
+      if (log.isDebugEnabled()) {
+        log.debug("Deleting attributes on UID=" + uid.toString());
+      }
+
+      boolean deleted = getAttributeLog(uid.getRepository()).delete(uid.getPath());
+      if (MIGRATE_LEGACY) {
+        // not yet migrated attributes must not resurrect
+        deleted = legacyAttributeStorage.deleteAttributes(uid) || deleted;
+      }
+      return deleted;
+    }
+    finally {
+      uidLock.unlock();
+    }
+  }
+
+  @Override
+  public Attributes getAttributes(final RepositoryItemUid uid)
+      throws IOException
+  {
+    final RepositoryItemUidLock uidLock = uid.getLock();
+
+    Attributes result;
+
+    uidLock.lock(Action.read);
+
+    try {
+      if (log.isDebugEnabled()) {
+        log.debug("Loading attributes on UID=" + uid.toString());
+      }
+
+      result = doGetAttributes(uid);
+    }
+    finally {
+      uidLock.unlock();
+    }
+
+    if (result == null && MIGRATE_LEGACY) {
+      result = migrateLegacyAttributes(uid);
+    }
+
+    return result;
+  }
+
+  @Override
+  public void putAttributes(final RepositoryItemUid uid, Attributes attributes)
+      throws IOException
+  {
+    final RepositoryItemUidLock uidLock = uid.getLock();
+
+    uidLock.lock(Action.create);
+
+    try {
+      if (log.isDebugEnabled()) {
+        log.debug("Storing attributes on UID=" + uid.toString());
+      }
+
+      final Attributes stored = doGetAttributes(uid);
+
+      if (stored != null && (stored.getGeneration() > attributes.getGeneration())) {
+        // change detected, overlay the to be saved onto the newer one and swap
+        stored.overlayAttributes(attributes);
+
+        // and overlay other things too
+        stored.setRepositoryId(uid.getRepository().getId());
+        stored.setPath(uid.getPath());
+        stored.setReadable(attributes.isReadable());
+        stored.setWritable(attributes.isWritable());
+
+        attributes = stored;
+      }
+
+      attributes.incrementGeneration();
+
+      doPutAttributes(uid, attributes);
+    }
+    finally {
+      uidLock.unlock();
+    }
+  }
+
+  /**
+   * Eagerly migrates all the attributes of given repository stored by {@link DefaultLSAttributeStorage}. Returns the
+   * count of migrated attributes.
+   */
+  public int migrateLegacyAttributes(final Repository repository)
+      throws IOException
+  {
+    log.info("Migrating attributes of repository {}", repository);
+    final int migrated = migrateLegacyAttributes(repository, DefaultLSAttributeStorage.ATTRIBUTE_PATH_PREFIX);
+    log.info("Migrated {} attributes of repository {}", migrated, repository);
+    return migrated;
+  }
+
+  // ==
+
+  protected Attributes doGetAttributes(final RepositoryItemUid uid)
+      throws IOException
+  {
+    final AttributeLog attributeLog = getAttributeLog(uid.getRepository());
+    final byte[] bytes = attributeLog.get(uid.getPath());
+    if (bytes == null) {
+      return null;
+    }
+
+    try {
+      return fixLoadedAttributes(uid, marshaller.unmarshal(new ByteArrayInputStream(bytes)));
+    }
+    catch (InvalidInputException e) {
+      if (log.isDebugEnabled()) {
+        // we log the stacktrace
+        log.info("Attributes of " + uid + " are corrupt, deleting it.", e);
+      }
+      else {
+        // just remark about this
+        log.info("Attributes of " + uid + " are corrupt, deleting it.");
+      }
+      attributeLog.delete(uid.getPath());
+      return null;
+    }
+  }
+
+  protected void doPutAttributes(final RepositoryItemUid uid, final Attributes attributes)
+      throws IOException
+  {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    marshaller.marshal(attributes, bos);
+    getAttributeLog(uid.getRepository()).put(uid.getPath(), bos.toByteArray());
+  }
+
+  /**
+   * Moves the attributes of given UID from legacy storage into the log, if legacy attributes exists.
+   */
+  protected Attributes migrateLegacyAttributes(final RepositoryItemUid uid)
+      throws IOException
+  {
+    final Attributes legacy = legacyAttributeStorage.getAttributes(uid);
+    if (legacy == null) {
+      return null;
+    }
+
+    final RepositoryItemUidLock uidLock = uid.getLock();
+
+    uidLock.lock(Action.create);
+
+    try {
+      final Attributes stored = doGetAttributes(uid);
+      if (stored != null) {
+        // someone stored attributes meanwhile, they win
+        return stored;
+      }
+      doPutAttributes(uid, legacy);
+      legacyAttributeStorage.deleteAttributes(uid);
+      return legacy;
+    }
+    finally {
+      uidLock.unlock();
+    }
+  }
+
+  private int migrateLegacyAttributes(final Repository repository, final String attributesPath)
+      throws IOException
+  {
+    final Collection<StorageItem> items;
+    try {
+      items = repository.getLocalStorage().listItems(repository, new ResourceStoreRequest(attributesPath, true));
+    }
+    catch (ItemNotFoundException e) {
+      return 0;
+    }
+
+    int migrated = 0;
+    for (StorageItem item : items) {
+      TaskUtil.checkInterruption();
+      if (item instanceof StorageCollectionItem) {
+        migrated += migrateLegacyAttributes(repository, item.getPath());
+      }
+      else if (item instanceof StorageFileItem) {
+        final String path = item.getPath().substring(DefaultLSAttributeStorage.ATTRIBUTE_PATH_PREFIX.length());
+        if (migrateLegacyAttributes(repository.createUid(path)) != null) {
+          migrated++;
+        }
+      }
+    }
+    return migrated;
+  }
+
+  protected AttributeLog getAttributeLog(final Repository repository)
+      throws IOException
+  {
+    final AttributeLog attributeLog = attributeLogs.get(repository.getId());
+    if (attributeLog != null) {
+      return attributeLog;
+    }
+    synchronized (attributeLogs) {
+      AttributeLog result = attributeLogs.get(repository.getId());
+      if (result == null) {
+        result = new AttributeLog(getAttributeLogFile(attributesDirectory, repository.getId()), BATCH_SIZE,
+            FORCE_ON_FLUSH);
+        attributeLogs.put(repository.getId(), result);
+      }
+      return result;
+    }
+  }
+
+  protected void flushAll() {
+    for (AttributeLog attributeLog : attributeLogs.values()) {
+      try {
+        attributeLog.flush();
+      }
+      catch (Exception e) {
+        log.warn("Could not flush attribute log {}", attributeLog.getFile(), e);
+      }
+    }
+  }
+
+  protected void close(final AttributeLog attributeLog) {
+    try {
+      attributeLog.close();
+    }
+    catch (IOException e) {
+      log.warn("Could not close attribute log {}", attributeLog.getFile(), e);
+    }
+  }
+
+  // ==
+
+  @Subscribe
+  public void on(final RepositoryRegistryEventRemove e) {
+    final AttributeLog attributeLog;
+    synchronized (attributeLogs) {
+      attributeLog = attributeLogs.remove(e.getRepository().getId());
+    }
+    if (attributeLog != null) {
+      close(attributeLog);
+    }
+  }
+
+  @Subscribe
+  public void on(final NexusStoppedEvent e) {
+    eventBus.unregister(this);
+    flusher.shutdown();
+    synchronized (attributeLogs) {
+      for (AttributeLog attributeLog : attributeLogs.values()) {
+        close(attributeLog);
+      }
+      attributeLogs.clear();
+    }
+  }
+}
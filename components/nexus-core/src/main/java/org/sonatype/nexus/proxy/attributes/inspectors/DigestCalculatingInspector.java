@@ -13,7 +13,6 @@
 package org.sonatype.nexus.proxy.attributes.inspectors;
 
 import java.io.InputStream;
-import java.security.MessageDigest;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -27,8 +26,9 @@ import org.sonatype.nexus.util.io.StreamSupport;
 import static com.google.common.io.ByteStreams.nullOutputStream;
 
 /**
- * The Class DigestCalculatingInspector calculates MD5 and SHA1 digests of a file and stores them into extended
- * attributes.
+ * The Class DigestCalculatingInspector calculates MD5 and SHA1 (and SHA-256 if enabled) digests of a file and stores
+ * them into extended attributes. Usually those were calculated already while the file was stored, and are just
+ * lifted from item context.
  *
  * @author cstamas
  */
@@ -73,14 +73,10 @@ public class DigestCalculatingInspector
   {
     if (item instanceof StorageFileItem) {
       final StorageFileItem file = (StorageFileItem) item;
-      final ChecksummingContentLocator sha1cl =
-          new ChecksummingContentLocator(file.getContentLocator(), MessageDigest.getInstance("SHA1"),
-              StorageFileItem.DIGEST_SHA1_KEY, item.getItemContext());
-      // md5 is deprecated but still calculated
-      ChecksummingContentLocator md5cl =
-          new ChecksummingContentLocator(sha1cl, MessageDigest.getInstance("MD5"),
-              StorageFileItem.DIGEST_MD5_KEY, item.getItemContext());
-      try (final InputStream is = md5cl.getContent()) {
+      // all digests in a single pass
+      final ChecksummingContentLocator cl = new ChecksummingContentLocator(file.getContentLocator(),
+          ChecksummingContentLocator.newItemDigests(), item.getItemContext());
+      try (final InputStream is = cl.getContent()) {
         StreamSupport.copy(is, nullOutputStream(), StreamSupport.BUFFER_SIZE);
       }
       // we made sure that above operations will make values into context
@@ -97,6 +93,11 @@ public class DigestCalculatingInspector
       // do this one "blindly"
       item.getRepositoryItemAttributes().put(DIGEST_MD5_KEY,
           String.valueOf(item.getItemContext().get(StorageFileItem.DIGEST_MD5_KEY)));
+      // this one is calculated only if enabled
+      if (item.getItemContext().containsKey(StorageFileItem.DIGEST_SHA256_KEY)) {
+        item.getRepositoryItemAttributes().put(StorageFileItem.DIGEST_SHA256_KEY,
+            String.valueOf(item.getItemContext().get(StorageFileItem.DIGEST_SHA256_KEY)));
+      }
       // we did our job, those were in context
       return true;
     }
@@ -0,0 +1,480 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Append-only log file of attribute records of one repository, keyed by item path. An index maps path hashes to the
+ * position of their latest record, so reads are single positional reads, that are served from OS page cache for hot
+ * items. Writes are collected in memory (and are visible to reads immediately) and are appended to the log in
+ * batches by {@link #flush()}. When most of the records in the log are superseded, the log is compacted.
+ * <p/>
+ * The index is kept in a memory-mapped file (see {@link AttributeLogIndex}), so heap usage does not grow with the
+ * count of paths, that is limited to {@link AttributeLogIndex#MAX_SIZE} per log. Reads verify the path of the record
+ * found, so in the (practically impossible) case of a hash collision the older path has no value.
+ * <p/>
+ * Record layout: int length of body, int CRC32 of body, and body: byte type, unsigned short path length, UTF-8 path
+ * and value bytes. Incomplete or corrupt records at the tail of the log (ie. due to crash) are truncated on open.
+ *
+ * @since 3.0
+ */
+public class AttributeLog
+    implements Closeable
+{
+  private static final Logger log = LoggerFactory.getLogger(AttributeLog.class);
+
+  private static final byte PUT = 1;
+
+  private static final byte DELETE = 2;
+
+  private static final int HEADER_SIZE = 8;
+
+  private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * Reads will try to read a record with one read of this size.
+   */
+  private static final int READ_AHEAD_SIZE = 512;
+
+  /**
+   * Logs having less records than this are never compacted.
+   */
+  private static final int COMPACTION_MIN_RECORDS = 10000;
+
+  /**
+   * Marker of pending deletion, compared by identity.
+   */
+  private static final byte[] TOMBSTONE = new byte[0];
+
+  private final File file;
+
+  private final int batchSize;
+
+  private final boolean forceOnFlush;
+
+  private final ConcurrentMap<String, byte[]> pending = Maps.newConcurrentMap();
+
+  /**
+   * Guards appends to the log, and fields {@link #size} and {@link #records}.
+   */
+  private final Object writeMonitor = new Object();
+
+  /**
+   * Guards the index, that is not thread safe: reads hold the read lock, while index updates and compaction (that
+   * swaps the channel and the index) hold the write lock.
+   */
+  private final ReentrantReadWriteLock compactionLock = new ReentrantReadWriteLock();
+
+  private volatile FileChannel channel;
+
+  private AttributeLogIndex index;
+
+  private long size;
+
+  private long records;
+
+  public AttributeLog(final File file, final int batchSize, final boolean forceOnFlush)
+      throws IOException
+  {
+    checkArgument(batchSize > 0);
+    this.file = checkNotNull(file);
+    this.batchSize = batchSize;
+    this.forceOnFlush = forceOnFlush;
+    open();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the value stored for given path, or {@code null}.
+   */
+  public byte[] get(final String path)
+      throws IOException
+  {
+    final byte[] value = pending.get(path);
+    if (value != null) {
+      return value == TOMBSTONE ? null : value;
+    }
+    compactionLock.readLock().lock();
+    try {
+      final long position = index.get(AttributeLogIndex.hash(path));
+      if (position < 0) {
+        return null;
+      }
+      final byte[] body = readBody(position);
+      // hash collision of other path
+      return path.equals(readPath(body)) ? readValue(body) : null;
+    }
+    finally {
+      compactionLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Stores the value for given path. Value is visible for {@link #get(String)} immediately, but is persisted with
+   * next {@link #flush()}, that is invoked when the count of pending writes reaches the batch size.
+   */
+  public void put(final String path, final byte[] value)
+      throws IOException
+  {
+    checkNotNull(value);
+    pending.put(path, value);
+    if (pending.size() >= batchSize) {
+      flush();
+    }
+  }
+
+  /**
+   * Deletes the value of given path, returns {@code true} if the value existed.
+   */
+  public boolean delete(final String path)
+      throws IOException
+  {
+    if (get(path) == null) {
+      return false;
+    }
+    pending.put(path, TOMBSTONE);
+    if (pending.size() >= batchSize) {
+      flush();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the count of paths having value.
+   */
+  public int size() {
+    compactionLock.readLock().lock();
+    try {
+      int result = index.size();
+      for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+        final boolean indexed = index.get(AttributeLogIndex.hash(entry.getKey())) >= 0;
+        if (entry.getValue() == TOMBSTONE && indexed) {
+          result--;
+        }
+        else if (entry.getValue() != TOMBSTONE && !indexed) {
+          result++;
+        }
+      }
+      return result;
+    }
+    finally {
+      compactionLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Appends pending writes to the log as one batch.
+   */
+  public void flush()
+      throws IOException
+  {
+    synchronized (writeMonitor) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      final Map<String, byte[]> batch = Maps.newHashMap(pending);
+      final Map<String, Long> positions = Maps.newHashMapWithExpectedSize(batch.size());
+      compactionLock.readLock().lock();
+      try {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(buffer);
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+          positions.put(entry.getKey(), size + buffer.size());
+          if (entry.getValue() == TOMBSTONE) {
+            writeRecord(dos, DELETE, entry.getKey(), TOMBSTONE);
+          }
+          else {
+            writeRecord(dos, PUT, entry.getKey(), entry.getValue());
+          }
+        }
+        dos.flush();
+        writeFully(channel, ByteBuffer.wrap(buffer.toByteArray()), size);
+        if (forceOnFlush) {
+          channel.force(false);
+        }
+        size += buffer.size();
+        records += batch.size();
+      }
+      finally {
+        compactionLock.readLock().unlock();
+      }
+
+      compactionLock.writeLock().lock();
+      try {
+        // publish to index first, and only then remove from pending, so readers see either of them
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+          if (entry.getValue() == TOMBSTONE) {
+            index.remove(AttributeLogIndex.hash(entry.getKey()));
+          }
+          else {
+            index.put(AttributeLogIndex.hash(entry.getKey()), positions.get(entry.getKey()));
+          }
+          // remove only if not overwritten meanwhile
+          pending.remove(entry.getKey(), entry.getValue());
+        }
+      }
+      finally {
+        compactionLock.writeLock().unlock();
+      }
+
+      if (records > COMPACTION_MIN_RECORDS && index.size() < records / 2) {
+        compact();
+      }
+    }
+  }
+
+  /**
+   * Flushes pending writes and closes the log.
+   */
+  @Override
+  public void close()
+      throws IOException
+  {
+    synchronized (writeMonitor) {
+      try {
+        flush();
+      }
+      finally {
+        channel.close();
+        index.close();
+      }
+    }
+  }
+
+  // ==
+
+  private void open()
+      throws IOException
+  {
+    Files.createDirectories(file.getParentFile().toPath());
+    AttributeLogIndex.deleteLeftovers(file.getParentFile(), getIndexPrefix());
+    index = new AttributeLogIndex(file.getParentFile(), getIndexPrefix());
+    long position = 0;
+    if (file.isFile()) {
+      try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        final CRC32 crc = new CRC32();
+        while (true) {
+          final int length;
+          try {
+            length = dis.readInt();
+          }
+          catch (EOFException e) {
+            break;
+          }
+          final byte[] body;
+          try {
+            final int checksum = dis.readInt();
+            if (length < 3 || length > MAX_BODY_SIZE) {
+              throw new IOException("Invalid record length " + length);
+            }
+            body = new byte[length];
+            dis.readFully(body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+              throw new IOException("Record checksum mismatch");
+            }
+          }
+          catch (IOException e) {
+            log.warn("Attribute log {} is corrupt at position {} ({}), truncating it", file, position, e.toString());
+            break;
+          }
+          final long hash = AttributeLogIndex.hash(readPath(body));
+          if (body[0] == PUT) {
+            index.put(hash, position);
+          }
+          else {
+            index.remove(hash);
+          }
+          records++;
+          position += HEADER_SIZE + length;
+        }
+      }
+    }
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    if (channel.size() > position) {
+      channel.truncate(position);
+    }
+    size = position;
+  }
+
+  private String getIndexPrefix() {
+    return file.getName() + ".index-";
+  }
+
+  /**
+   * Rewrites the log having only the latest records of paths, along with a new index. Caller must hold
+   * {@link #writeMonitor}.
+   */
+  private void compact()
+      throws IOException
+  {
+    compactionLock.writeLock().lock();
+    try {
+      final long started = System.currentTimeMillis();
+      final File compacted = new File(file.getParentFile(), file.getName() + ".compact");
+      final FileChannel target = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      final AttributeLogIndex targetIndex = new AttributeLogIndex(file.getParentFile(), getIndexPrefix());
+      try {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(buffer);
+        long targetSize = 0;
+        for (int slot = 0; slot < index.capacity(); slot++) {
+          final long hash = index.hashAt(slot);
+          if (hash == 0) {
+            continue;
+          }
+          final byte[] body = readBody(index.positionAt(slot));
+          targetIndex.put(hash, targetSize + buffer.size());
+          writeRecord(dos, PUT, readPath(body), readValue(body));
+          if (buffer.size() > 1024 * 1024) {
+            dos.flush();
+            writeFully(target, ByteBuffer.wrap(buffer.toByteArray()), targetSize);
+            targetSize += buffer.size();
+            buffer.reset();
+          }
+        }
+        dos.flush();
+        writeFully(target, ByteBuffer.wrap(buffer.toByteArray()), targetSize);
+        targetSize += buffer.size();
+        target.force(true);
+
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = target;
+        index.close();
+        index = targetIndex;
+        log.debug("Attribute log {} compacted from {} to {} records in {} ms", file, records, targetIndex.size(),
+            System.currentTimeMillis() - started);
+        size = targetSize;
+        records = targetIndex.size();
+      }
+      catch (IOException e) {
+        target.close();
+        targetIndex.close();
+        Files.deleteIfExists(compacted.toPath());
+        throw e;
+      }
+    }
+    finally {
+      compactionLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Reads and verifies the body of the record at position.
+   */
+  private byte[] readBody(final long position)
+      throws IOException
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate(READ_AHEAD_SIZE);
+    final FileChannel ch = channel;
+    while (buffer.position() < HEADER_SIZE) {
+      if (ch.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of attribute log " + file + " at position " + position);
+      }
+    }
+    final int length = buffer.getInt(0);
+    final int checksum = buffer.getInt(4);
+    if (length < 3 || length > MAX_BODY_SIZE) {
+      throw new IOException("Invalid record length " + length + " in attribute log " + file + " at " + position);
+    }
+    final byte[] body = new byte[length];
+    final int available = Math.min(buffer.position() - HEADER_SIZE, length);
+    System.arraycopy(buffer.array(), HEADER_SIZE, body, 0, available);
+    if (available < length) {
+      final ByteBuffer rest = ByteBuffer.wrap(body, available, length - available);
+      while (rest.hasRemaining()) {
+        if (ch.read(rest, position + HEADER_SIZE + rest.position()) < 0) {
+          throw new EOFException("Unexpected end of attribute log " + file + " at position " + position);
+        }
+      }
+    }
+    final CRC32 crc = new CRC32();
+    crc.update(body);
+    if ((int) crc.getValue() != checksum) {
+      throw new IOException("Record checksum mismatch in attribute log " + file + " at position " + position);
+    }
+    return body;
+  }
+
+  private static byte[] readValue(final byte[] body) {
+    final int pathLength = ((body[1] & 0xff) << 8) | (body[2] & 0xff);
+    return Arrays.copyOfRange(body, 3 + pathLength, body.length);
+  }
+
+  private static String readPath(final byte[] body) {
+    final int pathLength = ((body[1] & 0xff) << 8) | (body[2] & 0xff);
+    return new String(body, 3, pathLength, Charsets.UTF_8);
+  }
+
+  private static void writeRecord(final DataOutputStream dos, final byte type, final String path, final byte[] value)
+      throws IOException
+  {
+    final byte[] pathBytes = path.getBytes(Charsets.UTF_8);
+    checkArgument(pathBytes.length <= 0xffff, "Path too long: %s", path);
+    final byte[] body = new byte[3 + pathBytes.length + value.length];
+    body[0] = type;
+    body[1] = (byte) (pathBytes.length >>> 8);
+    body[2] = (byte) pathBytes.length;
+    System.arraycopy(pathBytes, 0, body, 3, pathBytes.length);
+    System.arraycopy(value, 0, body, 3 + pathBytes.length, value.length);
+    final CRC32 crc = new CRC32();
+    crc.update(body);
+    dos.writeInt(body.length);
+    dos.writeInt((int) crc.getValue());
+    dos.write(body);
+  }
+
+  private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+      throws IOException
+  {
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      offset += channel.write(buffer, offset);
+    }
+  }
+}
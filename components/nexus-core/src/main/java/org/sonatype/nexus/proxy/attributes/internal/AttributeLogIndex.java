@@ -0,0 +1,245 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Index of {@link AttributeLog}, an open-addressing hash table of 64 bit path hashes to record positions, kept in a
+ * memory-mapped temporary file next to the log. Hence the index occupies no heap no matter how many paths the log
+ * has, and OS keeps in memory only the pages in use. Each path takes 16 bytes of the file at 3/4 load at most, and as
+ * a mapped file is limited to 2GB, one index holds at most {@link #MAX_SIZE} paths.
+ * <p/>
+ * Collisions of the hashes are not resolved, the log verifies the path of the record found. The index is not thread
+ * safe, {@link AttributeLog} guards it.
+ *
+ * @since 3.0
+ */
+class AttributeLogIndex
+    implements Closeable
+{
+  private static final Logger log = LoggerFactory.getLogger(AttributeLogIndex.class);
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final String SUFFIX = ".idx";
+
+  // slot: path hash (0 when empty), position
+
+  private static final int SLOT_SIZE = 16;
+
+  private static final int MIN_CAPACITY = 1024;
+
+  private static final int MAX_CAPACITY = 1 << 26;
+
+  /**
+   * The maximum count of paths in one index.
+   */
+  static final int MAX_SIZE = MAX_CAPACITY / 4 * 3;
+
+  private final File directory;
+
+  private final String prefix;
+
+  private File file;
+
+  private MappedByteBuffer buffer;
+
+  private int capacity;
+
+  private int size;
+
+  AttributeLogIndex(final File directory, final String prefix) throws IOException {
+    this.directory = directory;
+    this.prefix = prefix;
+    map(MIN_CAPACITY);
+  }
+
+  /**
+   * Deletes the index files left behind by a log with passed in prefix that was not closed.
+   */
+  static void deleteLeftovers(final File directory, final String prefix) {
+    final File[] leftovers = directory.listFiles(new FilenameFilter()
+    {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith(prefix) && name.endsWith(SUFFIX);
+      }
+    });
+    if (leftovers != null) {
+      for (File leftover : leftovers) {
+        if (!leftover.delete()) {
+          log.debug("Could not delete attribute log index {}", leftover);
+        }
+      }
+    }
+  }
+
+  static long hash(final String path) {
+    final long hash = HASH_FUNCTION.hashString(path, Charsets.UTF_8).asLong();
+    return hash == 0 ? 1 : hash;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the position of hash, or {@code -1}.
+   */
+  long get(final long hash) {
+    final int slot = findSlot(hash);
+    return slot >= 0 ? buffer.getLong(slot * SLOT_SIZE + 8) : -1;
+  }
+
+  void put(final long hash, final long position) throws IOException {
+    int slot = findSlot(hash);
+    if (slot < 0) {
+      if (4L * (size + 1) > 3L * capacity) {
+        grow();
+        slot = findSlot(hash);
+      }
+      slot = -slot - 1;
+      buffer.putLong(slot * SLOT_SIZE, hash);
+      size++;
+    }
+    buffer.putLong(slot * SLOT_SIZE + 8, position);
+  }
+
+  boolean remove(final long hash) {
+    int slot = findSlot(hash);
+    if (slot < 0) {
+      return false;
+    }
+    // backward shift deletion, moves back the following entries that would not be found otherwise
+    final int mask = capacity - 1;
+    while (true) {
+      buffer.putLong(slot * SLOT_SIZE, 0L);
+      int next = slot;
+      while (true) {
+        next = (next + 1) & mask;
+        final long nextHash = buffer.getLong(next * SLOT_SIZE);
+        if (nextHash == 0) {
+          size--;
+          return true;
+        }
+        final int home = (int) nextHash & mask;
+        final boolean stays = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+        if (!stays) {
+          buffer.putLong(slot * SLOT_SIZE, nextHash);
+          buffer.putLong(slot * SLOT_SIZE + 8, buffer.getLong(next * SLOT_SIZE + 8));
+          slot = next;
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the count of slots, for iteration using {@link #hashAt(int)} and {@link #positionAt(int)}.
+   */
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the hash in slot, {@code 0} if slot is empty.
+   */
+  long hashAt(final int slot) {
+    return buffer.getLong(slot * SLOT_SIZE);
+  }
+
+  long positionAt(final int slot) {
+    return buffer.getLong(slot * SLOT_SIZE + 8);
+  }
+
+  /**
+   * Deletes the index file.
+   */
+  @Override
+  public void close() {
+    buffer = null;
+    delete(file);
+  }
+
+  // ==
+
+  /**
+   * Returns the slot holding the hash, or {@code -(insertion point) - 1}.
+   */
+  private int findSlot(final long hash) {
+    final int mask = capacity - 1;
+    int slot = (int) hash & mask;
+    while (true) {
+      final long slotHash = buffer.getLong(slot * SLOT_SIZE);
+      if (slotHash == hash) {
+        return slot;
+      }
+      if (slotHash == 0) {
+        return -slot - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private void grow() throws IOException {
+    checkState(capacity < MAX_CAPACITY, "Attribute log index is full, it holds %s paths at most", MAX_SIZE);
+    final File oldFile = file;
+    final MappedByteBuffer oldBuffer = buffer;
+    final int oldCapacity = capacity;
+    map(capacity * 2);
+    size = 0;
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      final long hash = oldBuffer.getLong(slot * SLOT_SIZE);
+      if (hash != 0) {
+        put(hash, oldBuffer.getLong(slot * SLOT_SIZE + 8));
+      }
+    }
+    delete(oldFile);
+  }
+
+  private void map(final int capacity) throws IOException {
+    final File newFile = File.createTempFile(prefix, SUFFIX, directory);
+    try (RandomAccessFile raf = new RandomAccessFile(newFile, "rw")) {
+      raf.setLength((long) capacity * SLOT_SIZE);
+      this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+    }
+    catch (IOException e) {
+      delete(newFile);
+      throw e;
+    }
+    this.file = newFile;
+    this.capacity = capacity;
+  }
+
+  private static void delete(final File file) {
+    // mapping is released by GC only, on some platforms the file can not be deleted until then
+    if (!file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+}
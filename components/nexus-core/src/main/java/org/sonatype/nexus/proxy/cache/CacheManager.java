@@ -15,4 +15,12 @@ package org.sonatype.nexus.proxy.cache;
 public interface CacheManager
 {
   PathCache getPathCache(String cache);
+
+  /**
+   * Purges the path cache of given name and releases any resources held by it, like its persisted content. To be
+   * used when the owner of the cache is gone, a later {@link #getPathCache(String)} returns a new empty cache.
+   *
+   * @since 3.0
+   */
+  void removePathCache(String cache);
 }
@@ -12,15 +12,24 @@
  */
 package org.sonatype.nexus.proxy.cache;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.sonatype.nexus.configuration.application.ApplicationDirectories;
 import org.sonatype.nexus.proxy.events.NexusStoppedEvent;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
+import net.sf.ehcache.Ehcache;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -39,22 +48,130 @@ public class EhCacheCacheManager
 
   public static final String SINGLE_PATH_CACHE_NAME = "nx-repository-path-cache";
 
+  /**
+   * Flag to use path caches maintaining a per-repository key index (the default), or the plain ones scanning all the
+   * keys of the shared cache.
+   *
+   * @since 3.0
+   */
+  private static final boolean INDEXED_PATH_CACHE = SystemPropertiesHelper.getBoolean(
+      EhCacheCacheManager.class.getName() + ".indexedPathCache", true);
+
+  /**
+   * Flag to use {@link MappedPathCache}s persisted in the work directory instead of the shared EhCache, off by
+   * default.
+   *
+   * @since 3.0
+   */
+  private static final boolean PERSISTENT_PATH_CACHE = SystemPropertiesHelper.getBoolean(
+      EhCacheCacheManager.class.getName() + ".persistentPathCache", false);
+
+  /**
+   * Initial count of slots of newly created {@link MappedPathCache}s.
+   *
+   * @since 3.0
+   */
+  private static final int PERSISTENT_PATH_CACHE_CAPACITY = SystemPropertiesHelper.getInteger(
+      EhCacheCacheManager.class.getName() + ".persistentPathCacheCapacity", 16384);
+
+  private final ApplicationDirectories applicationDirectories;
+
+  private final Map<String, MappedPathCache> mappedPathCaches = Maps.newHashMap();
+
+  private EhCachePathCacheIndex pathCacheIndex;
+
+  private boolean persistentPathCache = PERSISTENT_PATH_CACHE;
+
   @Inject
-  public EhCacheCacheManager(final EventBus eventBus, final net.sf.ehcache.CacheManager cacheManager) {
+  public EhCacheCacheManager(final EventBus eventBus, final net.sf.ehcache.CacheManager cacheManager,
+                             final ApplicationDirectories applicationDirectories)
+  {
     eventBus.register(this);
     this.cacheManager = checkNotNull(cacheManager);
+    this.applicationDirectories = checkNotNull(applicationDirectories);
+  }
+
+  @VisibleForTesting
+  synchronized void setPersistentPathCache(final boolean persistentPathCache) {
+    this.persistentPathCache = persistentPathCache;
   }
 
   public synchronized PathCache getPathCache(String cache) {
+    if (persistentPathCache) {
+      final PathCache mappedPathCache = getMappedPathCache(cache);
+      if (mappedPathCache != null) {
+        return mappedPathCache;
+      }
+    }
+    return getEhCachePathCache(cache);
+  }
+
+  /**
+   * Purges the EhCache backed path cache, and closes and deletes the file of the {@link MappedPathCache}, if any.
+   */
+  public synchronized void removePathCache(String cache) {
+    getEhCachePathCache(cache).purge();
+    final MappedPathCache mappedPathCache = mappedPathCaches.remove(cache);
+    if (mappedPathCache != null) {
+      mappedPathCache.close();
+    }
+    // the file might be left from an earlier run too, when persistent path caches were enabled
+    final File file = getMappedPathCacheFile(cache, false);
+    if (file.exists() && !file.delete()) {
+      log.warn("Could not delete path cache file {}", file);
+    }
+  }
+
+  private PathCache getEhCachePathCache(final String cache) {
     if (!cacheManager.cacheExists(SINGLE_PATH_CACHE_NAME)) {
       cacheManager.addCache(SINGLE_PATH_CACHE_NAME);
     }
 
-    return new EhCachePathCache(cache, cacheManager.getEhcache(SINGLE_PATH_CACHE_NAME));
+    final Ehcache ehcache = cacheManager.getEhcache(SINGLE_PATH_CACHE_NAME);
+    if (INDEXED_PATH_CACHE) {
+      return new IndexedEhCachePathCache(cache, ehcache, getPathCacheIndex(ehcache));
+    }
+    else {
+      return new EhCachePathCache(cache, ehcache);
+    }
+  }
+
+  private EhCachePathCacheIndex getPathCacheIndex(final Ehcache ehcache) {
+    if (pathCacheIndex == null) {
+      pathCacheIndex = new EhCachePathCacheIndex();
+      ehcache.getCacheEventNotificationService().registerListener(pathCacheIndex);
+      pathCacheIndex.seed(ehcache);
+    }
+    return pathCacheIndex;
+  }
+
+  private MappedPathCache getMappedPathCache(final String cache) {
+    MappedPathCache mappedPathCache = mappedPathCaches.get(cache);
+    if (mappedPathCache == null) {
+      final File file = getMappedPathCacheFile(cache, true);
+      try {
+        mappedPathCache = new MappedPathCache(file, PERSISTENT_PATH_CACHE_CAPACITY);
+        mappedPathCaches.put(cache, mappedPathCache);
+      }
+      catch (IOException e) {
+        log.warn("Could not open path cache file {}, using in-memory cache", file, e);
+      }
+    }
+    return mappedPathCache;
+  }
+
+  private File getMappedPathCacheFile(final String cache, final boolean create) {
+    return new File(applicationDirectories.getWorkDirectory("nfc", create), cache + ".nfc");
   }
 
   @Subscribe
   public void on(final NexusStoppedEvent event) {
+    synchronized (this) {
+      for (MappedPathCache mappedPathCache : mappedPathCaches.values()) {
+        mappedPathCache.close();
+      }
+      mappedPathCaches.clear();
+    }
     cacheManager.shutdown();
   }
 }
@@ -0,0 +1,145 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+/**
+ * Ordered secondary index of keys kept in the shared path cache, partitioned by repository ID. It listens for
+ * events of the shared EHCache, so it follows puts, removals, expirations and evictions, and allows
+ * {@link IndexedEhCachePathCache} to process a subtree of a repository without iterating over all the keys of the
+ * shared cache. It also hands out per repository locks, used to keep puts from interleaving with subtree removals.
+ *
+ * @since 3.0
+ */
+public class EhCachePathCacheIndex
+    extends CacheEventListenerAdapter
+{
+  private final ConcurrentMap<String, NavigableSet<String>> repositoryKeys = Maps.newConcurrentMap();
+
+  private final Striped<ReadWriteLock> repositoryLocks = Striped.readWriteLock(64);
+
+  /**
+   * Seeds the index with the keys already present in passed in cache.
+   */
+  public void seed(final Ehcache cache) {
+    for (Object key : (List<?>) cache.getKeys()) {
+      add(key);
+    }
+  }
+
+  /**
+   * Returns the live (modifiable) view of ordered keys of given repository, that start with passed in key prefix.
+   */
+  public NavigableSet<String> getKeys(final String repositoryId, final String keyPrefix) {
+    return getRepositoryKeys(repositoryId).subSet(keyPrefix, true, keyPrefix + Character.MAX_VALUE, true);
+  }
+
+  /**
+   * Returns the lock of given repository: puts hold the read lock, subtree removals hold the write lock.
+   */
+  public ReadWriteLock getLock(final String repositoryId) {
+    return repositoryLocks.get(repositoryId);
+  }
+
+  // == CacheEventListener
+
+  @Override
+  public void notifyElementPut(final Ehcache cache, final Element element) {
+    add(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementRemoved(final Ehcache cache, final Element element) {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementExpired(final Ehcache cache, final Element element) {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementEvicted(final Ehcache cache, final Element element) {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyRemoveAll(final Ehcache cache) {
+    repositoryKeys.clear();
+  }
+
+  @Override
+  public Object clone()
+      throws CloneNotSupportedException
+  {
+    // index is shared state, it cannot be cloned
+    throw new CloneNotSupportedException();
+  }
+
+  // ==
+
+  private NavigableSet<String> getRepositoryKeys(final String repositoryId) {
+    NavigableSet<String> keys = repositoryKeys.get(repositoryId);
+    if (keys == null) {
+      final NavigableSet<String> newKeys = new ConcurrentSkipListSet<String>();
+      keys = repositoryKeys.putIfAbsent(repositoryId, newKeys);
+      if (keys == null) {
+        keys = newKeys;
+      }
+    }
+    return keys;
+  }
+
+  private void add(final Object key) {
+    final String repositoryId = getRepositoryId(key);
+    if (repositoryId != null) {
+      getRepositoryKeys(repositoryId).add((String) key);
+    }
+  }
+
+  private void remove(final Object key) {
+    final String repositoryId = getRepositoryId(key);
+    if (repositoryId != null) {
+      final NavigableSet<String> keys = repositoryKeys.get(repositoryId);
+      if (keys != null) {
+        keys.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Returns the repository ID part of key, as created by {@link EhCachePathCache#getKeyPrefix()}, or {@code null} if
+   * key is not a path cache key.
+   */
+  private String getRepositoryId(final Object key) {
+    if (key instanceof String) {
+      final String stringKey = (String) key;
+      final int colon = stringKey.indexOf(':');
+      if (colon > -1) {
+        return stringKey.substring(0, colon);
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.base.Preconditions;
+import net.sf.ehcache.Ehcache;
+
+/**
+ * {@link EhCachePathCache} that uses an {@link EhCachePathCacheIndex} to find keys of a subtree, hence the cost of
+ * {@link #removeWithChildren(String)}, {@link #purge()} and {@link #listKeysInCache()} scales with the size of the
+ * affected subtree, instead of with the total size of the shared cache. Subtree removals exclude concurrent puts of
+ * the same repository, so no key is put in the cache while it is being dropped from the index.
+ *
+ * @since 3.0
+ */
+public class IndexedEhCachePathCache
+    extends EhCachePathCache
+{
+  private final EhCachePathCacheIndex index;
+
+  public IndexedEhCachePathCache(final String repositoryId, final Ehcache cache, final EhCachePathCacheIndex index) {
+    super(repositoryId, cache);
+    this.index = Preconditions.checkNotNull(index);
+  }
+
+  @Override
+  public void doPut(final String key, final Object element, final int expiration) {
+    final Lock lock = index.getLock(getRepositoryId()).readLock();
+    lock.lock();
+    try {
+      super.doPut(key, element, expiration);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean removeWithChildren(final String path) {
+    final NavigableSet<String> keys = index.getKeys(getRepositoryId(), makeKeyFromPath(path));
+
+    final Lock lock = index.getLock(getRepositoryId()).writeLock();
+    lock.lock();
+    try {
+      boolean removed = false;
+      for (String key : keys) {
+        // index listens for removals, but key might be stale (ie. not in cache anymore), so drop it first
+        keys.remove(key);
+        removed = getEHCache().remove(key) || removed;
+      }
+      return removed;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Collection<String> listKeysInCache() {
+    final String startsWithString = getKeyPrefix();
+
+    final List<String> keys = new ArrayList<String>();
+    for (String key : index.getKeys(getRepositoryId(), startsWithString)) {
+      // getQuiet() checks expiration, but does not update element statistics
+      if (getEHCache().getQuiet(key) != null) {
+        keys.add(key.substring(startsWithString.length()));
+      }
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,629 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link PathCache} of a single repository kept in a memory-mapped file, meant to be used as not found cache (NFC).
+ * The cached values are not stored, only the presence of the paths with their expiration, hence the content survives
+ * restarts and does not occupy heap, no matter how many paths are cached.
+ * <p/>
+ * The file contains an open-addressing hash table of 64 bit path hashes (lookups are O(1), and collisions of the
+ * hashes are ignored), a small table of "subtree markers" and a log of the cached paths used by
+ * {@link #listKeysInCache()} and when the table is rebuilt. {@link #removeWithChildren(String)} does not touch the
+ * entries, it records a marker for the subtree root instead, and entries created before a marker recorded for any
+ * of their parents are considered removed. Markers and removed entries are dropped when the file is rebuilt, which
+ * happens when any of the tables fills up. The file is discarded on open if it was not closed cleanly. If the file
+ * can not be rebuilt the current one is kept: puts not fitting into it are dropped, and subtrees are removed by
+ * marking their entries removed one by one.
+ * <p/>
+ * All access to the mapped buffer is guarded by a read-write lock, and once closed the cache behaves as an empty one
+ * ignoring puts, so callers racing with {@link #close()} never touch the released buffer.
+ *
+ * @since 3.0
+ */
+public class MappedPathCache
+    extends AbstractPathCache
+{
+  private static final Logger log = LoggerFactory.getLogger(MappedPathCache.class);
+
+  private static final int MAGIC = 0x4e46430a;
+
+  private static final int VERSION = 1;
+
+  private static final Charset KEY_CHARSET = Charsets.UTF_8;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  // header: magic, version, clean flag, slot capacity, used slots, marker capacity, used markers, keys capacity,
+  // keys end, sequence
+
+  private static final int HEADER_SIZE = 64;
+
+  private static final int H_MAGIC = 0;
+
+  private static final int H_VERSION = 4;
+
+  private static final int H_CLEAN = 8;
+
+  private static final int H_SLOT_CAPACITY = 12;
+
+  private static final int H_SLOTS_USED = 16;
+
+  private static final int H_MARKER_CAPACITY = 20;
+
+  private static final int H_MARKERS_USED = 24;
+
+  private static final int H_KEYS_CAPACITY = 28;
+
+  private static final int H_KEYS_END = 32;
+
+  private static final int H_SEQUENCE = 40;
+
+  // slot: path hash (0 when empty), sequence, expiration (REMOVED when removed), offset of the path in key log
+
+  private static final int SLOT_SIZE = 32;
+
+  private static final int S_SEQUENCE = 8;
+
+  private static final int S_EXPIRES = 16;
+
+  private static final int S_KEY_OFFSET = 24;
+
+  private static final long REMOVED = Long.MIN_VALUE;
+
+  // marker: subtree root path hash (0 when empty), sequence
+
+  private static final int MARKER_SIZE = 16;
+
+  private static final int MIN_SLOT_CAPACITY = 16;
+
+  private static final int KEY_BYTES_PER_SLOT = 64;
+
+  private final File file;
+
+  private final int initialCapacity;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private MappedByteBuffer buffer;
+
+  private int slotCapacity;
+
+  private int markerCapacity;
+
+  private int markersStart;
+
+  private int keysStart;
+
+  /**
+   * Opens (or creates) the cache file.
+   *
+   * @param file            the file backing the cache.
+   * @param initialCapacity the count of slots of a newly created file, rounded up to a power of two.
+   */
+  public MappedPathCache(final File file, final int initialCapacity) throws IOException {
+    checkArgument(initialCapacity > 0, "Capacity must be positive");
+    this.file = checkNotNull(file);
+    this.initialCapacity = Math.max(MIN_SLOT_CAPACITY, Integer.highestOneBit(initialCapacity - 1) << 1);
+    if (!open()) {
+      create(file, this.initialCapacity, 0);
+      checkArgument(open(), "Could not open %s", file);
+    }
+    buffer.putInt(H_CLEAN, 0);
+    buffer.force();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Writes out the content and marks the file as cleanly closed. Once closed, the cache is empty and puts are ignored.
+   */
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (buffer != null) {
+        buffer.putInt(H_CLEAN, 1);
+        buffer.force();
+        buffer = null;
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // ==
+
+  @Override
+  protected boolean doContains(final String key) {
+    lock.readLock().lock();
+    try {
+      if (buffer == null) {
+        return false;
+      }
+      final int slot = findSlot(hash(key));
+      if (slot >= 0 && isLive(key, slot) && !isExpired(slot)) {
+        hits.incrementAndGet();
+        return true;
+      }
+      misses.incrementAndGet();
+      return false;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  protected boolean doIsExpired(final String key) {
+    lock.readLock().lock();
+    try {
+      if (buffer == null) {
+        return false;
+      }
+      final int slot = findSlot(hash(key));
+      return slot >= 0 && isLive(key, slot) && isExpired(slot);
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  protected void doPut(final String key, final Object element, final int expiration) {
+    final long expires = expiration > -1 ? System.currentTimeMillis() + expiration * 1000L : Long.MAX_VALUE;
+    final long hash = hash(key);
+    lock.writeLock().lock();
+    try {
+      if (buffer == null) {
+        return;
+      }
+      int slot = findSlot(hash);
+      if (slot < 0) {
+        final byte[] keyBytes = key.getBytes(KEY_CHARSET);
+        if (2 * (usedSlots() + 1) > slotCapacity || keysEnd() + 4 + keyBytes.length > keysCapacity()) {
+          if (!rebuild(keyBytes.length)) {
+            log.debug("Not caching {}, {} is full", key, file);
+            return;
+          }
+          slot = findSlot(hash);
+        }
+        slot = -slot - 1;
+        final int keyOffset = keysEnd();
+        buffer.putInt(keysStart + keyOffset, keyBytes.length);
+        for (int i = 0; i < keyBytes.length; i++) {
+          buffer.put(keysStart + keyOffset + 4 + i, keyBytes[i]);
+        }
+        buffer.putLong(H_KEYS_END, keyOffset + 4 + keyBytes.length);
+        buffer.putInt(H_SLOTS_USED, usedSlots() + 1);
+        buffer.putLong(slotPosition(slot), hash);
+        buffer.putInt(slotPosition(slot) + S_KEY_OFFSET, keyOffset);
+      }
+      buffer.putLong(slotPosition(slot) + S_SEQUENCE, nextSequence());
+      buffer.putLong(slotPosition(slot) + S_EXPIRES, expires);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  protected boolean doRemove(final String key) {
+    lock.writeLock().lock();
+    try {
+      if (buffer == null) {
+        return false;
+      }
+      final int slot = findSlot(hash(key));
+      if (slot >= 0 && isLive(key, slot)) {
+        buffer.putLong(slotPosition(slot) + S_EXPIRES, REMOVED);
+        return true;
+      }
+      return false;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Records a marker for the subtree, hence this method does not know whether any entry was actually removed: it
+   * returns {@code true} if the cache was not empty.
+   */
+  @Override
+  public boolean removeWithChildren(final String path) {
+    final String key = makeKeyFromPath(path);
+    if (key.isEmpty()) {
+      return purge();
+    }
+    final long hash = hash(key);
+    lock.writeLock().lock();
+    try {
+      if (buffer == null || usedSlots() == 0) {
+        return false;
+      }
+      int marker = findMarker(hash);
+      if (marker < 0) {
+        if (2 * (usedMarkers() + 1) > markerCapacity) {
+          // dropping the entries shadowed by the present markers makes room for this one
+          if (!rebuild(0)) {
+            removeEntries(key);
+            return true;
+          }
+          if (usedSlots() == 0) {
+            return true;
+          }
+        }
+        marker = -findMarker(hash) - 1;
+        buffer.putLong(markerPosition(marker), hash);
+        buffer.putInt(H_MARKERS_USED, usedMarkers() + 1);
+      }
+      buffer.putLong(markerPosition(marker) + 8, nextSequence());
+      return true;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  protected boolean doPurge() {
+    lock.writeLock().lock();
+    try {
+      if (buffer == null || usedSlots() == 0) {
+        return false;
+      }
+      for (int i = HEADER_SIZE; i < keysStart; i += 8) {
+        buffer.putLong(i, 0L);
+      }
+      buffer.putInt(H_SLOTS_USED, 0);
+      buffer.putInt(H_MARKERS_USED, 0);
+      buffer.putLong(H_KEYS_END, 0L);
+      return true;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the statistics, where size is the count of the not expired entries including the ones removed by
+   * {@link #removeWithChildren(String)} and not yet dropped.
+   */
+  @Override
+  public CacheStatistics getStatistics() {
+    lock.readLock().lock();
+    try {
+      if (buffer == null) {
+        return new CacheStatistics(0, misses.get(), hits.get());
+      }
+      long size = 0;
+      for (int slot = 0; slot < slotCapacity; slot++) {
+        if (buffer.getLong(slotPosition(slot)) != 0 && !isExpired(slot)) {
+          size++;
+        }
+      }
+      return new CacheStatistics(size, misses.get(), hits.get());
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Collection<String> listKeysInCache() {
+    lock.readLock().lock();
+    try {
+      final List<String> keys = new ArrayList<String>();
+      if (buffer == null) {
+        return keys;
+      }
+      for (Entry entry : liveEntries()) {
+        if (entry.expires > System.currentTimeMillis()) {
+          keys.add(entry.key);
+        }
+      }
+      return keys;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // ==
+
+  private static long hash(final String key) {
+    final long hash = HASH_FUNCTION.hashString(key, KEY_CHARSET).asLong();
+    return hash == 0 ? 1 : hash;
+  }
+
+  private int usedSlots() {
+    return buffer.getInt(H_SLOTS_USED);
+  }
+
+  private int usedMarkers() {
+    return buffer.getInt(H_MARKERS_USED);
+  }
+
+  private int keysCapacity() {
+    return buffer.getInt(H_KEYS_CAPACITY);
+  }
+
+  private int keysEnd() {
+    return (int) buffer.getLong(H_KEYS_END);
+  }
+
+  private long nextSequence() {
+    final long sequence = buffer.getLong(H_SEQUENCE) + 1;
+    buffer.putLong(H_SEQUENCE, sequence);
+    return sequence;
+  }
+
+  private int slotPosition(final int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private int markerPosition(final int marker) {
+    return markersStart + marker * MARKER_SIZE;
+  }
+
+  /**
+   * Returns the index of the slot holding the hash (including removed entries), or {@code -(insertion point) - 1}.
+   */
+  private int findSlot(final long hash) {
+    final int mask = slotCapacity - 1;
+    int slot = (int) hash & mask;
+    while (true) {
+      final long slotHash = buffer.getLong(slotPosition(slot));
+      if (slotHash == hash) {
+        return slot;
+      }
+      if (slotHash == 0) {
+        return -slot - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private int findMarker(final long hash) {
+    final int mask = markerCapacity - 1;
+    int marker = (int) hash & mask;
+    while (true) {
+      final long markerHash = buffer.getLong(markerPosition(marker));
+      if (markerHash == hash) {
+        return marker;
+      }
+      if (markerHash == 0) {
+        return -marker - 1;
+      }
+      marker = (marker + 1) & mask;
+    }
+  }
+
+  private boolean isExpired(final int slot) {
+    return buffer.getLong(slotPosition(slot) + S_EXPIRES) <= System.currentTimeMillis();
+  }
+
+  /**
+   * Returns {@code true} if the slot is neither removed nor older than a marker of the key or any of its parents.
+   */
+  private boolean isLive(final String key, final int slot) {
+    if (buffer.getLong(slotPosition(slot) + S_EXPIRES) == REMOVED) {
+      return false;
+    }
+    if (usedMarkers() == 0) {
+      return true;
+    }
+    final long sequence = buffer.getLong(slotPosition(slot) + S_SEQUENCE);
+    int end = key.length();
+    while (end > 0) {
+      final int marker = findMarker(hash(key.substring(0, end)));
+      if (marker >= 0 && buffer.getLong(markerPosition(marker) + 8) > sequence) {
+        return false;
+      }
+      end = key.lastIndexOf('/', end - 1);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the not removed entries, by reading the key log and looking up the slot of each key.
+   */
+  private List<Entry> liveEntries() {
+    final List<Entry> entries = new ArrayList<Entry>();
+    final int keysEnd = keysEnd();
+    int offset = 0;
+    while (offset < keysEnd) {
+      final byte[] keyBytes = new byte[buffer.getInt(keysStart + offset)];
+      for (int i = 0; i < keyBytes.length; i++) {
+        keyBytes[i] = buffer.get(keysStart + offset + 4 + i);
+      }
+      final String key = new String(keyBytes, KEY_CHARSET);
+      final int slot = findSlot(hash(key));
+      if (slot >= 0 && buffer.getInt(slotPosition(slot) + S_KEY_OFFSET) == offset && isLive(key, slot)) {
+        entries.add(new Entry(key, buffer.getLong(slotPosition(slot) + S_SEQUENCE),
+            buffer.getLong(slotPosition(slot) + S_EXPIRES)));
+      }
+      offset += 4 + keyBytes.length;
+    }
+    return entries;
+  }
+
+  /**
+   * Marks the entries of the subtree removed one by one, used when no marker can be recorded for it.
+   */
+  private void removeEntries(final String key) {
+    final String prefix = key + "/";
+    for (Entry entry : liveEntries()) {
+      if (entry.key.equals(key) || entry.key.startsWith(prefix)) {
+        buffer.putLong(slotPosition(findSlot(hash(entry.key))) + S_EXPIRES, REMOVED);
+      }
+    }
+  }
+
+  /**
+   * Rewrites the file keeping only the not removed and not expired entries, sized to have room for them and for at
+   * least one more key of the given length. Returns {@code false} if the file could not be rewritten, in which case
+   * the current one is left untouched.
+   */
+  private boolean rebuild(final int extraKeyLength) {
+    final List<Entry> entries = new ArrayList<Entry>();
+    int keyBytes = 0;
+    for (Entry entry : liveEntries()) {
+      if (entry.expires > System.currentTimeMillis()) {
+        entries.add(entry);
+        keyBytes += 4 + entry.key.getBytes(KEY_CHARSET).length;
+      }
+    }
+    int capacity = initialCapacity;
+    while (capacity < 4 * (entries.size() + 1)) {
+      capacity <<= 1;
+    }
+    final long sequence = buffer.getLong(H_SEQUENCE);
+    final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    try {
+      create(tmp, capacity, 2 * (keyBytes + 4 + extraKeyLength));
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException | IllegalArgumentException e) {
+      log.warn("Could not rebuild not found cache file {}, keeping current one", file, e);
+      return false;
+    }
+    try {
+      if (!open()) {
+        throw new IOException("Invalid rebuilt file");
+      }
+    }
+    catch (IOException e) {
+      // the current mapping stays usable after the file was replaced, but its content is not persisted anymore
+      log.warn("Could not open rebuilt not found cache file {}, keeping current one", file, e);
+      return false;
+    }
+    buffer.putInt(H_CLEAN, 0);
+    buffer.putLong(H_SEQUENCE, sequence);
+    for (Entry entry : entries) {
+      doPut(entry.key, null, -1);
+      final int slot = findSlot(hash(entry.key));
+      buffer.putLong(slotPosition(slot) + S_SEQUENCE, entry.sequence);
+      buffer.putLong(slotPosition(slot) + S_EXPIRES, entry.expires);
+    }
+    buffer.putLong(H_SEQUENCE, sequence);
+    log.debug("Rebuilt {} with {} entries and capacity {}", file, entries.size(), capacity);
+    return true;
+  }
+
+  /**
+   * Creates an empty cache file, that is closed cleanly.
+   */
+  private static void create(final File target, final int slotCapacity, final int minKeysCapacity) throws IOException {
+    final int markerCapacity = Math.max(MIN_SLOT_CAPACITY, slotCapacity / 16);
+    final int keysCapacity = Math.max(slotCapacity * KEY_BYTES_PER_SLOT, minKeysCapacity);
+    final long size = (long) HEADER_SIZE + (long) slotCapacity * SLOT_SIZE + markerCapacity * MARKER_SIZE
+        + keysCapacity;
+    checkArgument(size <= Integer.MAX_VALUE, "Cache too big: %s", size);
+    Files.createDirectories(target.getParentFile().toPath());
+    Files.deleteIfExists(target.toPath());
+    try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+      raf.setLength(size);
+      raf.writeInt(MAGIC);
+      raf.writeInt(VERSION);
+      raf.writeInt(1);
+      raf.writeInt(slotCapacity);
+      raf.writeInt(0);
+      raf.writeInt(markerCapacity);
+      raf.writeInt(0);
+      raf.writeInt(keysCapacity);
+      raf.getFD().sync();
+    }
+  }
+
+  /**
+   * Maps the file if it is a valid, cleanly closed cache file.
+   */
+  private boolean open() throws IOException {
+    if (!file.isFile()) {
+      return false;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      if (raf.length() < HEADER_SIZE || raf.length() > Integer.MAX_VALUE) {
+        log.warn("Discarding invalid not found cache file {}", file);
+        return false;
+      }
+      final MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+      final int slots = mapped.getInt(H_SLOT_CAPACITY);
+      final int markers = mapped.getInt(H_MARKER_CAPACITY);
+      final long size = (long) HEADER_SIZE + (long) slots * SLOT_SIZE + (long) markers * MARKER_SIZE
+          + mapped.getInt(H_KEYS_CAPACITY);
+      if (mapped.getInt(H_MAGIC) != MAGIC || mapped.getInt(H_VERSION) != VERSION || Integer.bitCount(slots) != 1
+          || Integer.bitCount(markers) != 1 || size != raf.length()) {
+        log.warn("Discarding invalid not found cache file {}", file);
+        return false;
+      }
+      if (mapped.getInt(H_CLEAN) != 1) {
+        log.warn("Discarding not cleanly closed not found cache file {}", file);
+        return false;
+      }
+      this.buffer = mapped;
+      this.slotCapacity = slots;
+      this.markerCapacity = markers;
+      this.markersStart = HEADER_SIZE + slots * SLOT_SIZE;
+      this.keysStart = markersStart + markers * MARKER_SIZE;
+      return true;
+    }
+  }
+
+  private static class Entry
+  {
+    private final String key;
+
+    private final long sequence;
+
+    private final long expires;
+
+    private Entry(final String key, final long sequence, final long expires) {
+      this.key = key;
+      this.sequence = sequence;
+      this.expires = expires;
+    }
+  }
+}
@@ -26,10 +26,10 @@ import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
 /**
- * Event inspector that listens for repository registry removals, and purges the {@link PathCache} belonging to given
- * repository. This event inspector is synchronous intentionally, as it relies on configuration of the repository, but
- * is also "short operation". Prolonging the repository removal procedure is also not an issue (unlike prolonging
- * artifact serving). Related to issue NEXUS-5109.
+ * Event inspector that listens for repository registry removals, and removes the {@link PathCache} belonging to given
+ * repository (see {@link CacheManager#removePathCache(String)}). This event inspector is synchronous intentionally, as
+ * it relies on configuration of the repository, but is also "short operation". Prolonging the repository removal
+ * procedure is also not an issue (unlike prolonging artifact serving). Related to issue NEXUS-5109.
  *
  * @author cstamas
  * @since 2.1
@@ -51,12 +51,11 @@ public class PathCacheEventInspector
   @AllowConcurrentEvents
   public void inspect(final RepositoryRegistryEventRemove removedRepositoryEvent) {
     final Repository removedRepository = removedRepositoryEvent.getRepository();
-    final PathCache pathCache = cacheManager.getPathCache(removedRepository.getId());
     if (log.isDebugEnabled()) {
       log.debug(
-          "Purging NFC PathCache of repository {}",
+          "Removing NFC PathCache of repository {}",
           RepositoryStringUtils.getHumanizedNameString(removedRepository));
     }
-    pathCache.purge();
+    cacheManager.removePathCache(removedRepository.getId());
   }
 }
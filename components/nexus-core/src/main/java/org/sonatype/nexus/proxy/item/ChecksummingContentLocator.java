@@ -12,38 +12,57 @@
  */
 package org.sonatype.nexus.proxy.item;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.sonatype.nexus.proxy.RequestContext;
 import org.sonatype.nexus.util.DigesterUtils;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
 /**
  * A content locator that wraps another content locator, but also calculates hash of it while reading it and putting
  * the
- * result into passed in Context.
+ * result into passed in Context. Multiple hashes may be calculated at once, in a single pass over the content.
  *
  * @author cstamas
  */
 public class ChecksummingContentLocator
     extends AbstractWrappingContentLocator
 {
-  private final MessageDigest messageDigest;
+  /**
+   * Whether SHA-256 digest of file items is calculated too (along with SHA1 and MD5) when they are stored.
+   *
+   * @since 3.0
+   */
+  private static final boolean ITEM_DIGEST_SHA256 = SystemPropertiesHelper.getBoolean(
+      ChecksummingContentLocator.class.getName() + ".sha256", false);
 
-  private final String contextKey;
+  private final Map<String, MessageDigest> messageDigests;
 
   private final RequestContext context;
 
   public ChecksummingContentLocator(final ContentLocator content, final MessageDigest messageDigest,
                                     final String contextKey, final RequestContext context)
   {
-    super(content);
+    this(content, Collections.singletonMap(contextKey, messageDigest), context);
+  }
 
-    this.messageDigest = messageDigest;
+  /**
+   * @param messageDigests the digests to calculate, keyed by context key to put the hash under
+   * @since 3.0
+   */
+  public ChecksummingContentLocator(final ContentLocator content, final Map<String, MessageDigest> messageDigests,
+                                    final RequestContext context)
+  {
+    super(content);
 
-    this.contextKey = contextKey;
+    this.messageDigests = messageDigests;
 
     this.context = context;
   }
@@ -52,23 +71,42 @@ public class ChecksummingContentLocator
   public InputStream getContent()
       throws IOException
   {
-    return new DigestCalculatingInputStream(getTarget().getContent(), messageDigest, contextKey, context);
+    return new DigestCalculatingInputStream(getTarget().getContent(), messageDigests, context);
+  }
+
+  /**
+   * Creates the digests calculated for stored file items, keyed by {@link StorageFileItem#DIGEST_SHA1_KEY},
+   * {@link StorageFileItem#DIGEST_MD5_KEY} and (if enabled) {@link StorageFileItem#DIGEST_SHA256_KEY}.
+   *
+   * @since 3.0
+   */
+  public static Map<String, MessageDigest> newItemDigests()
+      throws NoSuchAlgorithmException
+  {
+    final Map<String, MessageDigest> result = new LinkedHashMap<String, MessageDigest>();
+    result.put(StorageFileItem.DIGEST_SHA1_KEY, MessageDigest.getInstance("SHA1"));
+    // md5 is deprecated but still calculated
+    result.put(StorageFileItem.DIGEST_MD5_KEY, MessageDigest.getInstance("MD5"));
+    if (ITEM_DIGEST_SHA256) {
+      result.put(StorageFileItem.DIGEST_SHA256_KEY, MessageDigest.getInstance("SHA-256"));
+    }
+    return result;
   }
 
   private static class DigestCalculatingInputStream
-      extends DigestInputStream
+      extends FilterInputStream
   {
-    private final String contextKey;
+    private final Map<String, MessageDigest> messageDigests;
 
     private final RequestContext context;
 
-    public DigestCalculatingInputStream(final InputStream source, final MessageDigest messageDigest,
-                                        final String contextKey, final RequestContext context)
+    public DigestCalculatingInputStream(final InputStream source, final Map<String, MessageDigest> messageDigests,
+                                        final RequestContext context)
         throws IllegalArgumentException
     {
-      super(source, messageDigest);
+      super(source);
 
-      this.contextKey = contextKey;
+      this.messageDigests = messageDigests;
 
       this.context = context;
     }
@@ -81,6 +119,11 @@ public class ChecksummingContentLocator
       if (result == -1) {
         setHash();
       }
+      else {
+        for (MessageDigest messageDigest : messageDigests.values()) {
+          messageDigest.update((byte) result);
+        }
+      }
 
       return result;
     }
@@ -93,17 +136,46 @@ public class ChecksummingContentLocator
       if (result == -1) {
         setHash();
       }
+      else {
+        for (MessageDigest messageDigest : messageDigests.values()) {
+          messageDigest.update(b, off, result);
+        }
+      }
 
       return result;
     }
 
+    @Override
+    public long skip(final long n)
+        throws IOException
+    {
+      // read skipped bytes, they must be digested too
+      final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+      long skipped = 0;
+      while (skipped < n) {
+        final int r = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+        if (r == -1) {
+          break;
+        }
+        skipped += r;
+      }
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
     // ==
 
     protected synchronized void setHash()
         throws IOException
     {
-      if (!context.containsKey(contextKey, false)) {
-        context.put(contextKey, DigesterUtils.getDigestAsString(getMessageDigest().digest()));
+      for (Map.Entry<String, MessageDigest> entry : messageDigests.entrySet()) {
+        if (!context.containsKey(entry.getKey(), false)) {
+          context.put(entry.getKey(), DigesterUtils.getDigestAsString(entry.getValue().digest()));
+        }
       }
     }
   }
@@ -12,8 +12,7 @@
  */
 package org.sonatype.nexus.proxy.item;
 
-import java.lang.ref.WeakReference;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -24,9 +23,11 @@ import org.sonatype.nexus.proxy.NoSuchRepositoryException;
 import org.sonatype.nexus.proxy.events.NexusStoppedEvent;
 import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 import org.sonatype.sisu.locks.ResourceLockFactory;
 
+import com.google.common.collect.MapMaker;
 import com.google.common.eventbus.Subscribe;
 import org.codehaus.plexus.util.StringUtils;
 import org.slf4j.Logger;
@@ -46,14 +47,26 @@ public class DefaultRepositoryItemUidFactory
 {
   private static final Logger log = LoggerFactory.getLogger(DefaultRepositoryItemUidFactory.class);
 
+  /**
+   * The count of lock stripes (segments) of the UID lock map, to lessen contention of concurrent lock lookups.
+   *
+   * @since 3.0
+   */
+  private static final int LOCKS_CONCURRENCY_LEVEL = SystemPropertiesHelper.getInteger(
+      DefaultRepositoryItemUidFactory.class.getName() + ".locksConcurrencyLevel", 64);
+
   private final EventBus eventBus;
   
   private final RepositoryRegistry repositoryRegistry;
 
   private final ResourceLockFactory sisuLockFactory;
 
-  private final WeakHashMap<DefaultRepositoryItemUidLock, WeakReference<DefaultRepositoryItemUidLock>> locks =
-      new WeakHashMap<DefaultRepositoryItemUidLock, WeakReference<DefaultRepositoryItemUidLock>>();
+  /**
+   * UID key to lock map, having lock instances weakly referenced: a lock stays in map as long as someone uses it.
+   * Lookups of existing locks happen without locking and without any allocation.
+   */
+  private final ConcurrentMap<String, DefaultRepositoryItemUidLock> locks = new MapMaker().concurrencyLevel(
+      LOCKS_CONCURRENCY_LEVEL).weakValues().makeMap();
 
   @Inject
   public DefaultRepositoryItemUidFactory(final EventBus eventBus, final RepositoryRegistry repositoryRegistry,
@@ -106,12 +119,15 @@ public class DefaultRepositoryItemUidFactory
   
   @Override
   public DefaultRepositoryItemUidLock createUidLock(final RepositoryItemUid uid) {
-    final String key = new String(uid.getKey());
-
-    return doCreateUidLockForKey(key);
+    return doCreateUidLockForKey(uid.getKey());
   }
 
-  protected synchronized DefaultRepositoryItemUidLock doCreateUidLockForKey(final String key) {
+  protected DefaultRepositoryItemUidLock doCreateUidLockForKey(final String key) {
+    final DefaultRepositoryItemUidLock lock = locks.get(key);
+    if (lock != null) {
+      return lock;
+    }
+
     final LockResource lockResource;
     if (sisuLockFactory != null) {
       lockResource = new SisuLockResource(sisuLockFactory.getResourceLock(key));
@@ -120,15 +136,10 @@ public class DefaultRepositoryItemUidFactory
       lockResource = new SimpleLockResource();
     }
     final DefaultRepositoryItemUidLock newLock = new DefaultRepositoryItemUidLock(key, lockResource);
-    final WeakReference<DefaultRepositoryItemUidLock> oldLockRef = locks.get(newLock);
-    if (oldLockRef != null) {
-      final RepositoryItemUidLock oldLock = oldLockRef.get();
-
-      if (oldLock != null) {
-        return oldLockRef.get();
-      }
+    final DefaultRepositoryItemUidLock oldLock = locks.putIfAbsent(key, newLock);
+    if (oldLock != null) {
+      return oldLock;
     }
-    locks.put(newLock, new WeakReference<DefaultRepositoryItemUidLock>(newLock));
     return newLock;
   }
 
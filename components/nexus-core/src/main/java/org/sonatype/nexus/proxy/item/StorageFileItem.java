@@ -32,6 +32,14 @@ public interface StorageFileItem
   @Deprecated
   public static final String DIGEST_MD5_KEY = "digest.md5";
 
+  /**
+   * The digest sha256 key used in item context and attributes. Calculated only if enabled, see
+   * {@link ChecksummingContentLocator#newItemDigests()}.
+   *
+   * @since 3.0
+   */
+  public static final String DIGEST_SHA256_KEY = "digest.sha256";
+
   /**
    * Returns the file content length in bytes, or {@link ContentLocator#UNKNOWN_LENGTH} if unknown. Shortcut method for
    * {@link ContentLocator#getLength()}.
@@ -32,11 +32,16 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.StorageException;
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventCache;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventDelete;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventStore;
 import org.sonatype.nexus.proxy.events.RepositoryItemValidationEvent;
 import org.sonatype.nexus.proxy.item.ByteArrayContentLocator;
 import org.sonatype.nexus.proxy.item.ContentLocator;
 import org.sonatype.nexus.proxy.item.DefaultStorageCompositeFileItem;
 import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageCompositeFileItem;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
@@ -47,6 +52,7 @@ import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
 import org.sonatype.nexus.proxy.maven.gav.Gav;
 import org.sonatype.nexus.proxy.maven.gav.GavCalculator;
 import org.sonatype.nexus.proxy.maven.gav.M2ArtifactRecognizer;
+import org.sonatype.nexus.proxy.maven.maven2.MergedMetadataCache.MergedMetadata;
 import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataBuilder;
 import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataException;
 import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataOperand;
@@ -57,7 +63,10 @@ import org.sonatype.nexus.proxy.repository.GroupRepository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
 import org.sonatype.nexus.util.DigesterUtils;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.eclipse.sisu.Description;
@@ -88,6 +97,16 @@ public class M2GroupRepository
    */
   private final M2GroupRepositoryConfigurator m2GroupRepositoryConfigurator;
 
+  /**
+   * Maximum count of merged metadata kept in memory per group.
+   *
+   * @since 3.0
+   */
+  private static final int MERGED_METADATA_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+      M2GroupRepository.class.getName() + ".mergedMetadataCacheSize", 1000);
+
+  private final MergedMetadataCache mergedMetadataCache = new MergedMetadataCache(MERGED_METADATA_CACHE_SIZE);
+
   @Inject
   public M2GroupRepository(final @Named(Maven2ContentClass.ID) ContentClass contentClass, 
                            final @Named("maven2") GavCalculator gavCalculator,
@@ -133,6 +152,30 @@ public class M2GroupRepository
     return M2ArtifactRecognizer.isMetadata(path);
   }
 
+  /**
+   * Drops merged metadata as soon as metadata of a member changes. Entries are verified against member items on
+   * retrieval anyway, this just avoids keeping stale ones around.
+   */
+  @Subscribe
+  @AllowConcurrentEvents
+  public void onRepositoryItemEvent(final RepositoryItemEvent evt) {
+    if (!(evt instanceof RepositoryItemEventStore || evt instanceof RepositoryItemEventCache
+        || evt instanceof RepositoryItemEventDelete) || evt.getRepository() == this) {
+      return;
+    }
+    final StorageItem item = evt.getItem();
+    if (item instanceof StorageCollectionItem) {
+      // whole subtree deleted
+      if (getTransitiveMemberRepositories().contains(evt.getRepository())) {
+        mergedMetadataCache.invalidateAll();
+      }
+    }
+    else if (M2ArtifactRecognizer.isMetadata(item.getPath()) && !M2ArtifactRecognizer.isChecksum(item.getPath())
+        && getTransitiveMemberRepositories().contains(evt.getRepository())) {
+      mergedMetadataCache.invalidate(item.getPath());
+    }
+  }
+
   @Override
   protected StorageItem doRetrieveItem(ResourceStoreRequest request)
       throws IllegalOperationException, ItemNotFoundException, StorageException
@@ -216,98 +259,122 @@ public class M2GroupRepository
       return items.get(0);
     }
 
-    List<Metadata> existingMetadatas = new ArrayList<Metadata>();
-
     try {
-      for (StorageItem item : items) {
-        if (!(item instanceof StorageFileItem)) {
-          break;
-        }
-
-        StorageFileItem fileItem = (StorageFileItem) item;
-
-        try {
-          existingMetadatas.add(parseMetadata(fileItem));
-        }
-        catch (IOException e) {
-          log.warn(
-              "IOException during parse of metadata UID=\"" + fileItem.getRepositoryItemUid().toString()
-                  + "\", will be skipped from aggregation!", e);
-
-          eventBus().post(
-              newMetadataFailureEvent(fileItem,
-                  "Invalid metadata served by repository. If repository is proxy, please check out what is it serving!"));
-        }
-        catch (MetadataException e) {
-          log.warn(
-              "Metadata exception during parse of metadata from UID=\""
-                  + fileItem.getRepositoryItemUid().toString() + "\", will be skipped from aggregation!", e);
-
-          eventBus().post(
-              newMetadataFailureEvent(fileItem,
-                  "Invalid metadata served by repository. If repository is proxy, please check out what is it serving!"));
-        }
+      final String stamp = MergedMetadataCache.stamp(items);
+      MergedMetadata merged = mergedMetadataCache.get(request.getRequestPath(), stamp);
+      if (merged != null) {
+        log.debug("Item for path {} served from merged metadata cache", request);
+        // checksums are stored along with the first merge, recreate them only if they were removed since
+        storeMergedMetadataItemDigestIfMissing(request, merged.getMd5(), items, "MD5");
+        storeMergedMetadataItemDigestIfMissing(request, merged.getSha1(), items, "SHA1");
       }
-
-      if (existingMetadatas.isEmpty()) {
-        throw new ItemNotFoundException(reasonFor(request, this,
-            "Metadata %s not parseable in any of the members of %s.", request.getRequestPath(),
-            RepositoryStringUtils.getHumanizedNameString(this)));
+      else {
+        merged = mergeMetadata(request, items, stamp);
+        storeMergedMetadataItemDigest(request, merged.getMd5(), items, "MD5");
+        storeMergedMetadataItemDigest(request, merged.getSha1(), items, "SHA1");
+        mergedMetadataCache.put(request.getRequestPath(), merged);
       }
 
-      Metadata result = existingMetadatas.get(0);
-
-      // do a merge if necessary
-      if (existingMetadatas.size() > 1) {
-        List<MetadataOperation> ops = new ArrayList<MetadataOperation>();
+      return createMergedMetadataItem(request, merged.getContent(), items);
+    }
+    catch (IOException e) {
+      throw new LocalStorageException("Got IOException during M2 metadata merging.", e);
+    }
+    catch (MetadataException e) {
+      throw new LocalStorageException("Got MetadataException during M2 metadata merging.", e);
+    }
+  }
 
-        for (int i = 1; i < existingMetadatas.size(); i++) {
-          ops.add(new NexusMergeOperation(new MetadataOperand(existingMetadatas.get(i))));
-        }
+  /**
+   * Parses and merges metadata of member items.
+   */
+  private MergedMetadata mergeMetadata(ResourceStoreRequest request, List<StorageItem> items, String stamp)
+      throws IOException, MetadataException, ItemNotFoundException
+  {
+    List<Metadata> existingMetadatas = new ArrayList<Metadata>();
 
-        final Collection<MetadataException> metadataExceptions =
-            MetadataBuilder.changeMetadataIgnoringFailures(result, ops);
-        if (metadataExceptions != null && !metadataExceptions.isEmpty()) {
-          for (final MetadataException metadataException : metadataExceptions) {
-            log.warn(
-                "Ignored exception during M2 metadata merging: " + metadataException.getMessage()
-                    + " (request " + request.getRequestPath() + ")", metadataException);
-          }
-        }
+    for (StorageItem item : items) {
+      if (!(item instanceof StorageFileItem)) {
+        break;
       }
 
-      // build the result item
-      ByteArrayOutputStream resultOutputStream = new ByteArrayOutputStream();
+      StorageFileItem fileItem = (StorageFileItem) item;
 
-      MetadataBuilder.write(result, resultOutputStream);
+      try {
+        existingMetadatas.add(parseMetadata(fileItem));
+      }
+      catch (IOException e) {
+        log.warn(
+            "IOException during parse of metadata UID=\"" + fileItem.getRepositoryItemUid().toString()
+                + "\", will be skipped from aggregation!", e);
+
+        eventBus().post(
+            newMetadataFailureEvent(fileItem,
+                "Invalid metadata served by repository. If repository is proxy, please check out what is it serving!"));
+      }
+      catch (MetadataException e) {
+        log.warn(
+            "Metadata exception during parse of metadata from UID=\""
+                + fileItem.getRepositoryItemUid().toString() + "\", will be skipped from aggregation!", e);
+
+        eventBus().post(
+            newMetadataFailureEvent(fileItem,
+                "Invalid metadata served by repository. If repository is proxy, please check out what is it serving!"));
+      }
+    }
 
-      StorageItem item = createMergedMetadataItem(request, resultOutputStream.toByteArray(), items);
+    if (existingMetadatas.isEmpty()) {
+      throw new ItemNotFoundException(reasonFor(request, this,
+          "Metadata %s not parseable in any of the members of %s.", request.getRequestPath(),
+          RepositoryStringUtils.getHumanizedNameString(this)));
+    }
 
-      // build checksum files
-      String md5Digest = DigesterUtils.getMd5Digest(resultOutputStream.toByteArray());
+    Metadata result = existingMetadatas.get(0);
 
-      String sha1Digest = DigesterUtils.getSha1Digest(resultOutputStream.toByteArray());
+    // do a merge if necessary
+    if (existingMetadatas.size() > 1) {
+      List<MetadataOperation> ops = new ArrayList<MetadataOperation>();
 
-      storeMergedMetadataItemDigest(request, md5Digest, items, "MD5");
+      for (int i = 1; i < existingMetadatas.size(); i++) {
+        ops.add(new NexusMergeOperation(new MetadataOperand(existingMetadatas.get(i))));
+      }
 
-      storeMergedMetadataItemDigest(request, sha1Digest, items, "SHA1");
+      final Collection<MetadataException> metadataExceptions =
+          MetadataBuilder.changeMetadataIgnoringFailures(result, ops);
+      if (metadataExceptions != null && !metadataExceptions.isEmpty()) {
+        for (final MetadataException metadataException : metadataExceptions) {
+          log.warn(
+              "Ignored exception during M2 metadata merging: " + metadataException.getMessage()
+                  + " (request " + request.getRequestPath() + ")", metadataException);
+        }
+      }
+    }
 
-      resultOutputStream.close();
+    // build the result content
+    ByteArrayOutputStream resultOutputStream = new ByteArrayOutputStream();
 
-      if (log.isDebugEnabled()) {
-        log.debug(
-            "Item for path " + request.toString() + " merged from " + Integer.toString(items.size())
-                + " found items.");
-      }
+    MetadataBuilder.write(result, resultOutputStream);
 
-      return item;
+    byte[] content = resultOutputStream.toByteArray();
 
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Item for path " + request.toString() + " merged from " + Integer.toString(items.size())
+              + " found items.");
     }
-    catch (IOException e) {
-      throw new LocalStorageException("Got IOException during M2 metadata merging.", e);
-    }
-    catch (MetadataException e) {
-      throw new LocalStorageException("Got MetadataException during M2 metadata merging.", e);
+
+    // build checksums
+    return new MergedMetadata(stamp, content, DigesterUtils.getMd5Digest(content),
+        DigesterUtils.getSha1Digest(content));
+  }
+
+  private void storeMergedMetadataItemDigestIfMissing(ResourceStoreRequest request, String digest,
+                                                      List<StorageItem> sources, String algorithm)
+      throws IOException, UnsupportedStorageOperationException, IllegalOperationException
+  {
+    ResourceStoreRequest req = new ResourceStoreRequest(request.getRequestPath() + "." + algorithm.toLowerCase());
+    if (!getLocalStorage().containsItem(this, req)) {
+      storeMergedMetadataItemDigest(request, digest, sources, algorithm);
     }
   }
 
@@ -0,0 +1,151 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.maven.maven2;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.proxy.item.StorageCompositeItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.maven.MavenRepository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Cache of merged Maven metadata of a group, keyed by request path. Each entry remembers the "stamps" (repository,
+ * policy, modification time, length and SHA1 if known) of the member items it was merged from, and is served only
+ * while the member items retrieved for a request still carry the very same stamps, so members are not parsed and
+ * merged again as long as they did not change.
+ *
+ * @since 3.0
+ */
+class MergedMetadataCache
+{
+  private final Cache<String, MergedMetadata> cache;
+
+  MergedMetadataCache(final int maximumSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+  }
+
+  /**
+   * Returns the merged metadata for given path if it was merged from member items of given stamp, otherwise
+   * {@code null}.
+   */
+  @Nullable
+  MergedMetadata get(final String path, final @Nullable String stamp) {
+    if (stamp == null) {
+      return null;
+    }
+    final MergedMetadata merged = cache.getIfPresent(path);
+    if (merged != null && stamp.equals(merged.getStamp())) {
+      return merged;
+    }
+    return null;
+  }
+
+  /**
+   * Caches merged metadata for given path, unless some of its member items could not be stamped.
+   */
+  void put(final String path, final MergedMetadata merged) {
+    if (merged.getStamp() != null) {
+      cache.put(path, merged);
+    }
+  }
+
+  void invalidate(final String path) {
+    cache.invalidate(path);
+  }
+
+  void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Returns the stamp of given member items, or {@code null} if any of them is not a file item (hence merged result
+   * of those should not be cached).
+   */
+  @Nullable
+  static String stamp(final List<StorageItem> sources) {
+    final StringBuilder stamp = new StringBuilder();
+    for (StorageItem source : sources) {
+      if (source instanceof StorageCompositeItem) {
+        // a nested group, its merged item is stamped by its own sources
+        final String nested = stamp(((StorageCompositeItem) source).getSources());
+        if (nested == null) {
+          return null;
+        }
+        stamp.append('[').append(nested).append(']');
+      }
+      else if (source instanceof StorageFileItem) {
+        final StorageFileItem file = (StorageFileItem) source;
+        stamp.append(file.getRepositoryItemUid());
+        final MavenRepository repository = file.getRepositoryItemUid().getRepository().adaptToFacet(
+            MavenRepository.class);
+        if (repository != null) {
+          stamp.append('/').append(repository.getRepositoryPolicy());
+        }
+        stamp.append('@').append(file.getModified())
+            .append(':').append(file.getLength())
+            .append(':').append(file.getRepositoryItemAttributes().get(StorageFileItem.DIGEST_SHA1_KEY))
+            .append(';');
+      }
+      else {
+        return null;
+      }
+    }
+    return stamp.toString();
+  }
+
+  /**
+   * Merged metadata content and its checksums.
+   */
+  static class MergedMetadata
+  {
+    private final String stamp;
+
+    private final byte[] content;
+
+    private final String md5;
+
+    private final String sha1;
+
+    MergedMetadata(final @Nullable String stamp, final byte[] content, final String md5, final String sha1) {
+      this.stamp = stamp;
+      this.content = checkNotNull(content);
+      this.md5 = checkNotNull(md5);
+      this.sha1 = checkNotNull(sha1);
+    }
+
+    @Nullable
+    String getStamp() {
+      return stamp;
+    }
+
+    byte[] getContent() {
+      return content;
+    }
+
+    String getMd5() {
+      return md5;
+    }
+
+    String getSha1() {
+      return sha1;
+    }
+  }
+}
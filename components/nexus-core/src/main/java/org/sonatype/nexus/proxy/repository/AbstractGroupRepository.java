@@ -18,6 +18,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -42,11 +47,19 @@ import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.item.uid.IsGroupLocalOnlyAttribute;
 import org.sonatype.nexus.proxy.mapping.RequestRepositoryMapper;
 import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
+import org.sonatype.nexus.proxy.repository.threads.ThreadPoolManager;
+import org.sonatype.nexus.proxy.storage.remote.RemoteRequestAborter;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
 import org.sonatype.nexus.proxy.walker.WalkerFilter;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.TimerContext;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sonatype.nexus.proxy.ItemNotFoundException.reasonFor;
@@ -60,20 +73,38 @@ public abstract class AbstractGroupRepository
     extends AbstractRepository
     implements GroupRepository
 {
+  /**
+   * When enabled, group members are asked for items concurrently (using the repository thread pool) instead of one by
+   * one, so a request missing on several proxy members takes about as long as the slowest member does, not the sum of
+   * their remote timeouts. Member ordering is respected: the first member (in group order) having the item wins, and
+   * the retrievals of the remaining members are cancelled, having their outbound requests aborted. A losing proxy
+   * member that completed its remote fetch before being cancelled keeps the item cached.
+   *
+   * @since 3.0
+   */
+  private static final boolean PARALLEL_RETRIEVAL = SystemPropertiesHelper.getBoolean(
+      "nexus.group.parallelRetrieval", false);
+
   // == these below are injected
 
   private RepositoryRegistry repoRegistry;
 
   private RequestRepositoryMapper requestRepositoryMapper;
 
+  private ThreadPoolManager poolManager;
+
   // ==
 
+  private final MetricsRegistry metricsRegistry = Metrics.defaultRegistry();
+
   @Inject
   public void populateAbstractGroupRepository(
-      final RepositoryRegistry repoRegistry, final RequestRepositoryMapper requestRepositoryMapper)
+      final RepositoryRegistry repoRegistry, final RequestRepositoryMapper requestRepositoryMapper,
+      final ThreadPoolManager poolManager)
   {
     this.repoRegistry = checkNotNull(repoRegistry);
     this.requestRepositoryMapper = requestRepositoryMapper;
+    this.poolManager = checkNotNull(poolManager);
   }
 
   @Override
@@ -255,7 +286,13 @@ public abstract class AbstractGroupRepository
       final boolean isRequestGroupLocalOnly =
           request.isRequestGroupLocalOnly() || uid.getBooleanAttributeValue(IsGroupLocalOnlyAttribute.class);
 
-      if (!isRequestGroupLocalOnly) {
+      if (!isRequestGroupLocalOnly && PARALLEL_RETRIEVAL) {
+        final StorageItem item = doRetrieveItemFromMembersInParallel(request, memberThrowables);
+        if (item != null) {
+          return item;
+        }
+      }
+      else if (!isRequestGroupLocalOnly) {
         for (Repository repo : getRequestRepositories(request)) {
           if (!request.getProcessedRepositories().contains(repo.getId())) {
             try {
@@ -444,7 +481,10 @@ public abstract class AbstractGroupRepository
 
     final HashMap<Repository, Throwable> memberThrowables = Maps.newLinkedHashMap();
 
-    if (!isRequestGroupLocalOnly) {
+    if (!isRequestGroupLocalOnly && PARALLEL_RETRIEVAL) {
+      items.addAll(doRetrieveItemsFromMembersInParallel(request, memberThrowables));
+    }
+    else if (!isRequestGroupLocalOnly) {
       for (Repository repository : getRequestRepositories(request)) {
         if (!request.getProcessedRepositories().contains(repository.getId())) {
           try {
@@ -500,6 +540,219 @@ public abstract class AbstractGroupRepository
     return items;
   }
 
+  // == Parallel member retrieval
+
+  /**
+   * Retrieves the item from members concurrently. Member ordering is respected: the item of the first
+   * member (in group order) having it is returned, while retrievals still in-flight on the remaining members are
+   * cancelled. Returns {@code null} if none of the members has the item, having the member failures recorded in
+   * passed in map in member order.
+   */
+  @VisibleForTesting
+  StorageItem doRetrieveItemFromMembersInParallel(final ResourceStoreRequest request,
+                                                  final Map<Repository, Throwable> memberThrowables)
+      throws StorageException
+  {
+    final Map<Repository, MemberRetrieval> retrievals = submitMemberRetrievals(request, true);
+    try {
+      for (Map.Entry<Repository, MemberRetrieval> retrieval : retrievals.entrySet()) {
+        try {
+          StorageItem item = awaitMemberRetrieval(retrieval.getValue());
+
+          if (item instanceof StorageCollectionItem) {
+            item = new DefaultStorageCollectionItem(this, request, true, false);
+          }
+
+          return item;
+        }
+        catch (IllegalOperationException e) {
+          // ignored, but bookkeeping happens now
+          memberThrowables.put(retrieval.getKey(), e);
+        }
+        catch (ItemNotFoundException e) {
+          // ignored, but bookkeeping happens now
+          memberThrowables.put(retrieval.getKey(), e);
+        }
+        catch (StorageException e) {
+          // ignored, but bookkeeping happens now
+          memberThrowables.put(retrieval.getKey(), e);
+        }
+        catch (AccessDeniedException e) {
+          // cannot happen, since we add/check for AccessManager.REQUEST_AUTHORIZED flag
+          // ignored, but bookkeeping happens now
+          memberThrowables.put(retrieval.getKey(), e);
+        }
+      }
+      return null;
+    }
+    finally {
+      cancelMemberRetrievals(retrievals);
+    }
+  }
+
+  /**
+   * Retrieves the item from all members concurrently, returning the found items in member order,
+   * having the member failures recorded in passed in map in member order.
+   */
+  @VisibleForTesting
+  List<StorageItem> doRetrieveItemsFromMembersInParallel(final ResourceStoreRequest request,
+                                                         final Map<Repository, Throwable> memberThrowables)
+      throws StorageException
+  {
+    final ArrayList<StorageItem> items = new ArrayList<StorageItem>();
+    final Map<Repository, MemberRetrieval> retrievals = submitMemberRetrievals(request, false);
+    try {
+      for (Map.Entry<Repository, MemberRetrieval> retrieval : retrievals.entrySet()) {
+        try {
+          items.add(awaitMemberRetrieval(retrieval.getValue()));
+        }
+        catch (ItemNotFoundException e) {
+          // ignored, but bookkeeping happens now
+          memberThrowables.put(retrieval.getKey(), e);
+        }
+        catch (RepositoryNotAvailableException e) {
+          if (log.isDebugEnabled()) {
+            log.debug(
+                RepositoryStringUtils.getFormattedMessage(
+                    "Member repository %s is not available, request failed.", e.getRepository()));
+          }
+          // ignored, but bookkeeping happens now
+          memberThrowables.put(retrieval.getKey(), e);
+        }
+        catch (IllegalOperationException e) {
+          log.warn("Member repository request failed", e);
+          // ignored, but bookkeeping happens now
+          memberThrowables.put(retrieval.getKey(), e);
+        }
+        catch (AccessDeniedException e) {
+          // cannot happen, unprotected retrieval is used
+          memberThrowables.put(retrieval.getKey(), e);
+        }
+      }
+      return items;
+    }
+    finally {
+      cancelMemberRetrievals(retrievals);
+    }
+  }
+
+  /**
+   * Submits retrievals to the repository thread pool for every member that was not yet processed by this request.
+   * Each of these gets its own detached copy of the request, as requests are not thread safe, carrying its own
+   * {@link RemoteRequestAborter}. The returned map preserves member ordering.
+   */
+  private Map<Repository, MemberRetrieval> submitMemberRetrievals(final ResourceStoreRequest request,
+                                                                  final boolean accessChecked)
+      throws StorageException
+  {
+    final ExecutorService executorService = poolManager.getRepositoryThreadPool(this);
+    final Map<Repository, MemberRetrieval> result = Maps.newLinkedHashMap();
+    for (Repository repo : getRequestRepositories(request)) {
+      if (!request.getProcessedRepositories().contains(repo.getId())) {
+        final ResourceStoreRequest memberRequest = request.cloneAndDetach();
+        final RemoteRequestAborter aborter = RemoteRequestAborter.install(memberRequest);
+        result.put(repo, new MemberRetrieval(
+            executorService.submit(new MemberRetrieveCallable(repo, memberRequest, accessChecked)), aborter));
+      }
+      else {
+        if (log.isDebugEnabled()) {
+          log.debug(
+              String.format(
+                  "Repository %s member of group %s was already processed during this request! Skipping it from processing. Request: %s",
+                  RepositoryStringUtils.getHumanizedNameString(repo),
+                  RepositoryStringUtils.getHumanizedNameString(this), request.toString()));
+        }
+      }
+    }
+    return result;
+  }
+
+  private StorageItem awaitMemberRetrieval(final MemberRetrieval retrieval)
+      throws IllegalOperationException, ItemNotFoundException, StorageException, AccessDeniedException
+  {
+    try {
+      return retrieval.future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new LocalStorageException(
+          "Interrupted while retrieving from members of group " + RepositoryStringUtils.getHumanizedNameString(this),
+          e);
+    }
+    catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      Throwables.propagateIfInstanceOf(cause, IllegalOperationException.class);
+      Throwables.propagateIfInstanceOf(cause, ItemNotFoundException.class);
+      Throwables.propagateIfInstanceOf(cause, StorageException.class);
+      Throwables.propagateIfInstanceOf(cause, AccessDeniedException.class);
+      throw Throwables.propagate(cause);
+    }
+  }
+
+  /**
+   * Cancels retrievals still in-flight on members that lost: interrupts them and aborts their outbound requests.
+   */
+  private void cancelMemberRetrievals(final Map<Repository, MemberRetrieval> retrievals) {
+    for (MemberRetrieval retrieval : retrievals.values()) {
+      if (!retrieval.future.isDone()) {
+        retrieval.future.cancel(true);
+        retrieval.aborter.abort();
+      }
+    }
+  }
+
+  private static class MemberRetrieval
+  {
+    private final Future<StorageItem> future;
+
+    private final RemoteRequestAborter aborter;
+
+    private MemberRetrieval(final Future<StorageItem> future, final RemoteRequestAborter aborter) {
+      this.future = future;
+      this.aborter = aborter;
+    }
+  }
+
+  /**
+   * Retrieves item from a member, recording the member retrieval latency.
+   */
+  private class MemberRetrieveCallable
+      implements Callable<StorageItem>
+  {
+    private final Repository member;
+
+    private final ResourceStoreRequest request;
+
+    private final boolean accessChecked;
+
+    public MemberRetrieveCallable(final Repository member, final ResourceStoreRequest request,
+                                  final boolean accessChecked)
+    {
+      this.member = member;
+      this.request = request;
+      this.accessChecked = accessChecked;
+    }
+
+    @Override
+    public StorageItem call()
+        throws Exception
+    {
+      final TimerContext timerContext =
+          metricsRegistry.newTimer(AbstractGroupRepository.class, getId(), member.getId()).time();
+      try {
+        if (accessChecked) {
+          return member.retrieveItem(request);
+        }
+        else {
+          return member.retrieveItem(false, request);
+        }
+      }
+      finally {
+        timerContext.stop();
+      }
+    }
+  }
+
   // ===================================================================================
   // Inner stuff
 
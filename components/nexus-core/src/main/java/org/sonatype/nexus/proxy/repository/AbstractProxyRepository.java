@@ -13,6 +13,7 @@
 package org.sonatype.nexus.proxy.repository;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -20,6 +21,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 import javax.net.ssl.SSLException;
@@ -48,14 +50,18 @@ import org.sonatype.nexus.proxy.events.RepositoryItemEventCacheCreate;
 import org.sonatype.nexus.proxy.events.RepositoryItemEventCacheUpdate;
 import org.sonatype.nexus.proxy.events.RepositoryItemValidationEvent;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.EvictUnusedItemsWalkerProcessor.EvictUnusedItemsWalkerFilter;
 import org.sonatype.nexus.proxy.repository.threads.ThreadPoolManager;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.remote.AbstractHTTPRemoteRepositoryStorage;
+import org.sonatype.nexus.proxy.storage.remote.ConditionalRemoteRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.remote.DefaultRemoteStorageContext;
 import org.sonatype.nexus.proxy.storage.remote.RemoteRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.remote.RemoteStorageContext;
@@ -71,6 +77,9 @@ import org.sonatype.nexus.util.SystemPropertiesHelper;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.io.ByteSource;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
 import org.codehaus.plexus.util.ExceptionUtils;
 import org.codehaus.plexus.util.StringUtils;
 import org.slf4j.LoggerFactory;
@@ -108,6 +117,53 @@ public abstract class AbstractProxyRepository
    */
   private static final long AUTO_BLOCK_STATUS_MAX_RETAIN_TIME = 60L * 60L * 1000L;
 
+  /**
+   * Flag to enable/disable joining of concurrent requests to an in progress remote retrieval of same item. When
+   * enabled, requests for an item being retrieved are served from the content being downloaded, instead of waiting
+   * for the retrieval to finish.
+   *
+   * @since 3.0
+   */
+  private static final boolean COALESCE_REMOTE_RETRIEVALS = SystemPropertiesHelper.getBoolean(
+      AbstractProxyRepository.class.getName() + ".coalesceRemoteRetrievals", true);
+
+  /**
+   * Count of bytes of a remote retrieval kept in memory until a concurrent request joins it, and content starts being
+   * spooled to a file. A retrieval that went past this without anyone joining cannot be joined, and requests wait for
+   * it to finish.
+   *
+   * @since 3.0
+   */
+  private static final int COALESCE_HEAD_SIZE = SystemPropertiesHelper.getInteger(
+      AbstractProxyRepository.class.getName() + ".coalesceHeadSize", 256 * 1024);
+
+  /**
+   * Flag to enable/disable revalidation of aged items with single conditional request, when remote storage supports
+   * it (see {@link ConditionalRemoteRepositoryStorage}). When disabled, existence of newer remote item is checked
+   * first, and it is retrieved with a second request.
+   *
+   * @since 3.0
+   */
+  private static final boolean CONDITIONAL_REVALIDATION = SystemPropertiesHelper.getBoolean(
+      AbstractProxyRepository.class.getName() + ".conditionalRevalidation", true);
+
+  /**
+   * Request context key holding the aged local item being revalidated by {@link #doRetrieveRemoteItem}.
+   */
+  private static final String REVALIDATED_ITEM_KEY = AbstractProxyRepository.class.getName() + ".revalidatedItem";
+
+  /**
+   * Revalidations answered with "not modified", where only item attributes were touched.
+   */
+  private static final Counter revalidationsNotModified = Metrics.defaultRegistry().newCounter(
+      AbstractProxyRepository.class, "revalidationsNotModified");
+
+  /**
+   * Revalidations that retrieved the modified item with the same request, saving a round trip.
+   */
+  private static final Counter revalidationRequestsSaved = Metrics.defaultRegistry().newCounter(
+      AbstractProxyRepository.class, "revalidationRequestsSaved");
+
   // == injected
 
   private ThreadPoolManager poolManager;
@@ -160,6 +216,11 @@ public abstract class AbstractProxyRepository
   private volatile NumberSequence remoteStatusRetainTimeSequence = new ConstantNumberSequence(
       REMOTE_STATUS_RETAIN_TIME);
 
+  /**
+   * Remote retrievals in progress, keyed by item path.
+   */
+  private final ConcurrentMap<String, InFlightRemoteRetrieval> inFlightRemoteRetrievals = Maps.newConcurrentMap();
+
   @Inject
   public void populateAbstractProxyRepository(ThreadPoolManager poolManager) {
     this.poolManager = checkNotNull(poolManager);
@@ -925,6 +986,14 @@ public abstract class AbstractProxyRepository
     // if proxy and need to go remote, we want to _protect_ ourselves from
     // serving up partial downloads...
 
+    if (COALESCE_REMOTE_RETRIEVALS && !request.isRequestLocalOnly()) {
+      // if item is being retrieved right now, do not wait for it, but join it
+      final StorageItem joined = joinRemoteRetrieval(request);
+      if (joined != null) {
+        return joined;
+      }
+    }
+
     final RepositoryItemUid itemUid = createUid(request.getRequestPath());
 
     final RepositoryItemUidLock itemUidLock = itemUid.getLock();
@@ -1053,23 +1122,51 @@ public abstract class AbstractProxyRepository
 
             // check is the remote newer than the local one
             try {
-              shouldGetRemote = doCheckRemoteItemExistence(localItem, request);
+              if (CONDITIONAL_REVALIDATION && getRemoteStorage() instanceof ConditionalRemoteRepositoryStorage) {
+                // retrieve it with the same request if newer
+                try {
+                  remoteItem = doRetrieveRemoteItemIfModified(localItem, request);
+                }
+                catch (ItemNotFoundException e) {
+                  remoteItem = null;
+                }
 
-              if (!shouldGetRemote) {
-                markItemRemotelyChecked(localItem);
+                if (remoteItem == null) {
+                  markItemRemotelyChecked(localItem);
+                  revalidationsNotModified.inc();
 
-                if (log.isDebugEnabled()) {
-                  log.debug(
-                      "No newer version of item " + request.toString() + " found on remote storage.");
+                  if (log.isDebugEnabled()) {
+                    log.debug(
+                        "No newer version of item " + request.toString() + " found on remote storage.");
+                  }
+                }
+                else {
+                  revalidationRequestsSaved.inc();
+
+                  if (log.isDebugEnabled()) {
+                    log.debug(
+                        "Newer version of item " + request.toString() + " is retrieved from remote storage.");
+                  }
                 }
               }
               else {
-                if (log.isDebugEnabled()) {
-                  log.debug(
-                      "Newer version of item " + request.toString() + " is found on remote storage.");
+                shouldGetRemote = doCheckRemoteItemExistence(localItem, request);
+
+                if (!shouldGetRemote) {
+                  markItemRemotelyChecked(localItem);
+
+                  if (log.isDebugEnabled()) {
+                    log.debug(
+                        "No newer version of item " + request.toString() + " found on remote storage.");
+                  }
+                }
+                else {
+                  if (log.isDebugEnabled()) {
+                    log.debug(
+                        "Newer version of item " + request.toString() + " is found on remote storage.");
+                  }
                 }
               }
-
             }
             catch (RemoteStorageException ex) {
               // NEXUS-4593 HTTP status 403 should not lead to autoblock
@@ -1275,6 +1372,26 @@ public abstract class AbstractProxyRepository
     }
   }
 
+  /**
+   * Revalidates aged local item using single conditional request, retrieving and caching the remote item only if it
+   * is modified. Returns {@code null} if remote item is not modified. Same retry-fallback-blacklist rules apply as for
+   * {@link #doRetrieveRemoteItem(ResourceStoreRequest)}, except that local item is kept if retrieval fails before
+   * anything got cached.
+   *
+   * @since 3.0
+   */
+  protected AbstractStorageItem doRetrieveRemoteItemIfModified(StorageItem localItem, ResourceStoreRequest request)
+      throws ItemNotFoundException, RemoteAccessException, StorageException
+  {
+    request.getRequestContext().put(REVALIDATED_ITEM_KEY, localItem);
+    try {
+      return doRetrieveRemoteItem(request);
+    }
+    finally {
+      request.getRequestContext().remove(REVALIDATED_ITEM_KEY);
+    }
+  }
+
   /**
    * Retrieves item with specified uid from remote storage according to the following retry-fallback-blacklist rules.
    * <li>Only retrieve item operation will use mirrors, other operations, like check availability and retrieve
@@ -1317,6 +1434,11 @@ public abstract class AbstractProxyRepository
 
       List<RepositoryItemValidationEvent> events = new ArrayList<>();
 
+      // set when revalidating, see doRetrieveRemoteItemIfModified
+      final StorageItem revalidatedItem = (StorageItem) request.getRequestContext().get(REVALIDATED_ITEM_KEY);
+
+      boolean cached = false;
+
       Exception lastException = null;
 
       all_urls:
@@ -1355,17 +1477,37 @@ public abstract class AbstractProxyRepository
         }
 
         for (int i = 0; i < retryCount; i++) {
+          InFlightRemoteRetrieval inFlight = null;
           try {
             // events.clear();
 
-            AbstractStorageItem remoteItem =
-                getRemoteStorage().retrieveItem(this, request, remoteUrl);
+            AbstractStorageItem remoteItem;
+            if (revalidatedItem != null && !cached) {
+              remoteItem = ((ConditionalRemoteRepositoryStorage) getRemoteStorage())
+                  .retrieveItemIfModified(this, request, remoteUrl, revalidatedItem);
+              if (remoteItem == null) {
+                // not modified
+                return null;
+              }
+            }
+            else {
+              remoteItem = getRemoteStorage().retrieveItem(this, request, remoteUrl);
+            }
+
+            if (COALESCE_REMOTE_RETRIEVALS && remoteItem instanceof StorageFileItem) {
+              inFlight = startRemoteRetrieval(request, (StorageFileItem) remoteItem);
+            }
 
+            cached = true;
             remoteItem = doCacheItem(remoteItem);
 
             if (doValidateRemoteItemContent(request, remoteUrl, remoteItem, events)) {
               sendContentValidationEvents(request, events, true);
 
+              if (inFlight != null) {
+                inFlight.complete();
+              }
+
               return remoteItem;
             }
             else {
@@ -1449,6 +1591,12 @@ public abstract class AbstractProxyRepository
 
             continue all_urls; // retry with next url
           }
+          finally {
+            if (inFlight != null) {
+              inFlightRemoteRetrievals.remove(request.getRequestPath(), inFlight);
+              inFlight.finish();
+            }
+          }
 
           // retry with same url
         }
@@ -1458,14 +1606,17 @@ public abstract class AbstractProxyRepository
 
       sendContentValidationEvents(request, events, false);
 
-      try {
-        getLocalStorage().deleteItem(this, request);
-      }
-      catch (ItemNotFoundException e) {
-        // good, we want this item deleted
-      }
-      catch (UnsupportedStorageOperationException e) {
-        log.warn("Unexpected Exception in " + RepositoryStringUtils.getHumanizedNameString(this), e);
+      // revalidated item is still good if it was not (even partially) overwritten
+      if (revalidatedItem == null || cached) {
+        try {
+          getLocalStorage().deleteItem(this, request);
+        }
+        catch (ItemNotFoundException e) {
+          // good, we want this item deleted
+        }
+        catch (UnsupportedStorageOperationException e) {
+          log.warn("Unexpected Exception in " + RepositoryStringUtils.getHumanizedNameString(this), e);
+        }
       }
 
       if (lastException instanceof StorageException) {
@@ -1485,6 +1636,56 @@ public abstract class AbstractProxyRepository
     }
   }
 
+  /**
+   * Registers the remote retrieval of passed in item, letting concurrent requests join it.
+   */
+  private InFlightRemoteRetrieval startRemoteRetrieval(final ResourceStoreRequest request,
+                                                       final StorageFileItem remoteItem)
+  {
+    final InFlightRemoteRetrieval inFlight =
+        new InFlightRemoteRetrieval(getApplicationConfiguration().getTemporaryDirectory(), COALESCE_HEAD_SIZE);
+    inFlight.tee(remoteItem);
+    inFlightRemoteRetrievals.put(request.getRequestPath(), inFlight);
+    return inFlight;
+  }
+
+  /**
+   * Returns item having content of the remote retrieval of requested item in progress, if any, or {@code null}.
+   */
+  private StorageItem joinRemoteRetrieval(final ResourceStoreRequest request) {
+    final InFlightRemoteRetrieval inFlight = inFlightRemoteRetrievals.get(request.getRequestPath());
+    if (inFlight == null) {
+      return null;
+    }
+    try {
+      final ContentLocator content = inFlight.join(new ByteSource()
+      {
+        @Override
+        public InputStream openStream() throws IOException {
+          try {
+            return ((StorageFileItem) doRetrieveLocalItem(request)).getInputStream();
+          }
+          catch (ItemNotFoundException e) {
+            throw new IOException("Retrieved item is gone", e);
+          }
+        }
+      });
+      if (content == null) {
+        return null;
+      }
+      final DefaultStorageFileItem result = new DefaultStorageFileItem(this, request, true, true, content);
+      result.getRepositoryItemAttributes().overlayAttributes(inFlight.getAttributes());
+      if (log.isDebugEnabled()) {
+        log.debug("Item " + request.toString() + " joined remote retrieval in progress.");
+      }
+      return result;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
   protected List<String> getRemoteUrls(final ResourceStoreRequest request) {
     return Lists.newArrayList(getRemoteUrl());
   }
@@ -65,6 +65,7 @@ import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.local.DefaultLocalStorageContext;
+import org.sonatype.nexus.proxy.storage.local.FileImportingLocalRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.local.LocalRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.local.LocalStorageContext;
 import org.sonatype.nexus.proxy.targets.TargetRegistry;
@@ -1002,8 +1003,17 @@ public abstract class AbstractRepository
       uidLock.lock(Action.read);
 
       try {
-        // store it
-        getLocalStorage().storeItem(this, item);
+        // store it, importing content if item is a copy of other repository's item and LS is able to
+        final Object importSource = item.getResourceStoreRequest().getRequestContext()
+            .get(FileImportingLocalRepositoryStorage.IMPORT_SOURCE_KEY, false);
+        if (item instanceof StorageFileItem && importSource instanceof StorageFileItem
+            && getLocalStorage() instanceof FileImportingLocalRepositoryStorage) {
+          ((FileImportingLocalRepositoryStorage) getLocalStorage()).importItem(this, (StorageFileItem) item,
+              (StorageFileItem) importSource);
+        }
+        else {
+          getLocalStorage().storeItem(this, item);
+        }
       }
       finally {
         uidLock.unlock();
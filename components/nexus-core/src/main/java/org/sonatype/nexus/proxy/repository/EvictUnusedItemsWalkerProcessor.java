@@ -13,6 +13,7 @@
 package org.sonatype.nexus.proxy.repository;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.sonatype.nexus.proxy.IllegalOperationException;
@@ -25,12 +26,14 @@ import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.walker.AbstractFileWalkerProcessor;
+import org.sonatype.nexus.proxy.walker.ConcurrentWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.WalkerContext;
 import org.sonatype.nexus.proxy.walker.WalkerFilter;
 import org.sonatype.nexus.proxy.wastebasket.DeleteOperation;
 
 public class EvictUnusedItemsWalkerProcessor
     extends AbstractFileWalkerProcessor
+    implements ConcurrentWalkerProcessor
 {
   public static final String REQUIRED_FACET_KEY = "repository.facet";
 
@@ -38,12 +41,12 @@ public class EvictUnusedItemsWalkerProcessor
 
   private final long timestamp;
 
-  private final ArrayList<String> files;
+  private final List<String> files;
 
   public EvictUnusedItemsWalkerProcessor(long timestamp) {
     this.timestamp = timestamp;
 
-    this.files = new ArrayList<String>();
+    this.files = Collections.synchronizedList(new ArrayList<String>());
   }
 
   protected Class<? extends Repository> getRequiredFacet(WalkerContext context) {
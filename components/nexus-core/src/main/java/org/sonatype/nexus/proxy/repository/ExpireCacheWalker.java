@@ -12,20 +12,24 @@
  */
 package org.sonatype.nexus.proxy.repository;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.walker.AbstractFileWalkerProcessor;
+import org.sonatype.nexus.proxy.walker.ConcurrentWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.WalkerContext;
 
 public class ExpireCacheWalker
     extends AbstractFileWalkerProcessor
+    implements ConcurrentWalkerProcessor
 {
   private final Repository repository;
 
-  private int alteredItemCount;
+  private final AtomicInteger alteredItemCount;
 
   public ExpireCacheWalker(Repository repository) {
     this.repository = repository;
-    this.alteredItemCount = 0;
+    this.alteredItemCount = new AtomicInteger(0);
   }
 
   public Repository getRepository() {
@@ -43,15 +47,15 @@ public class ExpireCacheWalker
       // store it
       getRepository().getAttributesHandler().storeAttributes(item);
 
-      alteredItemCount++;
+      alteredItemCount.incrementAndGet();
     }
   }
 
   public boolean isCacheAltered() {
-    return alteredItemCount > 0;
+    return alteredItemCount.get() > 0;
   }
 
   public int getAlteredItemCount() {
-    return alteredItemCount;
+    return alteredItemCount.get();
   }
 }
@@ -0,0 +1,456 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+
+import org.sonatype.nexus.proxy.attributes.Attributes;
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
+import org.sonatype.nexus.proxy.item.AbstractContentLocator;
+import org.sonatype.nexus.proxy.item.AbstractWrappingContentLocator;
+import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.util.WrappingInputStream;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A remote retrieval of a proxy repository in progress, that concurrent requests for same item may join instead of
+ * waiting for it to finish. While the retrieving thread ("leader") consumes the remote content (ie. caching it), the
+ * bytes are also appended to a spool file, and joined requests ("followers") read the spool file as it grows. The
+ * followers get end of stream only when leader marks retrieval as completed (ie. validated), or an
+ * {@link IOException} if the retrieval failed.
+ * <p/>
+ * Spooling starts only when first follower joins: until then, the bytes consumed by leader are kept in memory up to
+ * given head size, and are written to spool file at join. Once leader consumed more without anyone joining, the
+ * retrieval cannot be joined anymore, and requests wait for it to finish instead.
+ * <p/>
+ * The spool file is deleted once the leader finished and all followers closed their streams. Followers opening the
+ * content after that read the content from given fallback (the cached item).
+ *
+ * @since 3.0
+ */
+class InFlightRemoteRetrieval
+{
+  private static final Logger log = LoggerFactory.getLogger(InFlightRemoteRetrieval.class);
+
+  private final File spoolDirectory;
+
+  private final int headSize;
+
+  /**
+   * Released when leader started consuming the content, or when retrieval is finished.
+   */
+  private final CountDownLatch published = new CountDownLatch(1);
+
+  // guarded by this
+
+  /**
+   * Bytes consumed by leader while nobody joined, {@code null} once retrieval cannot be joined, or is spooled.
+   */
+  private ByteArrayOutputStream head = new ByteArrayOutputStream();
+
+  private File spoolFile;
+
+  private OutputStream spool;
+
+  private long spooled;
+
+  private boolean finished;
+
+  private IOException failure;
+
+  private int references = 1;
+
+  private boolean spoolDeleted;
+
+  // set once by leader before published is released
+
+  private volatile Attributes attributes;
+
+  private volatile String mimeType;
+
+  private volatile long length;
+
+  InFlightRemoteRetrieval(final File spoolDirectory, final int headSize) {
+    this.spoolDirectory = checkNotNull(spoolDirectory);
+    this.headSize = headSize;
+  }
+
+  // == Leader
+
+  /**
+   * Makes passed in remote item's content teed while read, and publishes it for joining followers.
+   */
+  void tee(final StorageFileItem remoteItem) {
+    checkState(attributes == null, "Already teed");
+    attributes = new DefaultAttributes(remoteItem.getRepositoryItemAttributes().asMap());
+    mimeType = remoteItem.getMimeType();
+    length = remoteItem.getLength();
+    remoteItem.setContentLocator(new AbstractWrappingContentLocator(remoteItem.getContentLocator())
+    {
+      private boolean teed;
+
+      @Override
+      public InputStream getContent() throws IOException {
+        final InputStream content = super.getContent();
+        if (teed) {
+          return content;
+        }
+        teed = true;
+        return new TeeInputStream(content);
+      }
+    });
+    published.countDown();
+  }
+
+  /**
+   * Marks the retrieval as successfully finished.
+   */
+  void complete() {
+    finish(null);
+  }
+
+  /**
+   * Marks the retrieval as finished, failed unless {@link #complete()} was invoked before.
+   */
+  void finish() {
+    finish(new IOException("Remote retrieval did not complete"));
+  }
+
+  private void finish(final IOException cause) {
+    synchronized (this) {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (failure == null) {
+        failure = cause;
+      }
+      head = null;
+      closeSpool();
+      notifyAll();
+    }
+    published.countDown();
+    release();
+  }
+
+  // == Follower
+
+  /**
+   * Waits until the leader starts consuming remote content, and returns the locator to read the content being
+   * retrieved, or {@code null} if there is nothing to join (ie. retrieval failed or finished without content).
+   */
+  ContentLocator join(final ByteSource fallback) throws InterruptedException {
+    published.await();
+    synchronized (this) {
+      if (attributes == null || failure != null) {
+        return null;
+      }
+      if (spoolFile == null && !startSpooling()) {
+        return null;
+      }
+    }
+    return new SpoolContentLocator(fallback);
+  }
+
+  /**
+   * Returns the attributes of the remote item being retrieved, as they were when retrieval started.
+   */
+  Attributes getAttributes() {
+    return attributes;
+  }
+
+  @VisibleForTesting
+  synchronized File getSpoolFile() {
+    return spoolFile;
+  }
+
+  // ==
+
+  /**
+   * Starts spooling for the first follower, with the bytes leader consumed so far. Returns {@code false} if it is too
+   * late for that, or spool file cannot be written.
+   */
+  private synchronized boolean startSpooling() {
+    if (head == null) {
+      return false;
+    }
+    try {
+      spoolFile = File.createTempFile("remote-", ".spool", spoolDirectory);
+      spool = new FileOutputStream(spoolFile);
+      head.writeTo(spool);
+      spooled = head.size();
+      return true;
+    }
+    catch (IOException e) {
+      log.warn("Could not spool remote retrieval, concurrent requests will wait for it", e);
+      closeSpool();
+      if (spoolFile != null && !spoolFile.delete() && spoolFile.exists()) {
+        log.warn("Could not delete spool file {}", spoolFile);
+      }
+      spoolFile = null;
+      return false;
+    }
+    finally {
+      head = null;
+    }
+  }
+
+  /**
+   * Records bytes consumed by leader.
+   */
+  private synchronized void teed(final byte[] b, final int off, final int len) {
+    if (spool != null) {
+      try {
+        spool.write(b, off, len);
+        spooled += len;
+        notifyAll();
+      }
+      catch (IOException e) {
+        // failing spool must not fail the retrieval itself, only the followers
+        log.warn("Could not write spool file {}", spoolFile, e);
+        spoolFailed(e);
+        closeSpool();
+      }
+    }
+    else if (head != null) {
+      if (head.size() + len <= headSize) {
+        head.write(b, off, len);
+      }
+      else {
+        // nobody joined in time, and keeping all content in memory is not an option
+        head = null;
+      }
+    }
+  }
+
+  private synchronized void teeClosed() {
+    head = null;
+    closeSpool();
+  }
+
+  private synchronized void closeSpool() {
+    if (spool != null) {
+      try {
+        spool.close();
+      }
+      catch (IOException e) {
+        log.debug("Could not close spool file {}", spoolFile, e);
+      }
+      spool = null;
+    }
+  }
+
+  private synchronized void spoolFailed(final IOException e) {
+    if (failure == null) {
+      failure = e;
+    }
+    notifyAll();
+  }
+
+  private synchronized boolean acquire() {
+    if (spoolDeleted) {
+      return false;
+    }
+    references++;
+    return true;
+  }
+
+  private void release() {
+    synchronized (this) {
+      if (--references > 0 || spoolDeleted) {
+        return;
+      }
+      spoolDeleted = true;
+      if (spoolFile == null) {
+        return;
+      }
+    }
+    if (!spoolFile.delete() && spoolFile.exists()) {
+      log.warn("Could not delete spool file {}", spoolFile);
+    }
+  }
+
+  /**
+   * Waits until spool has more bytes than given position, returns the count of bytes available from position or -1
+   * if retrieval completed and all bytes were read.
+   */
+  private synchronized long awaitSpooled(final long position) throws IOException {
+    while (position >= spooled && !finished && failure == null) {
+      try {
+        wait();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for remote content", e);
+      }
+    }
+    if (failure != null) {
+      throw new IOException("Remote retrieval failed", failure);
+    }
+    if (position < spooled) {
+      return spooled - position;
+    }
+    return -1;
+  }
+
+  private class TeeInputStream
+      extends WrappingInputStream
+  {
+    private TeeInputStream(final InputStream wrappedStream) {
+      super(wrappedStream);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b != -1) {
+        teed(new byte[]{(byte) b}, 0, 1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b) throws IOException {
+      return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      final int read = super.read(b, off, len);
+      if (read > 0) {
+        teed(b, off, read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      // skipped bytes must be spooled too
+      final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+      final int read = read(buffer, 0, buffer.length);
+      return read < 0 ? 0 : read;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      }
+      finally {
+        teeClosed();
+      }
+    }
+  }
+
+  private class SpoolContentLocator
+      extends AbstractContentLocator
+  {
+    private final ByteSource fallback;
+
+    private SpoolContentLocator(final ByteSource fallback) {
+      super(mimeType, false, length);
+      this.fallback = checkNotNull(fallback);
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      if (acquire()) {
+        try {
+          return new SpoolInputStream(new RandomAccessFile(spoolFile, "r"));
+        }
+        catch (IOException e) {
+          release();
+          throw e;
+        }
+      }
+      synchronized (InFlightRemoteRetrieval.this) {
+        if (failure != null) {
+          throw new IOException("Remote retrieval failed", failure);
+        }
+      }
+      // already cached and spool is gone
+      return fallback.openStream();
+    }
+  }
+
+  private class SpoolInputStream
+      extends InputStream
+  {
+    private final RandomAccessFile spool;
+
+    private long position;
+
+    private boolean closed;
+
+    private SpoolInputStream(final RandomAccessFile spool) {
+      this.spool = spool;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      final int read = read(b, 0, 1);
+      return read == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      final long available = awaitSpooled(position);
+      if (available < 0) {
+        return -1;
+      }
+      spool.seek(position);
+      final int read = spool.read(b, off, (int) Math.min(len, available));
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        try {
+          spool.close();
+        }
+        finally {
+          release();
+        }
+      }
+    }
+  }
+}
@@ -52,6 +52,7 @@ import org.sonatype.nexus.proxy.registry.RepositoryTypeDescriptor;
 import org.sonatype.nexus.proxy.registry.RepositoryTypeRegistry;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
+import org.sonatype.nexus.proxy.storage.local.FileImportingLocalRepositoryStorage;
 import org.sonatype.nexus.proxy.targets.TargetSet;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
 import org.sonatype.nexus.util.PathUtils;
@@ -211,6 +212,8 @@ public class DefaultRepositoryRouter
           StorageItem item = fromRoute.getTargetedRepository().retrieveItem(from);
 
           if (item instanceof StorageFileItem) {
+            // let the target LS import (link) the content if able to, instead of copying it
+            to.getRequestContext().put(FileImportingLocalRepositoryStorage.IMPORT_SOURCE_KEY, item);
             try {
               toRoute.getTargetedRepository().storeItem(to, ((StorageFileItem) item).getInputStream(),
                   item.getRepositoryItemAttributes().asMap());
@@ -219,6 +222,9 @@ public class DefaultRepositoryRouter
               // XXX: this is nonsense, to box IOException into subclass of IOException!
               throw new LocalStorageException(e);
             }
+            finally {
+              to.getRequestContext().remove(FileImportingLocalRepositoryStorage.IMPORT_SOURCE_KEY);
+            }
           }
           else if (item instanceof StorageCollectionItem) {
             toRoute.getTargetedRepository().createCollection(to,
@@ -16,7 +16,6 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import org.sonatype.nexus.mime.MimeSupport;
@@ -153,17 +152,9 @@ public abstract class AbstractLocalRepositoryStorage
       throws LocalStorageException
   {
     try {
-      // replace content locator
-      ChecksummingContentLocator sha1cl =
-          new ChecksummingContentLocator(item.getContentLocator(), MessageDigest.getInstance("SHA1"),
-              StorageFileItem.DIGEST_SHA1_KEY, item.getItemContext());
-
-      // md5 is deprecated but still calculated
-      ChecksummingContentLocator md5cl =
-          new ChecksummingContentLocator(sha1cl, MessageDigest.getInstance("MD5"),
-              StorageFileItem.DIGEST_MD5_KEY, item.getItemContext());
-
-      item.setContentLocator(md5cl);
+      // replace content locator, digests are calculated while content is being stored
+      item.setContentLocator(new ChecksummingContentLocator(item.getContentLocator(),
+          ChecksummingContentLocator.newItemDigests(), item.getItemContext()));
     }
     catch (NoSuchAlgorithmException e) {
       throw new LocalStorageException(
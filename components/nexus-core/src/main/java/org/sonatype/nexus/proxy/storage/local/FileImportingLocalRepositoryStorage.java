@@ -0,0 +1,43 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local;
+
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
+
+/**
+ * Optional capability of a {@link LocalRepositoryStorage}, able to import the content of a file item of another
+ * repository without copying it byte by byte (ie. by linking the file backing it, when both repositories reside on
+ * same volume). When an import is not possible, implementations must fall back to plain
+ * {@link LocalRepositoryStorage#storeItem(Repository, org.sonatype.nexus.proxy.item.StorageItem)}.
+ *
+ * @since 3.0
+ */
+public interface FileImportingLocalRepositoryStorage
+    extends LocalRepositoryStorage
+{
+  /**
+   * Key of the request context entry holding the source {@link StorageFileItem} whose content is being stored by the
+   * request. Only entries put directly into the context of the storing request are considered, not inherited ones.
+   */
+  String IMPORT_SOURCE_KEY = FileImportingLocalRepositoryStorage.class.getName() + ".source";
+
+  /**
+   * Stores the item, having same content as the source item. The digests of the source item are carried over to the
+   * stored item, and are not recalculated when content was imported without copying it.
+   */
+  void importItem(Repository repository, StorageFileItem item, StorageFileItem source)
+      throws UnsupportedStorageOperationException, LocalStorageException;
+}
@@ -0,0 +1,249 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.configuration.application.ApplicationDirectories;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.nexus.util.file.DirSupport;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Content addressable store of file contents, keyed by their SHA1, shared by all repositories using
+ * {@link BlobStoreLocalRepositoryStorage}. Stored files are hard links to their blob, hence the file system itself
+ * keeps the path to blob mapping, and the link count of a blob is its reference count. Blobs not referenced anymore
+ * (link count 1) are periodically swept. Blobs are sharded into directories by the first 4 characters of their SHA1.
+ * Hard links require the blob directory and repository storage to reside on same volume, repositories elsewhere are
+ * stored without deduplication. Linked files share file system attributes (like last modified), hence files are
+ * deduplicated only if their last modified matches the one of the blob, and are never modified in place, as
+ * {@link DefaultFSPeer} always writes content to a new hidden target first. On file systems not exposing link counts,
+ * blobs could never be swept, hence nothing is deduplicated there.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class BlobStore
+    extends ComponentSupport
+{
+  /**
+   * Period of sweeping not referenced blobs, in minutes.
+   */
+  private static final long SWEEP_PERIOD = SystemPropertiesHelper.getLong(BlobStore.class.getName() + ".sweepPeriod",
+      60L);
+
+  private static final String LINK_SUFFIX = ".nx-link";
+
+  private final File blobDir;
+
+  private final Striped<Lock> locks = Striped.lock(64);
+
+  private final AtomicBoolean sweeperStarted = new AtomicBoolean(false);
+
+  private volatile Boolean linkCountSupported;
+
+  @Inject
+  public BlobStore(final ApplicationDirectories applicationDirectories) {
+    this(applicationDirectories.getWorkDirectory("blobs"));
+  }
+
+  @VisibleForTesting
+  BlobStore(final File blobDir) {
+    this.blobDir = checkNotNull(blobDir);
+  }
+
+  @VisibleForTesting
+  File getBlob(final String sha1) {
+    return new File(blobDir, sha1.substring(0, 2) + File.separator + sha1.substring(2, 4) + File.separator + sha1);
+  }
+
+  /**
+   * Moves stored content (hidden target) to target, sharing its content with the blob of same SHA1. If the blob is
+   * present already, target is linked to the blob, and hidden target is dropped. Otherwise hidden target becomes the
+   * blob (is linked to it), and is left to caller to be renamed to target as usual.
+   *
+   * @return {@code true} if target is in place, {@code false} if caller should rename hidden target to target.
+   */
+  boolean store(final File hiddenTarget, final String sha1, final File target) {
+    if (!isLinkCountSupported()) {
+      return false;
+    }
+    maybeStartSweeper();
+    final File blob = getBlob(sha1);
+    final Lock lock = locks.get(sha1);
+    lock.lock();
+    try {
+      if (blob.isFile()) {
+        if (blob.length() != hiddenTarget.length()) {
+          log.warn("Blob {} length differs from content to be stored {}, not deduplicating", blob, hiddenTarget);
+          return false;
+        }
+        if (blob.lastModified() != hiddenTarget.lastModified()) {
+          // linking would change last modified of either this or all the other files sharing the blob
+          return false;
+        }
+        final File link = new File(hiddenTarget.getPath() + LINK_SUFFIX);
+        boolean linked = false;
+        try {
+          Files.createLink(link.toPath(), blob.toPath());
+          Files.move(link.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          linked = true;
+          // rename is no-op if target is already a link of blob, leaving link in place
+          Files.deleteIfExists(link.toPath());
+          Files.delete(hiddenTarget.toPath());
+        }
+        catch (IOException e) {
+          if (linked) {
+            deleteQuietly(hiddenTarget);
+          }
+          else {
+            log.debug("Could not link {} to blob {}, not deduplicating", target, blob, e);
+            deleteQuietly(link);
+          }
+        }
+        return linked;
+      }
+      else {
+        try {
+          DirSupport.mkdir(blob.getParentFile().toPath());
+          Files.createLink(blob.toPath(), hiddenTarget.toPath());
+        }
+        catch (IOException e) {
+          log.debug("Could not link {} to blob {}, not deduplicating", hiddenTarget, blob, e);
+          deleteQuietly(blob);
+        }
+        return false;
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Deletes blobs not referenced by any stored file.
+   *
+   * @return the count of deleted blobs.
+   */
+  int sweep() throws IOException {
+    if (!blobDir.isDirectory()) {
+      return 0;
+    }
+    final int[] swept = {0};
+    Files.walkFileTree(blobDir.toPath(), new SimpleFileVisitor<Path>()
+    {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+        final String sha1 = file.getFileName().toString();
+        final Lock lock = locks.get(sha1);
+        lock.lock();
+        try {
+          if (getLinkCount(file) == 1) {
+            Files.deleteIfExists(file);
+            swept[0]++;
+          }
+        }
+        finally {
+          lock.unlock();
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return swept[0];
+  }
+
+  /**
+   * Returns {@code true} if file system of blob directory exposes link counts, without which the blobs could not be
+   * swept.
+   */
+  @VisibleForTesting
+  boolean isLinkCountSupported() {
+    if (linkCountSupported == null) {
+      try {
+        DirSupport.mkdir(blobDir.toPath());
+        linkCountSupported = Files.getFileStore(blobDir.toPath()).supportsFileAttributeView("unix");
+      }
+      catch (IOException e) {
+        log.debug("Could not determine file store of {}", blobDir, e);
+        linkCountSupported = false;
+      }
+      if (!linkCountSupported) {
+        log.warn("File system of {} does not expose link counts, content will not be deduplicated", blobDir);
+      }
+    }
+    return linkCountSupported;
+  }
+
+  private int getLinkCount(final Path file) throws IOException {
+    try {
+      return (Integer) Files.getAttribute(file, "unix:nlink");
+    }
+    catch (UnsupportedOperationException | IllegalArgumentException e) {
+      // link count not known, keep it
+      return -1;
+    }
+  }
+
+  private void maybeStartSweeper() {
+    if (SWEEP_PERIOD > 0 && sweeperStarted.compareAndSet(false, true)) {
+      final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("nxblobstore-sweeper").setDaemon(true).build()
+      );
+      sweeper.scheduleWithFixedDelay(new Runnable()
+      {
+        @Override
+        public void run() {
+          try {
+            final int swept = sweep();
+            log.debug("Swept {} not referenced blobs", swept);
+          }
+          catch (Exception e) {
+            log.warn("Could not sweep blobs in {}", blobDir, e);
+          }
+        }
+      }, SWEEP_PERIOD, SWEEP_PERIOD, TimeUnit.MINUTES);
+    }
+  }
+
+  private void deleteQuietly(final File file) {
+    try {
+      Files.deleteIfExists(file.toPath());
+    }
+    catch (IOException e) {
+      // best effort
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link FSPeer} storing file contents deduplicated in {@link BlobStore}, by their SHA1 calculated while they are
+ * being written.
+ *
+ * @since 3.0
+ */
+public class BlobStoreFSPeer
+    extends DefaultFSPeer
+{
+  private final BlobStore blobStore;
+
+  public BlobStoreFSPeer(final BlobStore blobStore) {
+    this.blobStore = checkNotNull(blobStore);
+  }
+
+  @Override
+  protected void commitHiddenTarget(final StorageItem item, final File hiddenTarget, final File target)
+      throws IOException
+  {
+    // only trust digest calculated while this very item was written (it is not inherited from request context)
+    if (item instanceof StorageFileItem && item.getItemContext().containsKey(StorageFileItem.DIGEST_SHA1_KEY, false)
+        && blobStore.store(hiddenTarget, String.valueOf(item.getItemContext().get(StorageFileItem.DIGEST_SHA1_KEY)),
+        target)) {
+      return;
+    }
+    super.commitHiddenTarget(item, hiddenTarget, target);
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.mime.MimeSupport;
+import org.sonatype.nexus.proxy.item.LinkPersister;
+import org.sonatype.nexus.proxy.wastebasket.Wastebasket;
+
+/**
+ * LocalRepositoryStorage like {@link DefaultFSLocalRepositoryStorage}, but storing byte-identical files (even across
+ * repositories) only once, in the {@link BlobStore}.
+ *
+ * @since 3.0
+ */
+@Singleton
+@Named(BlobStoreLocalRepositoryStorage.PROVIDER_STRING)
+public class BlobStoreLocalRepositoryStorage
+    extends DefaultFSLocalRepositoryStorage
+{
+  public static final String PROVIDER_STRING = "file-blobstore";
+
+  @Inject
+  public BlobStoreLocalRepositoryStorage(final Wastebasket wastebasket, final LinkPersister linkPersister,
+                                         final MimeSupport mimeSupport, final BlobStore blobStore)
+  {
+    super(wastebasket, linkPersister, mimeSupport, new BlobStoreFSPeer(blobStore));
+  }
+
+  @Override
+  public String getProviderId() {
+    return PROVIDER_STRING;
+  }
+}
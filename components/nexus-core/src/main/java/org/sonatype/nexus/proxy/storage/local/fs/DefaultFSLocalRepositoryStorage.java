@@ -51,6 +51,7 @@ import org.sonatype.nexus.proxy.item.uid.IsItemAttributeMetacontentAttribute;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.local.AbstractLocalRepositoryStorage;
+import org.sonatype.nexus.proxy.storage.local.FileImportingLocalRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.local.LocalStorageContext;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
 import org.sonatype.nexus.proxy.wastebasket.Wastebasket;
@@ -72,6 +73,7 @@ import static org.sonatype.nexus.proxy.ItemNotFoundException.reasonFor;
 @Named(DefaultFSLocalRepositoryStorage.PROVIDER_STRING)
 public class DefaultFSLocalRepositoryStorage
     extends AbstractLocalRepositoryStorage
+    implements FileImportingLocalRepositoryStorage
 {
   public static final String PROVIDER_STRING = "file";
 
@@ -347,6 +349,56 @@ public class DefaultFSLocalRepositoryStorage
       }
     }
 
+    storeAttributes(repository, item, target);
+  }
+
+  /**
+   * Imports the item by linking the file backing the source item, when possible. Otherwise, the item is stored as
+   * usual, by copying the content of it.
+   *
+   * @since 3.0
+   */
+  @Override
+  public void importItem(final Repository repository, final StorageFileItem item, final StorageFileItem source)
+      throws UnsupportedStorageOperationException, LocalStorageException
+  {
+    if (source.getContentLocator() instanceof FileContentLocator) {
+      final File sourceFile = ((FileContentLocator) source.getContentLocator()).getFile();
+      final File target = getFileFromBase(repository, item.getResourceStoreRequest());
+
+      item.setStoredLocally(System.currentTimeMillis());
+      item.setRemoteChecked(item.getStoredLocally());
+      item.setExpired(false);
+
+      // link only content having same last modified as source item, as otherwise source was replaced since it was
+      // retrieved, and its digests would not match the linked content
+      final boolean linked = getFSPeer().linkItem(repository, getBaseDir(repository, item.getResourceStoreRequest()),
+          item, target, sourceFile, source.getModified());
+
+      if (linked) {
+        // content was not consumed, see NEXUS-5468 in storeItem
+        if (item.getContentLocator() instanceof Closeable) {
+          IOUtils.closeQuietly((Closeable) item.getContentLocator());
+        }
+        // content is same, carry over the digests, they will be lifted from context and not recalculated
+        for (String key : new String[]{
+            StorageFileItem.DIGEST_SHA1_KEY, StorageFileItem.DIGEST_MD5_KEY, StorageFileItem.DIGEST_SHA256_KEY}) {
+          final String digest = source.getRepositoryItemAttributes().get(key);
+          if (digest != null) {
+            item.getItemContext().put(key, digest);
+          }
+        }
+        storeAttributes(repository, item, target);
+        return;
+      }
+    }
+
+    storeItem(repository, item);
+  }
+
+  private void storeAttributes(final Repository repository, final StorageItem item, final File target)
+      throws LocalStorageException
+  {
     if (item instanceof StorageFileItem) {
       // replace content locator transparently, if we just consumed a non-reusable one
       // Hint: in general, those items coming from user uploads or remote proxy caching requests are non
@@ -12,18 +12,22 @@
  */
 package org.sonatype.nexus.proxy.storage.local.fs;
 
-import java.io.BufferedOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -43,12 +47,15 @@ import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
 import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.nexus.util.file.DirSupport;
-import org.sonatype.nexus.util.io.StreamSupport;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
 import org.sonatype.sisu.goodies.common.Throwables2;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.TimerContext;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sonatype.nexus.proxy.ItemNotFoundException.reasonFor;
@@ -72,6 +79,56 @@ public class DefaultFSPeer
 
   private static final String REPO_TMP_FOLDER = ".nexus/tmp";
 
+  /**
+   * Durability of stored files, see {@link Durability}.
+   *
+   * @since 3.0
+   */
+  private static final Durability DURABILITY = Durability.valueOf(SystemPropertiesHelper.getString(
+      DefaultFSPeer.class.getName() + ".durability", Durability.NONE.name()).toUpperCase(Locale.ENGLISH));
+
+  /**
+   * Time in milliseconds a {@link Durability#GROUP_COMMIT} batch waits for concurrent writers to join.
+   *
+   * @since 3.0
+   */
+  private static final long GROUP_COMMIT_WINDOW = SystemPropertiesHelper.getLong(
+      DefaultFSPeer.class.getName() + ".groupCommitWindow", 5L);
+
+  /**
+   * Maximum count of copy buffers kept for reuse.
+   *
+   * @since 3.0
+   */
+  private static final int COPY_BUFFER_POOL_SIZE = SystemPropertiesHelper.getInteger(
+      DefaultFSPeer.class.getName() + ".copyBufferPoolSize", 32);
+
+  /**
+   * Whether items imported from other repositories are stored as hard links of their source files when possible.
+   *
+   * @since 3.0
+   */
+  private static final boolean LINKING = SystemPropertiesHelper.getBoolean(
+      DefaultFSPeer.class.getName() + ".linking", true);
+
+  private final Durability durability;
+
+  private final GroupCommitter groupCommitter;
+
+  private final BlockingQueue<byte[]> copyBuffers = new ArrayBlockingQueue<byte[]>(COPY_BUFFER_POOL_SIZE);
+
+  private final MetricsRegistry metricsRegistry = Metrics.defaultRegistry();
+
+  public DefaultFSPeer() {
+    this(DURABILITY, GROUP_COMMIT_WINDOW);
+  }
+
+  @VisibleForTesting
+  DefaultFSPeer(final Durability durability, final long groupCommitWindow) {
+    this.durability = checkNotNull(durability);
+    this.groupCommitter = durability == Durability.GROUP_COMMIT ? new GroupCommitter(groupCommitWindow) : null;
+  }
+
   @Override
   public boolean isReachable(final Repository repository, final File repositoryBaseDir,
                              final ResourceStoreRequest request, final File target)
@@ -115,10 +172,15 @@ public class DefaultFSPeer
       // NEXUS-4550: Part One, saving to "hidden" (temp) file
       // In case of error cleaning up only what needed
       // No locking needed, AbstractRepository took care of that
-      try (final InputStream is = cl.getContent(); final OutputStream os = new BufferedOutputStream(
-          new FileOutputStream(hiddenTarget), getCopyStreamBufferSize())) {
-        StreamSupport.copy(is, os, getCopyStreamBufferSize());
-        os.flush();
+      try (final InputStream is = cl.getContent();
+           final FileChannel os = FileChannel.open(hiddenTarget.toPath(), StandardOpenOption.WRITE,
+               StandardOpenOption.TRUNCATE_EXISTING)) {
+        final long written = copy(is, os);
+        force(repository, os);
+        if (repository != null) {
+          metricsRegistry.newMeter(DefaultFSPeer.class, "written", repository.getId(), "bytes", TimeUnit.SECONDS)
+              .mark(written);
+        }
       }
       catch (EOFException | RemoteStorageEOFException e)
       // NXCM-4852: Upload premature end (thrown by Jetty org.eclipse.jetty.io.EofException)
@@ -156,8 +218,9 @@ public class DefaultFSPeer
       uidLock.lock(Action.create);
 
       try {
-        handleRenameOperation(hiddenTarget, target);
-        target.setLastModified(item.getModified());
+        // set before commit, as target might end up sharing its inode (and last modified) with others
+        hiddenTarget.setLastModified(item.getModified());
+        commitHiddenTarget(item, hiddenTarget, target);
       }
       catch (IOException e) {
         // if we ARE NOT handling attributes, do proper cleanup in case of IOEx
@@ -200,6 +263,9 @@ public class DefaultFSPeer
       finally {
         uidLock.unlock();
       }
+
+      // make the rename durable too
+      forceDirectory(repository, target.getParentFile());
     }
     else {
       // we have no content, we talk about directory
@@ -213,6 +279,84 @@ public class DefaultFSPeer
     }
   }
 
+  @Override
+  public boolean linkItem(final Repository repository, final File repositoryBaseDir, final StorageItem item,
+                          final File target, final File source, final long sourceModified)
+      throws LocalStorageException
+  {
+    if (!LINKING || !source.isFile()) {
+      return false;
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug("Linking file {} to {}", source.getAbsolutePath(), target.getAbsolutePath());
+    }
+
+    mkDirs(repository, target.getParentFile());
+
+    // link to "hidden" target first, just like when storing, to not expose target if rename fails
+    final File hiddenTarget = getHiddenTarget(repository, repositoryBaseDir, target, item);
+    try {
+      Files.delete(hiddenTarget.toPath());
+      Files.createLink(hiddenTarget.toPath(), source.toPath());
+    }
+    catch (IOException | UnsupportedOperationException e) {
+      // source is on other volume, or file system does not support hard links
+      log.debug("Could not link file {}, will copy it", source.getAbsolutePath(), e);
+      try {
+        Files.deleteIfExists(hiddenTarget.toPath());
+      }
+      catch (IOException e1) {
+        // best effort to delete, caller will store the item anyway
+      }
+      return false;
+    }
+
+    // checked on the link, as files are never modified in place, it is race free
+    if (hiddenTarget.lastModified() != sourceModified) {
+      log.debug("File {} was replaced, will copy it", source.getAbsolutePath());
+      try {
+        Files.deleteIfExists(hiddenTarget.toPath());
+      }
+      catch (IOException e) {
+        // best effort to delete, caller will store the item anyway
+      }
+      return false;
+    }
+
+    final RepositoryItemUidLock uidLock = item.getRepositoryItemUid().getLock();
+    uidLock.lock(Action.create);
+
+    try {
+      // Note: last modified is not set, as the file is shared with source
+      commitHiddenTarget(item, hiddenTarget, target);
+      // rename is no-op if target is already a link of source, leaving hidden target in place
+      Files.deleteIfExists(hiddenTarget.toPath());
+    }
+    catch (IOException e) {
+      try {
+        Files.deleteIfExists(hiddenTarget.toPath());
+      }
+      catch (IOException e1) {
+        // best effort to delete, we already have what to throw
+      }
+      throw new LocalStorageException(String.format(
+          "Got exception during linking on path \"%s\" (while moving to final destination)",
+          item.getRepositoryItemUid().toString()), e);
+    }
+    finally {
+      uidLock.unlock();
+    }
+
+    // make the link durable too
+    forceDirectory(repository, target.getParentFile());
+    if (repository != null) {
+      metricsRegistry.newMeter(DefaultFSPeer.class, "linked", repository.getId(), "bytes", TimeUnit.SECONDS)
+          .mark(target.length());
+    }
+    return true;
+  }
+
   @Override
   public void shredItem(final Repository repository, final File repositoryBaseDir,
                         final ResourceStoreRequest request, final File target)
@@ -335,10 +479,92 @@ public class DefaultFSPeer
 
   // ==
 
+  /**
+   * Copies content to the channel through a pooled buffer. Content is read from a stream, hence into a heap array,
+   * that is written as is: the channel copies it to its own (cached) direct buffer, a pooled direct buffer would just
+   * add a copy.
+   */
+  private long copy(final InputStream is, final FileChannel os)
+      throws IOException
+  {
+    byte[] buffer = copyBuffers.poll();
+    if (buffer == null) {
+      buffer = new byte[getCopyStreamBufferSize()];
+    }
+    try {
+      long count = 0;
+      int r;
+      while ((r = is.read(buffer)) != -1) {
+        final ByteBuffer bb = ByteBuffer.wrap(buffer, 0, r);
+        while (bb.hasRemaining()) {
+          os.write(bb);
+        }
+        count += r;
+      }
+      return count;
+    }
+    finally {
+      copyBuffers.offer(buffer);
+    }
+  }
+
+  /**
+   * Forces written content to disk, as configured {@link Durability} mandates.
+   */
+  private void force(final Repository repository, final FileChannel channel)
+      throws IOException
+  {
+    if (durability == Durability.NONE) {
+      return;
+    }
+    final TimerContext timerContext = repository != null
+        ? metricsRegistry.newTimer(DefaultFSPeer.class, "force", repository.getId()).time()
+        : null;
+    try {
+      if (durability == Durability.GROUP_COMMIT) {
+        groupCommitter.force(channel);
+      }
+      else {
+        channel.force(false);
+      }
+    }
+    finally {
+      if (timerContext != null) {
+        timerContext.stop();
+      }
+    }
+  }
+
+  /**
+   * Forces directory (entries) to disk, as configured {@link Durability} mandates.
+   */
+  private void forceDirectory(final Repository repository, final File directory)
+      throws LocalStorageException
+  {
+    if (durability == Durability.NONE) {
+      return;
+    }
+    try {
+      if (durability == Durability.GROUP_COMMIT) {
+        groupCommitter.forceDirectory(directory.toPath());
+      }
+      else {
+        GroupCommitter.forceDirectoryNow(directory.toPath());
+      }
+    }
+    catch (IOException e) {
+      throw new LocalStorageException(String.format(
+          "Could not force directory in repository %s to disk: \"%s\"",
+          RepositoryStringUtils.getHumanizedNameString(repository), directory.getAbsolutePath()), e);
+    }
+  }
+
+  // ==
+
   private static final String FILE_COPY_STREAM_BUFFER_SIZE_KEY = "upload.stream.bufferSize";
 
   private static final int FILE_COPY_STREAM_BUFFER_SIZE = SystemPropertiesHelper
-      .getInteger(FILE_COPY_STREAM_BUFFER_SIZE_KEY, 8192); // align with Java default bufSize (BufferedOutputStream)
+      .getInteger(FILE_COPY_STREAM_BUFFER_SIZE_KEY, 65536); // size of pooled copy buffers
 
   protected int getCopyStreamBufferSize() {
     return FILE_COPY_STREAM_BUFFER_SIZE;
@@ -346,6 +572,17 @@ public class DefaultFSPeer
 
   // ==
 
+  /**
+   * Moves the completely written hidden target to its final location, by default by renaming it.
+   *
+   * @since 3.0
+   */
+  protected void commitHiddenTarget(final StorageItem item, final File hiddenTarget, final File target)
+      throws IOException
+  {
+    handleRenameOperation(hiddenTarget, target);
+  }
+
   public static final String RENAME_RETRY_COUNT_KEY = "rename.retry.count";
 
   public static final int RENAME_RETRY_COUNT = SystemPropertiesHelper.getInteger(RENAME_RETRY_COUNT_KEY, 0);
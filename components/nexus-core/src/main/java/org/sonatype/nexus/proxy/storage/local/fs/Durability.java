@@ -0,0 +1,37 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+/**
+ * Durability of files stored by {@link DefaultFSPeer}, trading safety of stored content in case of a crash or power
+ * loss for store latency.
+ *
+ * @since 3.0
+ */
+public enum Durability
+{
+  /**
+   * Writing out content is left to the OS, a crash may lose or truncate recently stored files.
+   */
+  NONE,
+
+  /**
+   * Every writer forces content and directory entry of stored file to disk before the store completes.
+   */
+  FSYNC,
+
+  /**
+   * Like {@link #FSYNC}, but concurrent writers are batched, and a batch is forced to disk at once.
+   */
+  GROUP_COMMIT
+}
@@ -42,6 +42,18 @@ public interface FSPeer
   public void storeItem(Repository repository, File repositoryBaseDir, StorageItem item, File target, ContentLocator cl)
       throws UnsupportedStorageOperationException, LocalStorageException;
 
+  /**
+   * Stores the item by linking the source file to target, without copying its content. Linking is possible only if
+   * source and target reside on same volume, and the linked file has the expected last modified (ie. the source was
+   * not replaced meanwhile).
+   *
+   * @return {@code true} if item was stored, {@code false} if linking was not possible and nothing was stored.
+   * @since 3.0
+   */
+  public boolean linkItem(Repository repository, File repositoryBaseDir, StorageItem item, File target, File source,
+                          long sourceModified)
+      throws LocalStorageException;
+
   public void shredItem(Repository repository, File repositoryBaseDir, ResourceStoreRequest request, File target)
       throws ItemNotFoundException, UnsupportedStorageOperationException, LocalStorageException;
 
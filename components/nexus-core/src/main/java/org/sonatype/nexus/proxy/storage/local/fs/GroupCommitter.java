@@ -0,0 +1,140 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forces files and directories to disk in batches for concurrent writers. The first writer joining a batch waits for
+ * the commit window to let others join, then forces all files and (distinct) directories of the batch on behalf of
+ * all of them, while others wait for the batch to complete.
+ *
+ * @since 3.0
+ */
+class GroupCommitter
+{
+  private static final Logger log = LoggerFactory.getLogger(GroupCommitter.class);
+
+  private final long windowNanos;
+
+  private Batch current;
+
+  GroupCommitter(final long windowMillis) {
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+  }
+
+  /**
+   * Forces content of given (open) file channel to disk, once the batch it joined is committed.
+   */
+  void force(final FileChannel channel) throws IOException {
+    join(channel, null);
+  }
+
+  /**
+   * Forces given directory to disk, once the batch it joined is committed.
+   */
+  void forceDirectory(final Path directory) throws IOException {
+    join(null, directory);
+  }
+
+  private void join(final FileChannel channel, final Path directory) throws IOException {
+    final Batch batch;
+    final boolean leader;
+    synchronized (this) {
+      leader = current == null;
+      if (leader) {
+        current = new Batch();
+      }
+      batch = current;
+      if (channel != null) {
+        batch.channels.add(channel);
+      }
+      else {
+        batch.directories.add(directory);
+      }
+    }
+    if (leader) {
+      Uninterruptibles.sleepUninterruptibly(windowNanos, TimeUnit.NANOSECONDS);
+      synchronized (this) {
+        current = null;
+      }
+      batch.commit();
+    }
+    batch.await(channel);
+  }
+
+  /**
+   * Forces a directory to disk, so renames into it are durable. Best effort, as not all platforms support opening
+   * directories (Windows for example).
+   */
+  static void forceDirectoryNow(final Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+    catch (IOException e) {
+      log.debug("Could not force directory {} to disk", directory, e);
+    }
+  }
+
+  private static class Batch
+  {
+    private final List<FileChannel> channels = new ArrayList<FileChannel>();
+
+    private final Set<Path> directories = new LinkedHashSet<Path>();
+
+    private final Map<FileChannel, IOException> failures = new HashMap<FileChannel, IOException>();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private void commit() {
+      try {
+        for (FileChannel channel : channels) {
+          try {
+            channel.force(false);
+          }
+          catch (IOException e) {
+            failures.put(channel, e);
+          }
+        }
+        for (Path directory : directories) {
+          forceDirectoryNow(directory);
+        }
+      }
+      finally {
+        done.countDown();
+      }
+    }
+
+    private void await(final FileChannel channel) throws IOException {
+      Uninterruptibles.awaitUninterruptibly(done);
+      if (channel != null && failures.containsKey(channel)) {
+        throw failures.get(channel);
+      }
+    }
+  }
+}
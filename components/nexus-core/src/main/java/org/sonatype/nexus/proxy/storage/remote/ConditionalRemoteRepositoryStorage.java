@@ -0,0 +1,45 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.remote;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.RemoteStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.repository.ProxyRepository;
+
+/**
+ * Optional capability of a {@link RemoteRepositoryStorage} to revalidate an aged, locally cached item using a single
+ * conditional request, instead of checking for newer remote item first, and retrieving it with a second request.
+ *
+ * @since 3.0
+ */
+public interface ConditionalRemoteRepositoryStorage
+{
+  /**
+   * Key of item attribute holding the entity tag remote peer sent along with item content, if any.
+   */
+  String REMOTE_ETAG_KEY = "remote.etag";
+
+  /**
+   * Retrieves the item from remote peer, unless remote item is not modified compared to passed in locally cached
+   * item, in which case {@code null} is returned.
+   */
+  @Nullable
+  AbstractStorageItem retrieveItemIfModified(ProxyRepository repository, ResourceStoreRequest request, String baseUrl,
+                                             StorageItem localItem)
+      throws ItemNotFoundException, RemoteStorageException;
+}
@@ -0,0 +1,105 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.remote;
+
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Lets the issuer of a request abort the outbound requests made by remote storages on behalf of it, as blocking
+ * transports do not respond to thread interruption while connecting or awaiting the response. Remote storages
+ * register their in-flight outbound requests with the aborter found in the request context, if any. Once aborted,
+ * outbound requests registered later are aborted right away.
+ *
+ * @since 3.0
+ */
+public class RemoteRequestAborter
+{
+  /**
+   * Request context key of the aborter.
+   */
+  public static final String CTX_KEY = RemoteRequestAborter.class.getName();
+
+  /**
+   * An in-flight outbound request.
+   */
+  public interface Abortable
+  {
+    void abort();
+  }
+
+  private final Set<Abortable> inFlight = Sets.newHashSet();
+
+  private boolean aborted;
+
+  /**
+   * Returns the aborter of the request, or {@code null} if request is not abortable.
+   */
+  @Nullable
+  public static RemoteRequestAborter get(final ResourceStoreRequest request) {
+    return (RemoteRequestAborter) request.getRequestContext().get(CTX_KEY);
+  }
+
+  /**
+   * Puts a new aborter into the context of request and returns it.
+   */
+  public static RemoteRequestAborter install(final ResourceStoreRequest request) {
+    final RemoteRequestAborter aborter = new RemoteRequestAborter();
+    request.getRequestContext().put(CTX_KEY, aborter);
+    return aborter;
+  }
+
+  /**
+   * Registers an outbound request, that is aborted immediately if this aborter was already aborted.
+   */
+  public void register(final Abortable abortable) {
+    synchronized (this) {
+      if (!aborted) {
+        inFlight.add(abortable);
+        return;
+      }
+    }
+    abortable.abort();
+  }
+
+  /**
+   * Unregisters an outbound request once it is done.
+   */
+  public synchronized void unregister(final Abortable abortable) {
+    inFlight.remove(abortable);
+  }
+
+  public synchronized boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * Aborts the registered outbound requests and all the ones registered later.
+   */
+  public void abort() {
+    final Abortable[] abortables;
+    synchronized (this) {
+      aborted = true;
+      abortables = inFlight.toArray(new Abortable[inFlight.size()]);
+      inFlight.clear();
+    }
+    for (Abortable abortable : abortables) {
+      abortable.abort();
+    }
+  }
+}
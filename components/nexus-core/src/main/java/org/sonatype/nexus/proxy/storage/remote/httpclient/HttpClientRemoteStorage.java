@@ -17,6 +17,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.Date;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -32,6 +33,7 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.RemoteAccessDeniedException;
 import org.sonatype.nexus.proxy.RemoteAuthenticationNeededException;
 import org.sonatype.nexus.proxy.RemoteStorageException;
+import org.sonatype.nexus.proxy.RemoteStorageTransportAbortedException;
 import org.sonatype.nexus.proxy.RemoteStorageTransportOverloadedException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
@@ -44,9 +46,11 @@ import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.ProxyRepository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.remote.AbstractHTTPRemoteRepositoryStorage;
+import org.sonatype.nexus.proxy.storage.remote.ConditionalRemoteRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.remote.DefaultRemoteStorageContext.BooleanFlagHolder;
 import org.sonatype.nexus.proxy.storage.remote.RemoteItemNotFoundException;
 import org.sonatype.nexus.proxy.storage.remote.RemoteRepositoryStorage;
+import org.sonatype.nexus.proxy.storage.remote.RemoteRequestAborter;
 import org.sonatype.nexus.proxy.storage.remote.RemoteStorageContext;
 import org.sonatype.nexus.proxy.storage.remote.http.QueryStringBuilder;
 
@@ -87,7 +91,7 @@ import org.slf4j.LoggerFactory;
 @Singleton
 public class HttpClientRemoteStorage
     extends AbstractHTTPRemoteRepositoryStorage
-    implements RemoteRepositoryStorage
+    implements RemoteRepositoryStorage, ConditionalRemoteRepositoryStorage
 {
 
   static final Logger outboundRequestLog = LoggerFactory.getLogger("remote.storage.outbound");
@@ -171,6 +175,27 @@ public class HttpClientRemoteStorage
   public AbstractStorageItem retrieveItem(final ProxyRepository repository, final ResourceStoreRequest request,
                                           final String baseUrl)
       throws ItemNotFoundException, RemoteStorageException
+  {
+    return doRetrieveItem(repository, request, baseUrl, null);
+  }
+
+  /**
+   * Sends a conditional GET, carrying the entity tag and modification time of the local item.
+   *
+   * @since 3.0
+   */
+  @Override
+  public AbstractStorageItem retrieveItemIfModified(final ProxyRepository repository,
+                                                    final ResourceStoreRequest request, final String baseUrl,
+                                                    final StorageItem localItem)
+      throws ItemNotFoundException, RemoteStorageException
+  {
+    return doRetrieveItem(repository, request, baseUrl, localItem);
+  }
+
+  private AbstractStorageItem doRetrieveItem(final ProxyRepository repository, final ResourceStoreRequest request,
+                                             final String baseUrl, final StorageItem localItem)
+      throws ItemNotFoundException, RemoteStorageException
   {
     final URL remoteURL =
         appendQueryString(repository, request, getAbsoluteUrlFromBase(baseUrl, request.getRequestPath()));
@@ -187,10 +212,21 @@ public class HttpClientRemoteStorage
     }
 
     final HttpGet method = new HttpGet(url);
+    if (localItem != null) {
+      final String etag = localItem.getRepositoryItemAttributes().get(REMOTE_ETAG_KEY);
+      if (etag != null) {
+        method.setHeader("If-None-Match", etag);
+      }
+      method.setHeader("If-Modified-Since", DateUtils.formatDate(new Date(localItem.getModified())));
+    }
 
     final HttpResponse httpResponse = executeRequest(repository, request, method, baseUrl, true);
 
-    if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+    if (localItem != null && httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+      release(httpResponse);
+      return null;
+    }
+    else if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
       InputStream is;
       try {
         is = new Hc4InputStream(repository,
@@ -211,6 +247,10 @@ public class HttpClientRemoteStorage
         httpItem.setRemoteUrl(remoteURL.toString());
         httpItem.setModified(makeDateFromHeader(httpResponse.getFirstHeader("last-modified")));
         httpItem.setCreated(httpItem.getModified());
+        final Header etag = httpResponse.getFirstHeader("etag");
+        if (etag != null) {
+          httpItem.getRepositoryItemAttributes().put(REMOTE_ETAG_KEY, etag.getValue());
+        }
 
         return httpItem;
       }
@@ -494,6 +534,16 @@ public class HttpClientRemoteStorage
     httpRequest.setHeader("Accept-Encoding", "gzip,deflate,identity");
     httpRequest.setHeader("Cache-Control", "no-cache");
 
+    // connecting and awaiting the response do not respond to interruption, let the issuer abort them
+    final RemoteRequestAborter aborter = RemoteRequestAborter.get(request);
+    final RemoteRequestAborter.Abortable abortable = new RemoteRequestAborter.Abortable()
+    {
+      @Override
+      public void abort() {
+        httpRequest.abort();
+      }
+    };
+
     HttpResponse httpResponse = null;
     try {
       final BasicHttpContext httpContext = new BasicHttpContext();
@@ -502,7 +552,17 @@ public class HttpClientRemoteStorage
         httpContext.setAttribute(CONTENT_RETRIEVAL_MARKER_KEY, Boolean.TRUE);
       }
 
-      httpResponse = httpClient.execute(httpRequest, httpContext);
+      if (aborter != null) {
+        aborter.register(abortable);
+      }
+      try {
+        httpResponse = httpClient.execute(httpRequest, httpContext);
+      }
+      finally {
+        if (aborter != null) {
+          aborter.unregister(abortable);
+        }
+      }
       final int statusCode = httpResponse.getStatusLine().getStatusCode();
 
       final Header httpServerHeader = httpResponse.getFirstHeader("server");
@@ -547,6 +607,12 @@ public class HttpClientRemoteStorage
     }
     catch (IOException ex) {
       release(httpResponse);
+      if (aborter != null && aborter.isAborted()) {
+        throw new RemoteStorageTransportAbortedException(repository,
+            "Aborted while executing " + httpRequest.getMethod() + " method [repositoryId=\""
+                + repository.getId() + "\", requestPath=\"" + request.getRequestPath() + "\", remoteUrl=\""
+                + methodUri.toASCIIString() + "\"]", ex);
+      }
       throw new RemoteStorageException("Transport error while executing " + httpRequest.getMethod()
           + " method [repositoryId=\"" + repository.getId() + "\", requestPath=\"" + request.getRequestPath()
           + "\", remoteUrl=\"" + methodUri.toASCIIString() + "\"]", ex);
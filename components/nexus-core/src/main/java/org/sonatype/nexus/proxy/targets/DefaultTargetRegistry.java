@@ -40,6 +40,7 @@ import org.sonatype.nexus.proxy.events.TargetRegistryEventRemove;
 import org.sonatype.nexus.proxy.registry.ContentClass;
 import org.sonatype.nexus.proxy.registry.RepositoryTypeRegistry;
 import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 
 import org.codehaus.plexus.util.StringUtils;
@@ -57,6 +58,12 @@ public class DefaultTargetRegistry
     extends AbstractLastingConfigurable<List<CRepositoryTarget>>
     implements TargetRegistry
 {
+  /**
+   * Maximum count of (content class, path) results kept by path matcher.
+   */
+  private static final int MATCH_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+      DefaultTargetRegistry.class.getName() + ".matchCacheSize", 10000);
+
   private final RepositoryTypeRegistry repositoryTypeRegistry;
 
   private final ApplicationConfigurationValidator validator;
@@ -65,6 +72,9 @@ public class DefaultTargetRegistry
   // eagerly rebuilt on every configuration change
   private Map<String, Target> targets;
 
+  // path matcher over the targets above, rebuilt together with the view
+  private volatile TargetMatcher matcher;
+
   // ==
 
   @Inject
@@ -118,6 +128,7 @@ public class DefaultTargetRegistry
         }
       }
       targets = newView;
+      matcher = new TargetMatcher(newView.values(), MATCH_CACHE_SIZE);
     }
   }
 
@@ -212,23 +223,15 @@ public class DefaultTargetRegistry
   public Set<Target> getTargetsForContentClassPath(ContentClass contentClass, String path) {
     log.debug("Resolving targets for contentClass='{}' for path='{}'", contentClass.getId(), path);
 
-    final Set<Target> result = new HashSet<Target>();
-    for (Target t : getRepositoryTargets()) {
-      if (t.isPathContained(contentClass, path)) {
-        result.add(t);
-      }
-    }
-    return result;
+    return new HashSet<Target>(matcher.match(contentClass, path));
   }
 
   public TargetSet getTargetsForRepositoryPath(Repository repository, String path) {
     log.debug("Resolving targets for repository='{}' for path='{}'", repository.getId(), path);
 
     final TargetSet result = new TargetSet();
-    for (Target t : getRepositoryTargets()) {
-      if (t.isPathContained(repository.getRepositoryContentClass(), path)) {
-        result.addTargetMatch(new TargetMatch(t, repository));
-      }
+    for (Target t : matcher.match(repository.getRepositoryContentClass(), path)) {
+      result.addTargetMatch(new TargetMatch(t, repository));
     }
     return result;
   }
@@ -76,12 +76,20 @@ public class Target
     return Collections.unmodifiableSet(patternTexts);
   }
 
-  public boolean isPathContained(ContentClass contentClass, String path) {
+  Set<Pattern> getPatterns() {
+    return Collections.unmodifiableSet(patterns);
+  }
+
+  boolean isCompatible(ContentClass contentClass) {
     // if is the same or is compatible
     // make sure to check the inverse of the isCompatible too !!
-    if (StringUtils.equals(getContentClass().getId(), contentClass.getId())
+    return StringUtils.equals(getContentClass().getId(), contentClass.getId())
         || getContentClass().isCompatible(contentClass)
-        || contentClass.isCompatible(getContentClass())) {
+        || contentClass.isCompatible(getContentClass());
+  }
+
+  public boolean isPathContained(ContentClass contentClass, String path) {
+    if (isCompatible(contentClass)) {
       // look for pattern matching
       for (Pattern pattern : patterns) {
         if (pattern.matcher(path).matches()) {
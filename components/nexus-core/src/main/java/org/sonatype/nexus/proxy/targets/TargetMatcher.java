@@ -0,0 +1,171 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.targets;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.sonatype.nexus.proxy.registry.ContentClass;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Matches paths against a fixed set of targets at once. Patterns are indexed in a trie by their literal prefix, so
+ * for a path only the patterns whose prefix is a prefix of the path are evaluated, instead of every pattern of every
+ * target. Results are kept in a bounded LRU cache. Instances are immutable snapshots of the target set, and are
+ * rebuilt (and hence cache is dropped) whenever the targets change.
+ *
+ * @since 3.0
+ */
+class TargetMatcher
+{
+  private static final String META_CHARS = "\\[](){}.*+?^$|";
+
+  private static final String QUANTIFIER_CHARS = "?*+{";
+
+  private static final String MATCH_ALL = ".*";
+
+  private final Node root;
+
+  private final Map<String, Set<Target>> cache;
+
+  TargetMatcher(final Collection<Target> targets, final int cacheSize) {
+    this.root = new Node();
+    for (Target target : targets) {
+      for (Pattern pattern : target.getPatterns()) {
+        final Entry entry = new Entry(target, MATCH_ALL.equals(pattern.pattern()) ? null : pattern);
+        root.add(literalPrefix(pattern.pattern()), 0, entry);
+      }
+    }
+    this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).<String, Set<Target>>build().asMap();
+  }
+
+  /**
+   * Returns the targets compatible with given content class having at least one pattern matching the path. Same as
+   * filtering all targets with {@link Target#isPathContained(ContentClass, String)}.
+   */
+  Set<Target> match(final ContentClass contentClass, final String path) {
+    final String key = contentClass.getId() + ':' + path;
+    Set<Target> result = cache.get(key);
+    if (result == null) {
+      result = doMatch(contentClass, path);
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  private Set<Target> doMatch(final ContentClass contentClass, final String path) {
+    final Set<Target> result = new HashSet<Target>();
+    Node node = root;
+    node.collect(contentClass, path, result);
+    for (int i = 0; i < path.length(); i++) {
+      node = node.children.get(path.charAt(i));
+      if (node == null) {
+        break;
+      }
+      node.collect(contentClass, path, result);
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
+  /**
+   * Returns the literal string every input matched by the regular expression must start with, or empty string if
+   * unknown. Conservative: it stops at the first construct that is not a plain (or escaped) literal character, and
+   * gives up on alternations completely.
+   */
+  static String literalPrefix(final String regex) {
+    if (regex.indexOf('|') > -1) {
+      return "";
+    }
+    final StringBuilder prefix = new StringBuilder();
+    int i = regex.startsWith("^") ? 1 : 0;
+    while (i < regex.length()) {
+      final char c = regex.charAt(i);
+      final char literal;
+      final int next;
+      if (c == '\\') {
+        // escaped punctuation is literal, but \d, \Q, \1 and the like are not
+        if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+          break;
+        }
+        literal = regex.charAt(i + 1);
+        next = i + 2;
+      }
+      else if (META_CHARS.indexOf(c) > -1) {
+        break;
+      }
+      else {
+        literal = c;
+        next = i + 1;
+      }
+      // a quantified character is optional or repeated, so it cannot be part of the prefix
+      if (next < regex.length() && QUANTIFIER_CHARS.indexOf(regex.charAt(next)) > -1) {
+        break;
+      }
+      prefix.append(literal);
+      i = next;
+    }
+    return prefix.toString();
+  }
+
+  // ==
+
+  private static class Entry
+  {
+    private final Target target;
+
+    // null means "matches everything"
+    private final Pattern pattern;
+
+    private Entry(final Target target, final Pattern pattern) {
+      this.target = target;
+      this.pattern = pattern;
+    }
+  }
+
+  private static class Node
+  {
+    private final Map<Character, Node> children = new HashMap<Character, Node>();
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    private void add(final String prefix, final int depth, final Entry entry) {
+      if (depth == prefix.length()) {
+        entries.add(entry);
+        return;
+      }
+      Node child = children.get(prefix.charAt(depth));
+      if (child == null) {
+        child = new Node();
+        children.put(prefix.charAt(depth), child);
+      }
+      child.add(prefix, depth + 1, entry);
+    }
+
+    private void collect(final ContentClass contentClass, final String path, final Set<Target> result) {
+      for (Entry entry : entries) {
+        if (!result.contains(entry.target) && entry.target.isCompatible(contentClass)
+            && (entry.pattern == null || entry.pattern.matcher(path).matches())) {
+          result.add(entry.target);
+        }
+      }
+    }
+  }
+}
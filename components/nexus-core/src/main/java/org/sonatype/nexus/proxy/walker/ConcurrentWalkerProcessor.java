@@ -0,0 +1,40 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.walker;
+
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.walker.WalkerContext.TraversalType;
+
+/**
+ * Marker for {@link WalkerProcessor}s that are safe to be invoked concurrently. If all active processors of a
+ * {@link TraversalType#DEPTH_FIRST} walk are marked with this interface, {@link DefaultWalker} walks sibling
+ * collections in parallel. In that case:
+ * <ul>
+ * <li>{@link #beforeWalk(WalkerContext)} and {@link #afterWalk(WalkerContext)} are still invoked once, by the thread
+ * that started the walk.</li>
+ * <li>{@link #onCollectionEnter(WalkerContext, StorageCollectionItem)} of a collection happens before any other
+ * invocation for its members.</li>
+ * <li>{@link #onCollectionExit(WalkerContext, StorageCollectionItem)} of a collection happens after all the
+ * invocations for its whole subtree are done, as with serial depth-first walk.</li>
+ * <li>Members of one collection are processed by one thread, in the order of the listing, but sibling (and
+ * unrelated) collections are processed concurrently, by different threads.</li>
+ * </ul>
+ * Implementations must hence be thread safe, and must not modify {@link WalkerContext#getContext()} during walk. The
+ * {@link WalkerFilter} of the walk is invoked concurrently too.
+ *
+ * @since 3.0
+ */
+public interface ConcurrentWalkerProcessor
+    extends WalkerProcessor
+{
+}
@@ -12,10 +12,13 @@
  */
 package org.sonatype.nexus.proxy.walker;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.sonatype.nexus.proxy.walker.WalkerThrottleController.ThrottleInfo;
 
 /**
- * A simple single-threaded ThrottleInfo used in Walker implementation.
+ * A simple ThrottleInfo used in Walker implementation. Thread safe, as processing of items might happen concurrently
+ * (see {@link ConcurrentWalkerProcessor}).
  *
  * @author cstamas
  * @since 2.0
@@ -25,16 +28,17 @@ public class DefaultThrottleInfo
 {
   private final long walkStarted;
 
-  private long totalProcessItemSpentMillis;
+  private final AtomicLong totalProcessItemSpentMillis;
 
-  private long totalProcessItemInvocationCount;
+  private final AtomicLong totalProcessItemInvocationCount;
 
-  private long lastProcessItemEnterTime;
+  private final ThreadLocal<Long> lastProcessItemEnterTime;
 
   public DefaultThrottleInfo() {
     this.walkStarted = now();
-    this.totalProcessItemSpentMillis = 0;
-    this.totalProcessItemInvocationCount = 0;
+    this.totalProcessItemSpentMillis = new AtomicLong(0);
+    this.totalProcessItemInvocationCount = new AtomicLong(0);
+    this.lastProcessItemEnterTime = new ThreadLocal<Long>();
   }
 
   protected long now() {
@@ -42,17 +46,17 @@ public class DefaultThrottleInfo
   }
 
   public void enterProcessItem() {
-    this.lastProcessItemEnterTime = now();
+    lastProcessItemEnterTime.set(now());
   }
 
   public void exitProcessItem() {
-    totalProcessItemSpentMillis += now() - lastProcessItemEnterTime;
-    totalProcessItemInvocationCount++;
+    totalProcessItemSpentMillis.addAndGet(now() - lastProcessItemEnterTime.get());
+    totalProcessItemInvocationCount.incrementAndGet();
   }
 
   @Override
   public long getTotalProcessItemInvocationCount() {
-    return totalProcessItemInvocationCount;
+    return totalProcessItemInvocationCount.get();
   }
 
   @Override
@@ -16,7 +16,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
@@ -24,16 +33,24 @@ import org.sonatype.nexus.proxy.AccessDeniedException;
 import org.sonatype.nexus.proxy.IllegalOperationException;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.StorageException;
+import org.sonatype.nexus.proxy.events.NexusStoppedEvent;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.LocalStatus;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.nexus.proxy.walker.WalkerContext.TraversalType;
 import org.sonatype.scheduling.TaskInterruptedException;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * The Class Walker.
@@ -52,6 +69,52 @@ public class DefaultWalker
 
   public static final String WALKER_THROTTLE_INFO = Walker.class.getSimpleName() + ".throttleInfo";
 
+  /**
+   * Count of threads walking sibling collections in parallel, if all processors of the walk are
+   * {@link ConcurrentWalkerProcessor}s. Values less than 2 disable parallel walking.
+   *
+   * @since 3.0
+   */
+  private static final int PARALLELISM = SystemPropertiesHelper.getInteger(
+      DefaultWalker.class.getName() + ".parallelism", Runtime.getRuntime().availableProcessors());
+
+  private final EventBus eventBus;
+
+  private final ForkJoinPool pool;
+
+  @Inject
+  public DefaultWalker(final EventBus eventBus) {
+    this(eventBus, PARALLELISM);
+  }
+
+  @VisibleForTesting
+  DefaultWalker(final EventBus eventBus, final int parallelism) {
+    this.eventBus = checkNotNull(eventBus);
+    if (parallelism > 1) {
+      this.pool = new ForkJoinPool(parallelism, new ForkJoinWorkerThreadFactory()
+      {
+        @Override
+        public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+          final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+          thread.setName("nxwalker-" + thread.getPoolIndex());
+          return thread;
+        }
+      }, null, false);
+    }
+    else {
+      this.pool = null;
+    }
+    eventBus.register(this);
+  }
+
+  @Subscribe
+  public void on(final NexusStoppedEvent e) {
+    eventBus.unregister(this);
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
   @Override
   public void walk(WalkerContext context)
       throws WalkerException
@@ -86,7 +149,13 @@ public class DefaultWalker
               context.getFilter() != null ? context.getFilter() : new DefaultStoreWalkerFilter();
           try {
             if (StorageCollectionItem.class.isAssignableFrom(item.getClass())) {
-              int collCount = walkRecursive(0, context, filter, (StorageCollectionItem) item);
+              final int collCount;
+              if (isParallelWalk(context)) {
+                collCount = walkParallel(context, filter, (StorageCollectionItem) item);
+              }
+              else {
+                collCount = walkRecursive(0, context, filter, (StorageCollectionItem) item);
+              }
               context.getContext().put(WALKER_WALKED_COLLECTION_COUNT, collCount);
             }
             else {
@@ -238,6 +307,139 @@ public class DefaultWalker
     return collCount;
   }
 
+  /**
+   * Returns {@code true} if walk should be performed by {@link #walkParallel(WalkerContext, WalkerFilter,
+   * StorageCollectionItem)}, that is when enabled and not yet shut down, traversal is depth-first and all active
+   * processors are {@link ConcurrentWalkerProcessor}s.
+   *
+   * @since 3.0
+   */
+  protected boolean isParallelWalk(final WalkerContext context) {
+    if (pool == null || pool.isShutdown() || context.getTraversalType() != TraversalType.DEPTH_FIRST) {
+      return false;
+    }
+    for (WalkerProcessor processor : context.getProcessors()) {
+      if (processor.isActive() && !(processor instanceof ConcurrentWalkerProcessor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Depth-first walk, where sibling collections are walked in parallel by the fork-join pool of this walker. Members
+   * of a collection are processed in order by a single thread, then the subcollections are forked and joined before
+   * exiting the collection. See {@link ConcurrentWalkerProcessor} for details.
+   *
+   * @since 3.0
+   */
+  protected final int walkParallel(final WalkerContext context, final WalkerFilter filter,
+                                   final StorageCollectionItem coll)
+      throws ExecutionException
+  {
+    final ForkJoinTask<Integer> task = pool.submit(new CollectionWalk(context, filter, coll));
+    try {
+      while (true) {
+        try {
+          return task.get(100, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+          // pool threads do not see cancellation of the task performing this walk, so check for it here
+          // if cancelled, context is stopped and workers will bail out
+          context.isStopped();
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      context.stop(new TaskInterruptedException("Thread \"" + Thread.currentThread().getName()
+          + "\" is interrupted!", false));
+      // do not return until workers are done with the processors
+      return Uninterruptibles.getUninterruptibly(task);
+    }
+  }
+
+  private class CollectionWalk
+      extends RecursiveTask<Integer>
+  {
+    private final WalkerContext context;
+
+    private final WalkerFilter filter;
+
+    private final StorageCollectionItem coll;
+
+    private CollectionWalk(final WalkerContext context, final WalkerFilter filter, final StorageCollectionItem coll) {
+      this.context = context;
+      this.filter = filter;
+      this.coll = coll;
+    }
+
+    @Override
+    protected Integer compute() {
+      int collCount = 0;
+      if (context.isStopped()) {
+        return collCount;
+      }
+      try {
+        final boolean shouldProcess = filter.shouldProcess(context, coll);
+        final boolean shouldProcessRecursively = filter.shouldProcessRecursively(context, coll);
+        if (!shouldProcess && !shouldProcessRecursively) {
+          return collCount;
+        }
+
+        if (shouldProcess) {
+          onCollectionEnter(context, coll);
+          collCount++;
+        }
+
+        if (context.isStopped()) {
+          return collCount;
+        }
+
+        if (shouldProcessRecursively) {
+          final List<CollectionWalk> subtasks = Lists.newArrayList();
+          try {
+            final List<StorageItem> ls = Lists.newArrayList(context.getRepository().list(false, coll));
+
+            if (context.getItemComparator() != null) {
+              Collections.sort(ls, context.getItemComparator());
+            }
+
+            for (StorageItem i : ls) {
+              if (context.isProcessCollections() || !(i instanceof StorageCollectionItem)) {
+                walkItem(context, filter, i);
+                if (context.isStopped()) {
+                  return collCount;
+                }
+              }
+
+              if (i instanceof StorageCollectionItem) {
+                subtasks.add(new CollectionWalk(context, filter, (StorageCollectionItem) i));
+              }
+            }
+          }
+          catch (ItemNotFoundException e) {
+            log.debug("ItemNotFound not found while walking it, skipping.", e);
+          }
+
+          for (CollectionWalk subtask : invokeAll(subtasks)) {
+            collCount += subtask.join();
+          }
+          if (context.isStopped()) {
+            return collCount;
+          }
+        }
+
+        if (shouldProcess) {
+          onCollectionExit(context, coll);
+        }
+      }
+      catch (Exception e) {
+        context.stop(e);
+      }
+      return collCount;
+    }
+  }
+
   protected void walkItem(WalkerContext context, WalkerFilter filter, StorageItem i) {
     if (filter.shouldProcess(context, i)) {
       // user may call stop()
@@ -285,6 +487,13 @@ public class DefaultWalker
     try {
       final DefaultThrottleInfo info = (DefaultThrottleInfo) context.getContext().get(WALKER_THROTTLE_INFO);
 
+      if (context.getThrottleController().isThrottled()) {
+        // throttling is global for the walk, wait if other thread is sleeping out the throttle time
+        synchronized (info) {
+          // nop
+        }
+      }
+
       info.enterProcessItem();
 
       for (WalkerProcessor processor : context.getProcessors()) {
@@ -300,15 +509,17 @@ public class DefaultWalker
       info.exitProcessItem();
 
       if (!context.isStopped() && context.getThrottleController().isThrottled()) {
-        final long throttleTime = context.getThrottleController().throttleTime(info);
+        synchronized (info) {
+          final long throttleTime = context.getThrottleController().throttleTime(info);
 
-        if (throttleTime > 0) {
-          try {
-            Thread.sleep(throttleTime);
-          }
-          catch (InterruptedException e) {
-            throw new TaskInterruptedException("Thread \"" + Thread.currentThread().getName()
-                + "\" is interrupted!", false);
+          if (throttleTime > 0) {
+            try {
+              Thread.sleep(throttleTime);
+            }
+            catch (InterruptedException e) {
+              throw new TaskInterruptedException("Thread \"" + Thread.currentThread().getName()
+                  + "\" is interrupted!", false);
+            }
           }
         }
       }
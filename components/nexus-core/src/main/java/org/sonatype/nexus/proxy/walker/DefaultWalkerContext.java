@@ -49,7 +49,7 @@ public class DefaultWalkerContext
 
   private final List<WalkerProcessor> processors;
 
-  private Throwable stopCause;
+  private volatile Throwable stopCause;
 
   private Comparator<StorageItem> itemComparator;
 
@@ -0,0 +1,41 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.wastebasket;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.proxy.attributes.LogStructuredAttributeStorage;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Removes the attribute log of removed repository, if any.
+ *
+ * @since 3.0
+ */
+@Named("attributes-log")
+@Singleton
+public class AttributeLogRepositoryFolderCleaner
+    extends AbstractRepositoryFolderCleaner
+{
+  public void cleanRepositoryFolders(final Repository repository, boolean deleteForever)
+      throws IOException
+  {
+    final File attributesDirectory = new File(getApplicationConfiguration().getWorkingDirectory(),
+        LogStructuredAttributeStorage.ATTRIBUTES_DIRECTORY);
+    delete(LogStructuredAttributeStorage.getAttributeLogFile(attributesDirectory, repository.getId()), deleteForever);
+  }
+}
@@ -21,13 +21,14 @@ import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.walker.AbstractWalkerProcessor;
+import org.sonatype.nexus.proxy.walker.ConcurrentWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.SilentWalker;
 import org.sonatype.nexus.proxy.walker.WalkerContext;
 import org.sonatype.nexus.proxy.walker.WalkerProcessor;
 
 public class WastebasketWalker
     extends AbstractWalkerProcessor
-    implements WalkerProcessor, SilentWalker
+    implements WalkerProcessor, SilentWalker, ConcurrentWalkerProcessor
 {
 
   private long age;
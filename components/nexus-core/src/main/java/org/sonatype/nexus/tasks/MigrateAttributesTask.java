@@ -0,0 +1,89 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.tasks;
+
+import java.util.List;
+
+import javax.inject.Named;
+
+import org.sonatype.nexus.proxy.attributes.AttributeStorage;
+import org.sonatype.nexus.proxy.attributes.CachingAttributeStorage;
+import org.sonatype.nexus.proxy.attributes.LogStructuredAttributeStorage;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.scheduling.AbstractNexusRepositoriesTask;
+import org.sonatype.nexus.tasks.descriptors.MigrateAttributesTaskDescriptor;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Migrates attributes stored in legacy per-item files into the log structured attribute storage, if in use.
+ *
+ * @since 3.0
+ */
+@Named(MigrateAttributesTaskDescriptor.ID)
+public class MigrateAttributesTask
+    extends AbstractNexusRepositoriesTask<Object>
+{
+  /**
+   * System event action: migrate attributes
+   */
+  public static final String ACTION = "MIGRATEATTRIBUTES";
+
+  @Override
+  protected String getRepositoryFieldId() {
+    return MigrateAttributesTaskDescriptor.REPO_OR_GROUP_FIELD_ID;
+  }
+
+  @Override
+  public Object doRun()
+      throws Exception
+  {
+    final List<Repository> repositories;
+    if (getRepositoryId() != null) {
+      repositories = Lists.newArrayList(getRepositoryRegistry().getRepository(getRepositoryId()));
+    }
+    else {
+      repositories = getRepositoryRegistry().getRepositories();
+    }
+
+    for (Repository repository : repositories) {
+      AttributeStorage attributeStorage = repository.getAttributesHandler().getAttributeStorage();
+      if (attributeStorage instanceof CachingAttributeStorage) {
+        attributeStorage = ((CachingAttributeStorage) attributeStorage).getDelegate();
+      }
+      if (attributeStorage instanceof LogStructuredAttributeStorage) {
+        ((LogStructuredAttributeStorage) attributeStorage).migrateLegacyAttributes(repository);
+      }
+      else {
+        getLogger().info("Repository {} does not use log structured attribute storage, skipping it.", repository);
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  protected String getAction() {
+    return ACTION;
+  }
+
+  @Override
+  protected String getMessage() {
+    if (getRepositoryId() != null) {
+      return "Migrating attributes of repository " + getRepositoryName();
+    }
+    else {
+      return "Migrating attributes of all registered repositories";
+    }
+  }
+}
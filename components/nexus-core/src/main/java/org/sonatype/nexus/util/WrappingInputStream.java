@@ -36,6 +36,21 @@ public abstract class WrappingInputStream
     return wrappedStream;
   }
 
+  /**
+   * Returns the innermost stream wrapped by passed in stream, or the passed in stream itself if it is not a
+   * {@link WrappingInputStream}. The returned stream must not be closed, as that would bypass the close logic of the
+   * wrapping streams.
+   *
+   * @since 3.0
+   */
+  public static InputStream unwrap(final InputStream inputStream) {
+    InputStream result = inputStream;
+    while (result instanceof WrappingInputStream) {
+      result = ((WrappingInputStream) result).getWrappedInputStream();
+    }
+    return result;
+  }
+
   @Override
   public int read()
       throws IOException
@@ -0,0 +1,91 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.web;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.eclipse.jetty.io.nio.DirectNIOBuffer;
+import org.eclipse.jetty.server.AbstractHttpConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adapter sending file content through Jetty's own response output: the requested region of the file is memory
+ * mapped and handed over to the connection as a direct buffer, that is written to the socket as is, without copying
+ * the bytes to the heap, the same way Jetty's DefaultServlet serves file mapped content.
+ * <p/>
+ * Jetty hides its server classes from web applications, the Nexus web application context exposes the ones used here
+ * (see {@code conf/jetty.xml}). When they are not visible, or the response is not a Jetty one, content is to be sent
+ * by copying, see {@link #isAvailable()} and {@link #sendContent(OutputStream, FileChannel, long, long)}.
+ *
+ * @since 3.0
+ */
+class JettyOutput
+{
+  private static final Logger log = LoggerFactory.getLogger(JettyOutput.class);
+
+  private static final boolean AVAILABLE = probe();
+
+  private JettyOutput() {
+    // no instance
+  }
+
+  private static boolean probe() {
+    try {
+      final ClassLoader classLoader = JettyOutput.class.getClassLoader();
+      Class.forName(AbstractHttpConnection.Output.class.getName(), false, classLoader);
+      Class.forName(DirectNIOBuffer.class.getName(), false, classLoader);
+      return true;
+    }
+    catch (ClassNotFoundException | LinkageError e) {
+      log.debug("Jetty output not visible, sending content by copying", e);
+      return false;
+    }
+  }
+
+  /**
+   * Returns {@code true} if Jetty's output classes are visible.
+   */
+  static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * Sends {@code count} bytes of channel starting at {@code position} as the complete response content, if output is
+   * Jetty's response output and the region fits a mapping, and flushes it. Returns {@code false} if content was not
+   * sent, and has to be sent by copying. The channel must stay open until this method returns.
+   */
+  static boolean sendContent(final OutputStream output, final FileChannel channel, final long position,
+                             final long count)
+      throws IOException
+  {
+    if (!AVAILABLE || !(output instanceof AbstractHttpConnection.Output) || count <= 0
+        || count > Integer.MAX_VALUE) {
+      return false;
+    }
+    if (position + count > channel.size()) {
+      throw new EOFException("Premature end of file, expected " + count + " bytes from position " + position
+          + " but file size is " + channel.size());
+    }
+    // mapping is released by GC, as with Jetty's own file mapped buffers
+    ((AbstractHttpConnection.Output) output).sendContent(
+        new DirectNIOBuffer(channel.map(MapMode.READ_ONLY, position, count), true));
+    // blocks until written, so the file is not released before
+    output.flush();
+    return true;
+  }
+}
@@ -12,9 +12,12 @@
  */
 package org.sonatype.nexus.web;
 
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -23,8 +26,12 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.sonatype.nexus.ApplicationStatusSource;
 import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.nexus.util.WrappingInputStream;
 import org.sonatype.nexus.util.io.StreamSupport;
 
+import com.google.common.io.ByteStreams;
+
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -43,6 +50,13 @@ public class WebUtils
   private static final int BUFFER_SIZE = SystemPropertiesHelper
       .getInteger(WebUtils.class.getName() + ".BUFFER_SIZE", -1);
 
+  /**
+   * Flag to enable/disable sending file backed content from memory mapped file regions through Jetty's output, see
+   * {@link JettyOutput}. Enabled by default.
+   */
+  private static final boolean FILE_MAPPED_OUTPUT = SystemPropertiesHelper
+      .getBoolean(WebUtils.class.getName() + ".fileMappedOutput", true);
+
   private final String serverString;
 
   @Inject
@@ -84,6 +98,23 @@ public class WebUtils
    * The passed in {@link HttpServletResponse} after this call returns is committed and flushed.
    */
   public void sendContent(final InputStream input, final HttpServletResponse response) throws IOException {
+    sendContent(input, 0, -1, response);
+  }
+
+  /**
+   * Sends {@code length} bytes of content starting at {@code offset} from the input stream to the response, or all
+   * the bytes from offset if {@code length} is negative. When the input stream is reading a file and the response is
+   * Jetty's, the file region is sent without copying it to the heap (see {@link JettyOutput}). Otherwise skipped
+   * bytes are not read when the input stream supports seeking, like streams reading a file do, and it behaves as
+   * {@link #sendContent(InputStream, HttpServletResponse)}. Passed in {@link InputStream} is closed.
+   *
+   * @since 3.0
+   */
+  public void sendContent(final InputStream input, final long offset, final long length,
+                          final HttpServletResponse response)
+      throws IOException
+  {
+    checkArgument(offset >= 0, "Negative offset: %s", offset);
     int bufferSize = BUFFER_SIZE;
     if (bufferSize < 1) {
       // if no user override, ask container for bufferSize
@@ -98,8 +129,30 @@ public class WebUtils
       response.setBufferSize(bufferSize);
     }
     try (final InputStream from = input; final OutputStream to = response.getOutputStream()) {
-      StreamSupport.copy(from, to, bufferSize);
+      final FileChannel channel = FILE_MAPPED_OUTPUT && JettyOutput.isAvailable() ? getFileChannel(from) : null;
+      if (channel != null
+          && JettyOutput.sendContent(to, channel, offset, length < 0 ? channel.size() - offset : length)) {
+        response.flushBuffer();
+        return;
+      }
+      ByteStreams.skipFully(from, offset);
+      final long sent = StreamSupport.copy(length < 0 ? from : ByteStreams.limit(from, length), to, bufferSize);
+      if (length >= 0 && sent < length) {
+        throw new EOFException("Premature end of content, expected " + length + " bytes from offset " + offset
+            + " but got " + sent);
+      }
       response.flushBuffer();
     }
   }
+
+  /**
+   * Returns the channel of the file the passed in stream reads, or {@code null} if stream does not read a file.
+   */
+  private FileChannel getFileChannel(final InputStream input) {
+    final InputStream unwrapped = WrappingInputStream.unwrap(input);
+    if (unwrapped instanceof FileInputStream) {
+      return ((FileInputStream) unwrapped).getChannel();
+    }
+    return null;
+  }
 }
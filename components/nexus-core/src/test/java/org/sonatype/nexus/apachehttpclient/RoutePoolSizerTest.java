@@ -0,0 +1,126 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.apachehttpclient;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.yammer.metrics.core.MetricsRegistry;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.mock;
+
+/**
+ * {@link RoutePoolSizer} UTs.
+ *
+ * @since 3.0
+ */
+public class RoutePoolSizerTest
+    extends TestSupport
+{
+  private final HttpRoute route = new HttpRoute(new HttpHost("repo.example.com", 80));
+
+  private PoolingHttpClientConnectionManager pool;
+
+  private MetricsRegistry metricsRegistry;
+
+  private RoutePoolSizer underTest;
+
+  @Before
+  public void prepare() {
+    pool = new PoolingHttpClientConnectionManager();
+    pool.setMaxTotal(200);
+    pool.setDefaultMaxPerRoute(20);
+    metricsRegistry = new MetricsRegistry();
+    underTest = new RoutePoolSizer(pool, metricsRegistry, true, 2, 20, TimeUnit.HOURS.toMillis(1));
+  }
+
+  @After
+  public void cleanup() {
+    metricsRegistry.shutdown();
+    pool.shutdown();
+  }
+
+  @Test
+  public void limitsAreAppliedToRoute() {
+    underTest.limit(route, 1, 5);
+    assertThat(pool.getMaxPerRoute(route), equalTo(5));
+
+    // shared route: highest floor and cap wins
+    underTest.limit(route, 4, 8);
+    underTest.limit(route, 1, 3);
+    underTest.adjust(TimeUnit.SECONDS.toNanos(1));
+    assertThat(pool.getMaxPerRoute(route), equalTo(4));
+  }
+
+  @Test
+  public void nonAdaptiveDoesNotResize() {
+    underTest = new RoutePoolSizer(pool, metricsRegistry, false, 2, 20, TimeUnit.HOURS.toMillis(1));
+    underTest.limit(route, 1, 5);
+    underTest.adjust(TimeUnit.SECONDS.toNanos(1));
+    assertThat(pool.getMaxPerRoute(route), equalTo(20));
+  }
+
+  @Test
+  public void idleRouteShrinksToFloor() {
+    underTest.limit(route, 3, 10);
+    assertThat(pool.getMaxPerRoute(route), equalTo(10));
+    underTest.adjust(TimeUnit.SECONDS.toNanos(1));
+    assertThat(pool.getMaxPerRoute(route), equalTo(3));
+  }
+
+  @Test
+  public void busyRouteGrowsUpToCap()
+      throws Exception
+  {
+    underTest.limit(route, 2, 8);
+    pool.setMaxPerRoute(route, 2);
+
+    // 10 concurrent leases held for 50ms within 100ms: Little's law says 5 needed, plus headroom
+    final HttpClientConnection[] connections = new HttpClientConnection[10];
+    for (int i = 0; i < connections.length; i++) {
+      connections[i] = mock(HttpClientConnection.class);
+      underTest.requesting(route);
+      underTest.leased(route, connections[i], 0);
+    }
+    Thread.sleep(50);
+    for (HttpClientConnection connection : connections) {
+      underTest.released(connection);
+    }
+    underTest.adjust(TimeUnit.MILLISECONDS.toNanos(100));
+    assertThat(pool.getMaxPerRoute(route), equalTo(8));
+  }
+
+  @Test
+  public void lightRouteShrinksGradually() {
+    underTest.limit(route, 2, 20);
+    assertThat(pool.getMaxPerRoute(route), equalTo(20));
+
+    // single lease held shortly over whole second: needs 1 connection
+    final HttpClientConnection connection = mock(HttpClientConnection.class);
+    underTest.requesting(route);
+    underTest.leased(route, connection, 0);
+    underTest.released(connection);
+    underTest.adjust(TimeUnit.SECONDS.toNanos(1));
+    assertThat(pool.getMaxPerRoute(route), equalTo(11));
+  }
+}
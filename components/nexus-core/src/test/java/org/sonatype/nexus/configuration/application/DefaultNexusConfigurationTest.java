@@ -21,8 +21,11 @@ import org.sonatype.nexus.NexusAppTestSupport;
 import org.sonatype.nexus.configuration.model.CRepository;
 import org.sonatype.nexus.configuration.model.Configuration;
 import org.sonatype.nexus.email.NexusEmailer;
+import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.repository.DefaultRemoteHttpProxySettings;
+import org.sonatype.nexus.proxy.repository.GroupRepository;
 import org.sonatype.nexus.proxy.repository.LocalStatus;
+import org.sonatype.nexus.proxy.repository.ShadowRepository;
 import org.sonatype.security.SecuritySystem;
 
 import org.apache.commons.io.FileUtils;
@@ -232,4 +235,27 @@ public class DefaultNexusConfigurationTest
     nexusConfiguration.saveConfiguration();
   }
 
+  @Test
+  public void testCreateInternals()
+      throws Exception
+  {
+    nexusConfiguration.createInternals();
+
+    final RepositoryRegistry repositoryRegistry = lookup(RepositoryRegistry.class);
+    final Configuration nexusConfig = nexusConfiguration.getConfigurationModel();
+
+    // all repositories are registered, shadows and groups are created after their masters and members
+    assertEquals(nexusConfig.getRepositories().size(), repositoryRegistry.getRepositories().size());
+    for (CRepository cRepo : nexusConfig.getRepositories()) {
+      assertNotNull(repositoryRegistry.getRepository(cRepo.getId()));
+    }
+    for (ShadowRepository shadow : repositoryRegistry.getRepositoriesWithFacet(ShadowRepository.class)) {
+      assertNotNull(shadow.getMasterRepository());
+    }
+    for (GroupRepository group : repositoryRegistry.getRepositoriesWithFacet(GroupRepository.class)) {
+      assertFalse(group.getMemberRepositories().isEmpty());
+    }
+
+    nexusConfiguration.dropInternals();
+  }
 }
@@ -0,0 +1,151 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.events;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventStore;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * UT for {@link ItemEventQueue}.
+ */
+public class ItemEventQueueTest
+    extends TestSupport
+{
+  private ItemEventQueue underTest;
+
+  @After
+  public void close() {
+    if (underTest != null) {
+      underTest.stop();
+      underTest.close();
+    }
+  }
+
+  @Test
+  public void itemEventTypes() {
+    assertThat(ItemEventQueue.itemEventTypes(new Recorder()), contains((Object) RepositoryItemEventStore.class));
+    assertThat(ItemEventQueue.itemEventTypes(new Object()), is(empty()));
+  }
+
+  @Test
+  public void dispatchInOrder()
+      throws Exception
+  {
+    final Recorder recorder = new Recorder();
+    underTest = new ItemEventQueue(recorder, ItemEventQueue.itemEventTypes(recorder), 10, 2, 1000L);
+    final RepositoryItemEventStore e1 = event("/a");
+    final RepositoryItemEventStore e2 = event("/b");
+    final RepositoryItemEventStore e3 = event("/a");
+    underTest.post(e1);
+    underTest.post(e2);
+    underTest.post(e3);
+    assertThat(underTest.size(), equalTo(3));
+
+    drain();
+    assertThat(recorder.events, contains((RepositoryItemEvent) e1, e2, e3));
+    assertThat(underTest.isIdle(), is(true));
+  }
+
+  @Test
+  public void bestEffortCoalescesAndDrops()
+      throws Exception
+  {
+    final Recorder recorder = new BestEffortRecorder();
+    underTest = new ItemEventQueue(recorder, ItemEventQueue.itemEventTypes(recorder), 2, 10, 1000L);
+    final RepositoryItemEventStore e1 = event("/a");
+    final RepositoryItemEventStore e2 = event("/b");
+    final RepositoryItemEventStore e3 = event("/a");
+    final RepositoryItemEventStore e4 = event("/c");
+    underTest.post(e1);
+    underTest.post(e2);
+    // replaces e1, keeping its position
+    underTest.post(e3);
+    // queue full, dropped
+    underTest.post(e4);
+    assertThat(underTest.size(), equalTo(2));
+
+    drain();
+    assertThat(recorder.events, contains((RepositoryItemEvent) e3, e2));
+  }
+
+  @Test
+  public void criticalDispatchedOnCallerWhenStillFull()
+      throws Exception
+  {
+    final Recorder recorder = new Recorder();
+    underTest = new ItemEventQueue(recorder, ItemEventQueue.itemEventTypes(recorder), 1, 10, 10L);
+    final RepositoryItemEventStore e1 = event("/a");
+    final RepositoryItemEventStore e2 = event("/b");
+    underTest.post(e1);
+    // no worker running: waits for room, then dispatches on this thread
+    underTest.post(e2);
+    assertThat(recorder.events, contains((RepositoryItemEvent) e2));
+    assertThat(underTest.size(), equalTo(1));
+
+    drain();
+    assertThat(recorder.events, contains((RepositoryItemEvent) e2, e1));
+  }
+
+  private void drain()
+      throws InterruptedException
+  {
+    final Thread worker = new Thread(underTest);
+    worker.start();
+    underTest.stop();
+    worker.join(5000L);
+  }
+
+  private RepositoryItemEventStore event(final String path) {
+    final RepositoryItemUid uid = mock(RepositoryItemUid.class);
+    when(uid.getKey()).thenReturn("repo:" + path);
+    final RepositoryItemEventStore event = mock(RepositoryItemEventStore.class);
+    when(event.getItemUid()).thenReturn(uid);
+    return event;
+  }
+
+  public static class Recorder
+  {
+    final List<RepositoryItemEvent> events = Collections.synchronizedList(Lists.<RepositoryItemEvent>newArrayList());
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final RepositoryItemEventStore evt) {
+      events.add(evt);
+    }
+  }
+
+  public static class BestEffortRecorder
+      extends Recorder
+      implements BestEffort
+  {
+  }
+}
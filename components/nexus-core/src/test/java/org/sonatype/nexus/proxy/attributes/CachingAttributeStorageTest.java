@@ -0,0 +1,186 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.IOException;
+
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
+import org.sonatype.nexus.proxy.events.NexusStoppingEvent;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CachingAttributeStorage}.
+ */
+public class CachingAttributeStorageTest
+    extends TestSupport
+{
+  @Mock
+  private EventBus eventBus;
+
+  private AttributeStorage delegate;
+
+  private CachingAttributeStorage underTest;
+
+  private RepositoryItemUid uid;
+
+  @Before
+  public void prepare() throws IOException {
+    delegate = spy(new HashMapAttributeStorage());
+    // flush interval is long enough to have flushes invoked by tests only
+    underTest = new CachingAttributeStorage(delegate, eventBus, 100, 3600000L);
+    uid = uid("/some/item.jar");
+
+    final Attributes attributes = new DefaultAttributes();
+    attributes.setLastRequested(1000L);
+    attributes.put("foo", "bar");
+    delegate.putAttributes(uid, attributes);
+  }
+
+  private RepositoryItemUid uid(final String path) {
+    final RepositoryItemUid result = mock(RepositoryItemUid.class);
+    when(result.getKey()).thenReturn("repo:" + path);
+    when(result.getPath()).thenReturn(path);
+    when(result.getLock()).thenReturn(mock(RepositoryItemUidLock.class));
+    return result;
+  }
+
+  @Test
+  public void readsAreCached() throws IOException {
+    final long hits = underTest.getHitCount();
+    final long misses = underTest.getMissCount();
+
+    final Attributes first = underTest.getAttributes(uid);
+    final Attributes second = underTest.getAttributes(uid);
+
+    assertThat(first.get("foo"), equalTo("bar"));
+    assertThat(second.get("foo"), equalTo("bar"));
+    assertThat(second, not(sameInstance(first)));
+    verify(delegate, times(1)).getAttributes(uid);
+    assertThat(underTest.getHitCount() - hits, equalTo(1L));
+    assertThat(underTest.getMissCount() - misses, equalTo(1L));
+  }
+
+  @Test
+  public void modifyingReturnedAttributesDoesNotAffectCache() throws IOException {
+    underTest.getAttributes(uid).put("foo", "changed");
+
+    assertThat(underTest.getAttributes(uid).get("foo"), equalTo("bar"));
+  }
+
+  @Test
+  public void absentAttributesAreNotCached() throws IOException {
+    final RepositoryItemUid missing = uid("/missing.jar");
+
+    assertThat(underTest.getAttributes(missing), nullValue());
+    assertThat(underTest.getAttributes(missing), nullValue());
+    verify(delegate, times(2)).getAttributes(missing);
+  }
+
+  @Test
+  public void putAndDeleteInvalidate() throws IOException {
+    underTest.getAttributes(uid);
+
+    final Attributes attributes = new DefaultAttributes();
+    attributes.put("foo", "baz");
+    underTest.putAttributes(uid, attributes);
+    assertThat(underTest.getAttributes(uid).get("foo"), equalTo("baz"));
+
+    assertThat(underTest.deleteAttributes(uid), equalTo(true));
+    assertThat(underTest.getAttributes(uid), nullValue());
+  }
+
+  @Test
+  public void lastRequestedIsWrittenBehind() throws IOException {
+    underTest.getAttributes(uid);
+
+    underTest.touchLastRequested(uid, 2000L);
+    underTest.touchLastRequested(uid, 3000L);
+    underTest.touchLastRequested(uid, 2500L);
+
+    // visible, but not yet persisted
+    assertThat(underTest.getAttributes(uid).getLastRequested(), equalTo(3000L));
+    assertThat(delegate.getAttributes(uid).getLastRequested(), equalTo(1000L));
+    verify(delegate, times(1)).putAttributes(any(RepositoryItemUid.class), any(Attributes.class));
+
+    underTest.flush();
+
+    // coalesced into single write
+    assertThat(delegate.getAttributes(uid).getLastRequested(), equalTo(3000L));
+    verify(delegate, times(2)).putAttributes(any(RepositoryItemUid.class), any(Attributes.class));
+    assertThat(underTest.getAttributes(uid).getLastRequested(), equalTo(3000L));
+
+    // nothing left to flush
+    underTest.flush();
+    verify(delegate, times(2)).putAttributes(any(RepositoryItemUid.class), any(Attributes.class));
+  }
+
+  @Test
+  public void deleteDropsPendingLastRequested() throws IOException {
+    underTest.touchLastRequested(uid, 2000L);
+    underTest.deleteAttributes(uid);
+    underTest.flush();
+
+    assertThat(delegate.getAttributes(uid), nullValue());
+  }
+
+  @Test
+  public void lastRequestedIsSetExactly() throws IOException {
+    underTest.touchLastRequested(uid, 3000L);
+    underTest.setLastRequested(uid, 500L);
+
+    // reset to past point, visible and persisted as is
+    assertThat(underTest.getAttributes(uid).getLastRequested(), equalTo(500L));
+    underTest.flush();
+    assertThat(delegate.getAttributes(uid).getLastRequested(), equalTo(500L));
+
+    // newer touch after reset wins
+    underTest.setLastRequested(uid, 700L);
+    underTest.touchLastRequested(uid, 800L);
+    assertThat(underTest.getAttributes(uid).getLastRequested(), equalTo(800L));
+    underTest.flush();
+    assertThat(delegate.getAttributes(uid).getLastRequested(), equalTo(800L));
+  }
+
+  @Test
+  public void stoppingFlushesPendingLastRequested() throws IOException {
+    assertThat(underTest.touchLastRequested(uid, 2000L), equalTo(true));
+    underTest.on(new NexusStoppingEvent(this));
+
+    assertThat(delegate.getAttributes(uid).getLastRequested(), equalTo(2000L));
+    verify(eventBus).unregister(underTest);
+
+    // updates are not accepted anymore, as they would not be flushed
+    assertThat(underTest.touchLastRequested(uid, 3000L), equalTo(false));
+    assertThat(underTest.setLastRequested(uid, 500L), equalTo(false));
+    assertThat(underTest.getAttributes(uid).getLastRequested(), equalTo(2000L));
+  }
+}
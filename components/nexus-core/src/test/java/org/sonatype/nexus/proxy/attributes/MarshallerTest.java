@@ -86,4 +86,11 @@ public class MarshallerTest
   {
     doTest(new JacksonJSONMarshaller());
   }
+
+  @Test
+  public void testBinary()
+      throws IOException
+  {
+    doTest(new BinaryMarshaller());
+  }
 }
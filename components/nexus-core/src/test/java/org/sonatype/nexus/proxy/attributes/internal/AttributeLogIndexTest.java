@@ -0,0 +1,112 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.Maps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Tests for {@link AttributeLogIndex}.
+ */
+public class AttributeLogIndexTest
+    extends TestSupport
+{
+  private File directory;
+
+  private AttributeLogIndex index;
+
+  @Before
+  public void prepare() throws IOException {
+    directory = util.createTempDir();
+    index = new AttributeLogIndex(directory, "repo.log.index-");
+  }
+
+  @After
+  public void cleanup() {
+    index.close();
+  }
+
+  @Test
+  public void putGetRemove() throws IOException {
+    index.put(AttributeLogIndex.hash("/a"), 10L);
+    index.put(AttributeLogIndex.hash("/b"), 20L);
+    index.put(AttributeLogIndex.hash("/a"), 30L);
+
+    assertThat(index.size(), equalTo(2));
+    assertThat(index.get(AttributeLogIndex.hash("/a")), equalTo(30L));
+    assertThat(index.get(AttributeLogIndex.hash("/b")), equalTo(20L));
+    assertThat(index.get(AttributeLogIndex.hash("/c")), equalTo(-1L));
+
+    assertThat(index.remove(AttributeLogIndex.hash("/a")), equalTo(true));
+    assertThat(index.remove(AttributeLogIndex.hash("/a")), equalTo(false));
+    assertThat(index.get(AttributeLogIndex.hash("/a")), equalTo(-1L));
+    assertThat(index.size(), equalTo(1));
+  }
+
+  @Test
+  public void growsAndKeepsEntriesFindableAfterRemovals() throws IOException {
+    // hashes sharing low bits form long probe sequences, that removals have to keep intact
+    final Random random = new Random(42);
+    final Map<Long, Long> expected = Maps.newHashMap();
+    for (int i = 0; i < 20000; i++) {
+      final long hash = (random.nextInt(64) + 1) | ((long) random.nextInt(1000) << 32);
+      if (random.nextInt(3) == 0) {
+        assertThat(index.remove(hash), equalTo(expected.remove(hash) != null));
+      }
+      else {
+        index.put(hash, i);
+        expected.put(hash, (long) i);
+      }
+    }
+
+    assertThat(index.size(), equalTo(expected.size()));
+    for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+      assertThat(index.get(entry.getKey()), equalTo(entry.getValue()));
+    }
+    int found = 0;
+    for (int slot = 0; slot < index.capacity(); slot++) {
+      if (index.hashAt(slot) != 0) {
+        assertThat(index.positionAt(slot), equalTo(expected.get(index.hashAt(slot))));
+        found++;
+      }
+    }
+    assertThat(found, equalTo(expected.size()));
+  }
+
+  @Test
+  public void closeDeletesFiles() throws IOException {
+    for (int i = 0; i < 5000; i++) {
+      index.put(AttributeLogIndex.hash("/" + i), i);
+    }
+    index.close();
+    index = new AttributeLogIndex(directory, "repo.log.index-");
+    AttributeLogIndex.deleteLeftovers(directory, "other.log.index-");
+    index.close();
+
+    assertThat(directory.listFiles(), emptyArray());
+    index = new AttributeLogIndex(directory, "repo.log.index-");
+  }
+}
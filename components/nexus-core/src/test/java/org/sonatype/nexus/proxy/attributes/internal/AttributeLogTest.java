@@ -0,0 +1,194 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.base.Charsets;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests for {@link AttributeLog}.
+ */
+public class AttributeLogTest
+    extends TestSupport
+{
+  private File file;
+
+  @Before
+  public void prepare() throws IOException {
+    file = new File(util.createTempDir(), "attributes/repo.log");
+  }
+
+  private static byte[] bytes(final String value) {
+    return value.getBytes(Charsets.UTF_8);
+  }
+
+  private static String string(final byte[] value) {
+    return value == null ? null : new String(value, Charsets.UTF_8);
+  }
+
+  @Test
+  public void putGetDelete() throws IOException {
+    final AttributeLog log = new AttributeLog(file, 2, false);
+    try {
+      log.put("/a", bytes("a1"));
+      log.put("/b", bytes("b1"));
+      log.put("/c", bytes("c1"));
+      log.put("/a", bytes("a2"));
+
+      assertThat(log.size(), equalTo(3));
+      assertThat(string(log.get("/a")), equalTo("a2"));
+      assertThat(string(log.get("/b")), equalTo("b1"));
+      assertThat(string(log.get("/c")), equalTo("c1"));
+      assertThat(log.get("/d"), nullValue());
+
+      assertThat(log.delete("/b"), equalTo(true));
+      assertThat(log.delete("/b"), equalTo(false));
+      assertThat(log.delete("/d"), equalTo(false));
+      assertThat(log.get("/b"), nullValue());
+      assertThat(log.size(), equalTo(2));
+    }
+    finally {
+      log.close();
+    }
+  }
+
+  @Test
+  public void pendingWritesAreVisible() throws IOException {
+    final AttributeLog log = new AttributeLog(file, 1000, false);
+    try {
+      log.put("/a", bytes("a1"));
+      assertThat(file.length(), equalTo(0L));
+      assertThat(string(log.get("/a")), equalTo("a1"));
+      log.flush();
+      assertThat(file.length() > 0, equalTo(true));
+      assertThat(string(log.get("/a")), equalTo("a1"));
+    }
+    finally {
+      log.close();
+    }
+  }
+
+  @Test
+  public void persistedAcrossReopen() throws IOException {
+    AttributeLog log = new AttributeLog(file, 1000, true);
+    log.put("/a", bytes("a1"));
+    log.put("/b", bytes("b1"));
+    log.flush();
+    log.delete("/b");
+    log.put("/a", bytes("a2"));
+    log.close();
+
+    log = new AttributeLog(file, 1000, true);
+    try {
+      assertThat(log.size(), equalTo(1));
+      assertThat(string(log.get("/a")), equalTo("a2"));
+      assertThat(log.get("/b"), nullValue());
+    }
+    finally {
+      log.close();
+    }
+  }
+
+  @Test
+  public void corruptTailIsTruncated() throws IOException {
+    AttributeLog log = new AttributeLog(file, 1000, false);
+    log.put("/a", bytes("a1"));
+    log.close();
+    final long length = file.length();
+
+    try (FileOutputStream fos = new FileOutputStream(file, true)) {
+      fos.write(new byte[]{0, 0, 0, 20, 1, 2, 3, 4, 5});
+    }
+
+    log = new AttributeLog(file, 1000, false);
+    try {
+      assertThat(file.length(), equalTo(length));
+      assertThat(string(log.get("/a")), equalTo("a1"));
+      log.put("/b", bytes("b1"));
+    }
+    finally {
+      log.close();
+    }
+
+    log = new AttributeLog(file, 1000, false);
+    try {
+      assertThat(string(log.get("/a")), equalTo("a1"));
+      assertThat(string(log.get("/b")), equalTo("b1"));
+    }
+    finally {
+      log.close();
+    }
+  }
+
+  @Test
+  public void compaction() throws IOException {
+    AttributeLog log = new AttributeLog(file, 1000, false);
+    for (int i = 0; i < 20000; i++) {
+      log.put("/item" + i, bytes("value" + i));
+    }
+    log.flush();
+    final long fullLength = file.length();
+    for (int i = 100; i < 20000; i++) {
+      log.delete("/item" + i);
+    }
+    log.close();
+    assertThat(file.length(), lessThan(fullLength));
+
+    log = new AttributeLog(file, 1000, false);
+    try {
+      assertThat(log.size(), equalTo(100));
+      for (int i = 0; i < 100; i++) {
+        assertThat(string(log.get("/item" + i)), equalTo("value" + i));
+      }
+      assertThat(log.get("/item100"), nullValue());
+    }
+    finally {
+      log.close();
+    }
+  }
+
+  @Test
+  public void indexFilesAreRemoved() throws IOException {
+    final File directory = file.getParentFile();
+    AttributeLog log = new AttributeLog(file, 1000, false);
+    log.put("/a", bytes("a1"));
+    log.close();
+    assertThat(directory.list(), arrayContainingInAnyOrder("repo.log"));
+
+    // index left behind by a crash is removed on open
+    log = new AttributeLog(file, 1000, false);
+    final AttributeLog crashed = log;
+    log = new AttributeLog(file, 1000, false);
+    try {
+      assertThat(directory.list().length, equalTo(2));
+      assertThat(string(log.get("/a")), equalTo("a1"));
+    }
+    finally {
+      log.close();
+      crashed.close();
+    }
+  }
+}
@@ -12,8 +12,10 @@
  */
 package org.sonatype.nexus.proxy.cache;
 
+import java.io.File;
 import java.util.Collection;
 
+import org.sonatype.nexus.configuration.application.ApplicationDirectories;
 import org.sonatype.nexus.proxy.AbstractNexusTestEnvironment;
 
 import org.junit.Test;
@@ -151,4 +153,38 @@ public class EhCacheCacheManagerTest
 
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testRemovePathCache() throws Exception {
+    EhCacheCacheManager cm = (EhCacheCacheManager) lookup(CacheManager.class);
+    File file = new File(lookup(ApplicationDirectories.class).getWorkDirectory("nfc"), "test.nfc");
+
+    cm.setPersistentPathCache(true);
+    try {
+      PathCache c = cm.getPathCache("test");
+      c.put("/com/sonatype", Boolean.TRUE);
+      assertTrue(file.isFile());
+
+      cm.removePathCache("test");
+
+      assertFalse(file.exists());
+      assertFalse(c.contains("/com/sonatype"));
+      assertFalse(cm.getPathCache("test").contains("/com/sonatype"));
+      assertTrue(file.isFile());
+    }
+    finally {
+      cm.setPersistentPathCache(false);
+    }
+  }
+
+  @Test
+  public void testRemovePathCacheDeletesFileOfEarlierRun() throws Exception {
+    EhCacheCacheManager cm = (EhCacheCacheManager) lookup(CacheManager.class);
+    File file = new File(lookup(ApplicationDirectories.class).getWorkDirectory("nfc"), "test.nfc");
+    new MappedPathCache(file, 16).close();
+    assertTrue(file.isFile());
+
+    cm.removePathCache("test");
+
+    assertFalse(file.exists());
+  }
+}
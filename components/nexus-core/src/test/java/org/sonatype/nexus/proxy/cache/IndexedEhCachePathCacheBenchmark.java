@@ -0,0 +1,106 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.CacheConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Benchmark comparing {@link EhCachePathCache} and {@link IndexedEhCachePathCache} subtree removal and purge, when
+ * the shared cache is populated by many repositories. Not executed as part of the build (it does not match the test
+ * naming pattern), run it manually with {@code mvn test -Dtest=IndexedEhCachePathCacheBenchmark}.
+ */
+public class IndexedEhCachePathCacheBenchmark
+    extends TestSupport
+{
+  private static final int REPOSITORIES = 100;
+
+  private static final int PATHS_PER_REPOSITORY = 5000;
+
+  private static final int ROUNDS = 20;
+
+  private CacheManager cacheManager;
+
+  private Ehcache ehcache;
+
+  @Before
+  public void setUp() {
+    cacheManager = new CacheManager(getClass().getResource("/ehcache.xml"));
+    cacheManager.addCache(new Cache(
+        new CacheConfiguration("benchmark-path-cache", REPOSITORIES * PATHS_PER_REPOSITORY * 2).eternal(true)));
+    ehcache = cacheManager.getEhcache("benchmark-path-cache");
+  }
+
+  @After
+  public void tearDown() {
+    cacheManager.shutdown();
+  }
+
+  @Test
+  public void compare() {
+    final long plain = run(new Factory()
+    {
+      @Override
+      public PathCache create(final String repositoryId) {
+        return new EhCachePathCache(repositoryId, ehcache);
+      }
+    });
+    final EhCachePathCacheIndex index = new EhCachePathCacheIndex();
+    ehcache.getCacheEventNotificationService().registerListener(index);
+    final long indexed = run(new Factory()
+    {
+      @Override
+      public PathCache create(final String repositoryId) {
+        return new IndexedEhCachePathCache(repositoryId, ehcache, index);
+      }
+    });
+
+    logger.info("{} repositories, {} paths each, {} rounds of expire subtree + purge", REPOSITORIES,
+        PATHS_PER_REPOSITORY, ROUNDS);
+    logger.info("EhCachePathCache:        {} ms", plain);
+    logger.info("IndexedEhCachePathCache: {} ms", indexed);
+  }
+
+  private long run(final Factory factory) {
+    long elapsed = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      ehcache.removeAll();
+      final PathCache[] caches = new PathCache[REPOSITORIES];
+      for (int r = 0; r < REPOSITORIES; r++) {
+        caches[r] = factory.create("repo" + r);
+        for (int p = 0; p < PATHS_PER_REPOSITORY; p++) {
+          caches[r].put("/org/group" + (p % 50) + "/artifact" + p + "/1.0/artifact-1.0.jar", Boolean.TRUE);
+        }
+      }
+
+      final PathCache cache = caches[round % REPOSITORIES];
+      final long start = System.nanoTime();
+      cache.removeWithChildren("/org/group" + (round % 50));
+      cache.purge();
+      elapsed += System.nanoTime() - start;
+    }
+    return elapsed / 1000000L;
+  }
+
+  private interface Factory
+  {
+    PathCache create(String repositoryId);
+  }
+}
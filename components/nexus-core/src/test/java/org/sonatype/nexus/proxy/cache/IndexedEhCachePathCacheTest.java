@@ -0,0 +1,172 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.base.Throwables;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link IndexedEhCachePathCache}.
+ */
+public class IndexedEhCachePathCacheTest
+    extends TestSupport
+{
+  private CacheManager cacheManager;
+
+  private Ehcache ehcache;
+
+  private EhCachePathCacheIndex index;
+
+  @Before
+  public void setUp() {
+    cacheManager = new CacheManager(getClass().getResource("/ehcache.xml"));
+    ehcache = cacheManager.getEhcache(EhCacheCacheManager.SINGLE_PATH_CACHE_NAME);
+    index = new EhCachePathCacheIndex();
+    ehcache.getCacheEventNotificationService().registerListener(index);
+  }
+
+  @After
+  public void tearDown() {
+    cacheManager.shutdown();
+  }
+
+  @Test
+  public void removeWithChildrenRemovesOnlySubtreeOfRepository() {
+    final PathCache repo1 = new IndexedEhCachePathCache("repo1", ehcache, index);
+    final PathCache repo2 = new IndexedEhCachePathCache("repo2", ehcache, index);
+
+    repo1.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE);
+    repo1.put("/org/foo/2.0/foo-2.0.jar", Boolean.TRUE);
+    repo1.put("/org/bar/1.0/bar-1.0.jar", Boolean.TRUE);
+    repo2.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE);
+
+    assertThat(repo1.removeWithChildren("/org/foo"), is(true));
+
+    assertThat(repo1.contains("/org/foo/1.0/foo-1.0.jar"), is(false));
+    assertThat(repo1.contains("/org/foo/2.0/foo-2.0.jar"), is(false));
+    assertThat(repo1.contains("/org/bar/1.0/bar-1.0.jar"), is(true));
+    assertThat(repo2.contains("/org/foo/1.0/foo-1.0.jar"), is(true));
+    assertThat(repo1.removeWithChildren("/org/foo"), is(false));
+  }
+
+  @Test
+  public void purgeAndListingAreScopedToRepository() {
+    final PathCache repo1 = new IndexedEhCachePathCache("repo1", ehcache, index);
+    final PathCache repo2 = new IndexedEhCachePathCache("repo2", ehcache, index);
+
+    repo1.put("/a/1", Boolean.TRUE);
+    repo1.put("/a/2", Boolean.TRUE);
+    repo2.put("/b/1", Boolean.TRUE);
+
+    assertThat(repo1.listKeysInCache(), containsInAnyOrder("a/1", "a/2"));
+    assertThat(repo2.listKeysInCache(), containsInAnyOrder("b/1"));
+
+    assertThat(repo1.purge(), is(true));
+
+    assertThat(repo1.listKeysInCache(), is(empty()));
+    assertThat(repo2.listKeysInCache(), containsInAnyOrder("b/1"));
+  }
+
+  @Test
+  public void indexFollowsDirectRemovals() {
+    final PathCache repo1 = new IndexedEhCachePathCache("repo1", ehcache, index);
+
+    repo1.put("/a/1", Boolean.TRUE);
+    repo1.put("/a/2", Boolean.TRUE);
+    repo1.remove("/a/1");
+    ehcache.remove("repo1:a/2");
+
+    assertThat(index.getKeys("repo1", "repo1:"), is(empty()));
+  }
+
+  @Test
+  public void seedIndexesExistingKeys() {
+    final PathCache plain = new EhCachePathCache("repo1", ehcache);
+    plain.put("/a/1", Boolean.TRUE);
+    plain.put("/a/2", Boolean.TRUE);
+
+    final EhCachePathCacheIndex seeded = new EhCachePathCacheIndex();
+    seeded.seed(ehcache);
+
+    final Collection<String> keys = new IndexedEhCachePathCache("repo1", ehcache, seeded).listKeysInCache();
+    assertThat(keys, containsInAnyOrder("a/1", "a/2"));
+  }
+
+  @Test
+  public void putRacingWithSubtreeRemovalStaysIndexed() throws Exception {
+    final PathCache repo1 = new IndexedEhCachePathCache("repo1", ehcache, index);
+    repo1.put("/a/1", Boolean.TRUE);
+
+    // the same key is put again by other thread right when subtree removal drops it from the cache
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final AtomicReference<Future<?>> racingPut = new AtomicReference<Future<?>>();
+    ehcache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter()
+    {
+      @Override
+      public void notifyElementRemoved(final Ehcache cache, final Element element) {
+        if (racingPut.get() == null) {
+          racingPut.set(executor.submit(new Runnable()
+          {
+            @Override
+            public void run() {
+              repo1.put("/a/1", Boolean.TRUE);
+            }
+          }));
+          try {
+            racingPut.get().get(500, TimeUnit.MILLISECONDS);
+          }
+          catch (TimeoutException e) {
+            // put waits for the removal to finish
+          }
+          catch (Exception e) {
+            throw Throwables.propagate(e);
+          }
+        }
+      }
+    });
+    try {
+      repo1.removeWithChildren("/a");
+      racingPut.get().get(1, TimeUnit.MINUTES);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    // the key put is in the cache, and subtree removal still finds it
+    assertThat(repo1.contains("/a/1"), is(true));
+    assertThat(index.getKeys("repo1", "repo1:").contains("repo1:a/1"), is(true));
+    assertThat(repo1.removeWithChildren("/a"), is(true));
+    assertThat(repo1.contains("/a/1"), is(false));
+  }
+}
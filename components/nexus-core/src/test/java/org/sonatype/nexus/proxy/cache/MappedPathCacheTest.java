@@ -0,0 +1,191 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.io.File;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link MappedPathCache}.
+ */
+public class MappedPathCacheTest
+    extends TestSupport
+{
+  private File file;
+
+  private MappedPathCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    file = new File(util.createTempDir(), "repo1.nfc");
+    cache = new MappedPathCache(file, 16);
+  }
+
+  @After
+  public void tearDown() {
+    cache.close();
+  }
+
+  @Test
+  public void putContainsAndRemove() {
+    cache.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE);
+
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(true));
+    assertThat(cache.contains("org/foo/1.0/foo-1.0.jar/"), is(true));
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.pom"), is(false));
+    assertThat(cache.remove("/org/foo/1.0/foo-1.0.jar"), is(true));
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(false));
+    assertThat(cache.remove("/org/foo/1.0/foo-1.0.jar"), is(false));
+
+    cache.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE);
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(true));
+    assertThat(cache.listKeysInCache(), containsInAnyOrder("org/foo/1.0/foo-1.0.jar"));
+  }
+
+  @Test
+  public void expiration() {
+    cache.put("/expired", Boolean.TRUE, 0);
+    cache.put("/alive", Boolean.TRUE, 60);
+
+    assertThat(cache.contains("/expired"), is(false));
+    assertThat(cache.isExpired("/expired"), is(true));
+    assertThat(cache.contains("/alive"), is(true));
+    assertThat(cache.isExpired("/alive"), is(false));
+    assertThat(cache.isExpired("/missing"), is(false));
+    assertThat(cache.listKeysInCache(), containsInAnyOrder("alive"));
+  }
+
+  @Test
+  public void removeWithChildren() {
+    cache.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE);
+    cache.put("/org/foo/2.0/foo-2.0.jar", Boolean.TRUE);
+    cache.put("/org/foobar/1.0/foobar-1.0.jar", Boolean.TRUE);
+    cache.put("/org/bar/1.0/bar-1.0.jar", Boolean.TRUE);
+
+    assertThat(cache.removeWithChildren("/org/foo"), is(true));
+
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(false));
+    assertThat(cache.contains("/org/foo/2.0/foo-2.0.jar"), is(false));
+    assertThat(cache.contains("/org/foobar/1.0/foobar-1.0.jar"), is(true));
+    assertThat(cache.contains("/org/bar/1.0/bar-1.0.jar"), is(true));
+    assertThat(cache.listKeysInCache(),
+        containsInAnyOrder("org/foobar/1.0/foobar-1.0.jar", "org/bar/1.0/bar-1.0.jar"));
+
+    // entries put after the subtree was removed are visible
+    cache.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE);
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(true));
+  }
+
+  @Test
+  public void removeWithParentsAndPurge() {
+    cache.put("/com", Boolean.TRUE);
+    cache.put("/com/sonatype", Boolean.TRUE);
+    cache.put("/com/sonatype/nexus", Boolean.TRUE);
+
+    assertThat(cache.removeWithParents("/com/sonatype"), is(true));
+    assertThat(cache.contains("/com/sonatype/nexus"), is(true));
+    assertThat(cache.contains("/com/sonatype"), is(false));
+    assertThat(cache.contains("/com"), is(false));
+
+    assertThat(cache.purge(), is(true));
+    assertThat(cache.contains("/com/sonatype/nexus"), is(false));
+    assertThat(cache.listKeysInCache(), is(empty()));
+    assertThat(cache.purge(), is(false));
+  }
+
+  @Test
+  public void growsAndDropsRemovedEntries() {
+    for (int i = 0; i < 1000; i++) {
+      cache.put("/org/foo/" + i + "/foo-" + i + ".jar", Boolean.TRUE);
+    }
+    for (int i = 0; i < 100; i++) {
+      cache.removeWithChildren("/org/foo/" + i);
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(cache.contains("/org/foo/" + i + "/foo-" + i + ".jar"), is(i >= 100));
+    }
+    assertThat(cache.listKeysInCache(), hasSize(900));
+  }
+
+  @Test
+  public void survivesCleanRestartOnly() throws Exception {
+    cache.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE, 60);
+    cache.put("/org/bar/1.0/bar-1.0.jar", Boolean.TRUE);
+    cache.removeWithChildren("/org/bar");
+    cache.close();
+
+    cache = new MappedPathCache(file, 16);
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(true));
+    assertThat(cache.contains("/org/bar/1.0/bar-1.0.jar"), is(false));
+
+    // not closed, content is discarded
+    final MappedPathCache crashed = cache;
+    cache = new MappedPathCache(file, 16);
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(false));
+    crashed.close();
+  }
+
+  @Test
+  public void keepsCurrentFileWhenRebuildFails() throws Exception {
+    // a non empty directory in place of the temporary file makes rebuild fail
+    final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    assertThat(new File(tmp, "blocker").mkdirs(), is(true));
+
+    cache.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE);
+    cache.put("/org/foo/2.0/foo-2.0.jar", Boolean.TRUE);
+    cache.put("/org/bar/1.0/bar-1.0.jar", Boolean.TRUE);
+    for (int i = 0; i < 100; i++) {
+      cache.put("/com/" + i, Boolean.TRUE);
+    }
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(true));
+    assertThat(cache.contains("/org/bar/1.0/bar-1.0.jar"), is(true));
+    assertThat(cache.contains("/com/99"), is(false));
+
+    // markers fill up as well, subtrees are then removed entry by entry
+    for (int i = 0; i < 100; i++) {
+      assertThat(cache.removeWithChildren("/net/" + i), is(true));
+    }
+    assertThat(cache.removeWithChildren("/org/foo"), is(true));
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(false));
+    assertThat(cache.contains("/org/foo/2.0/foo-2.0.jar"), is(false));
+    assertThat(cache.contains("/org/bar/1.0/bar-1.0.jar"), is(true));
+  }
+
+  @Test
+  public void closedCacheIsEmpty() {
+    cache.put("/org/foo/1.0/foo-1.0.jar", Boolean.TRUE);
+    cache.close();
+
+    assertThat(cache.contains("/org/foo/1.0/foo-1.0.jar"), is(false));
+    assertThat(cache.isExpired("/org/foo/1.0/foo-1.0.jar"), is(false));
+    cache.put("/org/bar/1.0/bar-1.0.jar", Boolean.TRUE);
+    assertThat(cache.contains("/org/bar/1.0/bar-1.0.jar"), is(false));
+    assertThat(cache.remove("/org/foo/1.0/foo-1.0.jar"), is(false));
+    assertThat(cache.removeWithChildren("/org"), is(false));
+    assertThat(cache.purge(), is(false));
+    assertThat(cache.listKeysInCache(), is(empty()));
+    assertThat(cache.getStatistics().getSize(), is(0L));
+  }
+}
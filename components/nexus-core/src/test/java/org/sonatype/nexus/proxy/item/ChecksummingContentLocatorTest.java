@@ -0,0 +1,96 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.item;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sonatype.nexus.proxy.RequestContext;
+import org.sonatype.nexus.util.DigesterUtils;
+import org.sonatype.nexus.util.io.StreamSupport;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+
+import static com.google.common.io.ByteStreams.nullOutputStream;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Tests for {@link ChecksummingContentLocator}.
+ */
+public class ChecksummingContentLocatorTest
+    extends TestSupport
+{
+  private final byte[] content = "Some content to be digested while it is read".getBytes();
+
+  @Test
+  public void allDigestsCalculatedInSinglePass() throws Exception {
+    final RequestContext context = new RequestContext();
+    final ChecksummingContentLocator cl = new ChecksummingContentLocator(
+        new ByteArrayContentLocator(content, "text/plain"), digests(), context);
+
+    try (InputStream is = cl.getContent()) {
+      StreamSupport.copy(is, nullOutputStream(), 7);
+    }
+
+    assertDigests(context);
+  }
+
+  @Test
+  public void skippedContentIsDigested() throws Exception {
+    final RequestContext context = new RequestContext();
+    final ChecksummingContentLocator cl = new ChecksummingContentLocator(
+        new ByteArrayContentLocator(content, "text/plain"), digests(), context);
+
+    try (InputStream is = cl.getContent()) {
+      assertThat(is.skip(10), equalTo(10L));
+      StreamSupport.copy(is, nullOutputStream(), 7);
+    }
+
+    assertDigests(context);
+  }
+
+  @Test
+  public void presentDigestsAreKept() throws Exception {
+    final RequestContext context = new RequestContext();
+    context.put(StorageFileItem.DIGEST_SHA1_KEY, "present");
+    final ChecksummingContentLocator cl = new ChecksummingContentLocator(
+        new ByteArrayContentLocator(content, "text/plain"), MessageDigest.getInstance("SHA1"),
+        StorageFileItem.DIGEST_SHA1_KEY, context);
+
+    try (InputStream is = cl.getContent()) {
+      StreamSupport.copy(is, nullOutputStream(), 7);
+    }
+
+    assertThat(context.get(StorageFileItem.DIGEST_SHA1_KEY), equalTo((Object) "present"));
+  }
+
+  private Map<String, MessageDigest> digests() throws Exception {
+    final Map<String, MessageDigest> digests = new LinkedHashMap<String, MessageDigest>();
+    digests.put(StorageFileItem.DIGEST_SHA1_KEY, MessageDigest.getInstance("SHA1"));
+    digests.put(StorageFileItem.DIGEST_MD5_KEY, MessageDigest.getInstance("MD5"));
+    digests.put(StorageFileItem.DIGEST_SHA256_KEY, MessageDigest.getInstance("SHA-256"));
+    return digests;
+  }
+
+  private void assertDigests(final RequestContext context) {
+    assertThat(context.get(StorageFileItem.DIGEST_SHA1_KEY), equalTo((Object) DigesterUtils.getSha1Digest(content)));
+    assertThat(context.get(StorageFileItem.DIGEST_MD5_KEY), equalTo((Object) DigesterUtils.getMd5Digest(content)));
+    assertThat(context.get(StorageFileItem.DIGEST_SHA256_KEY),
+        equalTo((Object) Hashing.sha256().hashBytes(content).toString()));
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.item;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmark comparing contention of UID lock lookups in {@link DefaultRepositoryItemUidFactory} with the previous,
+ * synchronized {@link WeakHashMap} based implementation, at 8, 32 and 128 threads. Not executed as part of the build
+ * (it does not match the test naming pattern), run it manually with
+ * {@code mvn test -Dtest=DefaultRepositoryItemUidFactoryBenchmark}.
+ */
+public class DefaultRepositoryItemUidFactoryBenchmark
+    extends TestSupport
+{
+  private static final int[] THREADS = {8, 32, 128};
+
+  private static final int PATHS = 1000;
+
+  private static final int LOOKUPS_PER_THREAD = 200000;
+
+  @Mock
+  private EventBus eventBus;
+
+  @Mock
+  private RepositoryRegistry repositoryRegistry;
+
+  @Mock
+  private Repository repository;
+
+  private RepositoryItemUid[] uids;
+
+  @Before
+  public void setUp() {
+    when(repository.getId()).thenReturn("repo");
+  }
+
+  @Test
+  public void compare()
+      throws Exception
+  {
+    final DefaultRepositoryItemUidFactory current =
+        new DefaultRepositoryItemUidFactory(eventBus, repositoryRegistry, null);
+    final DefaultRepositoryItemUidFactory synchronizedWeakHashMap =
+        new SynchronizedWeakHashMapUidFactory(eventBus, repositoryRegistry);
+
+    uids = new RepositoryItemUid[PATHS];
+    for (int i = 0; i < PATHS; i++) {
+      uids[i] = current.createUid(repository, "/org/group/artifact/" + i + "/artifact-" + i + ".jar");
+    }
+
+    // warm up
+    run(synchronizedWeakHashMap, THREADS[0]);
+    run(current, THREADS[0]);
+
+    for (int threads : THREADS) {
+      final long legacy = run(synchronizedWeakHashMap, threads);
+      final long striped = run(current, threads);
+      logger.info("{} threads, {} lookups each: synchronized WeakHashMap {} ms, weak valued striped map {} ms",
+          threads, LOOKUPS_PER_THREAD, legacy, striped);
+    }
+  }
+
+  private long run(final DefaultRepositoryItemUidFactory factory, final int threads)
+      throws Exception
+  {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      final Thread thread = new Thread(new Runnable()
+      {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+              factory.createUidLock(uids[(offset + i) % PATHS]);
+            }
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          finally {
+            done.countDown();
+          }
+        }
+      });
+      thread.start();
+    }
+    final long started = System.nanoTime();
+    start.countDown();
+    done.await();
+    return (System.nanoTime() - started) / 1000000L;
+  }
+
+  /**
+   * The UID lock registry as it was before: synchronized lookup allocating a lock and lock resource on every call.
+   */
+  private static class SynchronizedWeakHashMapUidFactory
+      extends DefaultRepositoryItemUidFactory
+  {
+    private final WeakHashMap<DefaultRepositoryItemUidLock, WeakReference<DefaultRepositoryItemUidLock>> locks =
+        new WeakHashMap<DefaultRepositoryItemUidLock, WeakReference<DefaultRepositoryItemUidLock>>();
+
+    public SynchronizedWeakHashMapUidFactory(final EventBus eventBus, final RepositoryRegistry repositoryRegistry) {
+      super(eventBus, repositoryRegistry, null);
+    }
+
+    @Override
+    protected synchronized DefaultRepositoryItemUidLock doCreateUidLockForKey(final String key) {
+      final DefaultRepositoryItemUidLock newLock = new DefaultRepositoryItemUidLock(new String(key),
+          new SimpleLockResource());
+      final WeakReference<DefaultRepositoryItemUidLock> oldLockRef = locks.get(newLock);
+      if (oldLockRef != null) {
+        final DefaultRepositoryItemUidLock oldLock = oldLockRef.get();
+        if (oldLock != null) {
+          return oldLock;
+        }
+      }
+      locks.put(newLock, new WeakReference<DefaultRepositoryItemUidLock>(newLock));
+      return newLock;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.item;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import org.sonatype.nexus.proxy.RequestContext;
+import org.sonatype.nexus.util.DigesterUtils;
+import org.sonatype.nexus.util.io.StreamSupport;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Benchmark comparing throughput and CPU time of storing a file while calculating its SHA1 and MD5 digests: as
+ * before, by a chain of content locators each wrapping content into a {@link DigestInputStream} for one digest (as
+ * {@code AbstractLocalRepositoryStorage#prepareStorageFileItemForStore} did), and with
+ * {@link ChecksummingContentLocator} calculating all digests in a single stream layer. Not executed as part of the
+ * build (it does not match the test naming pattern), run it manually with
+ * {@code mvn test -Dtest=DigestCalculationBenchmark}.
+ */
+public class DigestCalculationBenchmark
+    extends TestSupport
+{
+  private static final long FILE_SIZE = 256L * 1024 * 1024;
+
+  private static final int ROUNDS = 5;
+
+  private static final double MB = 1024d * 1024;
+
+  private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  private File source;
+
+  private File target;
+
+  @Before
+  public void setUp() throws IOException {
+    source = util.createTempFile();
+    try (RandomAccessFile raf = new RandomAccessFile(source, "rw")) {
+      raf.setLength(FILE_SIZE);
+    }
+    target = util.createTempFile();
+  }
+
+  @Test
+  public void compare() throws Exception {
+    // warm up both paths and the page cache
+    storeChained();
+    storeSinglePass();
+
+    long chainedNanos = 0, chainedCpu = 0, singleNanos = 0, singleCpu = 0;
+    for (int i = 0; i < ROUNDS; i++) {
+      long cpu = threadMXBean.getCurrentThreadCpuTime();
+      long start = System.nanoTime();
+      storeChained();
+      chainedNanos += System.nanoTime() - start;
+      chainedCpu += threadMXBean.getCurrentThreadCpuTime() - cpu;
+
+      cpu = threadMXBean.getCurrentThreadCpuTime();
+      start = System.nanoTime();
+      storeSinglePass();
+      singleNanos += System.nanoTime() - start;
+      singleCpu += threadMXBean.getCurrentThreadCpuTime() - cpu;
+    }
+
+    final double stored = FILE_SIZE * ROUNDS / MB;
+    logger.info("Stored {} MB per method", stored);
+    logger.info("Chained:     {} MB/s, {} ms CPU per GB", (long) (stored / (chainedNanos / 1e9)),
+        (long) (chainedCpu / 1e6 / (stored / 1024)));
+    logger.info("Single pass: {} MB/s, {} ms CPU per GB", (long) (stored / (singleNanos / 1e9)),
+        (long) (singleCpu / 1e6 / (stored / 1024)));
+  }
+
+  private void storeChained() throws Exception {
+    final RequestContext context = new RequestContext();
+    final ContentLocator sha1cl = new ChainedDigestContentLocator(fileContent(), MessageDigest.getInstance("SHA1"),
+        StorageFileItem.DIGEST_SHA1_KEY, context);
+    store(new ChainedDigestContentLocator(sha1cl, MessageDigest.getInstance("MD5"), StorageFileItem.DIGEST_MD5_KEY,
+        context));
+  }
+
+  private void storeSinglePass() throws Exception {
+    final Map<String, MessageDigest> digests = ChecksummingContentLocator.newItemDigests();
+    store(new ChecksummingContentLocator(fileContent(), digests, new RequestContext()));
+  }
+
+  private void store(final ContentLocator content) throws IOException {
+    // same as DefaultFSPeer#storeItem does
+    try (InputStream is = content.getContent();
+         OutputStream os = new BufferedOutputStream(new FileOutputStream(target), StreamSupport.BUFFER_SIZE)) {
+      StreamSupport.copy(is, os, StreamSupport.BUFFER_SIZE);
+    }
+  }
+
+  private ContentLocator fileContent() {
+    return new FileContentLocator(source, "application/octet-stream");
+  }
+
+  /**
+   * Content locator calculating one digest, as {@link ChecksummingContentLocator} did before.
+   */
+  private static class ChainedDigestContentLocator
+      extends AbstractWrappingContentLocator
+  {
+    private final MessageDigest messageDigest;
+
+    private final String contextKey;
+
+    private final RequestContext context;
+
+    private ChainedDigestContentLocator(final ContentLocator content, final MessageDigest messageDigest,
+                                        final String contextKey, final RequestContext context)
+    {
+      super(content);
+      this.messageDigest = messageDigest;
+      this.contextKey = contextKey;
+      this.context = context;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new DigestInputStream(getTarget().getContent(), messageDigest)
+      {
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+          final int result = super.read(b, off, len);
+          if (result == -1 && !context.containsKey(contextKey, false)) {
+            context.put(contextKey, DigesterUtils.getDigestAsString(getMessageDigest().digest()));
+          }
+          return result;
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.maven.maven2;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.sonatype.nexus.proxy.attributes.Attributes;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageCompositeFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.maven.MavenRepository;
+import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
+import org.sonatype.nexus.proxy.maven.maven2.MergedMetadataCache.MergedMetadata;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link MergedMetadataCache}.
+ */
+public class MergedMetadataCacheTest
+    extends TestSupport
+{
+  private static final String PATH = "/org/foo/maven-metadata.xml";
+
+  private final MergedMetadataCache underTest = new MergedMetadataCache(10);
+
+  @Test
+  public void servedWhileMembersUnchanged() {
+    final List<StorageItem> sources = Arrays.<StorageItem>asList(
+        file("uid1", RepositoryPolicy.RELEASE, 1000L, 100L, "sha1"),
+        file("uid2", RepositoryPolicy.SNAPSHOT, 2000L, 200L, null)
+    );
+    final String stamp = MergedMetadataCache.stamp(sources);
+    final MergedMetadata merged = new MergedMetadata(stamp, new byte[]{1}, "md5", "sha1");
+    underTest.put(PATH, merged);
+
+    assertThat(underTest.get(PATH, MergedMetadataCache.stamp(sources)), sameInstance(merged));
+    assertThat(underTest.get("/org/bar/maven-metadata.xml", stamp), nullValue());
+
+    underTest.invalidate(PATH);
+    assertThat(underTest.get(PATH, stamp), nullValue());
+  }
+
+  @Test
+  public void stampChangesWithMembers() {
+    final String stamp = MergedMetadataCache.stamp(Arrays.<StorageItem>asList(
+        file("uid1", RepositoryPolicy.RELEASE, 1000L, 100L, "sha1"),
+        file("uid2", RepositoryPolicy.RELEASE, 2000L, 200L, "sha1")
+    ));
+    assertThat(stamp, notNullValue());
+
+    // reordered members
+    assertThat(MergedMetadataCache.stamp(Arrays.<StorageItem>asList(
+        file("uid2", RepositoryPolicy.RELEASE, 2000L, 200L, "sha1"),
+        file("uid1", RepositoryPolicy.RELEASE, 1000L, 100L, "sha1")
+    )), not(equalTo(stamp)));
+    // member removed
+    assertThat(MergedMetadataCache.stamp(Arrays.<StorageItem>asList(
+        file("uid1", RepositoryPolicy.RELEASE, 1000L, 100L, "sha1")
+    )), not(equalTo(stamp)));
+    // member modified
+    assertThat(MergedMetadataCache.stamp(Arrays.<StorageItem>asList(
+        file("uid1", RepositoryPolicy.RELEASE, 1000L, 100L, "sha1"),
+        file("uid2", RepositoryPolicy.RELEASE, 3000L, 200L, "sha1")
+    )), not(equalTo(stamp)));
+    // member content changed keeping timestamp and length
+    assertThat(MergedMetadataCache.stamp(Arrays.<StorageItem>asList(
+        file("uid1", RepositoryPolicy.RELEASE, 1000L, 100L, "sha1"),
+        file("uid2", RepositoryPolicy.RELEASE, 2000L, 200L, "other")
+    )), not(equalTo(stamp)));
+    // member policy changed
+    assertThat(MergedMetadataCache.stamp(Arrays.<StorageItem>asList(
+        file("uid1", RepositoryPolicy.RELEASE, 1000L, 100L, "sha1"),
+        file("uid2", RepositoryPolicy.SNAPSHOT, 2000L, 200L, "sha1")
+    )), not(equalTo(stamp)));
+  }
+
+  @Test
+  public void nestedGroupsStampedBySources() {
+    final StorageFileItem source = file("uid1", RepositoryPolicy.RELEASE, 1000L, 100L, "sha1");
+    final StorageFileItem modifiedSource = file("uid1", RepositoryPolicy.RELEASE, 2000L, 100L, "sha1");
+    final StorageCompositeFileItem nested = mock(StorageCompositeFileItem.class);
+    when(nested.getSources()).thenReturn(Collections.<StorageItem>singletonList(source));
+    final String stamp = MergedMetadataCache.stamp(Collections.<StorageItem>singletonList(nested));
+    assertThat(stamp, notNullValue());
+
+    when(nested.getSources()).thenReturn(Collections.<StorageItem>singletonList(modifiedSource));
+    assertThat(MergedMetadataCache.stamp(Collections.<StorageItem>singletonList(nested)), not(equalTo(stamp)));
+  }
+
+  @Test
+  public void notCachedIfMembersCannotBeStamped() {
+    final List<StorageItem> sources = Collections.<StorageItem>singletonList(mock(StorageCollectionItem.class));
+    final String stamp = MergedMetadataCache.stamp(sources);
+    assertThat(stamp, nullValue());
+
+    underTest.put(PATH, new MergedMetadata(stamp, new byte[]{1}, "md5", "sha1"));
+    assertThat(underTest.get(PATH, stamp), nullValue());
+  }
+
+  private StorageFileItem file(final String uidString, final RepositoryPolicy policy, final long modified,
+                               final long length, final String sha1)
+  {
+    final MavenRepository repository = mock(MavenRepository.class);
+    when(repository.adaptToFacet(MavenRepository.class)).thenReturn(repository);
+    when(repository.getRepositoryPolicy()).thenReturn(policy);
+    final RepositoryItemUid uid = mock(RepositoryItemUid.class);
+    when(uid.getRepository()).thenReturn(repository);
+    when(uid.toString()).thenReturn(uidString);
+    final Attributes attributes = mock(Attributes.class);
+    when(attributes.get(StorageFileItem.DIGEST_SHA1_KEY)).thenReturn(sha1);
+    final StorageFileItem item = mock(StorageFileItem.class);
+    when(item.getRepositoryItemUid()).thenReturn(uid);
+    when(item.getModified()).thenReturn(modified);
+    when(item.getLength()).thenReturn(length);
+    when(item.getRepositoryItemAttributes()).thenReturn(attributes);
+    return item;
+  }
+}
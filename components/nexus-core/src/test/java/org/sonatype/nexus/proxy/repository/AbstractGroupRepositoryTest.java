@@ -12,22 +12,61 @@
  */
 package org.sonatype.nexus.proxy.repository;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.sonatype.nexus.configuration.ConfigurationPrepareForSaveEvent;
 import org.sonatype.nexus.configuration.Configurator;
 import org.sonatype.nexus.configuration.model.CRepository;
 import org.sonatype.nexus.configuration.model.CRepositoryExternalConfigurationHolderFactory;
 import org.sonatype.nexus.events.Event;
+import org.sonatype.nexus.proxy.IllegalOperationException;
+import org.sonatype.nexus.proxy.IllegalRequestException;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.RemoteStorageTransportAbortedException;
+import org.sonatype.nexus.proxy.RepositoryNotAvailableException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.mapping.RequestRepositoryMapper;
 import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
+import org.sonatype.nexus.proxy.repository.threads.ThreadPoolManager;
+import org.sonatype.nexus.proxy.storage.remote.RemoteRequestAborter;
 import org.sonatype.sisu.litmus.testsupport.TestSupport;
 
+import com.google.common.collect.Maps;
+import org.junit.After;
 import org.junit.Test;
 import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.proxy.ItemNotFoundException.reasonFor;
 
 /**
  * Unit tests for {@link AbstractGroupRepository}
@@ -56,6 +95,19 @@ public class AbstractGroupRepositoryTest
   @Mock(answer = Answers.RETURNS_SMART_NULLS)
   private AbstractGroupRepositoryConfiguration extConfig;
 
+  @Mock
+  private RepositoryRegistry repositoryRegistry;
+
+  @Mock
+  private RequestRepositoryMapper requestRepositoryMapper;
+
+  @Mock
+  private ThreadPoolManager poolManager;
+
+  private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+  private final ResourceStoreRequest request = new ResourceStoreRequest("/org/foo/1.0/foo-1.0.jar");
+
   @Spy
   private AbstractGroupRepository groupRepo = new AbstractGroupRepository()
   {
@@ -107,5 +159,249 @@ public class AbstractGroupRepositoryTest
 
   }
 
+  @After
+  public void shutdownExecutor() {
+    executorService.shutdownNow();
+  }
+
+  private void members(final Repository... members) throws Exception {
+    when(poolManager.getRepositoryThreadPool(groupRepo)).thenReturn(executorService);
+    groupRepo.populateAbstractGroupRepository(repositoryRegistry, requestRepositoryMapper, poolManager);
+    doReturn("group").when(groupRepo).getId();
+    doReturn(Arrays.asList(members)).when(groupRepo).getRequestRepositories(any(ResourceStoreRequest.class));
+  }
 
+  private Repository member(final String id, final Class<?> facet) {
+    final Repository member = mock(Repository.class);
+    when(member.getId()).thenReturn(id);
+    when(member.getRepositoryKind()).thenReturn(new DefaultRepositoryKind(facet, null));
+    return member;
+  }
+
+  private void answer(final Repository member, final Answer<StorageItem> answer) throws Exception {
+    when(member.retrieveItem(any(ResourceStoreRequest.class))).thenAnswer(answer);
+    when(member.retrieveItem(anyBoolean(), any(ResourceStoreRequest.class))).thenAnswer(answer);
+  }
+
+  private static Answer<StorageItem> returns(final StorageItem item) {
+    return returns(item, null);
+  }
+
+  /**
+   * Returns the item, once the latch (if any) is released.
+   */
+  private static Answer<StorageItem> returns(final StorageItem item, final CountDownLatch latch) {
+    return new Answer<StorageItem>()
+    {
+      @Override
+      public StorageItem answer(final InvocationOnMock invocation) throws Throwable {
+        if (latch != null) {
+          latch.await();
+        }
+        return item;
+      }
+    };
+  }
+
+  private static Answer<StorageItem> fails(final Exception e) {
+    return new Answer<StorageItem>()
+    {
+      @Override
+      public StorageItem answer(final InvocationOnMock invocation) throws Throwable {
+        throw e;
+      }
+    };
+  }
+
+  private ItemNotFoundException notFound(final Repository member) {
+    return new ItemNotFoundException(reasonFor(request, member, "Not found in %s", member.getId()));
+  }
+
+  @Test
+  public void parallelRetrievalRespectsMemberOrder() throws Exception {
+    final Repository first = member("first", HostedRepository.class);
+    final Repository second = member("second", HostedRepository.class);
+    final Repository third = member("third", HostedRepository.class);
+    final StorageItem secondItem = mock(StorageItem.class);
+    final CountDownLatch thirdDone = new CountDownLatch(1);
+    final ItemNotFoundException firstNotFound = notFound(first);
+    answer(first, fails(firstNotFound));
+    // second finishes only after third already has the item
+    answer(second, returns(secondItem, thirdDone));
+    answer(third, new Answer<StorageItem>()
+    {
+      @Override
+      public StorageItem answer(final InvocationOnMock invocation) {
+        thirdDone.countDown();
+        return mock(StorageItem.class);
+      }
+    });
+    members(first, second, third);
+
+    final Map<Repository, Throwable> memberThrowables = Maps.newLinkedHashMap();
+    assertThat(groupRepo.doRetrieveItemFromMembersInParallel(request, memberThrowables), sameInstance(secondItem));
+    assertThat(memberThrowables.keySet(), contains(first));
+    assertThat(memberThrowables.get(first), sameInstance((Throwable) firstNotFound));
+  }
+
+  @Test
+  public void parallelRetrievalCancelsLosingMembers() throws Exception {
+    final Repository first = member("first", HostedRepository.class);
+    final Repository blocked = member("blocked", HostedRepository.class);
+    final Repository proxy = member("proxy", ProxyRepository.class);
+    final StorageItem firstItem = mock(StorageItem.class);
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    final CountDownLatch aborted = new CountDownLatch(1);
+    answer(first, returns(firstItem, started));
+    answer(blocked, new Answer<StorageItem>()
+    {
+      @Override
+      public StorageItem answer(final InvocationOnMock invocation) {
+        started.countDown();
+        try {
+          Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        }
+        catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+        return null;
+      }
+    });
+    // outbound request not responding to interruption, only to abort
+    answer(proxy, new Answer<StorageItem>()
+    {
+      @Override
+      public StorageItem answer(final InvocationOnMock invocation) throws Throwable {
+        final ResourceStoreRequest memberRequest = (ResourceStoreRequest) invocation.getArguments()[0];
+        RemoteRequestAborter.get(memberRequest).register(new RemoteRequestAborter.Abortable()
+        {
+          @Override
+          public void abort() {
+            aborted.countDown();
+          }
+        });
+        started.countDown();
+        while (!aborted.await(10, TimeUnit.SECONDS)) {
+          // awaiting the response
+        }
+        throw new RemoteStorageTransportAbortedException(mock(ProxyRepository.class), "aborted", null);
+      }
+    });
+    members(first, blocked, proxy);
+
+    final Map<Repository, Throwable> memberThrowables = Maps.newLinkedHashMap();
+    assertThat(groupRepo.doRetrieveItemFromMembersInParallel(request, memberThrowables), sameInstance(firstItem));
+    assertThat(interrupted.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(aborted.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(memberThrowables.isEmpty(), is(true));
+  }
+
+  @Test
+  public void parallelRetrievalAsksRemoteMembersConcurrentlyInOrder() throws Exception {
+    final Repository proxy = member("proxy", ProxyRepository.class);
+    final Repository nested = member("nested", GroupRepository.class);
+    final Repository hosted = member("hosted", HostedRepository.class);
+    final StorageItem nestedItem = mock(StorageItem.class);
+    final Thread caller = Thread.currentThread();
+    answer(proxy, new Answer<StorageItem>()
+    {
+      @Override
+      public StorageItem answer(final InvocationOnMock invocation) throws Throwable {
+        assertThat(Thread.currentThread(), not(sameInstance(caller)));
+        assertThat(invocation.getArguments()[0], not(sameInstance((Object) request)));
+        throw notFound(proxy);
+      }
+    });
+    answer(nested, returns(nestedItem));
+    answer(hosted, returns(mock(StorageItem.class)));
+    members(proxy, nested, hosted);
+
+    final Map<Repository, Throwable> memberThrowables = Maps.newLinkedHashMap();
+    assertThat(groupRepo.doRetrieveItemFromMembersInParallel(request, memberThrowables), sameInstance(nestedItem));
+    assertThat(memberThrowables.keySet(), contains(proxy));
+    assertThat(memberThrowables.get(proxy), instanceOf(ItemNotFoundException.class));
+  }
+
+  @Test
+  public void parallelRetrievalMissOnSlowProxiesTakesAboutTheSlowestMember() throws Exception {
+    final long delay = TimeUnit.SECONDS.toMillis(1);
+    final Repository[] proxies = new Repository[4];
+    for (int i = 0; i < proxies.length; i++) {
+      final Repository proxy = member("proxy" + i, ProxyRepository.class);
+      final long memberDelay = delay / proxies.length * (i + 1);
+      answer(proxy, new Answer<StorageItem>()
+      {
+        @Override
+        public StorageItem answer(final InvocationOnMock invocation) throws Throwable {
+          Thread.sleep(memberDelay); // remote timeout
+          throw notFound(proxy);
+        }
+      });
+      proxies[i] = proxy;
+    }
+    members(proxies);
+
+    final Map<Repository, Throwable> memberThrowables = Maps.newLinkedHashMap();
+    final long started = System.currentTimeMillis();
+    assertThat(groupRepo.doRetrieveItemFromMembersInParallel(request, memberThrowables), nullValue());
+    final long took = System.currentTimeMillis() - started;
+
+    // sequentially it would take the sum of the delays, 2.5 times the slowest one
+    assertThat(took, greaterThanOrEqualTo(delay));
+    assertThat(took, lessThan(delay * 3 / 2));
+    assertThat(memberThrowables.keySet(), contains(proxies));
+  }
+
+  @Test
+  public void parallelRetrievalAggregatesMemberFailures() throws Exception {
+    final Repository notFound = member("notFound", HostedRepository.class);
+    final Repository unavailable = member("unavailable", HostedRepository.class);
+    final Repository broken = member("broken", ProxyRepository.class);
+    final Repository illegal = member("illegal", HostedRepository.class);
+    final ItemNotFoundException notFoundException = notFound(notFound);
+    final RepositoryNotAvailableException unavailableException = new RepositoryNotAvailableException(unavailable);
+    final LocalStorageException brokenException = new LocalStorageException("broken");
+    final IllegalOperationException illegalException = new IllegalRequestException(request, "illegal");
+    answer(notFound, fails(notFoundException));
+    answer(unavailable, fails(unavailableException));
+    answer(broken, fails(brokenException));
+    answer(illegal, fails(illegalException));
+    members(notFound, unavailable, broken, illegal);
+
+    final Map<Repository, Throwable> memberThrowables = Maps.newLinkedHashMap();
+    assertThat(groupRepo.doRetrieveItemFromMembersInParallel(request, memberThrowables), nullValue());
+    assertThat(memberThrowables.keySet(), contains(notFound, unavailable, broken, illegal));
+    assertThat(memberThrowables.get(notFound), sameInstance((Throwable) notFoundException));
+    assertThat(memberThrowables.get(unavailable), sameInstance((Throwable) unavailableException));
+    assertThat(memberThrowables.get(broken), sameInstance((Throwable) brokenException));
+    assertThat(memberThrowables.get(illegal), sameInstance((Throwable) illegalException));
+  }
+
+  @Test
+  public void parallelRetrievalOfAllMembers() throws Exception {
+    final Repository proxy = member("proxy", ProxyRepository.class);
+    final Repository notFound = member("notFound", HostedRepository.class);
+    final Repository hosted = member("hosted", HostedRepository.class);
+    final StorageItem proxyItem = mock(StorageItem.class);
+    final StorageItem hostedItem = mock(StorageItem.class);
+    final ItemNotFoundException notFoundException = notFound(notFound);
+    answer(proxy, new Answer<StorageItem>()
+    {
+      @Override
+      public StorageItem answer(final InvocationOnMock invocation) {
+        return proxyItem;
+      }
+    });
+    answer(notFound, fails(notFoundException));
+    answer(hosted, returns(hostedItem));
+    members(proxy, notFound, hosted);
+
+    final Map<Repository, Throwable> memberThrowables = Maps.newLinkedHashMap();
+    final List<StorageItem> items = groupRepo.doRetrieveItemsFromMembersInParallel(request, memberThrowables);
+    assertThat(items, contains(proxyItem, hostedItem));
+    assertThat(memberThrowables.keySet(), contains(notFound));
+    assertThat(memberThrowables.get(notFound), sameInstance((Throwable) notFoundException));
+    verify(proxy).retrieveItem(eq(false), any(ResourceStoreRequest.class));
+  }
 }
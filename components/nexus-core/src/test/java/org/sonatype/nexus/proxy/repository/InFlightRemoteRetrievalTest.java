@@ -0,0 +1,327 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
+import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.PreparedContentLocator;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link InFlightRemoteRetrieval}.
+ */
+public class InFlightRemoteRetrievalTest
+    extends TestSupport
+{
+  private static final byte[] CONTENT = new byte[64 * 1024];
+
+  private static final int HEAD_SIZE = 4 * 1024;
+
+  static {
+    for (int i = 0; i < CONTENT.length; i++) {
+      CONTENT[i] = (byte) i;
+    }
+  }
+
+  private final ByteSource fallback = ByteSource.wrap(CONTENT);
+
+  private ExecutorService executor;
+
+  private File spoolDirectory;
+
+  private InFlightRemoteRetrieval underTest;
+
+  /**
+   * Remote content, that hands out bytes in chunks only when permitted.
+   */
+  private Semaphore remoteChunks;
+
+  private StorageFileItem remoteItem;
+
+  @Before
+  public void prepare() throws IOException {
+    executor = Executors.newCachedThreadPool();
+    spoolDirectory = util.createTempDir();
+    underTest = new InFlightRemoteRetrieval(spoolDirectory, HEAD_SIZE);
+    remoteChunks = new Semaphore(0);
+    remoteItem = remoteItem(new InputStream()
+    {
+      private int position;
+
+      @Override
+      public int read() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (position == CONTENT.length) {
+          return -1;
+        }
+        remoteChunks.acquireUninterruptibly();
+        final int read = Math.min(Math.min(len, 1024), CONTENT.length - position);
+        System.arraycopy(CONTENT, position, b, off, read);
+        position += read;
+        return read;
+      }
+    });
+  }
+
+  @After
+  public void cleanup() {
+    executor.shutdownNow();
+  }
+
+  private StorageFileItem remoteItem(final InputStream content) {
+    final StorageFileItem result = mock(StorageFileItem.class);
+    final ContentLocator[] locator = {new PreparedContentLocator(content, "application/java-archive", CONTENT.length)};
+    when(result.getRepositoryItemAttributes()).thenReturn(new DefaultAttributes());
+    when(result.getMimeType()).thenReturn("application/java-archive");
+    when(result.getLength()).thenReturn((long) CONTENT.length);
+    when(result.getContentLocator()).thenAnswer(new Answer<ContentLocator>()
+    {
+      @Override
+      public ContentLocator answer(final InvocationOnMock invocation) {
+        return locator[0];
+      }
+    });
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(final InvocationOnMock invocation) {
+        locator[0] = (ContentLocator) invocation.getArguments()[0];
+        return null;
+      }
+    }).when(result).setContentLocator(any(ContentLocator.class));
+    return result;
+  }
+
+  /**
+   * Leader consuming the content, as caching does.
+   */
+  private Future<byte[]> leader() {
+    return executor.submit(new Callable<byte[]>()
+    {
+      @Override
+      public byte[] call() throws Exception {
+        try (InputStream in = remoteItem.getContentLocator().getContent()) {
+          return ByteStreams.toByteArray(in);
+        }
+      }
+    });
+  }
+
+  private Future<byte[]> follower(final ContentLocator content) {
+    return executor.submit(new Callable<byte[]>()
+    {
+      @Override
+      public byte[] call() throws Exception {
+        try (InputStream in = content.getContent()) {
+          return ByteStreams.toByteArray(in);
+        }
+      }
+    });
+  }
+
+  @Test
+  public void followerStreamsWhileLeaderDownloads() throws Exception {
+    underTest.tee(remoteItem);
+    final ContentLocator content = underTest.join(fallback);
+    assertThat(content, notNullValue());
+    assertThat(content.getLength(), equalTo((long) CONTENT.length));
+
+    final Future<byte[]> leader = leader();
+    final InputStream in = content.getContent();
+    try {
+      // first chunk is readable by follower while leader still waits for rest of remote content
+      remoteChunks.release();
+      final byte[] first = new byte[1024];
+      ByteStreams.readFully(in, first);
+      assertThat(first, equalTo(Arrays.copyOf(CONTENT, 1024)));
+
+      remoteChunks.release(Integer.MAX_VALUE / 2);
+      assertThat(leader.get(5, TimeUnit.SECONDS), equalTo(CONTENT));
+
+      // follower sees end of content only once retrieval completed
+      final Future<byte[]> rest = executor.submit(new Callable<byte[]>()
+      {
+        @Override
+        public byte[] call() throws Exception {
+          return ByteStreams.toByteArray(in);
+        }
+      });
+      Thread.sleep(200);
+      assertThat(rest.isDone(), equalTo(false));
+      underTest.complete();
+      assertThat(rest.get(5, TimeUnit.SECONDS), equalTo(Arrays.copyOfRange(CONTENT, 1024, CONTENT.length)));
+    }
+    finally {
+      in.close();
+    }
+    assertThat(spoolDirectory.list(), emptyArray());
+  }
+
+  @Test
+  public void followerFailsWhenRetrievalFails() throws Exception {
+    underTest.tee(remoteItem);
+    final Future<byte[]> follower = follower(underTest.join(fallback));
+    remoteChunks.release(Integer.MAX_VALUE / 2);
+    leader().get(5, TimeUnit.SECONDS);
+    // ie. validation failed
+    underTest.finish();
+    try {
+      follower.get(5, TimeUnit.SECONDS);
+      fail("Follower should fail");
+    }
+    catch (Exception e) {
+      assertThat(e.getCause() instanceof IOException, equalTo(true));
+    }
+    assertThat(spoolDirectory.list(), emptyArray());
+  }
+
+  @Test
+  public void nothingToJoinWhenFinishedWithoutContent() throws Exception {
+    underTest.finish();
+    assertThat(underTest.join(fallback), nullValue());
+  }
+
+  @Test
+  public void fallbackWhenSpoolIsGone() throws Exception {
+    underTest.tee(remoteItem);
+    final ContentLocator content = underTest.join(fallback);
+    remoteChunks.release(Integer.MAX_VALUE / 2);
+    leader().get(5, TimeUnit.SECONDS);
+    underTest.complete();
+    assertThat(spoolDirectory.list(), emptyArray());
+
+    assertThat(follower(content).get(5, TimeUnit.SECONDS), equalTo(CONTENT));
+  }
+
+  @Test
+  public void leaderUnaffectedBySpoolProblems() throws Exception {
+    underTest.tee(remoteItem);
+    final ContentLocator content = underTest.join(fallback);
+    final Future<byte[]> follower = follower(content);
+    // make spool unreadable by replacing it with a directory
+    final File spoolFile = underTest.getSpoolFile();
+    assertThat(spoolFile.delete(), equalTo(true));
+    assertThat(spoolFile.mkdir(), equalTo(true));
+    remoteChunks.release(Integer.MAX_VALUE / 2);
+    try {
+      assertThat(leader().get(5, TimeUnit.SECONDS), equalTo(CONTENT));
+    }
+    finally {
+      spoolFile.delete();
+    }
+    underTest.complete();
+    try {
+      follower.get(5, TimeUnit.SECONDS);
+    }
+    catch (Exception e) {
+      // either it failed opening the spool or got the failure
+      assertThat(e.getCause() instanceof IOException, equalTo(true));
+    }
+  }
+
+  @Test
+  public void nothingToJoinWhenSpoolCannotBeCreated() throws Exception {
+    assertThat(spoolDirectory.delete(), equalTo(true));
+    underTest.tee(remoteItem);
+    assertThat(underTest.join(fallback), nullValue());
+    remoteChunks.release(Integer.MAX_VALUE / 2);
+    assertThat(leader().get(5, TimeUnit.SECONDS), equalTo(CONTENT));
+  }
+
+  @Test
+  public void noSpoolWithoutFollowers() throws Exception {
+    underTest.tee(remoteItem);
+    remoteChunks.release(Integer.MAX_VALUE / 2);
+    assertThat(leader().get(5, TimeUnit.SECONDS), equalTo(CONTENT));
+    underTest.complete();
+    assertThat(underTest.getSpoolFile(), nullValue());
+    assertThat(spoolDirectory.list(), emptyArray());
+  }
+
+  @Test
+  public void followerJoiningWithinHeadGetsAllContent() throws Exception {
+    underTest.tee(remoteItem);
+    try (InputStream leader = remoteItem.getContentLocator().getContent()) {
+      remoteChunks.release(2);
+      ByteStreams.readFully(leader, new byte[2 * 1024]);
+      assertThat(underTest.getSpoolFile(), nullValue());
+
+      final Future<byte[]> follower = follower(underTest.join(fallback));
+      remoteChunks.release(Integer.MAX_VALUE / 2);
+      ByteStreams.toByteArray(leader);
+      underTest.complete();
+      assertThat(follower.get(5, TimeUnit.SECONDS), equalTo(CONTENT));
+    }
+    assertThat(spoolDirectory.list(), emptyArray());
+  }
+
+  @Test
+  public void followerCannotJoinPastHead() throws Exception {
+    underTest.tee(remoteItem);
+    try (InputStream leader = remoteItem.getContentLocator().getContent()) {
+      remoteChunks.release(5);
+      ByteStreams.readFully(leader, new byte[5 * 1024]);
+      assertThat(underTest.join(fallback), nullValue());
+      remoteChunks.release(Integer.MAX_VALUE / 2);
+      ByteStreams.toByteArray(leader);
+    }
+    underTest.complete();
+    assertThat(spoolDirectory.list(), emptyArray());
+  }
+
+  @Test
+  public void singleByteContentStream() throws Exception {
+    remoteItem = remoteItem(new ByteArrayInputStream(CONTENT));
+    underTest.tee(remoteItem);
+    final Future<byte[]> follower = follower(underTest.join(fallback));
+    assertThat(leader().get(5, TimeUnit.SECONDS), equalTo(CONTENT));
+    underTest.complete();
+    assertThat(follower.get(5, TimeUnit.SECONDS), equalTo(CONTENT));
+  }
+}
@@ -12,6 +12,9 @@
  */
 package org.sonatype.nexus.proxy.router;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -26,6 +29,7 @@ import org.sonatype.nexus.configuration.model.DefaultCRepository;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.access.Action;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.maven.MavenGroupRepository;
 import org.sonatype.nexus.proxy.maven.maven1.M1LayoutedM2ShadowRepositoryConfiguration;
@@ -39,6 +43,7 @@ import org.sonatype.nexus.proxy.repository.GroupRepository;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.repository.ShadowRepository;
 import org.sonatype.nexus.proxy.security.PlexusConfiguredRealm;
+import org.sonatype.nexus.proxy.storage.local.fs.DefaultFSLocalRepositoryStorage;
 import org.sonatype.nexus.proxy.targets.Target;
 import org.sonatype.nexus.proxy.targets.TargetRegistry;
 import org.sonatype.nexus.security.WebSecurityUtil;
@@ -50,6 +55,7 @@ import com.google.inject.Binder;
 import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.name.Names;
+import org.apache.commons.io.FileUtils;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.realm.Realm;
 import org.apache.shiro.subject.Subject;
@@ -59,6 +65,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 
 public class DefaultRepositoryRouterTest
     extends NexusAppTestSupport
@@ -347,6 +354,50 @@ public class DefaultRepositoryRouterTest
     this.securitySystem.logout(subject);
   }
 
+  @Test
+  public void testCopyItemLinksContentAndCarriesDigests()
+      throws Exception
+  {
+    Subject subject = this.loginUser("admin");
+
+    final String path = "/org/foo/1.0/foo-1.0.jar";
+    router.storeItem(new ResourceStoreRequest("/repositories/repo1" + path),
+        new ByteArrayInputStream("dummy content".getBytes("UTF-8")), null);
+
+    router.copyItem(new ResourceStoreRequest("/repositories/repo1" + path),
+        new ResourceStoreRequest("/repositories/repo2" + path));
+
+    final Repository repo1 = repositoryRegistry.getRepository("repo1");
+    final Repository repo2 = repositoryRegistry.getRepository("repo2");
+    final File file1 = ((DefaultFSLocalRepositoryStorage) repo1.getLocalStorage())
+        .getFileFromBase(repo1, new ResourceStoreRequest(path));
+    final File file2 = ((DefaultFSLocalRepositoryStorage) repo2.getLocalStorage())
+        .getFileFromBase(repo2, new ResourceStoreRequest(path));
+    // copy is linked to the very same file
+    assertThat(Files.isSameFile(file1.toPath(), file2.toPath()), equalTo(true));
+
+    final StorageFileItem item1 = (StorageFileItem) repo1.retrieveItem(new ResourceStoreRequest(path));
+    final StorageFileItem item2 = (StorageFileItem) repo2.retrieveItem(new ResourceStoreRequest(path));
+    assertThat(item2.getRepositoryItemAttributes().get(StorageFileItem.DIGEST_SHA1_KEY),
+        equalTo(item1.getRepositoryItemAttributes().get(StorageFileItem.DIGEST_SHA1_KEY)));
+    assertThat(item2.getRepositoryItemAttributes().get(StorageFileItem.DIGEST_MD5_KEY),
+        equalTo(item1.getRepositoryItemAttributes().get(StorageFileItem.DIGEST_MD5_KEY)));
+
+    // source replaced behind the back of Nexus (last modified differs from stored one), copy falls back to copying
+    FileUtils.write(file1, "other content");
+    file1.setLastModified(item1.getModified() - 10000L);
+    final String otherPath = "/org/foo/1.0/foo-1.0-other.jar";
+    router.copyItem(new ResourceStoreRequest("/repositories/repo1" + path),
+        new ResourceStoreRequest("/repositories/repo2" + otherPath));
+    final File file3 = ((DefaultFSLocalRepositoryStorage) repo2.getLocalStorage())
+        .getFileFromBase(repo2, new ResourceStoreRequest(otherPath));
+    assertThat(Files.isSameFile(file1.toPath(), file3.toPath()), equalTo(false));
+    assertThat(FileUtils.readFileToString(file3), equalTo("other content"));
+
+    // logout user
+    this.securitySystem.logout(subject);
+  }
+
   private M2Repository buildRepository(String repoId, boolean exposed)
       throws Exception
   {
@@ -0,0 +1,159 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.sonatype.nexus.proxy.RequestContext;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.util.DigesterUtils;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.base.Charsets;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link BlobStore} and {@link BlobStoreFSPeer}.
+ */
+public class BlobStoreTest
+    extends TestSupport
+{
+  private static final long MODIFIED = 1400000000000L;
+
+  private File blobDir;
+
+  private File repoBase;
+
+  private BlobStore blobStore;
+
+  private BlobStoreFSPeer fsPeer;
+
+  @Before
+  public void prepare() throws Exception {
+    final File workDir = util.createTempDir();
+    blobDir = new File(workDir, "blobs");
+    repoBase = new File(workDir, "storage/repo");
+    blobStore = new BlobStore(blobDir);
+    fsPeer = new BlobStoreFSPeer(blobStore);
+  }
+
+  @Test
+  public void identicalContentIsStoredOnce() throws Exception {
+    final File first = store("/foo/1.0/foo-1.0.jar", "content");
+    final File second = store("/bar/1.0/bar-1.0.jar", "content");
+    final File other = store("/baz/1.0/baz-1.0.jar", "other content");
+
+    final File blob = blobStore.getBlob(DigesterUtils.getSha1Digest("content"));
+    assertThat(Files.isSameFile(first.toPath(), blob.toPath()), is(true));
+    assertThat(Files.isSameFile(second.toPath(), blob.toPath()), is(true));
+    assertThat(Files.isSameFile(other.toPath(), blob.toPath()), is(false));
+    assertThat(Files.getAttribute(blob.toPath(), "unix:nlink"), equalTo((Object) 3));
+    assertThat(com.google.common.io.Files.toString(second, Charsets.UTF_8), equalTo("content"));
+    // no leftovers
+    assertThat(new File(repoBase, ".nexus/tmp").list().length, equalTo(0));
+  }
+
+  @Test
+  public void overwrittenContentIsRelinked() throws Exception {
+    store("/foo/1.0/foo-1.0.jar", "content");
+    final File file = store("/foo/1.0/foo-1.0.jar", "new content");
+
+    assertThat(com.google.common.io.Files.toString(file, Charsets.UTF_8), equalTo("new content"));
+    assertThat(Files.isSameFile(file.toPath(),
+        blobStore.getBlob(DigesterUtils.getSha1Digest("new content")).toPath()), is(true));
+  }
+
+  @Test
+  public void notReferencedBlobsAreSwept() throws Exception {
+    final File first = store("/foo/1.0/foo-1.0.jar", "content");
+    final File second = store("/bar/1.0/bar-1.0.jar", "content");
+    final File blob = blobStore.getBlob(DigesterUtils.getSha1Digest("content"));
+
+    Files.delete(first.toPath());
+    assertThat(blobStore.sweep(), equalTo(0));
+    assertThat(blob.isFile(), is(true));
+
+    Files.delete(second.toPath());
+    assertThat(blobStore.sweep(), equalTo(1));
+    assertThat(blob.isFile(), is(false));
+
+    // content stored again creates the blob again
+    final File third = store("/baz/1.0/baz-1.0.jar", "content");
+    assertThat(Files.isSameFile(third.toPath(), blob.toPath()), is(true));
+  }
+
+  @Test
+  public void contentModifiedDifferentlyIsNotDeduplicated() throws Exception {
+    final File first = store("/foo/1.0/foo-1.0.jar", "content");
+    final File second = store("/bar/1.0/bar-1.0.jar", "content", DigesterUtils.getSha1Digest("content"),
+        MODIFIED + 10000L);
+
+    assertThat(Files.isSameFile(first.toPath(), second.toPath()), is(false));
+    // last modified of files sharing the blob is not touched
+    assertThat(first.lastModified(), equalTo(MODIFIED));
+    assertThat(blobStore.getBlob(DigesterUtils.getSha1Digest("content")).lastModified(), equalTo(MODIFIED));
+    assertThat(second.lastModified(), equalTo(MODIFIED + 10000L));
+    assertThat(com.google.common.io.Files.toString(second, Charsets.UTF_8), equalTo("content"));
+  }
+
+  @Test
+  public void contentWithoutDigestIsNotDeduplicated() throws Exception {
+    final File file = store("/foo/1.0/foo-1.0.jar", "content", null);
+
+    assertThat(com.google.common.io.Files.toString(file, Charsets.UTF_8), equalTo("content"));
+    assertThat(blobStore.getBlob(DigesterUtils.getSha1Digest("content")).exists(), is(false));
+  }
+
+  private File store(final String path, final String content) throws Exception {
+    return store(path, content, DigesterUtils.getSha1Digest(content));
+  }
+
+  private File store(final String path, final String content, final String sha1) throws Exception {
+    return store(path, content, sha1, MODIFIED);
+  }
+
+  private File store(final String path, final String content, final String sha1, final long modified)
+      throws Exception
+  {
+    final Repository repository = mock(Repository.class);
+    when(repository.getId()).thenReturn("repo");
+    final RepositoryItemUid uid = mock(RepositoryItemUid.class);
+    when(uid.getLock()).thenReturn(mock(RepositoryItemUidLock.class));
+    final RequestContext context = new RequestContext();
+    if (sha1 != null) {
+      // as calculated by ChecksummingContentLocator while content is written
+      context.put(StorageFileItem.DIGEST_SHA1_KEY, sha1);
+    }
+    final StorageFileItem item = mock(StorageFileItem.class);
+    when(item.getPath()).thenReturn(path);
+    when(item.getRepositoryItemUid()).thenReturn(uid);
+    when(item.getItemContext()).thenReturn(context);
+    when(item.getModified()).thenReturn(modified);
+
+    final File target = new File(repoBase, path);
+    fsPeer.storeItem(repository, repoBase, item, target, new StringContentLocator(content));
+    return target;
+  }
+}
@@ -23,12 +23,18 @@ import java.util.List;
 import org.sonatype.nexus.mime.MimeRulesSource;
 import org.sonatype.nexus.mime.MimeSupport;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.RequestContext;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.attributes.Attributes;
 import org.sonatype.nexus.proxy.attributes.AttributesHandler;
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
 import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.FileContentLocator;
 import org.sonatype.nexus.proxy.item.LinkPersister;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
 import org.sonatype.nexus.proxy.item.uid.IsItemAttributeMetacontentAttribute;
 import org.sonatype.nexus.proxy.repository.DefaultRepositoryKind;
 import org.sonatype.nexus.proxy.repository.HostedRepository;
@@ -214,4 +220,89 @@ public class DefaultFSLocalRepositoryStorageTest
     localRepositoryStorageUnderTest.retrieveItemFromFile(repository, new ResourceStoreRequest("not-used"), mockFile);
     Mockito.verify(linkPersister, times(0)).isLinkContent(Mockito.any(ContentLocator.class));
   }
+
+  /**
+   * Verifies that imported item is linked when possible, carrying over the digests of source.
+   */
+  @Test
+  public void importItemLinksSourceAndCarriesDigests()
+      throws Exception
+  {
+    final FSPeer fsPeer = mock(FSPeer.class);
+    when(fsPeer.linkItem(Mockito.any(Repository.class), Mockito.any(File.class), Mockito.any(StorageItem.class),
+        Mockito.any(File.class), Mockito.any(File.class), Mockito.anyLong())).thenReturn(true);
+    final StorageFileItem source = importSource();
+    final StorageFileItem item = importedItem();
+
+    final File sourceFile = ((FileContentLocator) source.getContentLocator()).getFile();
+
+    importingStorage(fsPeer).importItem(importRepository(), item, source);
+
+    Mockito.verify(fsPeer).linkItem(Mockito.any(Repository.class), Mockito.any(File.class), eq(item),
+        Mockito.any(File.class), eq(sourceFile), eq(1000000L));
+    Mockito.verify(fsPeer, times(0)).storeItem(Mockito.any(Repository.class), Mockito.any(File.class),
+        Mockito.any(StorageItem.class), Mockito.any(File.class), Mockito.any(ContentLocator.class));
+    assertThat(item.getItemContext().get(StorageFileItem.DIGEST_SHA1_KEY), equalTo((Object) "sha1"));
+  }
+
+  /**
+   * Verifies that imported item is copied when source cannot be linked (ie. it was replaced meanwhile), and digests
+   * of source are not reused.
+   */
+  @Test
+  public void importItemFallsBackToCopy()
+      throws Exception
+  {
+    final FSPeer fsPeer = mock(FSPeer.class);
+    when(fsPeer.linkItem(Mockito.any(Repository.class), Mockito.any(File.class), Mockito.any(StorageItem.class),
+        Mockito.any(File.class), Mockito.any(File.class), Mockito.anyLong())).thenReturn(false);
+    final StorageFileItem item = importedItem();
+
+    importingStorage(fsPeer).importItem(importRepository(), item, importSource());
+
+    Mockito.verify(fsPeer).storeItem(Mockito.any(Repository.class), Mockito.any(File.class), eq(item),
+        Mockito.any(File.class), Mockito.any(ContentLocator.class));
+    assertThat(item.getItemContext().containsKey(StorageFileItem.DIGEST_SHA1_KEY), equalTo(false));
+  }
+
+  private DefaultFSLocalRepositoryStorage importingStorage(final FSPeer fsPeer) {
+    return new DefaultFSLocalRepositoryStorage(mock(Wastebasket.class), mock(LinkPersister.class),
+        mock(MimeSupport.class), fsPeer);
+  }
+
+  private Repository importRepository()
+      throws Exception
+  {
+    final File repoLocation = new File(util.getBaseDir(), "target/" + getClass().getSimpleName() + "/import/");
+    final Repository repository = mock(Repository.class);
+    when(repository.getId()).thenReturn("import");
+    when(repository.getLocalUrl()).thenReturn(repoLocation.toURI().toURL().toString());
+    when(repository.getAttributesHandler()).thenReturn(mock(AttributesHandler.class));
+    when(repository.getLocalStorageContext()).thenReturn(new DefaultLocalStorageContext(null));
+    return repository;
+  }
+
+  private StorageFileItem importSource()
+      throws Exception
+  {
+    final File file = util.createTempFile();
+    FileUtils.write(file, "payload");
+    final StorageFileItem source = mock(StorageFileItem.class);
+    when(source.getContentLocator()).thenReturn(new FileContentLocator(file, "text/plain"));
+    when(source.getModified()).thenReturn(1000000L);
+    final Attributes attributes = new DefaultAttributes();
+    attributes.put(StorageFileItem.DIGEST_SHA1_KEY, "sha1");
+    when(source.getRepositoryItemAttributes()).thenReturn(attributes);
+    return source;
+  }
+
+  private StorageFileItem importedItem() {
+    final StorageFileItem item = mock(StorageFileItem.class);
+    when(item.getResourceStoreRequest()).thenReturn(new ResourceStoreRequest("/foo/1.0/foo-1.0.txt"));
+    when(item.getItemContext()).thenReturn(new RequestContext());
+    when(item.getContentLocator()).thenReturn(new StringContentLocator("payload"));
+    when(item.getMimeType()).thenReturn("text/plain");
+    return item;
+  }
 }
+
@@ -13,8 +13,15 @@
 package org.sonatype.nexus.proxy.storage.local.fs;
 
 import java.io.File;
+import java.nio.file.Files;
 
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+import com.google.common.base.Strings;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
@@ -128,4 +135,86 @@ public class DefaultFSPeerTest
     assertThat(FileUtils.readFileToString(target), equalTo(PAYLOAD));
   }
 
+  @Test
+  public void storeWithDurability()
+      throws Exception
+  {
+    for (Durability durability : Durability.values()) {
+      // test subject
+      final DefaultFSPeer subject = new DefaultFSPeer(durability, 10L);
+
+      // repo base
+      File repoBase = new File("target/repoId-" + durability.name());
+
+      // the file we want to store
+      File target = new File(repoBase, "foo/1.0/foo-1.0.txt");
+
+      final Repository repository = Mockito.mock(Repository.class);
+      Mockito.when(repository.getId()).thenReturn("repoId");
+      final RepositoryItemUid uid = Mockito.mock(RepositoryItemUid.class);
+      Mockito.when(uid.getLock()).thenReturn(Mockito.mock(RepositoryItemUidLock.class));
+      final StorageFileItem file = Mockito.mock(StorageFileItem.class);
+      Mockito.when(file.getPath()).thenReturn("/foo/1.0/foo-1.0.txt");
+      Mockito.when(file.getParentPath()).thenReturn("/foo/1.0");
+      Mockito.when(file.getRepositoryItemUid()).thenReturn(uid);
+      Mockito.when(file.getModified()).thenReturn(1000000L);
+
+      // content bigger than copy buffer
+      final String PAYLOAD = Strings.repeat("dummy payload ", 10000);
+      subject.storeItem(repository, repoBase, file, target, new StringContentLocator(PAYLOAD));
+
+      assertThat(target, exists());
+      assertThat(target.lastModified(), equalTo(1000000L));
+      assertThat(FileUtils.readFileToString(target), equalTo(PAYLOAD));
+    }
+  }
+
+  @Test
+  public void linkItem()
+      throws Exception
+  {
+    // test subject
+    final DefaultFSPeer subject = new DefaultFSPeer();
+
+    // source file in other repository, on same volume
+    final File source = new File("target/sourceRepoId/foo/1.0/foo-1.0.txt");
+    final String PAYLOAD = "dummy payload";
+    FileUtils.write(source, PAYLOAD);
+
+    // repo base
+    File repoBase = new File("target/repoId-link");
+
+    // the file we want to store
+    File target = new File(repoBase, "foo/1.0/foo-1.0.txt");
+
+    final Repository repository = Mockito.mock(Repository.class);
+    Mockito.when(repository.getId()).thenReturn("repoId");
+    final RepositoryItemUid uid = Mockito.mock(RepositoryItemUid.class);
+    Mockito.when(uid.getLock()).thenReturn(Mockito.mock(RepositoryItemUidLock.class));
+    final StorageFileItem file = Mockito.mock(StorageFileItem.class);
+    Mockito.when(file.getPath()).thenReturn("/foo/1.0/foo-1.0.txt");
+    Mockito.when(file.getParentPath()).thenReturn("/foo/1.0");
+    Mockito.when(file.getRepositoryItemUid()).thenReturn(uid);
+
+    assertThat(subject.linkItem(repository, repoBase, file, target, source, source.lastModified()), equalTo(true));
+
+    assertThat(target, exists());
+    assertThat(FileUtils.readFileToString(target), equalTo(PAYLOAD));
+    // target is the very same file as source
+    assertThat(Files.isSameFile(target.toPath(), source.toPath()), equalTo(true));
+    // no leftovers in repository temp directory
+    assertThat(new File(repoBase, ".nexus/tmp").list().length, equalTo(0));
+
+    // nonexistent source cannot be linked, nothing is stored
+    final File target2 = new File(repoBase, "foo/1.0/foo-1.0.pom");
+    assertThat(subject.linkItem(repository, repoBase, file, target2, new File(source.getParentFile(), "none.pom"),
+        source.lastModified()), equalTo(false));
+    assertThat(target2, not(exists()));
+
+    // replaced source (differing last modified) is not linked, nothing is stored
+    assertThat(subject.linkItem(repository, repoBase, file, target2, source, source.lastModified() - 1000L),
+        equalTo(false));
+    assertThat(target2, not(exists()));
+    assertThat(new File(repoBase, ".nexus/tmp").list().length, equalTo(0));
+  }
 }
@@ -0,0 +1,122 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link GroupCommitter}.
+ */
+public class GroupCommitterTest
+    extends TestSupport
+{
+  private static final int WRITERS = 8;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void concurrentWritersAreForced() throws Exception {
+    final GroupCommitter underTest = new GroupCommitter(100L);
+    final List<FileChannel> channels = Lists.newArrayList();
+    for (int i = 0; i < WRITERS; i++) {
+      channels.add(mock(FileChannel.class));
+    }
+
+    for (Future<Void> future : forceAll(underTest, channels)) {
+      future.get();
+    }
+
+    for (FileChannel channel : channels) {
+      verify(channel, times(1)).force(false);
+    }
+  }
+
+  @Test
+  public void failureFailsOnlyItsWriter() throws Exception {
+    final GroupCommitter underTest = new GroupCommitter(100L);
+    final List<FileChannel> channels = Lists.newArrayList();
+    for (int i = 0; i < WRITERS; i++) {
+      channels.add(mock(FileChannel.class));
+    }
+    final IOException failure = new IOException("disk on fire");
+    doThrow(failure).when(channels.get(3)).force(false);
+
+    final List<Future<Void>> futures = forceAll(underTest, channels);
+    for (int i = 0; i < WRITERS; i++) {
+      if (i == 3) {
+        try {
+          futures.get(i).get();
+          fail("Force should fail");
+        }
+        catch (Exception e) {
+          assertThat(e.getCause(), sameInstance((Throwable) failure));
+        }
+      }
+      else {
+        futures.get(i).get();
+      }
+    }
+  }
+
+  @Test
+  public void directoriesAreForcedBestEffort() throws Exception {
+    final GroupCommitter underTest = new GroupCommitter(0L);
+    underTest.forceDirectory(util.createTempDir().toPath());
+    // not existing directory cannot be opened, is ignored
+    underTest.forceDirectory(util.resolveFile("target/not-existing-directory").toPath());
+  }
+
+  private List<Future<Void>> forceAll(final GroupCommitter underTest, final List<FileChannel> channels) {
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<Void>> futures = Lists.newArrayList();
+    for (final FileChannel channel : channels) {
+      futures.add(executor.submit(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception {
+          start.await();
+          underTest.force(channel);
+          return null;
+        }
+      }));
+    }
+    start.countDown();
+    return futures;
+  }
+}
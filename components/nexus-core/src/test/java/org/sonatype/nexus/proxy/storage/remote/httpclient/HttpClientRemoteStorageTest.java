@@ -12,19 +12,29 @@
  */
 package org.sonatype.nexus.proxy.storage.remote.httpclient;
 
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
 import org.sonatype.nexus.ApplicationStatusSource;
 import org.sonatype.nexus.apachehttpclient.Hc4ProviderImpl;
 import org.sonatype.nexus.apachehttpclient.PoolingClientConnectionManagerMBeanInstaller;
 import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
 import org.sonatype.nexus.mime.MimeSupport;
 import org.sonatype.nexus.proxy.RemoteStorageException;
+import org.sonatype.nexus.proxy.RemoteStorageTransportAbortedException;
 import org.sonatype.nexus.proxy.RemoteStorageTransportOverloadedException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.attributes.Attributes;
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.DefaultRemoteConnectionSettings;
 import org.sonatype.nexus.proxy.repository.ProxyRepository;
 import org.sonatype.nexus.proxy.repository.RemoteProxySettings;
+import org.sonatype.nexus.proxy.storage.remote.ConditionalRemoteRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.remote.DefaultRemoteStorageContext;
 import org.sonatype.nexus.proxy.storage.remote.RemoteItemNotFoundException;
+import org.sonatype.nexus.proxy.storage.remote.RemoteRequestAborter;
 import org.sonatype.nexus.proxy.storage.remote.RemoteStorageContext;
 import org.sonatype.nexus.proxy.storage.remote.http.QueryStringBuilder;
 import org.sonatype.nexus.proxy.utils.UserAgentBuilder;
@@ -40,10 +50,16 @@ import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.message.BasicHeader;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -159,6 +175,85 @@ public class HttpClientRemoteStorageTest
     underTest.retrieveItem(proxyMock, new ResourceStoreRequest("bar?param=x"), "http://foo.com");
   }
 
+  /**
+   * A conditional retrieve should carry the validators of the local item, and a "304 Not Modified" answer should
+   * yield {@code null} instead of a new item.
+   */
+  @Test
+  public void retrieveItemIfModifiedReturnsNullWhenNotModified()
+      throws Exception
+  {
+    final HttpUriRequest[] sent = new HttpUriRequest[1];
+    final HttpClientRemoteStorage underTest =
+        new HttpClientRemoteStorage(mock(ApplicationStatusSource.class),
+            mock(MimeSupport.class), mock(QueryStringBuilder.class), mock(HttpClientManager.class))
+        {
+          @Override
+          HttpResponse executeRequest(final ProxyRepository repository, final ResourceStoreRequest request,
+                                      final HttpUriRequest httpRequest, final String baseUrl, final boolean contentRelated)
+              throws RemoteStorageException
+          {
+            sent[0] = httpRequest;
+            final HttpResponse httpResponse = mock(HttpResponse.class);
+            final StatusLine statusLine = mock(StatusLine.class);
+            when(httpResponse.getStatusLine()).thenReturn(statusLine);
+            when(statusLine.getStatusCode()).thenReturn(304);
+            return httpResponse;
+          }
+        };
+
+    final ProxyRepository proxyMock = mock(ProxyRepository.class);
+    when(proxyMock.getId()).thenReturn("foo");
+    when(proxyMock.getRemoteStorageContext()).thenReturn(new DefaultRemoteStorageContext(null));
+
+    final Attributes attributes = new DefaultAttributes();
+    attributes.put(ConditionalRemoteRepositoryStorage.REMOTE_ETAG_KEY, "\"abc\"");
+    final StorageItem localItem = mock(StorageItem.class);
+    when(localItem.getRepositoryItemAttributes()).thenReturn(attributes);
+    when(localItem.getModified()).thenReturn(1000000000000L);
+
+    assertThat(underTest.retrieveItemIfModified(proxyMock, new ResourceStoreRequest("bar.jar"), "http://foo.com",
+        localItem), nullValue());
+    assertThat(sent[0].getFirstHeader("If-None-Match").getValue(), equalTo("\"abc\""));
+    assertThat(sent[0].getFirstHeader("If-Modified-Since"), notNullValue());
+  }
+
+  /**
+   * The entity tag sent by the remote should be recorded on the retrieved item, for later conditional retrieves.
+   */
+  @Test
+  public void retrieveItemRecordsRemoteEtag()
+      throws Exception
+  {
+    final HttpClientRemoteStorage underTest =
+        new HttpClientRemoteStorage(mock(ApplicationStatusSource.class),
+            mock(MimeSupport.class), mock(QueryStringBuilder.class), mock(HttpClientManager.class))
+        {
+          @Override
+          HttpResponse executeRequest(final ProxyRepository repository, final ResourceStoreRequest request,
+                                      final HttpUriRequest httpRequest, final String baseUrl, final boolean contentRelated)
+              throws RemoteStorageException
+          {
+            final HttpResponse httpResponse = mock(HttpResponse.class);
+            final StatusLine statusLine = mock(StatusLine.class);
+            when(httpResponse.getStatusLine()).thenReturn(statusLine);
+            when(statusLine.getStatusCode()).thenReturn(200);
+            when(httpResponse.getEntity()).thenReturn(mock(HttpEntity.class));
+            when(httpResponse.getFirstHeader("etag")).thenReturn(new BasicHeader("ETag", "\"abc\""));
+            return httpResponse;
+          }
+        };
+
+    final ProxyRepository proxyMock = mock(ProxyRepository.class);
+    when(proxyMock.getId()).thenReturn("foo");
+    when(proxyMock.getRemoteStorageContext()).thenReturn(new DefaultRemoteStorageContext(null));
+
+    final AbstractStorageItem item =
+        underTest.retrieveItem(proxyMock, new ResourceStoreRequest("bar.jar"), "http://foo.com");
+    assertThat(item.getRepositoryItemAttributes().get(ConditionalRemoteRepositoryStorage.REMOTE_ETAG_KEY),
+        equalTo("\"abc\""));
+  }
+
   /**
    * When pool is depleted, and underlying HttpClient4x cannot fulfil request due to
    * {@link ConnectionPoolTimeoutException}, the {@link HttpClientRemoteStorage} should throw a new exception,
@@ -245,6 +340,78 @@ public class HttpClientRemoteStorageTest
     }
   }
 
+  /**
+   * Outbound request awaiting the response of a hanging server is aborted using {@link RemoteRequestAborter}, and the
+   * {@link HttpClientRemoteStorage} throws {@link RemoteStorageTransportAbortedException} to not autoblock the proxy.
+   */
+  @Test
+  public void abortHangingRequest()
+      throws Exception
+  {
+    Hc4ProviderImpl hc4Provider = null;
+    try {
+      final RemoteStorageContext globalRemoteStorageContext = new DefaultRemoteStorageContext(null);
+      globalRemoteStorageContext.setRemoteConnectionSettings(new DefaultRemoteConnectionSettings());
+      globalRemoteStorageContext.setRemoteProxySettings(mock(RemoteProxySettings.class));
+      final ApplicationConfiguration applicationConfiguration = mock(ApplicationConfiguration.class);
+      when(applicationConfiguration.getGlobalRemoteStorageContext()).thenReturn(globalRemoteStorageContext);
+      hc4Provider =
+          new Hc4ProviderImpl(applicationConfiguration, mock(UserAgentBuilder.class),
+              mock(EventBus.class),
+              mock(PoolingClientConnectionManagerMBeanInstaller.class),
+              null);
+      final HttpClientRemoteStorage underTest =
+          new HttpClientRemoteStorage(mock(ApplicationStatusSource.class),
+              mock(MimeSupport.class), mock(QueryStringBuilder.class), new HttpClientManagerImpl(
+              hc4Provider, mock(UserAgentBuilder.class)));
+      final RemoteStorageContext proxyContext = new DefaultRemoteStorageContext(globalRemoteStorageContext);
+      final ProxyRepository repository = mock(ProxyRepository.class);
+      when(repository.getId()).thenReturn("foo");
+      when(repository.getName()).thenReturn("foo");
+      when(repository.getRemoteStorageContext()).thenReturn(proxyContext);
+
+      // a server accepting connections but never responding
+      final ServerSocket server = new ServerSocket(0);
+      try {
+        final ResourceStoreRequest request = new ResourceStoreRequest("foo/bar.jar");
+        final RemoteRequestAborter aborter = RemoteRequestAborter.install(request);
+        final Thread abortingThread = new Thread()
+        {
+          @Override
+          public void run() {
+            try {
+              Thread.sleep(500);
+            }
+            catch (InterruptedException e) {
+              // abort now
+            }
+            aborter.abort();
+          }
+        };
+        abortingThread.start();
+
+        final long started = System.currentTimeMillis();
+        try {
+          underTest.retrieveItem(repository, request,
+              "http://localhost:" + server.getLocalPort() + "/foo/bar.jar");
+          Assert.fail("RemoteStorageTransportAbortedException expected!");
+        }
+        catch (RemoteStorageTransportAbortedException e) {
+          assertThat(System.currentTimeMillis() - started, lessThan(TimeUnit.SECONDS.toMillis(10)));
+        }
+        abortingThread.join();
+      }
+      finally {
+        server.close();
+      }
+    }
+    finally {
+      if (hc4Provider != null) {
+        hc4Provider.shutdown();
+      }
+    }
+  }
+
   protected void setParameters() {
     System.setProperty("nexus.apacheHttpClient4x.connectionPoolMaxSize", "1");
     System.setProperty("nexus.apacheHttpClient4x.connectionPoolSize", "1");
@@ -0,0 +1,122 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.targets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sonatype.nexus.proxy.maven.maven1.Maven1ContentClass;
+import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Tests for {@link TargetMatcher}.
+ */
+public class TargetMatcherTest
+    extends TestSupport
+{
+  private final ContentClass maven1 = new Maven1ContentClass();
+
+  private final ContentClass maven2 = new Maven2ContentClass();
+
+  @Test
+  public void literalPrefix() {
+    assertThat(TargetMatcher.literalPrefix(".*"), equalTo(""));
+    assertThat(TargetMatcher.literalPrefix("/org/apache/.*"), equalTo("/org/apache/"));
+    assertThat(TargetMatcher.literalPrefix("^/org/apache/.*"), equalTo("/org/apache/"));
+    assertThat(TargetMatcher.literalPrefix("/org\\.apache\\.maven.*"), equalTo("/org.apache.maven"));
+    assertThat(TargetMatcher.literalPrefix("/org/apache/maven/((?!sources\\.).)*"), equalTo("/org/apache/maven/"));
+    assertThat(TargetMatcher.literalPrefix("/com/foo?/.*"), equalTo("/com/fo"));
+    assertThat(TargetMatcher.literalPrefix("/com/fo+/.*"), equalTo("/com/f"));
+    assertThat(TargetMatcher.literalPrefix("/com/fo{2}/.*"), equalTo("/com/f"));
+    assertThat(TargetMatcher.literalPrefix("/com/\\d+/.*"), equalTo("/com/"));
+    assertThat(TargetMatcher.literalPrefix("/com/\\Qa.b\\E/.*"), equalTo("/com/"));
+    assertThat(TargetMatcher.literalPrefix("/com/[ab]/.*"), equalTo("/com/"));
+    assertThat(TargetMatcher.literalPrefix("/org/.*|/com/.*"), equalTo(""));
+    assertThat(TargetMatcher.literalPrefix("(?i)/org/.*"), equalTo(""));
+  }
+
+  @Test
+  public void sameResultAsTargets() {
+    final List<Target> targets = new ArrayList<Target>();
+    targets.add(target("all-m2", maven2, ".*"));
+    targets.add(target("all-m1", maven1, ".*"));
+    targets.add(target("apache", maven2, "/org/apache/.*", "^/org/codehaus/.*"));
+    targets.add(target("apache-no-sources", maven2, "/org/apache/maven/((?!sources\\.).)*"));
+    targets.add(target("m1-apache", maven1, "/org\\.apache\\.maven.*"));
+    targets.add(target("poms", maven2, ".*\\.pom"));
+    targets.add(target("alternation", maven2, "/com/.*|/net/.*"));
+    targets.add(target("optional", maven2, "/com/foo?/.*"));
+    targets.add(target("ignore-case", maven2, "(?i)/ORG/SONATYPE/.*"));
+    targets.add(target("exact", maven2, "/org/apache/maven/maven-core/2.0.9/maven-core-2.0.9.pom"));
+    for (int i = 0; i < 300; i++) {
+      targets.add(target("group-" + i, maven2, "/org/group" + i + "/.*"));
+    }
+
+    final TargetMatcher matcher = new TargetMatcher(targets, 100);
+    final List<String> paths = Arrays.asList(
+        "/", "", "/org", "/org/apache/maven/maven-core/2.0.9/maven-core-2.0.9.pom",
+        "/org/apache/maven/maven-core/2.0.9/maven-core-2.0.9-sources.jar", "/org/codehaus/foo/1.0/foo-1.0.jar",
+        "/org.apache.maven/jars/maven-model-v3-2.0.jar", "/com/fo/x", "/com/foo/x", "/com/fooo/x", "/net/x.pom",
+        "/org/sonatype/nexus/nexus-core/3.0/nexus-core-3.0.pom", "/org/group1/a.jar", "/org/group12/a.jar",
+        "/org/group299/a/b/c.pom", "/org/group300/a.jar"
+    );
+    // twice, to verify cached results too
+    for (int round = 0; round < 2; round++) {
+      for (ContentClass contentClass : Arrays.asList(maven1, maven2)) {
+        for (String path : paths) {
+          final Set<Target> expected = new HashSet<Target>();
+          for (Target target : targets) {
+            if (target.isPathContained(contentClass, path)) {
+              expected.add(target);
+            }
+          }
+          assertThat(contentClass.getId() + ":" + path, matcher.match(contentClass, path), equalTo(expected));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void onlyCompatibleTargets() {
+    final Target m1 = target("m1", maven1, "/org/.*");
+    final Target m2 = target("m2", maven2, "/org/.*");
+    final TargetMatcher matcher = new TargetMatcher(Arrays.asList(m1, m2), 100);
+
+    assertThat(matcher.match(maven2, "/org/foo"), containsInAnyOrder(m2));
+    assertThat(matcher.match(maven1, "/org/foo"), containsInAnyOrder(m1));
+    assertThat(matcher.match(maven2, "/com/foo"), empty());
+  }
+
+  @Test
+  public void noTargets() {
+    final TargetMatcher matcher = new TargetMatcher(Collections.<Target>emptyList(), 100);
+    assertThat(matcher.match(maven2, "/org/foo"), empty());
+  }
+
+  private Target target(final String id, final ContentClass contentClass, final String... patterns) {
+    return new Target(id, id, contentClass, Arrays.asList(patterns));
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.walker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.events.NexusStoppedEvent;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.repository.LocalStatus;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for parallel walk of {@link DefaultWalker}, over a mocked repository of 8 * 8 collections with 5 files each.
+ */
+public class DefaultWalkerTest
+    extends TestSupport
+{
+  private final Map<String, List<StorageItem>> children = Maps.newHashMap();
+
+  private final Map<String, String> parents = Maps.newHashMap();
+
+  private Repository repository;
+
+  private EventBus eventBus;
+
+  private DefaultWalker walker;
+
+  @Before
+  public void prepare() throws Exception {
+    repository = mock(Repository.class);
+    when(repository.getId()).thenReturn("test");
+    when(repository.getLocalStatus()).thenReturn(LocalStatus.IN_SERVICE);
+
+    final StorageCollectionItem root = collection("/");
+    for (int i = 0; i < 8; i++) {
+      final StorageCollectionItem group = collection(child(root, "g" + i));
+      for (int j = 0; j < 8; j++) {
+        final StorageCollectionItem artifact = collection(child(group, "a" + j));
+        for (int k = 0; k < 5; k++) {
+          file(child(artifact, "f" + k + ".jar"));
+        }
+      }
+    }
+    when(repository.retrieveItem(eq(true), any(ResourceStoreRequest.class))).thenReturn(root);
+    for (Map.Entry<String, List<StorageItem>> entry : children.entrySet()) {
+      final StorageCollectionItem coll = (StorageCollectionItem) item(entry.getKey());
+      when(repository.list(false, coll)).thenReturn(entry.getValue());
+    }
+
+    eventBus = mock(EventBus.class);
+    walker = new DefaultWalker(eventBus, 4);
+  }
+
+  @Test
+  public void parallelWalk() {
+    final OrderCheckingProcessor processor = new ConcurrentOrderCheckingProcessor();
+    final WalkerContext context = context(processor);
+
+    walker.walk(context);
+
+    assertThat(context.getStopCause(), nullValue());
+    assertThat(processor.enters.get(), equalTo(73));
+    assertThat(processor.done.size(), equalTo(73 + 320));
+    assertThat((Integer) context.getContext().get(DefaultWalker.WALKER_WALKED_COLLECTION_COUNT), equalTo(73));
+    assertThat(processor.threads.size(), greaterThan(1));
+  }
+
+  @Test
+  public void serialWalkWithNonConcurrentProcessor() {
+    final OrderCheckingProcessor concurrent = new ConcurrentOrderCheckingProcessor();
+    final OrderCheckingProcessor processor = new OrderCheckingProcessor();
+    final WalkerContext context = context(concurrent, processor);
+
+    walker.walk(context);
+
+    assertThat(context.getStopCause(), nullValue());
+    assertThat(processor.enters.get(), equalTo(73));
+    assertThat(processor.done.size(), equalTo(73 + 320));
+    assertThat(processor.threads, equalTo((Set<String>) Sets.newHashSet(Thread.currentThread().getName())));
+  }
+
+  @Test
+  public void serialWalkAfterStop() {
+    walker.on(new NexusStoppedEvent(null));
+    verify(eventBus).unregister(walker);
+
+    final OrderCheckingProcessor processor = new ConcurrentOrderCheckingProcessor();
+    final WalkerContext context = context(processor);
+
+    walker.walk(context);
+
+    assertThat(context.getStopCause(), nullValue());
+    assertThat(processor.done.size(), equalTo(73 + 320));
+    assertThat(processor.threads, equalTo((Set<String>) Sets.newHashSet(Thread.currentThread().getName())));
+  }
+
+  @Test
+  public void parallelWalkStops() {
+    final Exception failure = new Exception("failed");
+    final OrderCheckingProcessor processor = new ConcurrentOrderCheckingProcessor()
+    {
+      @Override
+      public void processItem(final WalkerContext context, final StorageItem item) throws Exception {
+        super.processItem(context, item);
+        if (item.getPath().equals("/g3/a5/f2.jar")) {
+          throw failure;
+        }
+      }
+    };
+    final WalkerContext context = context(processor);
+
+    try {
+      walker.walk(context);
+      fail("Walk should fail");
+    }
+    catch (WalkerException e) {
+      assertThat(e.getCause(), is((Throwable) failure));
+    }
+    assertThat(context.isStopped(), is(true));
+    assertThat(processor.done.contains("/"), is(false));
+  }
+
+  private WalkerContext context(final WalkerProcessor... processors) {
+    final WalkerContext context =
+        new DefaultWalkerContext(repository, new ResourceStoreRequest("/"), new AffirmativeStoreWalkerFilter());
+    for (WalkerProcessor processor : processors) {
+      context.getProcessors().add(processor);
+    }
+    return context;
+  }
+
+  private String child(final StorageCollectionItem parent, final String name) {
+    return (parent.getPath().equals("/") ? "" : parent.getPath()) + "/" + name;
+  }
+
+  private final Map<String, StorageItem> items = Maps.newHashMap();
+
+  private StorageItem item(final String path) {
+    return items.get(path);
+  }
+
+  private StorageCollectionItem collection(final String path) {
+    final StorageCollectionItem coll = mock(StorageCollectionItem.class);
+    when(coll.getPath()).thenReturn(path);
+    register(path, coll);
+    children.put(path, new ArrayList<StorageItem>());
+    return coll;
+  }
+
+  private StorageFileItem file(final String path) {
+    final StorageFileItem file = mock(StorageFileItem.class);
+    when(file.getPath()).thenReturn(path);
+    register(path, file);
+    return file;
+  }
+
+  private void register(final String path, final StorageItem item) {
+    items.put(path, item);
+    if (!path.equals("/")) {
+      final String parent = path.lastIndexOf('/') == 0 ? "/" : path.substring(0, path.lastIndexOf('/'));
+      parents.put(path, parent);
+      children.get(parent).add(item);
+    }
+  }
+
+  /**
+   * Verifies that collection enter happens before processing of members, and exit after whole subtree is done.
+   */
+  private class OrderCheckingProcessor
+      extends AbstractWalkerProcessor
+  {
+    final AtomicInteger enters = new AtomicInteger();
+
+    final Set<String> entered = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    final Set<String> done = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    final Set<String> threads = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    @Override
+    public void onCollectionEnter(final WalkerContext context, final StorageCollectionItem coll) throws Exception {
+      threads.add(Thread.currentThread().getName());
+      enters.incrementAndGet();
+      checkParentEntered(coll);
+      entered.add(coll.getPath());
+    }
+
+    @Override
+    public void processItem(final WalkerContext context, final StorageItem item) throws Exception {
+      threads.add(Thread.currentThread().getName());
+      assertThat(item, instanceOf(StorageFileItem.class));
+      checkParentEntered(item);
+      Thread.sleep(1);
+      done.add(item.getPath());
+    }
+
+    @Override
+    public void onCollectionExit(final WalkerContext context, final StorageCollectionItem coll) throws Exception {
+      threads.add(Thread.currentThread().getName());
+      final Collection<StorageItem> members = children.get(coll.getPath());
+      for (StorageItem member : members) {
+        if (!done.contains(member.getPath())) {
+          throw new IllegalStateException("Exiting " + coll.getPath() + " before " + member.getPath());
+        }
+      }
+      done.add(coll.getPath());
+    }
+
+    private void checkParentEntered(final StorageItem item) {
+      final String parent = parents.get(item.getPath());
+      if (parent != null && !entered.contains(parent)) {
+        throw new IllegalStateException("Processing " + item.getPath() + " before entering " + parent);
+      }
+    }
+  }
+
+  private class ConcurrentOrderCheckingProcessor
+      extends OrderCheckingProcessor
+      implements ConcurrentWalkerProcessor
+  {
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.sonatype.nexus.ApplicationStatusSource;
+import org.sonatype.nexus.proxy.item.FileContentLocator;
+import org.sonatype.nexus.util.io.StreamSupport;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.sun.management.OperatingSystemMXBean;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmark comparing throughput and process CPU time per GB of serving file content with Jetty over loopback, by
+ * copying it through heap buffers (as before) and by {@link WebUtils#sendContent(InputStream, long, long,
+ * HttpServletResponse)} that hands a mapped region of the file to Jetty's output, for full and range requests. Not
+ * executed as part of the build (it does not match the test naming pattern), run it manually with
+ * {@code mvn test -Dtest=WebUtilsBenchmark}.
+ */
+public class WebUtilsBenchmark
+    extends TestSupport
+{
+  private static final long FILE_SIZE = 512L * 1024 * 1024;
+
+  private static final int ROUNDS = 5;
+
+  private static final double GB = 1024d * 1024 * 1024;
+
+  private final OperatingSystemMXBean osMXBean =
+      (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+  private WebUtils webUtils;
+
+  private File file;
+
+  private Server server;
+
+  private int port;
+
+  @Before
+  public void setUp() throws Exception {
+    final ApplicationStatusSource applicationStatusSource =
+        Mockito.mock(ApplicationStatusSource.class, Mockito.RETURNS_DEEP_STUBS);
+    when(applicationStatusSource.getSystemStatus().getVersion()).thenReturn("3.0");
+    webUtils = new WebUtils(applicationStatusSource);
+
+    file = util.createTempFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      final byte[] block = new byte[1024 * 1024];
+      new Random(1234L).nextBytes(block);
+      for (long written = 0; written < FILE_SIZE; written += block.length) {
+        raf.write(block);
+      }
+    }
+
+    server = new Server();
+    final SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setPort(0);
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler()
+    {
+      @Override
+      public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                         final HttpServletResponse response)
+          throws IOException
+      {
+        final long offset = Long.parseLong(request.getParameter("offset"));
+        final long length = FILE_SIZE - offset;
+        response.setHeader("Content-Length", String.valueOf(length));
+        final InputStream input = new FileContentLocator(file, "application/octet-stream").getContent();
+        if ("/copy".equals(target)) {
+          try (InputStream in = input) {
+            in.skip(offset);
+            StreamSupport.copy(in, response.getOutputStream(), response.getBufferSize());
+          }
+        }
+        else {
+          webUtils.sendContent(input, offset, length, response);
+        }
+        baseRequest.setHandled(true);
+      }
+    });
+    server.start();
+    port = connector.getLocalPort();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void compare() throws IOException {
+    compare(0);
+    compare(FILE_SIZE / 2);
+  }
+
+  private void compare(final long offset) throws IOException {
+    // warm up both paths and the page cache
+    get("copy", offset);
+    get("send", offset);
+
+    long copyNanos = 0, copyCpu = 0, sendNanos = 0, sendCpu = 0;
+    for (int i = 0; i < ROUNDS; i++) {
+      long cpu = osMXBean.getProcessCpuTime();
+      long start = System.nanoTime();
+      get("copy", offset);
+      copyNanos += System.nanoTime() - start;
+      copyCpu += osMXBean.getProcessCpuTime() - cpu;
+
+      cpu = osMXBean.getProcessCpuTime();
+      start = System.nanoTime();
+      get("send", offset);
+      sendNanos += System.nanoTime() - start;
+      sendCpu += osMXBean.getProcessCpuTime() - cpu;
+    }
+
+    final double served = (FILE_SIZE - offset) * ROUNDS / GB;
+    logger.info("Served {} GB per method from offset {}", served, offset);
+    logger.info("Heap copy:   {} MB/s, {} ms CPU per GB", (long) (served * 1024 / (copyNanos / 1e9)),
+        (long) (copyCpu / 1e6 / served));
+    logger.info("Mapped:      {} MB/s, {} ms CPU per GB", (long) (served * 1024 / (sendNanos / 1e9)),
+        (long) (sendCpu / 1e6 / served));
+  }
+
+  /**
+   * Requests the content from offset, discarding it, CPU time includes the client reading it.
+   */
+  private void get(final String method, final long offset) throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection) new URL(
+        "http://localhost:" + port + "/" + method + "?offset=" + offset).openConnection();
+    final byte[] buffer = new byte[64 * 1024];
+    long received = 0;
+    try (InputStream in = connection.getInputStream()) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        received += read;
+      }
+    }
+    assertThat(received, equalTo(FILE_SIZE - offset));
+  }
+}
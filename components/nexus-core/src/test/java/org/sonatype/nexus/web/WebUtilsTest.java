@@ -0,0 +1,185 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.sonatype.nexus.ApplicationStatusSource;
+import org.sonatype.nexus.proxy.item.FileContentLocator;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link WebUtils}.
+ */
+public class WebUtilsTest
+    extends TestSupport
+{
+  private WebUtils underTest;
+
+  private byte[] content;
+
+  private File file;
+
+  @Before
+  public void prepare() throws IOException {
+    final ApplicationStatusSource applicationStatusSource =
+        Mockito.mock(ApplicationStatusSource.class, Mockito.RETURNS_DEEP_STUBS);
+    when(applicationStatusSource.getSystemStatus().getVersion()).thenReturn("3.0");
+    underTest = new WebUtils(applicationStatusSource);
+
+    content = new byte[100 * 1024];
+    new Random(1234L).nextBytes(content);
+    file = util.createTempFile();
+    Files.write(content, file);
+  }
+
+  private byte[] send(final InputStream input, final long offset, final long length) throws IOException {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    final HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream()
+    {
+      @Override
+      public void write(final int b) throws IOException {
+        sent.write(b);
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) throws IOException {
+        sent.write(b, off, len);
+      }
+    });
+    underTest.sendContent(input, offset, length, response);
+    verify(response).flushBuffer();
+    return sent.toByteArray();
+  }
+
+  @Test
+  public void sendFileContent() throws IOException {
+    final FileContentLocator locator = new FileContentLocator(file, "application/octet-stream");
+    assertThat(send(locator.getContent(), 0, -1), equalTo(content));
+  }
+
+  @Test
+  public void sendFileContentRange() throws IOException {
+    final FileContentLocator locator = new FileContentLocator(file, "application/octet-stream");
+    assertThat(send(locator.getContent(), 1000, 50000), equalTo(Arrays.copyOfRange(content, 1000, 51000)));
+    assertThat(send(locator.getContent(), 90000, -1), equalTo(Arrays.copyOfRange(content, 90000, content.length)));
+  }
+
+  @Test
+  public void sendWrappedFileContentRange() throws IOException {
+    // wrapping stream that deletes the file on close
+    final FileContentLocator locator = new FileContentLocator(file, "application/octet-stream", true);
+    assertThat(send(locator.getContent(), 1000, 50000), equalTo(Arrays.copyOfRange(content, 1000, 51000)));
+    assertThat(file.exists(), equalTo(false));
+  }
+
+  @Test
+  public void sendStreamContentRange() throws IOException {
+    assertThat(send(new ByteArrayInputStream(content), 0, -1), equalTo(content));
+    assertThat(send(new ByteArrayInputStream(content), 1000, 50000),
+        equalTo(Arrays.copyOfRange(content, 1000, 51000)));
+  }
+
+  @Test(expected = IOException.class)
+  public void sendFileContentBeyondEnd() throws IOException {
+    final FileContentLocator locator = new FileContentLocator(file, "application/octet-stream");
+    send(locator.getContent(), 1000, content.length);
+  }
+
+  /**
+   * Serves the file with Jetty, range passed in as "offset" and "length" parameters, and returns the response body.
+   */
+  private byte[] serve(final AtomicBoolean mapped, final String query) throws Exception {
+    final Server server = new Server();
+    final SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setPort(0);
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler()
+    {
+      @Override
+      public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                         final HttpServletResponse response)
+          throws IOException
+      {
+        final long offset = Long.parseLong(request.getParameter("offset"));
+        final long length = Long.parseLong(request.getParameter("length"));
+        response.setContentLength((int) (length < 0 ? content.length - offset : length));
+        if (mapped != null) {
+          try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            mapped.set(JettyOutput.sendContent(response.getOutputStream(), raf.getChannel(), offset,
+                length < 0 ? content.length - offset : length));
+          }
+        }
+        else {
+          underTest.sendContent(new FileContentLocator(file, "application/octet-stream").getContent(), offset,
+              length, response);
+        }
+        baseRequest.setHandled(true);
+      }
+    });
+    server.start();
+    try {
+      final HttpURLConnection connection = (HttpURLConnection) new URL(
+          "http://localhost:" + connector.getLocalPort() + "/?" + query).openConnection();
+      try (InputStream in = connection.getInputStream()) {
+        return ByteStreams.toByteArray(in);
+      }
+    }
+    finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void sendFileContentThroughJetty() throws Exception {
+    assertThat(serve(null, "offset=0&length=-1"), equalTo(content));
+    assertThat(serve(null, "offset=1000&length=50000"), equalTo(Arrays.copyOfRange(content, 1000, 51000)));
+  }
+
+  @Test
+  public void sendFileContentFromMappedBufferThroughJetty() throws Exception {
+    final AtomicBoolean mapped = new AtomicBoolean();
+    assertThat(serve(mapped, "offset=1000&length=50000"), equalTo(Arrays.copyOfRange(content, 1000, 51000)));
+    assertThat(mapped.get(), equalTo(true));
+  }
+}
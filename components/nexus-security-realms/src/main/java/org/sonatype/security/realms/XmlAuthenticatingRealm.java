@@ -17,6 +17,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.sonatype.security.authentication.CachingCredentialsMatcher;
 import org.sonatype.security.model.CUser;
 import org.sonatype.security.realms.tools.ConfigurationManager;
 import org.sonatype.security.realms.tools.ConfigurationManagerAction;
@@ -64,6 +65,8 @@ public class XmlAuthenticatingRealm
 
   private final int MAX_LEGACY_PASSWORD_LENGTH = 40;
 
+  private final PasswordMatcher passwordMatcher;
+
   @Inject
   public XmlAuthenticatingRealm(@Named("default") ConfigurationManager configuration,
                                 PasswordService passwordService)
@@ -71,13 +74,32 @@ public class XmlAuthenticatingRealm
     this.configuration = configuration;
     this.passwordService = passwordService;
 
-    PasswordMatcher passwordMatcher = new PasswordMatcher();
+    this.passwordMatcher = new PasswordMatcher();
     passwordMatcher.setPasswordService(this.passwordService);
     setCredentialsMatcher(passwordMatcher);
     setName(ROLE);
     setAuthenticationCachingEnabled(true);
   }
 
+  /**
+   * Configures the cache of successful credential matches, to not hash the password of every request. Using size of
+   * 0 disables the cache.
+   *
+   * @since 3.0
+   */
+  @Inject
+  public void configureCredentialsCache(
+      final @Named("${security.credentialsCache.size:-1000}") int size,
+      final @Named("${security.credentialsCache.ttl:-300}") int ttlSeconds)
+  {
+    if (size > 0) {
+      setCredentialsMatcher(new CachingCredentialsMatcher(passwordMatcher, size, ttlSeconds));
+    }
+    else {
+      setCredentialsMatcher(passwordMatcher);
+    }
+  }
+
   @Override
   protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token)
       throws AuthenticationException
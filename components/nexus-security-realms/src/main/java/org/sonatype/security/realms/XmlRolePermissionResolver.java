@@ -14,19 +14,23 @@ package org.sonatype.security.realms;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.Nullable;
 import javax.enterprise.inject.Typed;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
-import org.sonatype.security.authorization.NoSuchPrivilegeException;
-import org.sonatype.security.authorization.NoSuchRoleException;
 import org.sonatype.security.authorization.PermissionFactory;
 import org.sonatype.security.events.AuthorizationConfigurationChanged;
 import org.sonatype.security.events.SecurityConfigurationChanged;
@@ -35,21 +39,38 @@ import org.sonatype.security.model.CRole;
 import org.sonatype.security.realms.privileges.PrivilegeDescriptor;
 import org.sonatype.security.realms.tools.ConfigurationManager;
 import org.sonatype.security.realms.tools.ConfigurationManagerAction;
+import org.sonatype.security.realms.tools.DynamicSecurityResource;
 import org.sonatype.security.realms.tools.StaticSecurityResource;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 
 import org.apache.shiro.authz.Permission;
 import org.apache.shiro.authz.permission.RolePermissionResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
-import com.google.common.collect.MapMaker;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * The default implementation of the RolePermissionResolver which reads roles from {@link StaticSecurityResource}s to
  * resolve a role into a collection of permissions. This class allows Realm implementations to no know what/how there
  * roles are used.
+ * <p/>
+ * Permissions are resolved from an immutable snapshot of all roles flattened into their permissions, hence resolving
+ * does not lock the configuration. On configuration changes (or when a dynamic resource becomes dirty) the snapshot
+ * is rebuilt in background while the previous one keeps being served, and only the roles affected by the change (the
+ * changed roles and the roles containing them) are flattened again. Only the very first snapshot is built on the
+ * request path.
  *
  * @author Brian Demers
  */
@@ -59,104 +80,292 @@ import com.google.common.eventbus.Subscribe;
 public class XmlRolePermissionResolver
     implements RolePermissionResolver
 {
+  private static final Logger log = LoggerFactory.getLogger(XmlRolePermissionResolver.class);
+
   private final ConfigurationManager configuration;
 
   private final List<PrivilegeDescriptor> privilegeDescriptors;
 
   private final PermissionFactory permissionFactory;
 
-  private final Map<String, Collection<Permission>> permissionsCache;
+  private final List<DynamicSecurityResource> dynamicResources;
+
+  private final Executor rebuildExecutor;
+
+  /**
+   * Incremented on each configuration change, a snapshot built from an older generation is stale.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Set while a rebuild is queued but not yet started, so bursts of changes trigger one rebuild.
+   */
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+  private final Object rebuildLock = new Object();
+
+  private volatile Snapshot snapshot;
 
   @Inject
   public XmlRolePermissionResolver(@Named("default") ConfigurationManager configuration,
                                    List<PrivilegeDescriptor> privilegeDescriptors,
                                    @Named("caching") PermissionFactory permissionFactory,
+                                   List<DynamicSecurityResource> dynamicResources,
                                    EventBus eventBus)
+  {
+    this(configuration, privilegeDescriptors, permissionFactory, dynamicResources, eventBus,
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("role-permissions-rebuild").setDaemon(true).build()));
+  }
+
+  @VisibleForTesting
+  XmlRolePermissionResolver(final ConfigurationManager configuration,
+                            final List<PrivilegeDescriptor> privilegeDescriptors,
+                            final PermissionFactory permissionFactory,
+                            final List<DynamicSecurityResource> dynamicResources,
+                            final EventBus eventBus,
+                            final Executor rebuildExecutor)
   {
     this.configuration = configuration;
     this.privilegeDescriptors = privilegeDescriptors;
     this.permissionFactory = permissionFactory;
-    this.permissionsCache = new MapMaker().weakValues().makeMap();
+    this.dynamicResources = dynamicResources;
+    this.rebuildExecutor = rebuildExecutor;
     eventBus.register(this);
   }
 
   @AllowConcurrentEvents
   @Subscribe
   public void on(final AuthorizationConfigurationChanged event) {
-    permissionsCache.clear(); // invalidate previous results
+    invalidate();
   }
 
   @AllowConcurrentEvents
   @Subscribe
   public void on(final SecurityConfigurationChanged event) {
-    permissionsCache.clear(); // invalidate previous results
+    invalidate();
   }
 
   public Collection<Permission> resolvePermissionsInRole(final String roleString) {
+    final Set<Permission> permissions = getSnapshot().rolePermissions.get(roleString);
+    return permissions != null ? permissions : Collections.<Permission>emptySet();
+  }
+
+  private void invalidate() {
+    generation.incrementAndGet();
+    scheduleRebuild();
+  }
+
+  private void scheduleRebuild() {
+    if (!rebuildScheduled.compareAndSet(false, true)) {
+      return; // already queued, will see this change
+    }
+    rebuildExecutor.execute(new Runnable()
+    {
+      @Override
+      public void run() {
+        // clear first, so changes made while rebuilding schedule another rebuild
+        rebuildScheduled.set(false);
+        try {
+          rebuild();
+        }
+        catch (Exception e) {
+          log.warn("Could not rebuild role permissions", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the current snapshot. A stale snapshot is still returned, but a background rebuild is scheduled. Only
+   * when no snapshot exists yet it is built by the caller.
+   */
+  private Snapshot getSnapshot() {
+    final Snapshot current = snapshot;
+    if (current == null) {
+      return rebuild();
+    }
+    if (!isCurrent(current)) {
+      scheduleRebuild();
+    }
+    return current;
+  }
+
+  private Snapshot rebuild() {
+    synchronized (rebuildLock) {
+      // re-check, a concurrent rebuild might have just finished
+      final Snapshot previous = snapshot;
+      if (isCurrent(previous)) {
+        return previous;
+      }
+      final Snapshot rebuilt = buildSnapshot(previous, generation.get());
+      snapshot = rebuilt;
+      return rebuilt;
+    }
+  }
+
+  private boolean isCurrent(@Nullable final Snapshot snapshot) {
+    if (snapshot == null || snapshot.generation != generation.get()) {
+      return false;
+    }
+    for (DynamicSecurityResource resource : dynamicResources) {
+      if (resource.isDirty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Snapshot buildSnapshot(@Nullable final Snapshot previous, final long generation) {
+    final Map<String, List<String>> roleRoles = Maps.newHashMap();
+    final Map<String, List<String>> rolePrivileges = Maps.newHashMap();
+    final Map<String, Set<Permission>> privilegePermissions = Maps.newHashMap();
     try {
-      final Set<Permission> permissions = new LinkedHashSet<Permission>();
       configuration.runRead(new ConfigurationManagerAction()
       {
         public void run() throws Exception {
-          resolvePermissionsInRole(roleString, permissions);
+          for (CRole role : configuration.listRoles()) {
+            roleRoles.put(role.getId(), ImmutableList.copyOf(role.getRoles()));
+            rolePrivileges.put(role.getId(), ImmutableList.copyOf(role.getPrivileges()));
+          }
+          for (CPrivilege privilege : configuration.listPrivileges()) {
+            privilegePermissions.put(privilege.getId(), getPermissions(privilege));
+          }
         }
       });
-      return permissions;
     }
     catch (Exception e) {
       throw Throwables.propagate(e);
     }
+
+    final Snapshot result = new Snapshot(generation, roleRoles, rolePrivileges, privilegePermissions);
+    final Set<String> affected = previous != null ? result.getAffectedRoles(previous) : roleRoles.keySet();
+    final ImmutableMap.Builder<String, Set<Permission>> rolePermissions = ImmutableMap.builder();
+    for (String roleId : roleRoles.keySet()) {
+      final Set<Permission> permissions = affected.contains(roleId) ? null : previous.rolePermissions.get(roleId);
+      rolePermissions.put(roleId, permissions != null ? permissions : resolvePermissionsInRole(roleId, result));
+    }
+    result.rolePermissions = rolePermissions.build();
+    log.debug("Built permissions of {} roles, {} affected by change", roleRoles.size(), affected.size());
+    return result;
   }
 
-  protected void resolvePermissionsInRole(final String roleString, final Collection<Permission> permissions) {
+  /**
+   * Flattens the role into its permissions, including the ones of the roles it contains recursively.
+   */
+  private Set<Permission> resolvePermissionsInRole(final String roleString, final Snapshot current) {
+    final Set<Permission> permissions = new LinkedHashSet<Permission>();
     final LinkedList<String> rolesToProcess = new LinkedList<String>();
     rolesToProcess.add(roleString); // initial role
-    final Set<String> processedRoleIds = new LinkedHashSet<String>();
+    final Set<String> processedRoleIds = new HashSet<String>();
     while (!rolesToProcess.isEmpty()) {
       final String roleId = rolesToProcess.removeFirst();
       if (processedRoleIds.add(roleId)) {
-        try {
-          final CRole role = configuration.readRole(roleId);
-
-          // check memory-sensitive cache (after readRole to allow for the dirty check)
-          final Collection<Permission> cachedPermissions = permissionsCache.get(roleId);
-          if (cachedPermissions != null) {
-            permissions.addAll(cachedPermissions);
-            continue; // use cached results
-          }
-
-          // process the roles this role has recursively
-          rolesToProcess.addAll(role.getRoles());
-          // add the permissions this role has
-          final List<String> privilegeIds = role.getPrivileges();
-          for (String privilegeId : privilegeIds) {
-            Set<Permission> set = getPermissions(privilegeId);
+        final List<String> roles = current.roleRoles.get(roleId);
+        if (roles == null) {
+          continue; // skip
+        }
+        // process the roles this role has recursively
+        rolesToProcess.addAll(roles);
+        // add the permissions this role has
+        for (String privilegeId : current.rolePrivileges.get(roleId)) {
+          final Set<Permission> set = current.privilegePermissions.get(privilegeId);
+          if (set != null) {
             permissions.addAll(set);
           }
         }
-        catch (NoSuchRoleException e) {
-          // skip
-        }
       }
     }
+    return ImmutableSet.copyOf(permissions);
+  }
 
-    // cache result of (non-trivial) computation
-    permissionsCache.put(roleString, permissions);
+  protected Set<Permission> getPermissions(final CPrivilege privilege) {
+    for (PrivilegeDescriptor descriptor : privilegeDescriptors) {
+      final String permission = descriptor.buildPermission(privilege);
+      if (permission != null) {
+        return Collections.singleton(permissionFactory.create(permission));
+      }
+    }
+    return Collections.emptySet();
   }
 
-  protected Set<Permission> getPermissions(final String privilegeId) {
-    try {
-      final CPrivilege privilege = configuration.readPrivilege(privilegeId);
-      for (PrivilegeDescriptor descriptor : privilegeDescriptors) {
-        final String permission = descriptor.buildPermission(privilege);
-        if (permission != null) {
-          return Collections.singleton(permissionFactory.create(permission));
+  /**
+   * Immutable view of the roles and privileges of the configuration, with the roles flattened into their permissions.
+   */
+  private static class Snapshot
+  {
+    private final long generation;
+
+    private final Map<String, List<String>> roleRoles;
+
+    private final Map<String, List<String>> rolePrivileges;
+
+    private final Map<String, Set<Permission>> privilegePermissions;
+
+    private Map<String, Set<Permission>> rolePermissions;
+
+    private Snapshot(final long generation,
+                     final Map<String, List<String>> roleRoles,
+                     final Map<String, List<String>> rolePrivileges,
+                     final Map<String, Set<Permission>> privilegePermissions)
+    {
+      this.generation = generation;
+      this.roleRoles = roleRoles;
+      this.rolePrivileges = rolePrivileges;
+      this.privilegePermissions = privilegePermissions;
+    }
+
+    /**
+     * Returns the roles whose permissions might differ from other snapshot: the roles added, removed or changed
+     * (roles, privileges or permissions of privileges), and all the roles containing those, directly or not.
+     */
+    private Set<String> getAffectedRoles(final Snapshot other) {
+      final LinkedList<String> rolesToProcess = new LinkedList<String>();
+      for (String roleId : Sets.union(roleRoles.keySet(), other.roleRoles.keySet())) {
+        if (!isRoleUnchanged(roleId, other)) {
+          rolesToProcess.add(roleId);
+        }
+      }
+      if (rolesToProcess.isEmpty()) {
+        return Collections.emptySet();
+      }
+      final Multimap<String, String> containedBy = HashMultimap.create();
+      for (Map.Entry<String, List<String>> entry : roleRoles.entrySet()) {
+        for (String roleId : entry.getValue()) {
+          containedBy.put(roleId, entry.getKey());
+        }
+      }
+      final Set<String> affected = new HashSet<String>();
+      while (!rolesToProcess.isEmpty()) {
+        final String roleId = rolesToProcess.removeFirst();
+        if (affected.add(roleId)) {
+          rolesToProcess.addAll(containedBy.get(roleId));
+        }
+      }
+      return affected;
+    }
+
+    /**
+     * Returns {@code true} if the role has same roles and privileges with same permissions as in other snapshot.
+     */
+    private boolean isRoleUnchanged(final String roleId, final Snapshot other) {
+      final List<String> privileges = rolePrivileges.get(roleId);
+      if (!equal(roleRoles.get(roleId), other.roleRoles.get(roleId))
+          || !equal(privileges, other.rolePrivileges.get(roleId))) {
+        return false;
+      }
+      if (privileges != null) {
+        for (String privilegeId : privileges) {
+          if (!equal(privilegePermissions.get(privilegeId), other.privilegePermissions.get(privilegeId))) {
+            return false;
+          }
         }
       }
-      return Collections.emptySet();
+      return true;
     }
-    catch (NoSuchPrivilegeException e) {
-      return Collections.emptySet();
+
+    private static boolean equal(@Nullable final Object a, @Nullable final Object b) {
+      return a == null ? b == null : a.equals(b);
     }
   }
 }
@@ -25,15 +25,103 @@ public abstract class AbstractConfigurationManager
 
   private volatile EnhancedConfiguration configurationCache = null;
 
+  /**
+   * The configuration pinned by {@link #beginRead()} or {@link #beginWrite()} for the calling thread.
+   */
+  private final ThreadLocal<View> views = new ThreadLocal<View>();
+
   protected AbstractConfigurationManager(EventBus eventBus) {
     this.eventBus = eventBus;
   }
 
   public void clearCache() {
     configurationCache = null;
+    final View view = views.get();
+    if (view != null) {
+      view.configuration = null;
+    }
+  }
+
+  /**
+   * Pins the current configuration for the calling thread until {@link #endRead()}, so a sequence of reads sees the
+   * same configuration, without locking. Nested calls are allowed.
+   *
+   * @since 3.0
+   */
+  public void beginRead() {
+    begin(false);
+  }
+
+  /**
+   * Ends the pinning started by {@link #beginRead()}.
+   *
+   * @since 3.0
+   */
+  public void endRead() {
+    end();
+  }
+
+  /**
+   * Makes the calling thread work on a private copy of the configuration until {@link #endWrite()}, when the copy
+   * replaces the configuration seen by other threads. Writes of concurrent threads must be serialized by the caller.
+   * Nested calls are allowed, but not within {@link #beginRead()}.
+   *
+   * @since 3.0
+   */
+  public void beginWrite() {
+    begin(true);
+  }
+
+  /**
+   * Publishes the configuration modified since {@link #beginWrite()}.
+   *
+   * @since 3.0
+   */
+  public void endWrite() {
+    end();
+  }
+
+  private void begin(final boolean write) {
+    final View view = views.get();
+    if (view == null) {
+      views.set(new View(write));
+    }
+    else if (write && !view.write) {
+      throw new IllegalStateException("Cannot write configuration while reading it");
+    }
+    else {
+      view.depth++;
+    }
   }
 
+  private void end() {
+    final View view = views.get();
+    if (view == null) {
+      throw new IllegalStateException("Configuration is neither read nor written");
+    }
+    if (--view.depth == 0) {
+      views.remove();
+      if (view.write && view.configuration != null) {
+        configurationCache = view.configuration;
+      }
+    }
+  }
+
+  /**
+   * Returns the configuration pinned for the calling thread (a private copy of it while writing), or the current one.
+   */
   protected EnhancedConfiguration getConfiguration() {
+    final View view = views.get();
+    if (view == null) {
+      return getCurrentConfiguration();
+    }
+    if (view.configuration == null) {
+      view.configuration = view.write ? getCurrentConfiguration().copy() : getCurrentConfiguration();
+    }
+    return view.configuration;
+  }
+
+  private EnhancedConfiguration getCurrentConfiguration() {
     // Assign configuration to local variable first, as calls to clearCache can null it out at any time
     EnhancedConfiguration configuration = this.configurationCache;
     if (configuration == null || shouldRebuildConfiguration()) {
@@ -70,4 +158,17 @@ public abstract class AbstractConfigurationManager
    * {@link #shouldRebuildConfiguration()} flag back to <code>false</code>.
    */
   protected abstract Configuration doGetConfiguration();
+
+  private static class View
+  {
+    private final boolean write;
+
+    private int depth = 1;
+
+    private EnhancedConfiguration configuration;
+
+    private View(final boolean write) {
+      this.write = write;
+    }
+  }
 }
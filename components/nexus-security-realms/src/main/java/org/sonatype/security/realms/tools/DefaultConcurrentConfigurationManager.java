@@ -15,8 +15,7 @@ package org.sonatype.security.realms.tools;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.enterprise.inject.Typed;
 import javax.inject.Inject;
@@ -43,6 +42,11 @@ import org.sonatype.sisu.goodies.common.ComponentSupport;
  * be used directly, as they cannot be used in a thread-safe manner. Instead, this implementation should be used.
  * It wraps ResourceMergingConfigurationManager, which wraps DefaultConfigurationManager.
  *
+ * Reads do not lock: they use the last published configuration, pinned for the duration of
+ * {@link #runRead(ConfigurationManagerAction)}. Writes are serialized, they modify a copy of the configuration that
+ * is published atomically when {@link #runWrite(ConfigurationManagerAction)} completes, hence readers never wait for
+ * writers.
+ *
  * @author Steve Carlucci
  */
 @Singleton
@@ -54,11 +58,7 @@ public class DefaultConcurrentConfigurationManager
 {
   private final ConfigurationManager configurationManager;
 
-  private final ReentrantReadWriteLock readWriteLock;
-
-  private final Lock readLock;
-
-  private final Lock writeLock;
+  private final ReentrantLock writeLock;
 
   private final long lockTimeout;
 
@@ -68,21 +68,19 @@ public class DefaultConcurrentConfigurationManager
   {
     this.configurationManager = configurationManager;
 
-    this.readWriteLock = new ReentrantReadWriteLock();
-    this.readLock = this.readWriteLock.readLock();
-    this.writeLock = this.readWriteLock.writeLock();
+    this.writeLock = new ReentrantLock();
     this.lockTimeout = lockTimeout;
     log.debug("Lock timeout: {} seconds", lockTimeout);
   }
 
   @Override
   public void runRead(ConfigurationManagerAction action) throws Exception {
-    acquireLock(readLock);
+    beginRead();
     try {
       action.run();
     }
     finally {
-      releaseLock(readLock);
+      endRead();
     }
   }
 
@@ -90,7 +88,13 @@ public class DefaultConcurrentConfigurationManager
   public void runWrite(ConfigurationManagerAction action) throws Exception {
     acquireLock(writeLock);
     try {
-      action.run();
+      beginWrite();
+      try {
+        action.run();
+      }
+      finally {
+        endWrite();
+      }
     }
     finally {
       releaseLock(writeLock);
@@ -133,13 +137,7 @@ public class DefaultConcurrentConfigurationManager
   public String getPrivilegeProperty(String id, String key)
       throws NoSuchPrivilegeException
   {
-    readLock.lock();
-    try {
-      return configurationManager.getPrivilegeProperty(id, key);
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.getPrivilegeProperty(id, key);
   }
 
   @Override
@@ -168,46 +166,22 @@ public class DefaultConcurrentConfigurationManager
 
   @Override
   public List<CUser> listUsers() {
-    readLock.lock();
-    try {
-      return configurationManager.listUsers();
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.listUsers();
   }
 
   @Override
   public List<CRole> listRoles() {
-    readLock.lock();
-    try {
-      return configurationManager.listRoles();
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.listRoles();
   }
 
   @Override
   public List<CPrivilege> listPrivileges() {
-    readLock.lock();
-    try {
-      return configurationManager.listPrivileges();
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.listPrivileges();
   }
 
   @Override
   public List<PrivilegeDescriptor> listPrivilegeDescriptors() {
-    readLock.lock();
-    try {
-      return configurationManager.listPrivilegeDescriptors();
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.listPrivilegeDescriptors();
   }
 
   @Override
@@ -278,39 +252,21 @@ public class DefaultConcurrentConfigurationManager
   public CUser readUser(String id)
       throws UserNotFoundException
   {
-    readLock.lock();
-    try {
-      return configurationManager.readUser(id);
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.readUser(id);
   }
 
   @Override
   public CRole readRole(String id)
       throws NoSuchRoleException
   {
-    readLock.lock();
-    try {
-      return configurationManager.readRole(id);
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.readRole(id);
   }
 
   @Override
   public CPrivilege readPrivilege(String id)
       throws NoSuchPrivilegeException
   {
-    readLock.lock();
-    try {
-      return configurationManager.readPrivilege(id);
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.readPrivilege(id);
   }
 
   @Override
@@ -389,24 +345,12 @@ public class DefaultConcurrentConfigurationManager
   public CUserRoleMapping readUserRoleMapping(String userId, String source)
       throws NoSuchRoleMappingException
   {
-    readLock.lock();
-    try {
-      return configurationManager.readUserRoleMapping(userId, source);
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.readUserRoleMapping(userId, source);
   }
 
   @Override
   public List<CUserRoleMapping> listUserRoleMappings() {
-    readLock.lock();
-    try {
-      return configurationManager.listUserRoleMappings();
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.listUserRoleMappings();
   }
 
   @Override
@@ -427,23 +371,35 @@ public class DefaultConcurrentConfigurationManager
 
   @Override
   public String getPrivilegeProperty(CPrivilege privilege, String key) {
-    readLock.lock();
-    try {
-      return configurationManager.getPrivilegeProperty(privilege, key);
-    }
-    finally {
-      readLock.unlock();
-    }
+    return configurationManager.getPrivilegeProperty(privilege, key);
   }
 
   @Override
   public SecurityValidationContext initializeContext() {
-    readLock.lock();
-    try {
-      return configurationManager.initializeContext();
+    return configurationManager.initializeContext();
+  }
+
+  private void beginRead() {
+    if (configurationManager instanceof AbstractConfigurationManager) {
+      ((AbstractConfigurationManager) configurationManager).beginRead();
     }
-    finally {
-      readLock.unlock();
+  }
+
+  private void endRead() {
+    if (configurationManager instanceof AbstractConfigurationManager) {
+      ((AbstractConfigurationManager) configurationManager).endRead();
+    }
+  }
+
+  private void beginWrite() {
+    if (configurationManager instanceof AbstractConfigurationManager) {
+      ((AbstractConfigurationManager) configurationManager).beginWrite();
+    }
+  }
+
+  private void endWrite() {
+    if (configurationManager instanceof AbstractConfigurationManager) {
+      ((AbstractConfigurationManager) configurationManager).endWrite();
     }
   }
 
@@ -453,7 +409,7 @@ public class DefaultConcurrentConfigurationManager
    * @param lock the lock to acquire
    * @throws IllegalStateException if lock could not be acquired
    */
-  private void acquireLock(Lock lock) {
+  private void acquireLock(ReentrantLock lock) {
     try {
       if (!lock.tryLock(lockTimeout, TimeUnit.SECONDS)) {
         //Unable to acquire lock
@@ -470,7 +426,7 @@ public class DefaultConcurrentConfigurationManager
    *
    * @param lock lock to unlock
    */
-  private void releaseLock(Lock lock) {
+  private void releaseLock(ReentrantLock lock) {
     lock.unlock();
   }
 
@@ -480,7 +436,7 @@ public class DefaultConcurrentConfigurationManager
    * @throws IllegalStateException if thread does not hold a write lock
    */
   private void checkWriteLock() {
-    if (readWriteLock.getWriteHoldCount() == 0) {
+    if (!writeLock.isHeldByCurrentThread()) {
       throw new IllegalStateException("Method called without proper locking");
     }
   }
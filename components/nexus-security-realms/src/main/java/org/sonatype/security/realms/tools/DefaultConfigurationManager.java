@@ -551,6 +551,8 @@ public class DefaultConfigurationManager
 
   public void save() {
     try {
+      // while written, the configuration is a copy of the one loaded by source
+      this.configurationSource.setConfiguration(getConfiguration().getConfiguration());
       this.configurationSource.storeConfiguration();
     }
     catch (IOException e) {
@@ -237,6 +237,26 @@ public class EnhancedConfiguration
 
   // ==
 
+  /**
+   * Returns a deep copy of this configuration, that can be modified without affecting this instance.
+   *
+   * @since 3.0
+   */
+  public EnhancedConfiguration copy() {
+    return new EnhancedConfiguration(delegate.clone());
+  }
+
+  /**
+   * Returns the wrapped configuration model.
+   *
+   * @since 3.0
+   */
+  public Configuration getConfiguration() {
+    return delegate;
+  }
+
+  // ==
+
   @Override
   public String toString() {
     return super.toString() + " delegating to " + delegate.toString();
@@ -93,6 +93,41 @@ public class ResourceMergingConfigurationManager
     manager.clearCache();
   }
 
+  @Override
+  public void beginRead() {
+    super.beginRead();
+    if (manager instanceof AbstractConfigurationManager) {
+      ((AbstractConfigurationManager) manager).beginRead();
+    }
+  }
+
+  @Override
+  public void endRead() {
+    if (manager instanceof AbstractConfigurationManager) {
+      ((AbstractConfigurationManager) manager).endRead();
+    }
+    super.endRead();
+  }
+
+  /**
+   * Only the configuration of the wrapped manager is written, the merged resources are just pinned.
+   */
+  @Override
+  public void beginWrite() {
+    if (manager instanceof AbstractConfigurationManager) {
+      ((AbstractConfigurationManager) manager).beginWrite();
+    }
+    super.beginRead();
+  }
+
+  @Override
+  public void endWrite() {
+    if (manager instanceof AbstractConfigurationManager) {
+      ((AbstractConfigurationManager) manager).endWrite();
+    }
+    super.endRead();
+  }
+
   public void createPrivilege(CPrivilege privilege)
       throws InvalidConfigurationException
   {
@@ -0,0 +1,307 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.security.realms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.sonatype.security.authorization.WildcardPermissionFactory;
+import org.sonatype.security.events.AuthorizationConfigurationChanged;
+import org.sonatype.security.model.CPrivilege;
+import org.sonatype.security.model.CRole;
+import org.sonatype.security.realms.privileges.PrivilegeDescriptor;
+import org.sonatype.security.realms.tools.ConfigurationManager;
+import org.sonatype.security.realms.tools.ConfigurationManagerAction;
+import org.sonatype.security.realms.tools.DynamicSecurityResource;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link XmlRolePermissionResolver}.
+ */
+public class XmlRolePermissionResolverTest
+    extends TestSupport
+{
+  private final Map<String, CRole> roles = new ConcurrentHashMap<String, CRole>();
+
+  private final Map<String, CPrivilege> privileges = new ConcurrentHashMap<String, CPrivilege>();
+
+  private final AtomicBoolean dirty = new AtomicBoolean();
+
+  private ConfigurationManager configuration;
+
+  private DynamicSecurityResource dynamicResource;
+
+  @Before
+  public void prepare() throws Exception {
+    configuration = mock(ConfigurationManager.class);
+    doAnswer(new Answer<Object>()
+    {
+      @Override
+      public Object answer(final InvocationOnMock invocation) throws Throwable {
+        ((ConfigurationManagerAction) invocation.getArguments()[0]).run();
+        return null;
+      }
+    }).when(configuration).runRead(any(ConfigurationManagerAction.class));
+    when(configuration.listRoles()).thenAnswer(new Answer<List<CRole>>()
+    {
+      @Override
+      public List<CRole> answer(final InvocationOnMock invocation) {
+        dirty.set(false); // reading the merged configuration clears the dirty flag
+        return new ArrayList<CRole>(roles.values());
+      }
+    });
+    when(configuration.listPrivileges()).thenAnswer(new Answer<List<CPrivilege>>()
+    {
+      @Override
+      public List<CPrivilege> answer(final InvocationOnMock invocation) {
+        return new ArrayList<CPrivilege>(privileges.values());
+      }
+    });
+
+    dynamicResource = mock(DynamicSecurityResource.class);
+    when(dynamicResource.isDirty()).thenAnswer(new Answer<Boolean>()
+    {
+      @Override
+      public Boolean answer(final InvocationOnMock invocation) {
+        return dirty.get();
+      }
+    });
+  }
+
+  private XmlRolePermissionResolver resolver(final Executor executor) {
+    final PrivilegeDescriptor descriptor = mock(PrivilegeDescriptor.class);
+    when(descriptor.buildPermission(any(CPrivilege.class))).thenAnswer(new Answer<String>()
+    {
+      @Override
+      public String answer(final InvocationOnMock invocation) {
+        return ((CPrivilege) invocation.getArguments()[0]).getDescription();
+      }
+    });
+    return new XmlRolePermissionResolver(configuration, Collections.singletonList(descriptor),
+        new WildcardPermissionFactory(), Collections.singletonList(dynamicResource), mock(EventBus.class), executor);
+  }
+
+  private void privilege(final String id, final String permission) {
+    final CPrivilege privilege = new CPrivilege();
+    privilege.setId(id);
+    privilege.setDescription(permission);
+    privileges.put(id, privilege);
+  }
+
+  private void role(final String id, final List<String> roleIds, final String... privilegeIds) {
+    final CRole role = new CRole();
+    role.setId(id);
+    role.setRoles(new ArrayList<String>(roleIds));
+    role.setPrivileges(new ArrayList<String>(Arrays.asList(privilegeIds)));
+    roles.put(id, role);
+  }
+
+  private static Set<Permission> permissions(final String... permissions) {
+    final ImmutableSet.Builder<Permission> result = ImmutableSet.builder();
+    for (String permission : permissions) {
+      result.add(new WildcardPermission(permission));
+    }
+    return result.build();
+  }
+
+  private static Set<Permission> resolve(final XmlRolePermissionResolver resolver, final String roleId) {
+    return ImmutableSet.copyOf(resolver.resolvePermissionsInRole(roleId));
+  }
+
+  @Test
+  public void resolvesInheritedPermissions() {
+    privilege("read", "repo:read");
+    privilege("write", "repo:write");
+    privilege("admin", "repo:admin");
+    role("reader", Arrays.asList("admin"), "read"); // cycle back to admin
+    role("writer", Arrays.asList("reader"), "write");
+    role("admin", Arrays.asList("writer", "missing"), "admin", "missing");
+    role("plain", Collections.<String>emptyList(), "read");
+
+    final XmlRolePermissionResolver underTest = resolver(MoreExecutors.sameThreadExecutor());
+
+    assertThat(resolve(underTest, "admin"), equalTo(permissions("repo:admin", "repo:write", "repo:read")));
+    assertThat(resolve(underTest, "reader"), equalTo(permissions("repo:admin", "repo:write", "repo:read")));
+    assertThat(resolve(underTest, "plain"), equalTo(permissions("repo:read")));
+    assertThat(underTest.resolvePermissionsInRole("missing"), is(empty()));
+  }
+
+  @Test
+  public void rebuildsOnlyAffectedRoles() {
+    privilege("read", "repo:read");
+    privilege("other", "other:read");
+    role("reader", Collections.<String>emptyList(), "read");
+    role("writer", Arrays.asList("reader"));
+    role("other", Collections.<String>emptyList(), "other");
+
+    final XmlRolePermissionResolver underTest = resolver(MoreExecutors.sameThreadExecutor());
+    final Collection<Permission> writer = underTest.resolvePermissionsInRole("writer");
+    final Collection<Permission> other = underTest.resolvePermissionsInRole("other");
+    assertThat(ImmutableSet.copyOf(writer), equalTo(permissions("repo:read")));
+
+    // permission of a privilege of a contained role changes, and a new role is added
+    privilege("read", "repo:browse");
+    role("new", Arrays.asList("other"));
+    underTest.on(new AuthorizationConfigurationChanged());
+
+    assertThat(resolve(underTest, "reader"), equalTo(permissions("repo:browse")));
+    assertThat(resolve(underTest, "writer"), equalTo(permissions("repo:browse")));
+    assertThat(resolve(underTest, "new"), equalTo(permissions("other:read")));
+    assertThat(underTest.resolvePermissionsInRole("writer"), not(sameInstance(writer)));
+    assertThat(underTest.resolvePermissionsInRole("other"), sameInstance(other));
+
+    // contained role removed
+    roles.remove("reader");
+    underTest.on(new AuthorizationConfigurationChanged());
+
+    assertThat(underTest.resolvePermissionsInRole("writer"), is(empty()));
+    assertThat(underTest.resolvePermissionsInRole("other"), sameInstance(other));
+  }
+
+  @Test
+  public void servesPreviousSnapshotWhileRebuilding() {
+    privilege("read", "repo:read");
+    role("reader", Collections.<String>emptyList(), "read");
+
+    final List<Runnable> queued = new ArrayList<Runnable>();
+    final XmlRolePermissionResolver underTest = resolver(new Executor()
+    {
+      @Override
+      public void execute(final Runnable command) {
+        queued.add(command);
+      }
+    });
+
+    // first snapshot is built by the caller
+    assertThat(resolve(underTest, "reader"), equalTo(permissions("repo:read")));
+    assertThat(queued, is(empty()));
+
+    // dynamic resource became dirty: previous snapshot served, one rebuild queued
+    privilege("read", "repo:browse");
+    dirty.set(true);
+    assertThat(resolve(underTest, "reader"), equalTo(permissions("repo:read")));
+    assertThat(resolve(underTest, "reader"), equalTo(permissions("repo:read")));
+    underTest.on(new AuthorizationConfigurationChanged());
+    assertThat(queued.size(), is(1));
+
+    queued.remove(0).run();
+    assertThat(resolve(underTest, "reader"), equalTo(permissions("repo:browse")));
+    assertThat(queued, is(empty()));
+  }
+
+  @Test
+  public void concurrentResolution() throws Exception {
+    privilege("read", "repo:0");
+    role("reader", Collections.<String>emptyList(), "read");
+    role("writer", Arrays.asList("reader"));
+
+    final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor();
+    final ExecutorService resolvers = Executors.newFixedThreadPool(4);
+    try {
+      final XmlRolePermissionResolver underTest = resolver(rebuildExecutor);
+      final int changes = 200;
+      final AtomicBoolean done = new AtomicBoolean();
+      final CountDownLatch started = new CountDownLatch(4);
+      final Permission repository = new WildcardPermission("repo:*");
+      final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+      for (int i = 0; i < 4; i++) {
+        resolvers.execute(new Runnable()
+        {
+          @Override
+          public void run() {
+            started.countDown();
+            try {
+              while (!done.get()) {
+                // always the complete permission set of one of the configurations
+                final Collection<Permission> permissions = underTest.resolvePermissionsInRole("writer");
+                assertThat(permissions.size(), is(1));
+                assertThat(repository.implies(permissions.iterator().next()), is(true));
+              }
+            }
+            catch (Throwable e) {
+              failures.add(e);
+            }
+          }
+        });
+      }
+      started.await();
+      for (int i = 1; i <= changes; i++) {
+        privilege("read", "repo:" + i);
+        if (i % 2 == 0) {
+          underTest.on(new AuthorizationConfigurationChanged());
+        }
+        else {
+          dirty.set(true);
+        }
+      }
+      underTest.on(new AuthorizationConfigurationChanged());
+
+      // eventually the last configuration is served
+      final AtomicReference<Set<Permission>> resolved = new AtomicReference<Set<Permission>>();
+      final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (System.currentTimeMillis() < deadline) {
+        resolved.set(resolve(underTest, "writer"));
+        if (resolved.get().equals(permissions("repo:" + changes))) {
+          break;
+        }
+        Thread.sleep(10);
+      }
+      done.set(true);
+      resolvers.shutdown();
+      assertThat(resolvers.awaitTermination(10, TimeUnit.SECONDS), is(true));
+
+      assertThat(failures, is(empty()));
+      assertThat(resolved.get(), equalTo(permissions("repo:" + changes)));
+    }
+    finally {
+      resolvers.shutdownNow();
+      rebuildExecutor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.security.realms.tools;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sonatype.security.AbstractSecurityTestCase;
+import org.sonatype.security.model.CRole;
+
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark measuring the throughput of the role lookups done while authorizing requests, with and without a thread
+ * continuously updating roles through {@link DefaultConcurrentConfigurationManager#runWrite}. Not executed as part of
+ * the build (it does not match the test naming pattern), run it manually with
+ * {@code mvn test -Dtest=DefaultConcurrentConfigurationManagerBenchmark}.
+ */
+public class DefaultConcurrentConfigurationManagerBenchmark
+    extends AbstractSecurityTestCase
+{
+  private static final Logger logger = LoggerFactory.getLogger(DefaultConcurrentConfigurationManagerBenchmark.class);
+
+  private static final int READERS = 16;
+
+  private static final long DURATION_MILLIS = 5000L;
+
+  private ConfigurationManager configMgr;
+
+  @Override
+  protected void setUp()
+      throws Exception
+  {
+    super.setUp();
+    configMgr = lookup(ConfigurationManager.class);
+  }
+
+  public void testReadThroughput()
+      throws Exception
+  {
+    // warm up
+    run(false);
+
+    final long idle = run(false);
+    final long mutating = run(true);
+    logger.info("{} readers for {} ms: {} role lookups without writer, {} role lookups with concurrent writer",
+        READERS, DURATION_MILLIS, idle, mutating);
+  }
+
+  private long run(final boolean withWriter)
+      throws Exception
+  {
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicLong lookups = new AtomicLong();
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(READERS + (withWriter ? 1 : 0));
+
+    for (int t = 0; t < READERS; t++) {
+      start(new Callable<Void>()
+      {
+        @Override
+        public Void call()
+            throws Exception
+        {
+          while (running.get()) {
+            configMgr.runRead(new ConfigurationManagerAction()
+            {
+              @Override
+              public void run()
+                  throws Exception
+              {
+                for (CRole role : configMgr.listRoles()) {
+                  configMgr.readRole(role.getId());
+                  lookups.incrementAndGet();
+                }
+              }
+            });
+          }
+          return null;
+        }
+      }, start, done);
+    }
+
+    if (withWriter) {
+      start(new Callable<Void>()
+      {
+        @Override
+        public Void call()
+            throws Exception
+        {
+          int version = 0;
+          while (running.get()) {
+            final String description = "updated " + version++;
+            configMgr.runWrite(new ConfigurationManagerAction()
+            {
+              @Override
+              public void run()
+                  throws Exception
+              {
+                final List<CRole> roles = configMgr.listRoles();
+                if (!roles.isEmpty()) {
+                  final CRole role = configMgr.readRole(roles.get(0).getId());
+                  role.setDescription(description);
+                  configMgr.updateRole(role);
+                }
+              }
+            });
+          }
+          return null;
+        }
+      }, start, done);
+    }
+
+    start.countDown();
+    Thread.sleep(DURATION_MILLIS);
+    running.set(false);
+    done.await();
+    return lookups.get();
+  }
+
+  private void start(final Callable<Void> loop, final CountDownLatch start, final CountDownLatch done) {
+    final Thread thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run() {
+        try {
+          start.await();
+          loop.call();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        catch (Exception e) {
+          throw Throwables.propagate(e);
+        }
+        finally {
+          done.countDown();
+        }
+      }
+    });
+    thread.start();
+  }
+}
@@ -246,4 +246,63 @@ public class DefaultConcurrentConfigurationManagerTest
       threadStopLatch.countDown();
     }
   }
+  public void testReaderNotBlockedByWriter()
+      throws Exception
+  {
+    final CountDownLatch threadInitLatch = new CountDownLatch(1);
+    final CountDownLatch threadStopLatch = new CountDownLatch(1);
+
+    try {
+      //Start a thread that acquires write lock and waits for latch
+      Thread t = new Thread(new Runnable()
+      {
+        @Override
+        public void run() {
+          try {
+            configMgr.runWrite(new ConfigurationManagerAction()
+            {
+              @Override
+              public void run()
+                  throws Exception
+              {
+                //We hold a write lock at this point
+                try {
+                  threadInitLatch.countDown();
+                  threadStopLatch.await();
+                }
+                catch (InterruptedException e) {
+                  throw new RuntimeException(e);
+                }
+              }
+            });
+          }
+          catch (Exception e) {
+            throw Throwables.propagate(e);
+          }
+        }
+      });
+
+      t.start();
+
+      //Wait for thread to initialize
+      threadInitLatch.await();
+
+      //At this point, the thread is writing. Make sure that we can read the published configuration without waiting
+      long startTime = System.currentTimeMillis();
+      configMgr.runRead(new ConfigurationManagerAction()
+      {
+        @Override
+        public void run()
+            throws Exception
+        {
+          configMgr.listRoles();
+        }
+      });
+      assertThat(System.currentTimeMillis() - startTime, is(lessThan(lockTimeout * 1000)));
+    }
+    finally {
+      threadInitLatch.countDown();
+      threadStopLatch.countDown();
+    }
+  }
 }
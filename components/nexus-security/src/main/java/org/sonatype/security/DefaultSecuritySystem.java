@@ -29,6 +29,7 @@ import javax.inject.Singleton;
 
 import org.sonatype.configuration.validation.InvalidConfigurationException;
 import org.sonatype.security.authentication.AuthenticationException;
+import org.sonatype.security.authentication.CachingCredentialsMatcher;
 import org.sonatype.security.authorization.AuthorizationException;
 import org.sonatype.security.authorization.AuthorizationManager;
 import org.sonatype.security.authorization.NoSuchAuthorizationManagerException;
@@ -889,6 +890,31 @@ public class DefaultSecuritySystem
     }
   }
 
+  /**
+   * Looks up registered {@link AuthenticatingRealm}s, and invalidates the remembered credential matches of the user,
+   * or of all users if user ID is {@code null}, if they use {@link CachingCredentialsMatcher}.
+   *
+   * @since 3.0
+   */
+  private void clearCredentialsCaches(@Nullable final String userId) {
+    final Collection<Realm> realms = getSecurityManager().getRealms();
+    if (realms != null) {
+      for (Realm realm : realms) {
+        if (realm instanceof AuthenticatingRealm
+            && ((AuthenticatingRealm) realm).getCredentialsMatcher() instanceof CachingCredentialsMatcher) {
+          final CachingCredentialsMatcher matcher =
+              (CachingCredentialsMatcher) ((AuthenticatingRealm) realm).getCredentialsMatcher();
+          if (userId != null) {
+            matcher.invalidate(userId);
+          }
+          else {
+            matcher.invalidateAll();
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Clears Shiro cache if passed instance is not {@code null}.
    *
@@ -906,6 +932,7 @@ public class DefaultSecuritySystem
   public void onEvent(final UserPrincipalsExpired evt) {
     // TODO: we could do this better, not flushing whole cache for single user being deleted
     clearAuthcRealmCaches();
+    clearCredentialsCaches(evt.getUserId());
   }
 
   @Subscribe
@@ -917,6 +944,7 @@ public class DefaultSecuritySystem
   @Subscribe
   public void onEvent(final SecurityConfigurationChanged evt) {
     clearAuthcRealmCaches();
+    clearCredentialsCaches(null);
     clearAuthzRealmCaches();
     securityConfiguration.clearCache();
     setSecurityManagerRealms();
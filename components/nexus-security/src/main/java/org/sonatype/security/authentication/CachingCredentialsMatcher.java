@@ -0,0 +1,158 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.security.authentication;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.authc.credential.CredentialsMatcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link CredentialsMatcher} remembering the successful matches of username and password tokens for a while, to not
+ * hash the password of every request (Maven clients send the credentials with each of them).
+ * <p/>
+ * Neither the passwords nor their plain hashes are kept in memory: for each user the HMAC of the username, the
+ * password and the stored credentials is cached, computed with a random key generated at creation, and a token
+ * matches only if its HMAC is equal to the cached one. As the stored credentials are part of the HMAC, a changed
+ * password invalidates the cached match by itself, while disabled or deleted users should be invalidated using
+ * {@link #invalidate(String)}.
+ *
+ * @since 3.0
+ */
+public class CachingCredentialsMatcher
+    implements CredentialsMatcher
+{
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+
+  private final CredentialsMatcher delegate;
+
+  private final SecretKeySpec key;
+
+  private final Cache<String, byte[]> matches;
+
+  /**
+   * @param delegate   the matcher verifying the credentials not found in cache.
+   * @param maxSize    the maximum count of users to remember matches of.
+   * @param ttlSeconds the time in seconds a match is remembered for.
+   */
+  public CachingCredentialsMatcher(final CredentialsMatcher delegate, final int maxSize, final int ttlSeconds) {
+    checkArgument(maxSize > 0, "Size must be positive");
+    checkArgument(ttlSeconds > 0, "TTL must be positive");
+    this.delegate = checkNotNull(delegate);
+    final byte[] keyBytes = new byte[32];
+    new SecureRandom().nextBytes(keyBytes);
+    this.key = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+    this.matches = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  public CredentialsMatcher getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public boolean doCredentialsMatch(final AuthenticationToken token, final AuthenticationInfo info) {
+    if (!(token instanceof UsernamePasswordToken)) {
+      return delegate.doCredentialsMatch(token, info);
+    }
+    final UsernamePasswordToken upToken = (UsernamePasswordToken) token;
+    final char[] storedCredentials = toChars(info.getCredentials());
+    if (upToken.getUsername() == null || upToken.getPassword() == null || storedCredentials == null) {
+      return delegate.doCredentialsMatch(token, info);
+    }
+
+    final byte[] mac = mac(upToken.getUsername(), upToken.getPassword(), storedCredentials);
+    final byte[] cached = matches.getIfPresent(upToken.getUsername());
+    if (cached != null && MessageDigest.isEqual(cached, mac)) {
+      return true;
+    }
+    final boolean match = delegate.doCredentialsMatch(token, info);
+    if (match) {
+      matches.put(upToken.getUsername(), mac);
+    }
+    return match;
+  }
+
+  /**
+   * Forgets the remembered match of given user.
+   */
+  public void invalidate(final String username) {
+    matches.invalidate(username);
+  }
+
+  /**
+   * Forgets all the remembered matches.
+   */
+  public void invalidateAll() {
+    matches.invalidateAll();
+  }
+
+  // ==
+
+  @Nullable
+  private char[] toChars(@Nullable final Object credentials) {
+    if (credentials instanceof char[]) {
+      return (char[]) credentials;
+    }
+    else if (credentials instanceof String) {
+      return ((String) credentials).toCharArray();
+    }
+    return null;
+  }
+
+  private byte[] mac(final String username, final char[] password, final char[] storedCredentials) {
+    try {
+      final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(key);
+      update(mac, username.toCharArray());
+      update(mac, password);
+      update(mac, storedCredentials);
+      return mac.doFinal();
+    }
+    catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not compute " + MAC_ALGORITHM, e);
+    }
+  }
+
+  /**
+   * Updates the MAC with the length prefixed UTF-8 bytes of the chars, without creating strings of them.
+   */
+  private void update(final Mac mac, final char[] chars) {
+    final ByteBuffer bytes = Charsets.UTF_8.encode(CharBuffer.wrap(chars));
+    mac.update(ByteBuffer.allocate(4).putInt(bytes.remaining()).array());
+    mac.update(bytes);
+    if (bytes.hasArray()) {
+      Arrays.fill(bytes.array(), (byte) 0);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.security.authentication;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.authc.credential.CredentialsMatcher;
+import org.apache.shiro.authc.credential.SimpleCredentialsMatcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link CachingCredentialsMatcher}.
+ */
+public class CachingCredentialsMatcherTest
+    extends TestSupport
+{
+  private CountingMatcher delegate;
+
+  private CachingCredentialsMatcher underTest;
+
+  @Before
+  public void setUp() {
+    delegate = new CountingMatcher();
+    underTest = new CachingCredentialsMatcher(delegate, 10, 60);
+  }
+
+  @Test
+  public void successfulMatchIsRemembered() {
+    final AuthenticationInfo info = info("user", "secret");
+
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info), is(true));
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info), is(true));
+    assertThat(delegate.count, is(1));
+  }
+
+  @Test
+  public void failedMatchIsNotRemembered() {
+    final AuthenticationInfo info = info("user", "secret");
+
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "wrong"), info), is(false));
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "wrong"), info), is(false));
+    assertThat(delegate.count, is(2));
+  }
+
+  @Test
+  public void otherPasswordIsVerified() {
+    final AuthenticationInfo info = info("user", "secret");
+
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info), is(true));
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "wrong"), info), is(false));
+    assertThat(delegate.count, is(2));
+  }
+
+  @Test
+  public void changedStoredCredentialsAreVerified() {
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info("user", "secret")),
+        is(true));
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info("user", "changed")),
+        is(false));
+    assertThat(delegate.count, is(2));
+  }
+
+  @Test
+  public void invalidatedMatchIsVerified() {
+    final AuthenticationInfo info = info("user", "secret");
+
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info), is(true));
+    underTest.invalidate("other");
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info), is(true));
+    assertThat(delegate.count, is(1));
+
+    underTest.invalidate("user");
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info), is(true));
+    assertThat(delegate.count, is(2));
+
+    underTest.invalidateAll();
+    assertThat(underTest.doCredentialsMatch(new UsernamePasswordToken("user", "secret"), info), is(true));
+    assertThat(delegate.count, is(3));
+  }
+
+  private AuthenticationInfo info(final String username, final String password) {
+    return new SimpleAuthenticationInfo(username, password.toCharArray(), "test");
+  }
+
+  private static class CountingMatcher
+      implements CredentialsMatcher
+  {
+    private final CredentialsMatcher matcher = new SimpleCredentialsMatcher();
+
+    private int count;
+
+    @Override
+    public boolean doCredentialsMatch(final AuthenticationToken token, final AuthenticationInfo info) {
+      count++;
+      return matcher.doCredentialsMatch(token, info);
+    }
+  }
+}
@@ -13,7 +13,6 @@
 package org.sonatype.nexus.content.internal;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Collection;
@@ -69,7 +68,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.io.ByteStreams.limit;
 import static javax.servlet.http.HttpServletResponse.SC_CREATED;
 import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 import static javax.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
@@ -542,10 +540,7 @@ public class ContentServlet
         response.setHeader("Content-Range",
             range.lowerEndpoint() + "-" + range.upperEndpoint() + "/" + file.getLength());
         if (contentNeeded) {
-          try (final InputStream in = file.getInputStream()) {
-            in.skip(range.lowerEndpoint());
-            webUtils.sendContent(limit(in, bodySize), response);
-          }
+          webUtils.sendContent(file.getInputStream(), range.lowerEndpoint(), bodySize, response);
         }
       }
     }
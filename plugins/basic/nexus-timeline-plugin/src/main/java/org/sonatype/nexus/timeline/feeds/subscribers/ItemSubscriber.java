@@ -20,6 +20,7 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.sonatype.nexus.events.Asynchronous;
+import org.sonatype.nexus.events.BestEffort;
 import org.sonatype.nexus.events.Event;
 import org.sonatype.nexus.events.EventSubscriber;
 import org.sonatype.nexus.proxy.access.AccessManager;
@@ -47,13 +48,14 @@ import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
 /**
- * Subscriber listening for events recorded under {@link FeedRecorder#FAMILY_ITEM} event type.
+ * Subscriber listening for events recorded under {@link FeedRecorder#FAMILY_ITEM} event type. Feed entries are
+ * informational only, hence item events may be coalesced or dropped under load, see {@link BestEffort}.
  */
 @Named
 @Singleton
 public class ItemSubscriber
     extends AbstractFeedEventSubscriber
-    implements EventSubscriber, Asynchronous
+    implements EventSubscriber, Asynchronous, BestEffort
 {
   @Inject
   public ItemSubscriber(final FeedRecorder feedRecorder) {
@@ -13,6 +13,8 @@
 
 package org.sonatype.nexus.timeline.internal;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -23,17 +25,21 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.sonatype.nexus.configuration.application.ApplicationDirectories;
 import org.sonatype.nexus.proxy.events.NexusInitializedEvent;
 import org.sonatype.nexus.proxy.events.NexusStoppedEvent;
 import org.sonatype.nexus.timeline.Entry;
 import org.sonatype.nexus.timeline.Timeline;
 import org.sonatype.nexus.timeline.TimelineCallback;
 import org.sonatype.nexus.timeline.TimelinePlugin;
+import org.sonatype.nexus.timeline.internal.TimelineIndex.PartitionSummary;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 import org.sonatype.sisu.goodies.lifecycle.LifecycleSupport;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.Subscribe;
 import io.kazuki.v0.store.KazukiException;
 import io.kazuki.v0.store.journal.JournalStore;
@@ -51,7 +57,9 @@ import io.kazuki.v0.store.schema.model.Schema;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * Implementation of {@link Timeline} backed by Kazuki.
+ * Implementation of {@link Timeline} backed by Kazuki. Journal partitions are closed on day boundaries, and are
+ * indexed by {@link TimelineIndex}, so retrieval reads only partitions having matching entries, and purge drops only
+ * partitions having expired entries.
  *
  * @since 3.0
  */
@@ -61,14 +69,27 @@ public class DefaultTimeline
     extends LifecycleSupport
     implements Timeline
 {
+  /**
+   * Count of entries read at once from a partition during retrieval.
+   */
+  private static final int READ_CHUNK_SIZE = 1000;
+
   private final Lifecycle lifecycle;
 
   private final JournalStore journalStore;
 
   private final SchemaStore schemaStore;
 
+  private final TimelineIndex index;
+
+  /**
+   * Lock serializing journal modifications (appends, closing and dropping partitions) with index updates.
+   */
+  private final Object journalLock;
+
   @Inject
   public DefaultTimeline(final EventBus eventBus,
+                         final ApplicationDirectories applicationDirectories,
                          final @Named(TimelinePlugin.ARTIFACT_ID) Lifecycle lifecycle,
                          final @Named(TimelinePlugin.ARTIFACT_ID) JournalStore journalStore,
                          final @Named(TimelinePlugin.ARTIFACT_ID) SchemaStore schemaStore)
@@ -76,6 +97,8 @@ public class DefaultTimeline
     this.lifecycle = checkNotNull(lifecycle);
     this.journalStore = checkNotNull(journalStore);
     this.schemaStore = checkNotNull(schemaStore);
+    this.index = new TimelineIndex(new File(applicationDirectories.getWorkDirectory("db/timeline"), "index.json"));
+    this.journalLock = new Object();
     eventBus.register(this);
   }
 
@@ -121,6 +144,10 @@ public class DefaultTimeline
 
       schemaStore.createSchema(EntryRecord.SCHEMA_NAME, schema);
     }
+
+    synchronized (journalLock) {
+      loadIndex();
+    }
   }
 
   @Override
@@ -161,13 +188,85 @@ public class DefaultTimeline
   }
 
   private void addEntryRecord(final List<EntryRecord> records) {
+    synchronized (journalLock) {
+      boolean indexChanged = false;
+      try {
+        for (EntryRecord record : records) {
+          if (index.isBucketEnded(record.getTimestamp())) {
+            // start new partition per day, to make them droppable by age
+            journalStore.closeActivePartition();
+            index.activeClosed();
+            indexChanged = true;
+          }
+          journalStore.append(EntryRecord.SCHEMA_NAME, EntryRecord.class, record, TypeValidation.STRICT);
+          indexChanged |= index.appended(journalStore.getActivePartition().getPartitionId(), record);
+        }
+      }
+      catch (KazukiException e) {
+        log.warn("Failed to append a Timeline record", e);
+      }
+      finally {
+        if (indexChanged) {
+          saveIndex();
+        }
+      }
+    }
+  }
+
+  /**
+   * Loads the persisted index and brings it in sync with journal: summarizes partitions not yet indexed (and always
+   * the active one, as it's summary is not persisted), and forgets partitions not present in journal.
+   */
+  private void loadIndex() throws KazukiException {
     try {
-      for (EntryRecord record : records) {
-        journalStore.append(EntryRecord.SCHEMA_NAME, EntryRecord.class, record, TypeValidation.STRICT);
+      index.load();
+    }
+    catch (IOException e) {
+      log.warn("Could not load Timeline index, rebuilding it", e);
+    }
+    final Set<String> partitionIds = Sets.newHashSet();
+    try (KeyValueIterable<PartitionInfoSnapshot> partitions = journalStore.getAllPartitions(SortDirection.ASCENDING)) {
+      for (PartitionInfo partition : partitions) {
+        partitionIds.add(partition.getPartitionId());
+        if (!partition.isClosed()) {
+          index.setActive(summarize(partition));
+        }
+        else if (index.get(partition.getPartitionId()) == null) {
+          log.info("Indexing Timeline partition {}", partition.getPartitionId());
+          index.putClosed(summarize(partition));
+        }
+      }
+    }
+    index.retain(partitionIds);
+    saveIndex();
+  }
+
+  private PartitionSummary summarize(final PartitionInfo partition) throws KazukiException {
+    final PartitionSummary summary = new PartitionSummary(partition.getPartitionId());
+    if (partition.getSize() > 0) {
+      // absolute reads return entries following the given id, so reading from minId - 1 starts with minId
+      try (KeyValueIterable<KeyValuePair<EntryRecord>> kvs = journalStore
+          .entriesAbsolute(EntryRecord.SCHEMA_NAME, EntryRecord.class, SortDirection.ASCENDING,
+              partition.getMinId() - 1, partition.getSize())) {
+        for (KeyValuePair<EntryRecord> kv : kvs) {
+          summary.add(kv.getValue());
+        }
       }
     }
-    catch (KazukiException e) {
-      log.warn("Failed to append a Timeline record", e);
+    return summary;
+  }
+
+  @VisibleForTesting
+  TimelineIndex getIndex() {
+    return index;
+  }
+
+  private void saveIndex() {
+    try {
+      index.save();
+    }
+    catch (IOException e) {
+      log.warn("Could not save Timeline index", e);
     }
   }
 
@@ -183,28 +282,59 @@ public class DefaultTimeline
     if (!isStarted()) {
       return;
     }
+    if (count <= 0) {
+      return;
+    }
     try {
-      // We do manual filtering here, so not passing in limit and limiting manually
-      int currentCount = 0;
-      try (final KeyValueIterable<KeyValuePair<EntryRecord>> kvs = journalStore
-          .entriesRelative(EntryRecord.SCHEMA_NAME, EntryRecord.class, SortDirection.DESCENDING, (long) fromItem,
-              null)) {
-        for (KeyValuePair<EntryRecord> kv : kvs) {
-          final EntryRecord record = kv.getValue();
-          if (types != null && !types.contains(record.getType())) {
-            continue; // skip it
-          }
-          if (subTypes != null && !subTypes.contains(record.getSubType())) {
-            continue; // skip it
-          }
-          if (filter != null && !filter.apply(record)) {
-            continue; // skip it
+      final Map<String, PartitionSummary> summaries = index.snapshot();
+      long skip = fromItem;
+      int remaining = count;
+      try (KeyValueIterable<PartitionInfoSnapshot> partitions = journalStore
+          .getAllPartitions(SortDirection.DESCENDING)) {
+        for (PartitionInfo partition : partitions) {
+          final long size = partition.getSize();
+          final PartitionSummary summary = summaries.get(partition.getPartitionId());
+          final long matches = summary != null ? summary.count(types, subTypes) : size;
+          if (size == 0 || matches == 0 || (filter == null && summary != null && matches <= skip)) {
+            // nothing to return from this partition
+            skip -= matches;
+            continue;
           }
-          currentCount++;
-          if (count < currentCount) {
-            break;
+          // Entries are read by absolute ids fixed by the partition snapshot, so entries appended meanwhile do not
+          // shift the page. Absolute reads are ascending only, so partition is read in chunks from its end.
+          final long minId = partition.getMinId();
+          for (long end = minId + size; end > minId; end -= READ_CHUNK_SIZE) {
+            final long start = Math.max(minId, end - READ_CHUNK_SIZE);
+            final List<EntryRecord> records = Lists.newArrayList();
+            try (KeyValueIterable<KeyValuePair<EntryRecord>> kvs = journalStore
+                .entriesAbsolute(EntryRecord.SCHEMA_NAME, EntryRecord.class, SortDirection.ASCENDING, start - 1,
+                    end - start)) {
+              for (KeyValuePair<EntryRecord> kv : kvs) {
+                final EntryRecord record = kv.getValue();
+                if (types != null && !types.contains(record.getType())) {
+                  continue; // skip it
+                }
+                if (subTypes != null && !subTypes.contains(record.getSubType())) {
+                  continue; // skip it
+                }
+                records.add(record);
+              }
+            }
+            // We do manual filtering here, so not passing in limit and limiting manually
+            for (EntryRecord record : Lists.reverse(records)) {
+              if (filter != null && !filter.apply(record)) {
+                continue; // skip it
+              }
+              if (skip > 0) {
+                skip--;
+                continue; // paging
+              }
+              remaining--;
+              if (!callback.processNext(record) || remaining == 0) {
+                return;
+              }
+            }
           }
-          callback.processNext(record);
         }
       }
     }
@@ -218,25 +348,36 @@ public class DefaultTimeline
     if (!isStarted()) {
       return;
     }
-    // NOTE: This is merely a hack, we need to come up with some general partitioning strategy
-    // Could we partition per-day? Or just modify the semantics of the input maybe, as purge
-    // was painfully needed for Lucene backed Timeline, but with Kazuki it might get non-issue?
-    try {
-      if (days == 0) {
-        // today included, lose the current partition, so that any new events are separate from those that exist already
-        journalStore.closeActivePartition();
-      }
-      try (KeyValueIterable<PartitionInfoSnapshot> partitions = journalStore.getAllPartitions()) {
-        for (PartitionInfo partition : partitions) {
-          if (!partition.isClosed()) {
-            continue;
+    // partitions are per-day, so drop those having only entries older than cutoff
+    final long cutoff = System.currentTimeMillis() - days * TimelineIndex.BUCKET_MILLIS;
+    synchronized (journalLock) {
+      try {
+        final PartitionSummary active = index.getActive();
+        if (active != null && active.getMaxTimestamp() < cutoff) {
+          // lose the current partition, so that any new events are separate from those that exist already
+          journalStore.closeActivePartition();
+          index.activeClosed();
+        }
+        final List<String> expired = Lists.newArrayList();
+        try (KeyValueIterable<PartitionInfoSnapshot> partitions = journalStore.getAllPartitions()) {
+          for (PartitionInfo partition : partitions) {
+            final PartitionSummary summary = index.get(partition.getPartitionId());
+            if (partition.isClosed() && summary != null && summary.getMaxTimestamp() < cutoff) {
+              expired.add(partition.getPartitionId());
+            }
           }
-          journalStore.dropPartition(partition.getPartitionId());
+        }
+        for (String partitionId : expired) {
+          journalStore.dropPartition(partitionId);
+          index.remove(partitionId);
         }
       }
-    }
-    catch (KazukiException e) {
-      log.warn("Failed to purge Timeline store", e);
+      catch (KazukiException e) {
+        log.warn("Failed to purge Timeline store", e);
+      }
+      finally {
+        saveIndex();
+      }
     }
   }
 }
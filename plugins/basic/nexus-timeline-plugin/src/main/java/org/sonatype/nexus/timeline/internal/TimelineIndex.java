@@ -0,0 +1,297 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.timeline.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.timeline.Entry;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Partition level secondary index of the timeline journal. For every journal partition it keeps the count of entries
+ * per type and subType and the timestamp range of entries. Summaries of closed partitions never change, and are
+ * persisted, while summary of the active partition is kept in memory only (and is rebuilt on startup). Retrieval uses
+ * this index to skip partitions not having any matching entries, and purge uses it to drop exactly the partitions
+ * that contain expired entries only.
+ *
+ * @since 3.0
+ */
+class TimelineIndex
+{
+  /**
+   * Length of time bucket covered by one partition: a day.
+   */
+  static final long BUCKET_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private final File file;
+
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Summaries of closed partitions, in journal order.
+   */
+  private final Map<String, PartitionSummary> closed;
+
+  @Nullable
+  private PartitionSummary active;
+
+  TimelineIndex(final File file) {
+    this.file = checkNotNull(file);
+    this.objectMapper = new ObjectMapper();
+    this.closed = Maps.newLinkedHashMap();
+  }
+
+  /**
+   * Loads persisted summaries of closed partitions, if any.
+   */
+  synchronized void load() throws IOException {
+    closed.clear();
+    active = null;
+    if (file.isFile()) {
+      final List<PartitionSummary> summaries =
+          objectMapper.readValue(file, new TypeReference<List<PartitionSummary>>() {});
+      for (PartitionSummary summary : summaries) {
+        closed.put(summary.getId(), summary);
+      }
+    }
+  }
+
+  /**
+   * Persists summaries of closed partitions.
+   */
+  synchronized void save() throws IOException {
+    final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    objectMapper.writeValue(tmp, Lists.newArrayList(closed.values()));
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  synchronized void putClosed(final PartitionSummary summary) {
+    closed.put(summary.getId(), summary);
+  }
+
+  synchronized void setActive(@Nullable final PartitionSummary summary) {
+    this.active = summary;
+  }
+
+  /**
+   * Drops summaries of partitions not present in journal anymore.
+   */
+  synchronized void retain(final Collection<String> partitionIds) {
+    closed.keySet().retainAll(partitionIds);
+    if (active != null && !partitionIds.contains(active.getId())) {
+      active = null;
+    }
+  }
+
+  /**
+   * Removes summary of a dropped partition.
+   */
+  synchronized void remove(final String partitionId) {
+    closed.remove(partitionId);
+  }
+
+  /**
+   * Returns {@code true} if entry with given timestamp belongs to a later time bucket than the entries of active
+   * partition, hence active partition should be closed before appending it.
+   */
+  synchronized boolean isBucketEnded(final long timestamp) {
+    return active != null && active.getSize() > 0
+        && bucketOf(timestamp) > bucketOf(active.getMaxTimestamp());
+  }
+
+  /**
+   * Records an entry appended to the given (active) partition. If partition differs from the known active partition,
+   * the known one was closed by journal, and it's summary is moved to closed ones.
+   *
+   * @return {@code true} if a partition got closed, and index should be persisted.
+   */
+  synchronized boolean appended(final String partitionId, final Entry entry) {
+    boolean partitionClosed = false;
+    if (active != null && !active.getId().equals(partitionId)) {
+      closed.put(active.getId(), active);
+      active = null;
+      partitionClosed = true;
+    }
+    if (active == null) {
+      active = new PartitionSummary(partitionId);
+    }
+    active.add(entry);
+    return partitionClosed;
+  }
+
+  /**
+   * Records that active partition was closed.
+   */
+  synchronized void activeClosed() {
+    if (active != null) {
+      closed.put(active.getId(), active);
+      active = null;
+    }
+  }
+
+  /**
+   * Returns the summary of active partition, or {@code null}.
+   */
+  @Nullable
+  synchronized PartitionSummary getActive() {
+    return active;
+  }
+
+  /**
+   * Returns the summary of partition with given ID, or {@code null} if unknown.
+   */
+  @Nullable
+  synchronized PartitionSummary get(final String partitionId) {
+    if (active != null && active.getId().equals(partitionId)) {
+      return active;
+    }
+    return closed.get(partitionId);
+  }
+
+  /**
+   * Returns a copy of all summaries, keyed by partition ID, safe to use without holding any lock.
+   */
+  synchronized Map<String, PartitionSummary> snapshot() {
+    final Map<String, PartitionSummary> result = Maps.newHashMapWithExpectedSize(closed.size() + 1);
+    result.putAll(closed);
+    if (active != null) {
+      result.put(active.getId(), active.copy());
+    }
+    return result;
+  }
+
+  static long bucketOf(final long timestamp) {
+    return timestamp / BUCKET_MILLIS;
+  }
+
+  // ==
+
+  /**
+   * Summary of entries in one journal partition.
+   */
+  static class PartitionSummary
+  {
+    private final String id;
+
+    private long size;
+
+    private long minTimestamp;
+
+    private long maxTimestamp;
+
+    private final Map<String, Map<String, Long>> counts;
+
+    PartitionSummary(final String id) {
+      this(id, 0, Long.MAX_VALUE, Long.MIN_VALUE, null);
+    }
+
+    @JsonCreator
+    PartitionSummary(@JsonProperty("id") final String id,
+                     @JsonProperty("size") final long size,
+                     @JsonProperty("minTimestamp") final long minTimestamp,
+                     @JsonProperty("maxTimestamp") final long maxTimestamp,
+                     @JsonProperty("counts") @Nullable final Map<String, Map<String, Long>> counts)
+    {
+      this.id = checkNotNull(id);
+      this.size = size;
+      this.minTimestamp = minTimestamp;
+      this.maxTimestamp = maxTimestamp;
+      this.counts = Maps.newHashMap();
+      if (counts != null) {
+        for (Map.Entry<String, Map<String, Long>> entry : counts.entrySet()) {
+          this.counts.put(entry.getKey(), Maps.newHashMap(entry.getValue()));
+        }
+      }
+    }
+
+    @JsonProperty
+    public String getId() {
+      return id;
+    }
+
+    @JsonProperty
+    public long getSize() {
+      return size;
+    }
+
+    @JsonProperty
+    public long getMinTimestamp() {
+      return minTimestamp;
+    }
+
+    @JsonProperty
+    public long getMaxTimestamp() {
+      return maxTimestamp;
+    }
+
+    @JsonProperty
+    public Map<String, Map<String, Long>> getCounts() {
+      return counts;
+    }
+
+    void add(final Entry entry) {
+      size++;
+      minTimestamp = Math.min(minTimestamp, entry.getTimestamp());
+      maxTimestamp = Math.max(maxTimestamp, entry.getTimestamp());
+      Map<String, Long> subTypeCounts = counts.get(entry.getType());
+      if (subTypeCounts == null) {
+        subTypeCounts = Maps.newHashMap();
+        counts.put(entry.getType(), subTypeCounts);
+      }
+      final Long count = subTypeCounts.get(entry.getSubType());
+      subTypeCounts.put(entry.getSubType(), count == null ? 1L : count + 1);
+    }
+
+    /**
+     * Returns the count of entries in this partition having any of given types and subTypes, where {@code null}
+     * means "any".
+     */
+    long count(@Nullable final Set<String> types, @Nullable final Set<String> subTypes) {
+      long result = 0;
+      for (Map.Entry<String, Map<String, Long>> typeEntry : counts.entrySet()) {
+        if (types != null && !types.contains(typeEntry.getKey())) {
+          continue;
+        }
+        for (Map.Entry<String, Long> subTypeEntry : typeEntry.getValue().entrySet()) {
+          if (subTypes != null && !subTypes.contains(subTypeEntry.getKey())) {
+            continue;
+          }
+          result += subTypeEntry.getValue();
+        }
+      }
+      return result;
+    }
+
+    PartitionSummary copy() {
+      return new PartitionSummary(id, size, minTimestamp, maxTimestamp, counts);
+    }
+  }
+}
@@ -13,6 +13,7 @@
 package org.sonatype.nexus.timeline.internal;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -22,16 +23,29 @@ import org.sonatype.nexus.configuration.application.ApplicationDirectories;
 import org.sonatype.nexus.timeline.Entry;
 import org.sonatype.nexus.timeline.EntryListCallback;
 import org.sonatype.nexus.timeline.Timeline;
+import org.sonatype.nexus.timeline.TimelinePlugin;
+import org.sonatype.nexus.timeline.internal.TimelineIndex.PartitionSummary;
 import org.sonatype.nexus.util.file.DirSupport;
 import org.sonatype.sisu.goodies.common.Time;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 import org.sonatype.sisu.litmus.testsupport.TestSupport;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Module;
+import com.google.inject.name.Names;
+import io.kazuki.v0.store.journal.JournalStore;
+import io.kazuki.v0.store.journal.PartitionInfo;
+import io.kazuki.v0.store.journal.PartitionInfoSnapshot;
+import io.kazuki.v0.store.keyvalue.KeyValueIterable;
+import io.kazuki.v0.store.keyvalue.KeyValuePair;
+import io.kazuki.v0.store.keyvalue.KeyValueStoreIteration.SortDirection;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -51,15 +65,22 @@ public class DefaultTimelineTest
   @Mock
   private EventBus eventBus;
 
+  private File timelineWorkdir;
+
+  private Injector injector;
+
   private DefaultTimeline defaultNexusTimeline;
 
   @Before
   public void prepare() throws Exception {
-    final File timelineWorkdir = util.resolveFile("target/workdir");
+    timelineWorkdir = util.resolveFile("target/workdir");
     DirSupport.deleteIfExists(timelineWorkdir.toPath());
     timelineWorkdir.mkdirs();
     when(applicationDirectories.getWorkDirectory(anyString())).thenReturn(timelineWorkdir);
+    startTimeline();
+  }
 
+  private void startTimeline() throws Exception {
     final Module testModule = new AbstractModule()
     {
       @Override
@@ -69,8 +90,8 @@ public class DefaultTimelineTest
         bind(Timeline.class).to(DefaultTimeline.class).asEagerSingleton();
       }
     };
-    defaultNexusTimeline = (DefaultTimeline) Guice.createInjector(testModule, new TimelineModule())
-        .getInstance(Timeline.class);
+    injector = Guice.createInjector(testModule, new TimelineModule());
+    defaultNexusTimeline = (DefaultTimeline) injector.getInstance(Timeline.class);
     defaultNexusTimeline.start();
   }
 
@@ -169,8 +190,144 @@ public class DefaultTimelineTest
     assertThat(res.get(1).getData(), hasEntry("place", "2nd"));
   }
 
+  @Test
+  public void purge() throws Exception {
+    final Map<String, String> data = Maps.newHashMap();
+    defaultNexusTimeline.add(new EntryRecord(System.currentTimeMillis() - Time.hours(1).toMillis(), "TEST", "1", data));
+
+    // nothing older than a day, all kept
+    defaultNexusTimeline.purgeOlderThan(1);
+    assertThat(asList(0, 10, Collections.singleton("TEST"), null, null), hasSize(1));
+
+    // today included, all purged
+    defaultNexusTimeline.purgeOlderThan(0);
+    assertThat(asList(0, 10, Collections.singleton("TEST"), null, null), is(empty()));
+    assertIndexMatchesJournal();
+
+    // new entries are retrievable after purge
+    defaultNexusTimeline.add(new EntryRecord(System.currentTimeMillis(), "TEST", "2", data));
+    assertThat(asList(0, 10, Collections.singleton("TEST"), null, null), hasSize(1));
+    assertIndexMatchesJournal();
+  }
+
+  @Test
+  public void appendDuringPaging() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      defaultNexusTimeline.add(entry(i));
+    }
+    final EntryListCallback result = new EntryListCallback()
+    {
+      private int appended = 5;
+
+      @Override
+      public boolean processNext(final Entry entry) throws IOException {
+        defaultNexusTimeline.add(entry(appended++));
+        return super.processNext(entry);
+      }
+    };
+    defaultNexusTimeline.retrieve(1, 3, Collections.singleton("TEST"), null, null, result);
+    assertThat(numbers(result.getEntries()), contains("3", "2", "1"));
+
+    // appended entries are retrieved with later calls
+    assertThat(numbers(asList(0, 3, Collections.singleton("TEST"), null, null)), contains("7", "6", "5"));
+  }
+
+  @Test
+  public void pageAcrossReadChunks() throws Exception {
+    for (int i = 0; i < 1500; i++) {
+      defaultNexusTimeline.add(entry(i));
+    }
+    assertThat(numbers(asList(495, 10, Collections.singleton("TEST"), null, null)),
+        contains("1004", "1003", "1002", "1001", "1000", "999", "998", "997", "996", "995"));
+    assertThat(numbers(asList(1495, 10, Collections.singleton("TEST"), null, null)),
+        contains("4", "3", "2", "1", "0"));
+    assertIndexMatchesJournal();
+  }
+
+  @Test
+  public void indexRebuiltFromJournal() throws Exception {
+    // one partition per day
+    final long now = System.currentTimeMillis();
+    for (int day = 2; day >= 0; day--) {
+      for (int i = 0; i < 10 + day; i++) {
+        defaultNexusTimeline.add(new EntryRecord(now - Time.days(day).toMillis(), "TEST", String.valueOf(day),
+            Collections.singletonMap("number", String.valueOf(i))));
+      }
+    }
+    assertThat(defaultNexusTimeline.getIndex().snapshot().size(), equalTo(3));
+    assertIndexMatchesJournal();
+
+    // restart without persisted index, all partitions are summarized again
+    defaultNexusTimeline.stop();
+    assertThat(new File(timelineWorkdir, "index.json").delete(), is(true));
+    startTimeline();
+
+    assertThat(defaultNexusTimeline.getIndex().snapshot().size(), equalTo(3));
+    assertIndexMatchesJournal();
+    assertThat(asList(0, 100, Collections.singleton("TEST"), Collections.singleton("2"), null), hasSize(12));
+    assertThat(asList(0, 100, Collections.singleton("TEST"), Collections.singleton("1"), null), hasSize(11));
+    assertThat(asList(0, 100, Collections.singleton("TEST"), Collections.singleton("0"), null), hasSize(10));
+    assertThat(numbers(asList(8, 4, Collections.singleton("TEST"), null, null)), contains("1", "0", "10", "9"));
+  }
+
   // ==
 
+  /**
+   * Asserts that index summarizes exactly the entries present in journal, read from journal as a whole.
+   */
+  private void assertIndexMatchesJournal() throws Exception {
+    final JournalStore journalStore =
+        injector.getInstance(Key.get(JournalStore.class, Names.named(TimelinePlugin.ARTIFACT_ID)));
+    final Map<String, PartitionSummary> summaries = defaultNexusTimeline.getIndex().snapshot();
+
+    final Set<String> partitionIds = Sets.newHashSet();
+    try (KeyValueIterable<PartitionInfoSnapshot> partitions = journalStore.getAllPartitions()) {
+      for (PartitionInfo partition : partitions) {
+        partitionIds.add(partition.getPartitionId());
+        final PartitionSummary summary = summaries.get(partition.getPartitionId());
+        if (partition.getSize() > 0) {
+          assertThat(partition.getPartitionId(), summary, notNullValue());
+          assertThat(partition.getPartitionId(), summary.getSize(), equalTo(partition.getSize()));
+        }
+      }
+    }
+    assertThat(partitionIds.containsAll(summaries.keySet()), is(true));
+
+    final Map<String, Long> journalCounts = Maps.newHashMap();
+    try (KeyValueIterable<KeyValuePair<EntryRecord>> kvs = journalStore
+        .entriesRelative(EntryRecord.SCHEMA_NAME, EntryRecord.class, SortDirection.ASCENDING, null, null)) {
+      for (KeyValuePair<EntryRecord> kv : kvs) {
+        final String key = kv.getValue().getType() + ":" + kv.getValue().getSubType();
+        final Long count = journalCounts.get(key);
+        journalCounts.put(key, count == null ? 1L : count + 1);
+      }
+    }
+    final Map<String, Long> indexCounts = Maps.newHashMap();
+    for (PartitionSummary summary : summaries.values()) {
+      for (Map.Entry<String, Map<String, Long>> typeEntry : summary.getCounts().entrySet()) {
+        for (Map.Entry<String, Long> subTypeEntry : typeEntry.getValue().entrySet()) {
+          final String key = typeEntry.getKey() + ":" + subTypeEntry.getKey();
+          final Long count = indexCounts.get(key);
+          indexCounts.put(key, count == null ? subTypeEntry.getValue() : count + subTypeEntry.getValue());
+        }
+      }
+    }
+    assertThat(indexCounts, equalTo(journalCounts));
+  }
+
+  private EntryRecord entry(final int number) {
+    return new EntryRecord(System.currentTimeMillis(), "TEST", "1",
+        Collections.singletonMap("number", String.valueOf(number)));
+  }
+
+  private List<String> numbers(final List<Entry> entries) {
+    final List<String> result = Lists.newArrayList();
+    for (Entry entry : entries) {
+      result.add(entry.getData().get("number"));
+    }
+    return result;
+  }
+
   /**
    * Handy method that does what was done before: keeps all in memory, but this is usable for small amount of data,
    * like these in UT. This should NOT be used in production code, unless you want app that kills itself with OOM.
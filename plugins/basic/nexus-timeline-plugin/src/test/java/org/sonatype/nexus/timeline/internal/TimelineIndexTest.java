@@ -0,0 +1,114 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.timeline.internal;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.sonatype.nexus.timeline.internal.TimelineIndex.PartitionSummary;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * {@link TimelineIndex} UTs.
+ */
+public class TimelineIndexTest
+    extends TestSupport
+{
+  private static final long DAY = TimelineIndex.BUCKET_MILLIS;
+
+  private File file;
+
+  private TimelineIndex underTest;
+
+  @Before
+  public void prepare() {
+    file = util.createTempFile("index");
+    file.delete();
+    underTest = new TimelineIndex(file);
+  }
+
+  private static EntryRecord entry(final long timestamp, final String type, final String subType) {
+    return new EntryRecord(timestamp, type, subType, Collections.<String, String>emptyMap());
+  }
+
+  @Test
+  public void countsByTypeAndSubType() {
+    underTest.appended("p1", entry(10, "item", "deployed"));
+    underTest.appended("p1", entry(11, "item", "cached"));
+    underTest.appended("p1", entry(12, "item", "deployed"));
+    underTest.appended("p1", entry(13, "repo", "created"));
+
+    final PartitionSummary summary = underTest.getActive();
+    assertThat(summary.getSize(), equalTo(4L));
+    assertThat(summary.getMinTimestamp(), equalTo(10L));
+    assertThat(summary.getMaxTimestamp(), equalTo(13L));
+    assertThat(summary.count(null, null), equalTo(4L));
+    assertThat(summary.count(ImmutableSet.of("item"), null), equalTo(3L));
+    assertThat(summary.count(ImmutableSet.of("item"), ImmutableSet.of("deployed")), equalTo(2L));
+    assertThat(summary.count(null, ImmutableSet.of("created", "cached")), equalTo(2L));
+    assertThat(summary.count(ImmutableSet.of("task"), null), equalTo(0L));
+  }
+
+  @Test
+  public void partitionClosedByJournalIsDetected() {
+    assertThat(underTest.appended("p1", entry(10, "item", "deployed")), is(false));
+    assertThat(underTest.appended("p1", entry(11, "item", "deployed")), is(false));
+    assertThat(underTest.appended("p2", entry(12, "item", "deployed")), is(true));
+
+    final Map<String, PartitionSummary> snapshot = underTest.snapshot();
+    assertThat(snapshot.keySet(), containsInAnyOrder("p1", "p2"));
+    assertThat(snapshot.get("p1").getSize(), equalTo(2L));
+    assertThat(snapshot.get("p2").getSize(), equalTo(1L));
+    assertThat(underTest.getActive().getId(), equalTo("p2"));
+  }
+
+  @Test
+  public void bucketEndsOnDayBoundary() {
+    final long today = 100 * DAY;
+    assertThat(underTest.isBucketEnded(today), is(false));
+    underTest.appended("p1", entry(today + 10, "item", "deployed"));
+    assertThat(underTest.isBucketEnded(today + DAY - 1), is(false));
+    // out of order entry from yesterday stays in same partition
+    assertThat(underTest.isBucketEnded(today - 1), is(false));
+    assertThat(underTest.isBucketEnded(today + DAY), is(true));
+  }
+
+  @Test
+  public void closedPartitionsArePersisted() throws Exception {
+    underTest.appended("p1", entry(10, "item", "deployed"));
+    underTest.appended("p2", entry(20, "repo", "created"));
+    underTest.activeClosed();
+    underTest.appended("p3", entry(30, "item", "cached"));
+    underTest.save();
+
+    final TimelineIndex loaded = new TimelineIndex(file);
+    loaded.load();
+    // active partition is not persisted, is rebuilt from journal
+    assertThat(loaded.getActive(), nullValue());
+    assertThat(loaded.snapshot().keySet(), containsInAnyOrder("p1", "p2"));
+    final PartitionSummary p2 = loaded.get("p2");
+    assertThat(p2.getMaxTimestamp(), equalTo(20L));
+    assertThat(p2.count(ImmutableSet.of("repo"), ImmutableSet.of("created")), equalTo(1L));
+
+    loaded.retain(ImmutableSet.of("p2"));
+    assertThat(loaded.snapshot().keySet(), contains("p2"));
+  }
+}
@@ -28,11 +28,20 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nullable;
@@ -40,6 +49,8 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.sonatype.nexus.ApplicationStatusSource;
+import org.sonatype.nexus.SystemState;
 import org.sonatype.nexus.configuration.application.NexusConfiguration;
 import org.sonatype.nexus.maven.tasks.SnapshotRemover;
 import org.sonatype.nexus.mime.MimeSupport;
@@ -69,6 +80,7 @@ import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.repository.ShadowRepository;
 import org.sonatype.nexus.proxy.storage.local.fs.DefaultFSLocalRepositoryStorage;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
+import org.sonatype.nexus.threads.NexusThreadFactory;
 import org.sonatype.nexus.util.file.DirSupport;
 import org.sonatype.scheduling.TaskInterruptedException;
 import org.sonatype.scheduling.TaskUtil;
@@ -77,6 +89,9 @@ import org.sonatype.sisu.goodies.common.Throwables2;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.Timer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.search.BooleanClause;
@@ -97,6 +112,7 @@ import org.apache.maven.index.ArtifactInfoPostprocessor;
 import org.apache.maven.index.Field;
 import org.apache.maven.index.FlatSearchRequest;
 import org.apache.maven.index.FlatSearchResponse;
+import org.apache.maven.index.IndexerEngine;
 import org.apache.maven.index.IteratorResultSet;
 import org.apache.maven.index.IteratorSearchRequest;
 import org.apache.maven.index.IteratorSearchResponse;
@@ -266,6 +282,9 @@ public class DefaultIndexerManager
   @Inject
   private NexusIndexer mavenIndexer;
 
+  @Inject
+  private IndexerEngine indexerEngine;
+
   @Inject
   private IndexUpdater indexUpdater;
 
@@ -278,6 +297,9 @@ public class DefaultIndexerManager
   @Inject
   private RepositoryRegistry repositoryRegistry;
 
+  @Inject
+  private ApplicationStatusSource applicationStatusSource;
+
   @Inject
   @Named("maven2")
   private ContentClass maven2;
@@ -347,6 +369,49 @@ public class DefaultIndexerManager
    */
   private final ConcurrentMap<String, Thread> deleteThreads = new ConcurrentHashMap<String, Thread>();
 
+  /**
+   * Interval, in milliseconds, in which item additions and removals are applied to repository indexes in batches, with
+   * single index commit per batch. Pending changes of a repository are also applied before its index is accessed by
+   * any other operation (hence searches do see them), and once there are {@link #batchMaxSize} of them. Setting it to
+   * 0 (the default) disables batching, and every item is indexed and committed by the thread adding or removing it.
+   */
+  @Inject
+  @Named("${nexus.indexer.batch.commitInterval:-0}")
+  private int batchCommitIntervalMillis;
+
+  @Inject
+  @Named("${nexus.indexer.batch.maxSize:-500}")
+  private int batchMaxSize;
+
+  /**
+   * Item additions and removals waiting to be applied, keyed by repository id.
+   */
+  private final ConcurrentMap<String, ItemBatch> itemBatches = new ConcurrentHashMap<String, ItemBatch>();
+
+  private volatile ScheduledExecutorService itemBatchFlusher;
+
+  /**
+   * Count of threads opening indexing contexts of repositories added while Nexus is starting. At startup, repositories
+   * are registered one after another, and opening their indexes in background lets startup proceed meanwhile.
+   */
+  @Inject
+  @Named("${nexus.indexer.warmupThreads:-4}")
+  private int contextWarmupThreads;
+
+  /**
+   * Indexing contexts being opened in background, keyed by repository id. Any index operation of a repository waits
+   * for its context being opened first.
+   */
+  private final ConcurrentMap<String, ContextWarmup> contextWarmups = new ConcurrentHashMap<String, ContextWarmup>();
+
+  private ThreadPoolExecutor contextWarmupExecutor;
+
+  private final Meter batchedItems = Metrics.defaultRegistry().newMeter(DefaultIndexerManager.class, "batchedItems",
+      "items", TimeUnit.SECONDS);
+
+  private final Timer batchLag = Metrics.defaultRegistry().newTimer(DefaultIndexerManager.class, "batchLag",
+      TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+
   private File workingDirectory;
 
   private File tempDirectory;
@@ -408,6 +473,28 @@ public class DefaultIndexerManager
     this.scanner = scanner;
   }
 
+  @VisibleForTesting
+  protected synchronized void setItemBatching(final int commitIntervalMillis, final int maxSize) {
+    this.batchCommitIntervalMillis = commitIntervalMillis;
+    this.batchMaxSize = maxSize;
+    // restarted with new interval on next item change
+    if (itemBatchFlusher != null) {
+      itemBatchFlusher.shutdown();
+      itemBatchFlusher = null;
+    }
+  }
+
+  @VisibleForTesting
+  protected void setLockTimeoutSeconds(final int lockTimeoutSeconds) {
+    this.lockTimeoutSeconds = lockTimeoutSeconds;
+  }
+
+  @VisibleForTesting
+  protected int getPendingItemCount(final String repositoryId) {
+    final ItemBatch batch = itemBatches.get(repositoryId);
+    return batch != null ? batch.size() : 0;
+  }
+
   protected File getWorkingDirectory() {
     if (workingDirectory == null) {
       workingDirectory = nexusConfiguration.getWorkingDirectory(INDEXER_WORKING_DIRECTORY_KEY);
@@ -431,6 +518,37 @@ public class DefaultIndexerManager
   {
     log.info("Shutting down Nexus IndexerManager");
 
+    final ScheduledExecutorService flusher;
+    synchronized (this) {
+      flusher = itemBatchFlusher;
+      itemBatchFlusher = null;
+    }
+    if (flusher != null) {
+      flusher.shutdown();
+      try {
+        flusher.awaitTermination(lockTimeoutSeconds, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        log.debug("Interrupted while waiting for item batches to be applied", e);
+      }
+    }
+    flushItemBatches(true);
+
+    final ThreadPoolExecutor warmupExecutor;
+    synchronized (this) {
+      warmupExecutor = contextWarmupExecutor;
+      contextWarmupExecutor = null;
+    }
+    if (warmupExecutor != null) {
+      warmupExecutor.shutdown();
+      try {
+        warmupExecutor.awaitTermination(lockTimeoutSeconds, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        log.debug("Interrupted while waiting for indexing contexts being opened", e);
+      }
+    }
+
     for (IndexingContext ctx : mavenIndexer.getIndexingContexts().values()) {
       mavenIndexer.removeIndexingContext(ctx, false);
     }
@@ -477,6 +595,19 @@ public class DefaultIndexerManager
       repositoryRegistry.getRepositoryWithFacet(repository.getId(), Repository.class);
     }
 
+    if (applicationStatusSource.getSystemStatus().getState() == SystemState.STARTING) {
+      final ContextWarmup warmup = new ContextWarmup(repository);
+      contextWarmups.put(repository.getId(), warmup);
+      getContextWarmupExecutor().execute(warmup);
+      return;
+    }
+
+    doAddRepositoryIndexContext(repository);
+  }
+
+  private void doAddRepositoryIndexContext(final Repository repository)
+      throws IOException
+  {
     exclusiveSingle(repository, new Runnable()
     {
       @Override
@@ -488,6 +619,78 @@ public class DefaultIndexerManager
     });
   }
 
+  private synchronized ThreadPoolExecutor getContextWarmupExecutor() {
+    if (contextWarmupExecutor == null) {
+      contextWarmupExecutor = new ThreadPoolExecutor(contextWarmupThreads, contextWarmupThreads, 60L,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<java.lang.Runnable>(),
+          new NexusThreadFactory("nx-idxwarmup", "Indexer Context Warmup", Thread.NORM_PRIORITY, true));
+      // no idle threads kept once startup is done
+      contextWarmupExecutor.allowCoreThreadTimeOut(true);
+    }
+    return contextWarmupExecutor;
+  }
+
+  /**
+   * Waits for indexing context of the repository being opened in background, if any.
+   */
+  private void awaitContextWarmup(final String repositoryId) {
+    final ContextWarmup warmup = contextWarmups.get(repositoryId);
+    if (warmup == null || warmup.runner == Thread.currentThread()) {
+      return;
+    }
+    try {
+      warmup.get(lockTimeoutSeconds, TimeUnit.SECONDS);
+    }
+    catch (TimeoutException e) {
+      log.warn("Indexing context of repository {} was not opened in {} seconds", repositoryId, lockTimeoutSeconds);
+    }
+    catch (ExecutionException e) {
+      // logged by warmup
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Opens indexing context of a repository added while Nexus is starting.
+   */
+  private class ContextWarmup
+      extends FutureTask<Void>
+  {
+    private final String repositoryId;
+
+    private volatile Thread runner;
+
+    public ContextWarmup(final Repository repository) {
+      super(new Callable<Void>()
+      {
+        @Override
+        public Void call() {
+          try {
+            doAddRepositoryIndexContext(repository);
+          }
+          catch (Exception e) {
+            log.error("Could not add indexing context of repository {}", repository.getId(), e);
+          }
+          return null;
+        }
+      });
+      this.repositoryId = repository.getId();
+    }
+
+    @Override
+    public void run() {
+      runner = Thread.currentThread();
+      try {
+        super.run();
+      }
+      finally {
+        contextWarmups.remove(repositoryId, this);
+      }
+    }
+  }
+
   private void addRepositoryIndexContext(final Repository repository, IndexingContext oldContext)
       throws IOException
   {
@@ -553,6 +756,9 @@ public class DefaultIndexerManager
       return;
     }
 
+    // pending changes of deleted index are not needed anymore
+    itemBatches.remove(repository.getId());
+
     try {
       final boolean[] removed = new boolean[1];
       final ForceableReentrantLock lock = getReindexLock(repository);
@@ -659,12 +865,12 @@ public class DefaultIndexerManager
 
   /**
    * Returns "raw" unprotected repository IndexingContext. Most clients should use shared() or exclusive() methods to
-   * manipulate repository indexes.
+   * manipulate repository indexes. Waits for the context being opened in background while Nexus is starting.
    *
    * @noreference this method is public for test purposes only
    */
   public IndexingContext getRepositoryIndexContext(Repository repository) {
-    return mavenIndexer.getIndexingContexts().get(getContextId(repository.getId()));
+    return getRepositoryIndexContext(repository.getId());
   }
 
   /**
@@ -730,18 +936,23 @@ public class DefaultIndexerManager
     // Maybe detect Merged context and NOT do the work? Everything works transparently, but still... a lot of calls
     // for nothing
 
+    if (batchCommitIntervalMillis > 0) {
+      addToItemBatch(repository, item, true);
+      return;
+    }
+
     sharedSingle(repository, new Runnable()
     {
       @Override
       public void run(IndexingContext context)
           throws IOException
       {
-        addItemToIndex(repository, item, context);
+        addItemToIndex(repository, item, context, true);
       }
     });
   }
 
-  private void addItemToIndex(Repository repository, StorageItem item, IndexingContext context)
+  private void addItemToIndex(Repository repository, StorageItem item, IndexingContext context, boolean commit)
       throws LocalStorageException, IOException
   {
     final RepositoryItemUidLock uidLock = item.getRepositoryItemUid().getLock();
@@ -784,7 +995,12 @@ public class DefaultIndexerManager
       }
 
       // and finally: index it
-      getNexusIndexer().addArtifactToIndex(ac, context);
+      if (commit) {
+        getNexusIndexer().addArtifactToIndex(ac, context);
+      }
+      else if (ac != null) {
+        indexerEngine.update(context, ac);
+      }
     }
     finally {
       uidLock.unlock();
@@ -804,18 +1020,23 @@ public class DefaultIndexerManager
     }
 
     // do the work
+    if (batchCommitIntervalMillis > 0) {
+      addToItemBatch(repository, item, false);
+      return;
+    }
+
     sharedSingle(repository, new Runnable()
     {
       @Override
       public void run(IndexingContext context)
           throws IOException
       {
-        removeItemFromIndex(repository, item, context);
+        removeItemFromIndex(repository, item, context, true);
       }
     });
   }
 
-  private void removeItemFromIndex(Repository repository, StorageItem item, IndexingContext context)
+  private void removeItemFromIndex(Repository repository, StorageItem item, IndexingContext context, boolean commit)
       throws IOException
   {
     // by calculating GAV we check wether the request is against a repo artifact at all
@@ -865,7 +1086,12 @@ public class DefaultIndexerManager
       uidLock.lock(Action.read);
 
       try {
-        getNexusIndexer().deleteArtifactFromIndex(ac, context);
+        if (commit) {
+          getNexusIndexer().deleteArtifactFromIndex(ac, context);
+        }
+        else {
+          indexerEngine.remove(context, ac);
+        }
       }
       finally {
         uidLock.unlock();
@@ -881,6 +1107,137 @@ public class DefaultIndexerManager
     }
   }
 
+  private void addToItemBatch(final Repository repository, final StorageItem item, final boolean add)
+      throws IOException
+  {
+    ItemBatch batch = itemBatches.get(repository.getId());
+    if (batch == null) {
+      final ItemBatch newBatch = new ItemBatch();
+      batch = itemBatches.putIfAbsent(repository.getId(), newBatch);
+      if (batch == null) {
+        batch = newBatch;
+      }
+    }
+    if (batch.add(repository, item, add) >= batchMaxSize) {
+      flushItemBatch(batch, false);
+    }
+    else if (itemBatchFlusher == null) {
+      startItemBatchFlusher();
+    }
+  }
+
+  private synchronized void startItemBatchFlusher() {
+    if (itemBatchFlusher == null) {
+      itemBatchFlusher = Executors.newSingleThreadScheduledExecutor(
+          new NexusThreadFactory("nx-idxbatch", "Indexer Item Batches", Thread.NORM_PRIORITY, true));
+      itemBatchFlusher.scheduleWithFixedDelay(new java.lang.Runnable()
+      {
+        @Override
+        public void run() {
+          flushItemBatches(false);
+        }
+      }, batchCommitIntervalMillis, batchCommitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void flushItemBatches(final boolean wait) {
+    for (ItemBatch batch : itemBatches.values()) {
+      try {
+        flushItemBatch(batch, wait);
+      }
+      catch (Exception e) {
+        log.warn("Could not apply pending item changes to index of repository {}", batch.getRepositoryId(), e);
+      }
+    }
+  }
+
+  /**
+   * Applies pending item changes to repository index, committing it once. Does nothing if the batch is being applied
+   * up the stack of current thread. If the batch is being applied by another thread, waits for it to finish when
+   * {@code wait} is {@code true} (so the changes being applied are visible once this method returns), otherwise does
+   * nothing, as the other thread will apply the changes. Waiting, as acquiring the repository lock, gives up after
+   * {@link #lockTimeoutSeconds}. Changes are put back to the batch if the repository lock could not be acquired, to
+   * be applied by next flush.
+   */
+  private void flushItemBatch(final ItemBatch batch, final boolean wait)
+      throws IOException
+  {
+    if (batch.flushLock.isHeldByCurrentThread()) {
+      return;
+    }
+    if (wait) {
+      try {
+        if (!batch.flushLock.tryLock(lockTimeoutSeconds, TimeUnit.SECONDS)) {
+          log.warn("Pending item changes of repository {} were not applied in {} seconds", batch.getRepositoryId(),
+              lockTimeoutSeconds);
+          return;
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    else if (!batch.flushLock.tryLock()) {
+      return;
+    }
+    try {
+      final Repository repository = batch.getRepository();
+      final List<ItemOperation> operations = batch.drain();
+      if (operations.isEmpty()) {
+        return;
+      }
+      if (!INDEXABLE(repository) || !INSERVICE(repository)) {
+        log.debug("Discarding {} pending item changes of repository {}", operations.size(), repository.getId());
+        return;
+      }
+
+      final Lock lock = getRepositoryLock(repository, false /* shared */);
+      if (lock == null) {
+        log.debug("Keeping {} pending item changes of repository {} for next flush", operations.size(),
+            repository.getId());
+        batch.requeue(operations);
+        return;
+      }
+      try {
+        final IndexingContext context = getIndexingContext(repository.getId());
+        if (context == null) {
+          log.warn("Could not perform index operation on repository {}", repository.getId(),
+              new Exception(ARTIFICIAL_EXCEPTION));
+          return;
+        }
+        for (ItemOperation operation : operations) {
+          try {
+            if (operation.add) {
+              addItemToIndex(repository, operation.item, context, false);
+            }
+            else {
+              removeItemFromIndex(repository, operation.item, context, false);
+            }
+          }
+          catch (IOException e) {
+            log.warn("Could not maintain index for item {} of repository {}", operation.item.getPath(),
+                repository.getId(), e);
+          }
+        }
+        context.commit();
+      }
+      finally {
+        lock.unlock();
+      }
+
+      final long now = System.nanoTime();
+      for (ItemOperation operation : operations) {
+        batchLag.update(now - operation.enqueued, TimeUnit.NANOSECONDS);
+      }
+      batchedItems.mark(operations.size());
+      log.debug("Applied {} item changes to index of repository {}", operations.size(), repository.getId());
+    }
+    finally {
+      batch.flushLock.unlock();
+    }
+  }
+
   // ----------------------------------------------------------------------------
   // TODO: NEXUS-4052 and NEXUS-4053
   // when sorted out, these constants will help the change, just remove them
@@ -2197,6 +2554,81 @@ public class DefaultIndexerManager
         throws IOException;
   }
 
+  /**
+   * Item additions and removals of a repository waiting to be applied to its index. Only the last operation per item
+   * path is kept, and operations are applied in order of their arrival.
+   */
+  private static class ItemBatch
+  {
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final LinkedHashMap<String, ItemOperation> pending = new LinkedHashMap<String, ItemOperation>();
+
+    private Repository repository;
+
+    public synchronized int add(final Repository repository, final StorageItem item, final boolean add) {
+      this.repository = repository;
+      final String path = item.getRepositoryItemUid().getPath();
+      // re-insert to move it to the end
+      final ItemOperation previous = pending.remove(path);
+      pending.put(path, new ItemOperation(item, add, previous != null ? previous.enqueued : System.nanoTime()));
+      return pending.size();
+    }
+
+    public synchronized boolean isEmpty() {
+      return pending.isEmpty();
+    }
+
+    public synchronized int size() {
+      return pending.size();
+    }
+
+    public synchronized List<ItemOperation> drain() {
+      final List<ItemOperation> result = new ArrayList<ItemOperation>(pending.values());
+      pending.clear();
+      return result;
+    }
+
+    /**
+     * Puts back drained operations that were not applied, ahead of the ones added meanwhile, unless the same path was
+     * changed again meanwhile.
+     */
+    public synchronized void requeue(final List<ItemOperation> operations) {
+      final LinkedHashMap<String, ItemOperation> added = new LinkedHashMap<String, ItemOperation>(pending);
+      pending.clear();
+      for (ItemOperation operation : operations) {
+        final String path = operation.item.getRepositoryItemUid().getPath();
+        if (!added.containsKey(path)) {
+          pending.put(path, operation);
+        }
+      }
+      pending.putAll(added);
+    }
+
+    public synchronized Repository getRepository() {
+      return repository;
+    }
+
+    public synchronized String getRepositoryId() {
+      return repository.getId();
+    }
+  }
+
+  private static class ItemOperation
+  {
+    private final StorageItem item;
+
+    private final boolean add;
+
+    private final long enqueued;
+
+    private ItemOperation(final StorageItem item, final boolean add, final long enqueued) {
+      this.item = item;
+      this.add = add;
+      this.enqueued = enqueued;
+    }
+  }
+
   /**
    * Simple value object meant to carry a number of indexing contexts and a lock that protects access to them.
    */
@@ -2268,7 +2700,7 @@ public class DefaultIndexerManager
     else {
       lock = getRepositoryLock(repository, false /* shared */);
       if (lock != null) {
-        IndexingContext context = getRepositoryIndexContext(repository);
+        IndexingContext context = getIndexingContext(repository.getId());
         if (context != null) {
           lockedContext = new LockingIndexingContext(context, lock);
         }
@@ -2304,7 +2736,7 @@ public class DefaultIndexerManager
     Lock lock = getRepositoryLock(repository, false /* shared */);
     if (lock != null) {
       try {
-        IndexingContext ctx = getRepositoryIndexContext(repository);
+        IndexingContext ctx = getIndexingContext(repository.getId());
         if (ctx != null) {
           runnable.run(ctx);
         }
@@ -2409,7 +2841,7 @@ public class DefaultIndexerManager
     Lock lock = getRepositoryLock(repository, true /* exclusive */);
     if (lock != null) {
       try {
-        IndexingContext ctx = getRepositoryIndexContext(repository);
+        IndexingContext ctx = getIndexingContext(repository.getId());
         runnable.run(ctx);
       }
       finally {
@@ -2422,9 +2854,12 @@ public class DefaultIndexerManager
    * Acquires either shared or exclusive "repository" lock. The lock is used to protect access to the repository
    * Lucene index. Returns null if requested lock cannot be acquired due to timeout or interruption.
    */
-  private Lock getRepositoryLock(Repository repository, boolean exclusive) {
+  @VisibleForTesting
+  Lock getRepositoryLock(Repository repository, boolean exclusive) {
     final String lockName = exclusive ? "exclusive" : "shared";
 
+    awaitContextWarmup(repository.getId());
+
     Thread deleteThread = deleteThreads.get(repository.getId());
     if (deleteThread != null && deleteThread != Thread.currentThread()) {
       log.debug("Could not acquire {} lock on repository {}. The repository is being deleted by thread {}.",
@@ -2432,6 +2867,17 @@ public class DefaultIndexerManager
       return null;
     }
 
+    // apply pending item changes first, or wait for them being applied, so the caller sees up to date index
+    final ItemBatch batch = itemBatches.get(repository.getId());
+    if (batch != null && (!batch.isEmpty() || batch.flushLock.isLocked())) {
+      try {
+        flushItemBatch(batch, true);
+      }
+      catch (IOException e) {
+        log.warn("Could not apply pending item changes to index of repository {}", repository.getId(), e);
+      }
+    }
+
     ReadWriteLock rwlock;
     synchronized (repositoryLocks) {
       rwlock = repositoryLocks.get(repository.getId());
@@ -2542,7 +2988,7 @@ public class DefaultIndexerManager
       Lock lock = getRepositoryLock(repository, false /* shared */);
       if (lock != null) {
         // at this point repository index cannot be added or removed, we can safely use it
-        IndexingContext context = getRepositoryIndexContext(repository);
+        IndexingContext context = getIndexingContext(repository.getId());
 
         if (!repository.getId().equals(force) && context == null) {
           lock.unlock();
@@ -2587,9 +3033,20 @@ public class DefaultIndexerManager
   }
 
   /**
+   * Waits for the context being opened in background while Nexus is starting, as
+   * {@link #getRepositoryIndexContext(Repository)} does.
+   *
    * @noreference this method is meant for unit tests only
    */
   public IndexingContext getRepositoryIndexContext(String repositoryId) {
+    awaitContextWarmup(repositoryId);
+    return getIndexingContext(repositoryId);
+  }
+
+  /**
+   * Returns the context as is, for callers already holding the repository lock.
+   */
+  private IndexingContext getIndexingContext(String repositoryId) {
     return mavenIndexer.getIndexingContexts().get(getContextId(repositoryId));
   }
 
@@ -35,7 +35,8 @@ import com.google.common.eventbus.Subscribe;
 /**
  * Listens for events and manages IndexerManager by adding and removing indexing contexts.
  * <p>
- * This EventInspector component HAS TO BE sync!
+ * This EventInspector component HAS TO BE sync! Still, indexing contexts of repositories added while Nexus is starting
+ * are opened in background by {@link IndexerManager}, and any index operation of such repository waits for it.
  *
  * @author Toni Menzel
  * @author cstamas
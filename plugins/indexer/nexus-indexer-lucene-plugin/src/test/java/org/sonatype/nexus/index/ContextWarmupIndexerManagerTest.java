@@ -0,0 +1,158 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.sonatype.nexus.ApplicationStatusSource;
+import org.sonatype.nexus.SystemState;
+import org.sonatype.nexus.SystemStatus;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+
+import org.apache.lucene.search.Query;
+import org.apache.maven.index.IteratorSearchResponse;
+import org.apache.maven.index.MAVEN;
+import org.apache.maven.index.SearchType;
+import org.apache.maven.index.context.IndexingContext;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Tests for indexing contexts of repositories added while Nexus is starting, that are opened in background.
+ */
+public class ContextWarmupIndexerManagerTest
+    extends AbstractIndexerManagerTest
+{
+  private static final String JAR_PATH = "/log4j/log4j/1.2.13/log4j-1.2.13.jar";
+
+  private static final String ADDED_JAR_PATH =
+      "/org/sonatype/nexus/nexus-indexer/1.0-beta-4/nexus-indexer-1.0-beta-4.jar";
+
+  private SystemStatus systemStatus;
+
+  @Override
+  protected void setUp()
+      throws Exception
+  {
+    super.setUp();
+    systemStatus = lookup(ApplicationStatusSource.class).getSystemStatus();
+    wairForAsyncEventsToCalmDown();
+    waitForTasksToStop();
+  }
+
+  @Test
+  public void searchesAndItemUpdatesWaitForContext()
+      throws Exception
+  {
+    final File artifacts = new File(getBasedir(), "target/test-classes/nexus-5393/remote-repository");
+    releases.storeItem(new ResourceStoreRequest(JAR_PATH),
+        new FileInputStream(new File(artifacts, JAR_PATH.substring(1))), null);
+    wairForAsyncEventsToCalmDown();
+
+    // re-register releases as it happens on startup, keeping its index
+    indexerManager.removeRepositoryIndexContext(releases, false);
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      final Future<Integer> search;
+      final Future<Void> update;
+      final Future<IndexingContext> context;
+      // the context cannot be opened until the repository lock is released
+      final Lock lock = indexerManager.getRepositoryLock(releases, true);
+      try {
+        systemStatus.setState(SystemState.STARTING);
+        try {
+          indexerManager.addRepositoryIndexContext(releases);
+        }
+        finally {
+          systemStatus.setState(SystemState.STARTED);
+        }
+
+        // put the file in place without item events, the index is updated explicitly
+        final File releasesRoot = new File(new URL(releases.getLocalUrl()).toURI());
+        FileUtils.copyFile(new File(getBasedir(), "src/test/resources/reposes/releases" + ADDED_JAR_PATH),
+            new File(releasesRoot, ADDED_JAR_PATH.substring(1)));
+
+        search = executor.submit(new Callable<Integer>()
+        {
+          @Override
+          public Integer call()
+              throws Exception
+          {
+            return countHits("log4j");
+          }
+        });
+        update = executor.submit(new Callable<Void>()
+        {
+          @Override
+          public Void call()
+              throws Exception
+          {
+            indexerManager.addItemToIndex(releases,
+                releases.retrieveItem(new ResourceStoreRequest(ADDED_JAR_PATH)));
+            return null;
+          }
+        });
+        context = executor.submit(new Callable<IndexingContext>()
+        {
+          @Override
+          public IndexingContext call() {
+            return indexerManager.getRepositoryIndexContext(releases);
+          }
+        });
+
+        Thread.sleep(500);
+        assertThat(search.isDone(), is(false));
+        assertThat(update.isDone(), is(false));
+        assertThat(context.isDone(), is(false));
+      }
+      finally {
+        lock.unlock();
+      }
+
+      assertThat(search.get(30, TimeUnit.SECONDS), greaterThan(0));
+      update.get(30, TimeUnit.SECONDS);
+      assertThat(context.get(30, TimeUnit.SECONDS), notNullValue());
+      assertThat(countHits("org.sonatype.nexus"), greaterThan(0));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private int countHits(final String groupId)
+      throws Exception
+  {
+    final Query query = indexerManager.constructQuery(MAVEN.GROUP_ID, groupId, SearchType.EXACT);
+    final IteratorSearchResponse response =
+        indexerManager.searchQueryIterator(query, releases.getId(), null, null, null, false, null);
+    try {
+      return response.getTotalHitsCount();
+    }
+    finally {
+      response.close();
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.IteratorSearchResponse;
+import org.apache.maven.index.MAVEN;
+import org.apache.maven.index.SearchType;
+import org.apache.maven.index.context.IndexingContext;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Tests for batched application of item changes to repository indexes.
+ */
+public class ItemBatchIndexerManagerTest
+    extends AbstractIndexerManagerTest
+{
+  private static final String POM_PATH = "/log4j/log4j/1.2.13/log4j-1.2.13.pom";
+
+  private static final String JAR_PATH = "/log4j/log4j/1.2.13/log4j-1.2.13.jar";
+
+  private File artifacts;
+
+  @Override
+  protected void setUp()
+      throws Exception
+  {
+    super.setUp();
+    artifacts = new File(getBasedir(), "target/test-classes/nexus-5393/remote-repository");
+    wairForAsyncEventsToCalmDown();
+    waitForTasksToStop();
+  }
+
+  @Test
+  public void changesAreAppliedOnceBatchIsFull()
+      throws Exception
+  {
+    // commit interval is long enough to have batch applied only once it is full
+    indexerManager.setItemBatching(3600000, 2);
+
+    deploy(POM_PATH);
+    assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(1));
+    assertThat(countIndexedArtifacts(), equalTo(0));
+
+    deploy(JAR_PATH);
+    assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(0));
+    assertThat(countIndexedArtifacts(), greaterThan(0));
+  }
+
+  @Test
+  public void changesAreAppliedOnceCommitIntervalElapses()
+      throws Exception
+  {
+    indexerManager.setItemBatching(100, 500);
+
+    deploy(JAR_PATH);
+
+    // pending changes are drained before being committed, wait for them being visible in index
+    final long deadline = System.currentTimeMillis() + 10000L;
+    while (countIndexedArtifacts() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(0));
+    assertThat(countIndexedArtifacts(), greaterThan(0));
+  }
+
+  @Test
+  public void changesAreAppliedBeforeSearch()
+      throws Exception
+  {
+    indexerManager.setItemBatching(3600000, 500);
+
+    deploy(POM_PATH);
+    deploy(JAR_PATH);
+    assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(2));
+    assertThat(countIndexedArtifacts(), equalTo(0));
+
+    final Query query = indexerManager.constructQuery(MAVEN.GROUP_ID, "log4j", SearchType.EXACT);
+    final IteratorSearchResponse response =
+        indexerManager.searchQueryIterator(query, releases.getId(), null, null, null, false, null);
+    try {
+      assertThat(response.getTotalHitsCount(), greaterThan(0));
+    }
+    finally {
+      response.close();
+    }
+    assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(0));
+  }
+
+  @Test
+  public void changesAreKeptIfIndexLockTimesOut()
+      throws Exception
+  {
+    indexerManager.setItemBatching(3600000, 2);
+    indexerManager.setLockTimeoutSeconds(1);
+
+    final Lock lock = indexerManager.getRepositoryLock(releases, true);
+    try {
+      deploy(POM_PATH);
+      // batch is full, but cannot be applied while index is locked
+      deploy(JAR_PATH);
+      assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(2));
+    }
+    finally {
+      lock.unlock();
+    }
+    assertThat(countIndexedArtifacts(), equalTo(0));
+
+    final Query query = indexerManager.constructQuery(MAVEN.GROUP_ID, "log4j", SearchType.EXACT);
+    final IteratorSearchResponse response =
+        indexerManager.searchQueryIterator(query, releases.getId(), null, null, null, false, null);
+    try {
+      assertThat(response.getTotalHitsCount(), greaterThan(0));
+    }
+    finally {
+      response.close();
+    }
+    assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(0));
+  }
+
+  @Test
+  public void changesAreAppliedOnShutdown()
+      throws Exception
+  {
+    indexerManager.setItemBatching(3600000, 500);
+
+    deploy(JAR_PATH);
+    assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(1));
+    final File indexDirectory = indexerManager.getRepositoryIndexContext(releases.getId()).getIndexDirectoryFile();
+
+    indexerManager.shutdown(false);
+
+    assertThat(indexerManager.getPendingItemCount(releases.getId()), equalTo(0));
+    // changes were committed before index was closed
+    final IndexReader r = IndexReader.open(FSDirectory.open(indexDirectory));
+    try {
+      assertThat(countArtifacts(r), greaterThan(0));
+    }
+    finally {
+      r.close();
+    }
+  }
+
+  private void deploy(final String path)
+      throws Exception
+  {
+    releases.storeItem(new ResourceStoreRequest(path), new FileInputStream(new File(artifacts, path.substring(1))),
+        null);
+    // indexing is triggered by async events
+    wairForAsyncEventsToCalmDown();
+  }
+
+  /**
+   * Counts artifacts present in releases index, without applying pending changes.
+   */
+  private int countIndexedArtifacts()
+      throws IOException
+  {
+    final IndexingContext context = indexerManager.getRepositoryIndexContext(releases.getId());
+    final IndexSearcher indexSearcher = context.acquireIndexSearcher();
+    try {
+      return countArtifacts(indexSearcher.getIndexReader());
+    }
+    finally {
+      context.releaseIndexSearcher(indexSearcher);
+    }
+  }
+
+  private int countArtifacts(final IndexReader r)
+      throws IOException
+  {
+    int result = 0;
+    for (int i = 0; i < r.maxDoc(); i++) {
+      if (!r.isDeleted(i) && r.document(i).get(ArtifactInfo.UINFO) != null) {
+        result++;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.yum.internal.createrepo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Persistent cache of rendered metadata of RPM packages. Each package has one entry file, holding its primary,
+ * filelists and other XML fragments. An entry is valid as long as the RPM file has same size and modification time,
+ * so on regeneration only new and changed packages are read.
+ *
+ * @since 3.0
+ */
+class PackageCache
+{
+  private static final Logger LOG = LoggerFactory.getLogger(PackageCache.class);
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final String ENTRY_SUFFIX = ".pkg";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File directory;
+
+  PackageCache(final File directory) {
+    this.directory = checkNotNull(directory);
+  }
+
+  /**
+   * Returns the entry file for RPM on given location, creating (or recreating) it if needed.
+   */
+  File get(final File rpm, final String location, final String baseUrl) throws IOException {
+    final File entry = new File(directory, Hashing.sha1().hashString(location, UTF8).toString() + ENTRY_SUFFIX);
+    if (entry.isFile() && isValid(entry, rpm, location, baseUrl)) {
+      return entry;
+    }
+    LOG.debug("Reading RPM {}", rpm);
+    final RpmPackage rpmPackage = RpmPackage.read(rpm, location);
+    Files.createDirectories(directory.toPath());
+    final File tmp = File.createTempFile("entry", ".tmp", directory);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        writeKey(out, rpm, location, baseUrl);
+        writeFragment(out, rpmPackage.toPrimaryXml(baseUrl));
+        writeFragment(out, rpmPackage.toFilelistsXml());
+        writeFragment(out, rpmPackage.toOtherXml());
+      }
+      Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+    return entry;
+  }
+
+  /**
+   * Copies the primary, filelists and other XML fragments of entry into given streams.
+   */
+  void copy(final File entry, final OutputStream primary, final OutputStream filelists, final OutputStream other)
+      throws IOException
+  {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+      readKey(in);
+      for (OutputStream out : new OutputStream[]{primary, filelists, other}) {
+        final int length = in.readInt();
+        ByteStreams.copy(ByteStreams.limit(in, length), out);
+      }
+    }
+  }
+
+  /**
+   * Deletes all entries except given ones.
+   */
+  void retain(final Collection<File> entries) {
+    final Set<File> retained = Sets.newHashSet(entries);
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().endsWith(ENTRY_SUFFIX) && !retained.contains(file)) {
+          LOG.debug("Removing cache entry {}", file);
+          if (!file.delete()) {
+            LOG.warn("Could not remove cache entry {}", file);
+          }
+        }
+      }
+    }
+  }
+
+  private boolean isValid(final File entry, final File rpm, final String location, final String baseUrl) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+      return FORMAT_VERSION == in.readInt()
+          && location.equals(in.readUTF())
+          && String.valueOf(baseUrl).equals(in.readUTF())
+          && rpm.length() == in.readLong()
+          && rpm.lastModified() == in.readLong();
+    }
+    catch (IOException e) {
+      LOG.debug("Invalid cache entry {}", entry, e);
+      return false;
+    }
+  }
+
+  private void writeKey(final DataOutputStream out, final File rpm, final String location, final String baseUrl)
+      throws IOException
+  {
+    out.writeInt(FORMAT_VERSION);
+    out.writeUTF(location);
+    out.writeUTF(String.valueOf(baseUrl));
+    out.writeLong(rpm.length());
+    out.writeLong(rpm.lastModified());
+  }
+
+  private void readKey(final DataInputStream in) throws IOException {
+    in.readInt();
+    in.readUTF();
+    in.readUTF();
+    in.readLong();
+    in.readLong();
+  }
+
+  private void writeFragment(final DataOutputStream out, final String fragment) throws IOException {
+    final byte[] bytes = fragment.getBytes(UTF8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.yum.internal.createrepo;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.yum.internal.createrepo.RpmPackage.CHECKSUM_TYPE;
+import static org.sonatype.nexus.yum.internal.createrepo.RpmPackage.escape;
+import static org.sonatype.nexus.yum.internal.createrepo.RpmPackage.toHex;
+
+/**
+ * Generates yum repository metadata (repodata directory with repomd.xml, primary, filelists and other XML files) of
+ * a set of RPM packages, as {@code createrepo --update} would do, without SQLite databases. Metadata of packages are
+ * kept in a persistent {@link PackageCache}, so only added or changed packages are read, while the metadata files are
+ * streamed from the cache.
+ *
+ * @since 3.0
+ */
+public class RepodataGenerator
+{
+  private static final Logger LOG = LoggerFactory.getLogger(RepodataGenerator.class);
+
+  public static final String REPODATA_DIR = "repodata";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+  /**
+   * SQLite databases of previous createrepo runs, stale once this generator rewrites the metadata.
+   */
+  private static final String[] DATABASES = {"primary.sqlite.bz2", "filelists.sqlite.bz2", "other.sqlite.bz2"};
+
+  private final File rpmDir;
+
+  private final File repoDir;
+
+  private final PackageCache cache;
+
+  private final String baseUrl;
+
+  private final File groupFile;
+
+  /**
+   * @param rpmDir    directory RPM locations are relative to
+   * @param repoDir   directory where repodata directory is written
+   * @param cacheDir  directory of package metadata cache, used exclusively by this repository
+   * @param baseUrl   base URL of package locations, if any
+   * @param groupFile yum groups file to include, if any
+   */
+  public RepodataGenerator(final File rpmDir,
+                           final File repoDir,
+                           final File cacheDir,
+                           final @Nullable String baseUrl,
+                           final @Nullable File groupFile)
+  {
+    this.rpmDir = checkNotNull(rpmDir);
+    this.repoDir = checkNotNull(repoDir);
+    this.cache = new PackageCache(checkNotNull(cacheDir));
+    this.baseUrl = baseUrl;
+    this.groupFile = groupFile;
+  }
+
+  /**
+   * Generates metadata of RPMs on given locations (relative to RPM directory). Locations of not existing or invalid
+   * RPM files are skipped.
+   */
+  public void generate(final Collection<String> locations) throws IOException {
+    final List<File> entries = Lists.newArrayListWithCapacity(locations.size());
+    for (String location : locations) {
+      final File rpm = new File(rpmDir, location);
+      if (!rpm.isFile()) {
+        LOG.debug("Skipping not existing RPM {}", rpm);
+        continue;
+      }
+      try {
+        entries.add(cache.get(rpm, location, baseUrl));
+      }
+      catch (IOException e) {
+        LOG.warn("Skipping RPM {}, could not read it", rpm, e);
+      }
+    }
+    cache.retain(entries);
+
+    final File repodata = new File(repoDir, REPODATA_DIR);
+    Files.createDirectories(repodata.toPath());
+    final long timestamp = System.currentTimeMillis() / 1000;
+    final MetadataFile primary = new MetadataFile(repodata, "primary", "primary.xml.gz");
+    final MetadataFile filelists = new MetadataFile(repodata, "filelists", "filelists.xml.gz");
+    final MetadataFile other = new MetadataFile(repodata, "other", "other.xml.gz");
+    final MetadataFile group = groupFile != null ? new MetadataFile(repodata, "group", groupFile.getName()) : null;
+    final MetadataFile repomd = new MetadataFile(repodata, null, "repomd.xml");
+    try {
+      try (OutputStream primaryOut = primary.openGzipped();
+           OutputStream filelistsOut = filelists.openGzipped();
+           OutputStream otherOut = other.openGzipped()) {
+        write(primaryOut, XML_DECLARATION
+            + "<metadata xmlns=\"http://linux.duke.edu/metadata/common\""
+            + " xmlns:rpm=\"http://linux.duke.edu/metadata/rpm\" packages=\"" + entries.size() + "\">\n");
+        write(filelistsOut, XML_DECLARATION
+            + "<filelists xmlns=\"http://linux.duke.edu/metadata/filelists\" packages=\"" + entries.size() + "\">\n");
+        write(otherOut, XML_DECLARATION
+            + "<otherdata xmlns=\"http://linux.duke.edu/metadata/other\" packages=\"" + entries.size() + "\">\n");
+        for (File entry : entries) {
+          cache.copy(entry, primaryOut, filelistsOut, otherOut);
+        }
+        write(primaryOut, "</metadata>\n");
+        write(filelistsOut, "</filelists>\n");
+        write(otherOut, "</otherdata>\n");
+      }
+      if (group != null) {
+        try (OutputStream groupOut = group.open()) {
+          Files.copy(groupFile.toPath(), groupOut);
+        }
+      }
+      try (Writer writer = new OutputStreamWriter(repomd.open(), UTF8)) {
+        writer.write(XML_DECLARATION);
+        writer.write("<repomd xmlns=\"http://linux.duke.edu/metadata/repo\""
+            + " xmlns:rpm=\"http://linux.duke.edu/metadata/rpm\">\n");
+        writer.write("  <revision>" + timestamp + "</revision>\n");
+        for (MetadataFile data : new MetadataFile[]{primary, filelists, other, group}) {
+          if (data != null) {
+            writer.write(data.toRepomdXml(timestamp));
+          }
+        }
+        writer.write("</repomd>\n");
+      }
+
+      // repomd.xml last, so it always references complete files
+      primary.commit();
+      filelists.commit();
+      other.commit();
+      if (group != null) {
+        group.commit();
+      }
+      repomd.commit();
+      for (String database : DATABASES) {
+        Files.deleteIfExists(new File(repodata, database).toPath());
+      }
+      LOG.debug("Generated metadata of {} RPMs into {}", entries.size(), repodata);
+    }
+    finally {
+      for (MetadataFile data : new MetadataFile[]{primary, filelists, other, group, repomd}) {
+        if (data != null) {
+          data.cleanup();
+        }
+      }
+    }
+  }
+
+  private static void write(final OutputStream out, final String text) throws IOException {
+    out.write(text.getBytes(UTF8));
+  }
+
+  /**
+   * A file in repodata directory, written to a temporary file first, while its checksums and sizes are calculated.
+   */
+  private class MetadataFile
+  {
+    private final String type;
+
+    private final File file;
+
+    private final File tmp;
+
+    private final MessageDigest digest = newDigest();
+
+    private final MessageDigest openDigest = newDigest();
+
+    private CountingOutputStream counter;
+
+    private CountingOutputStream openCounter;
+
+    private MetadataFile(final File repodata, final String type, final String name) {
+      this.type = type;
+      this.file = new File(repodata, name);
+      this.tmp = new File(repodata, "." + name + ".tmp");
+    }
+
+    private OutputStream open() throws IOException {
+      counter = new CountingOutputStream(
+          new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), digest)
+      );
+      return counter;
+    }
+
+    private OutputStream openGzipped() throws IOException {
+      openCounter = new CountingOutputStream(
+          new DigestOutputStream(new BufferedOutputStream(new GZIPOutputStream(open())), openDigest)
+      );
+      return openCounter;
+    }
+
+    private String toRepomdXml(final long timestamp) {
+      final StringBuilder xml = new StringBuilder();
+      xml.append("  <data type=\"").append(type).append("\">\n");
+      xml.append("    <checksum type=\"").append(CHECKSUM_TYPE).append("\">").append(toHex(digest.digest()))
+          .append("</checksum>\n");
+      if (openCounter != null) {
+        xml.append("    <open-checksum type=\"").append(CHECKSUM_TYPE).append("\">")
+            .append(toHex(openDigest.digest())).append("</open-checksum>\n");
+      }
+      xml.append("    <location");
+      if (baseUrl != null) {
+        xml.append(" xml:base=\"").append(escape(baseUrl)).append('"');
+      }
+      xml.append(" href=\"").append(REPODATA_DIR).append('/').append(escape(file.getName())).append("\"/>\n");
+      xml.append("    <timestamp>").append(timestamp).append("</timestamp>\n");
+      xml.append("    <size>").append(counter.getCount()).append("</size>\n");
+      if (openCounter != null) {
+        xml.append("    <open-size>").append(openCounter.getCount()).append("</open-size>\n");
+      }
+      xml.append("  </data>\n");
+      return xml.toString();
+    }
+
+    private void commit() throws IOException {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void cleanup() throws IOException {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.yum.internal.createrepo;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A parsed RPM header structure (used both for signature and main header of RPM package).
+ *
+ * @since 3.0
+ */
+class RpmHeader
+{
+  static final int NAME = 1000;
+
+  static final int VERSION = 1001;
+
+  static final int RELEASE = 1002;
+
+  static final int EPOCH = 1003;
+
+  static final int SUMMARY = 1004;
+
+  static final int DESCRIPTION = 1005;
+
+  static final int BUILDTIME = 1006;
+
+  static final int BUILDHOST = 1007;
+
+  static final int SIZE = 1009;
+
+  static final int VENDOR = 1011;
+
+  static final int LICENSE = 1014;
+
+  static final int PACKAGER = 1015;
+
+  static final int GROUP = 1016;
+
+  static final int URL = 1020;
+
+  static final int ARCH = 1022;
+
+  static final int FILEMODES = 1030;
+
+  static final int FILEFLAGS = 1037;
+
+  static final int SOURCERPM = 1044;
+
+  static final int PROVIDENAME = 1047;
+
+  static final int REQUIREFLAGS = 1048;
+
+  static final int REQUIRENAME = 1049;
+
+  static final int REQUIREVERSION = 1050;
+
+  static final int CONFLICTFLAGS = 1053;
+
+  static final int CONFLICTNAME = 1054;
+
+  static final int CONFLICTVERSION = 1055;
+
+  static final int CHANGELOGTIME = 1080;
+
+  static final int CHANGELOGNAME = 1081;
+
+  static final int CHANGELOGTEXT = 1082;
+
+  static final int OBSOLETENAME = 1090;
+
+  static final int PROVIDEFLAGS = 1112;
+
+  static final int PROVIDEVERSION = 1113;
+
+  static final int OBSOLETEFLAGS = 1114;
+
+  static final int OBSOLETEVERSION = 1115;
+
+  static final int DIRINDEXES = 1116;
+
+  static final int BASENAMES = 1117;
+
+  static final int DIRNAMES = 1118;
+
+  static final int LONGSIZE = 5009;
+
+  /**
+   * Signature header tag: uncompressed payload (archive) size.
+   */
+  static final int SIG_PAYLOADSIZE = 1007;
+
+  private static final byte[] MAGIC = {(byte) 0x8e, (byte) 0xad, (byte) 0xe8};
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int TYPE_CHAR = 1;
+
+  private static final int TYPE_INT8 = 2;
+
+  private static final int TYPE_INT16 = 3;
+
+  private static final int TYPE_INT32 = 4;
+
+  private static final int TYPE_INT64 = 5;
+
+  private static final int TYPE_STRING = 6;
+
+  private static final int TYPE_BIN = 7;
+
+  private static final int TYPE_STRING_ARRAY = 8;
+
+  private static final int TYPE_I18NSTRING = 9;
+
+  private final Map<Integer, Object> values;
+
+  private final int length;
+
+  private RpmHeader(final Map<Integer, Object> values, final int length) {
+    this.values = values;
+    this.length = length;
+  }
+
+  /**
+   * Reads a header structure. If {@code padded}, the padding to 8 bytes boundary following the header (present after
+   * signature header) is consumed too.
+   */
+  static RpmHeader read(final DataInput in, final boolean padded) throws IOException {
+    final byte[] intro = new byte[8];
+    in.readFully(intro);
+    if (intro[0] != MAGIC[0] || intro[1] != MAGIC[1] || intro[2] != MAGIC[2]) {
+      throw new IOException("Not an RPM header structure");
+    }
+    final int count = in.readInt();
+    final int storeSize = in.readInt();
+    if (count < 0 || storeSize < 0 || count > 0x10000 || storeSize > 0x10000000) {
+      throw new IOException("Invalid RPM header structure: " + count + " entries, " + storeSize + " bytes");
+    }
+    final int[] index = new int[count * 4];
+    for (int i = 0; i < index.length; i++) {
+      index[i] = in.readInt();
+    }
+    final byte[] store = new byte[storeSize];
+    in.readFully(store);
+    int length = 16 + 16 * count + storeSize;
+    if (padded && storeSize % 8 != 0) {
+      // read (not skip) the padding, to have it digested when reading through a digesting stream
+      in.readFully(new byte[8 - storeSize % 8]);
+      length += 8 - storeSize % 8;
+    }
+
+    final Map<Integer, Object> values = Maps.newHashMap();
+    final ByteBuffer buffer = ByteBuffer.wrap(store);
+    for (int i = 0; i < count; i++) {
+      final int tag = index[i * 4];
+      final int type = index[i * 4 + 1];
+      final int offset = index[i * 4 + 2];
+      final int size = index[i * 4 + 3];
+      if (offset < 0 || offset > storeSize || size < 0) {
+        throw new IOException("Invalid RPM header entry of tag " + tag);
+      }
+      buffer.position(offset);
+      switch (type) {
+        case TYPE_CHAR:
+        case TYPE_INT8:
+        case TYPE_BIN:
+          final byte[] bytes = new byte[size];
+          buffer.get(bytes);
+          values.put(tag, bytes);
+          break;
+        case TYPE_INT16:
+          final long[] shorts = new long[size];
+          for (int j = 0; j < size; j++) {
+            shorts[j] = buffer.getShort() & 0xffff;
+          }
+          values.put(tag, shorts);
+          break;
+        case TYPE_INT32:
+          final long[] ints = new long[size];
+          for (int j = 0; j < size; j++) {
+            ints[j] = buffer.getInt() & 0xffffffffL;
+          }
+          values.put(tag, ints);
+          break;
+        case TYPE_INT64:
+          final long[] longs = new long[size];
+          for (int j = 0; j < size; j++) {
+            longs[j] = buffer.getLong();
+          }
+          values.put(tag, longs);
+          break;
+        case TYPE_STRING:
+          values.put(tag, new String[]{readString(store, buffer)});
+          break;
+        case TYPE_STRING_ARRAY:
+        case TYPE_I18NSTRING:
+          final String[] strings = new String[size];
+          for (int j = 0; j < size; j++) {
+            strings[j] = readString(store, buffer);
+          }
+          values.put(tag, strings);
+          break;
+        default:
+          // NULL or unknown, not needed
+      }
+    }
+    return new RpmHeader(values, length);
+  }
+
+  private static String readString(final byte[] store, final ByteBuffer buffer) throws IOException {
+    final int start = buffer.position();
+    int end = start;
+    while (end < store.length && store[end] != 0) {
+      end++;
+    }
+    if (end == store.length) {
+      throw new IOException("Unterminated string in RPM header");
+    }
+    buffer.position(end + 1);
+    return new String(store, start, end - start, UTF8);
+  }
+
+  /**
+   * Returns the length in bytes of this header structure as it was read.
+   */
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * Returns the string value (or first value of string array, as of I18N strings) of tag, or {@code null}.
+   */
+  String getString(final int tag) {
+    final String[] strings = getStrings(tag);
+    return strings.length > 0 ? strings[0] : null;
+  }
+
+  /**
+   * Returns the string array value of tag, or empty array.
+   */
+  String[] getStrings(final int tag) {
+    final Object value = values.get(tag);
+    return value instanceof String[] ? (String[]) value : new String[0];
+  }
+
+  /**
+   * Returns the integer array value of tag, or empty array. Integers of all sizes are returned unsigned.
+   */
+  long[] getNumbers(final int tag) {
+    final Object value = values.get(tag);
+    return value instanceof long[] ? (long[]) value : new long[0];
+  }
+
+  /**
+   * Returns the (first) integer value of tag, or {@code defaultValue}.
+   */
+  long getNumber(final int tag, final long defaultValue) {
+    final long[] numbers = getNumbers(tag);
+    return numbers.length > 0 ? numbers[0] : defaultValue;
+  }
+}
@@ -0,0 +1,498 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.yum.internal.createrepo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Metadata of one RPM package, read from RPM file and rendered into primary, filelists and other XML fragments the
+ * same way as createrepo does.
+ *
+ * @since 3.0
+ */
+class RpmPackage
+{
+  static final String CHECKSUM_TYPE = "sha256";
+
+  private static final int LEAD_SIZE = 96;
+
+  private static final int RPMSENSE_LESS = 2;
+
+  private static final int RPMSENSE_GREATER = 4;
+
+  private static final int RPMSENSE_EQUAL = 8;
+
+  private static final int RPMSENSE_PREREQ = 64;
+
+  private static final int RPMSENSE_SCRIPT_PRE = 512;
+
+  private static final int RPMSENSE_SCRIPT_POST = 1024;
+
+  private static final int RPMFILE_GHOST = 64;
+
+  private static final int S_IFMT = 0170000;
+
+  private static final int S_IFDIR = 0040000;
+
+  /**
+   * Files listed in primary metadata too, same as createrepo does.
+   */
+  private static final Pattern PRIMARY_FILES = Pattern.compile(".*bin/.*|/etc/.*|/usr/lib/sendmail");
+
+  private final String location;
+
+  private final String checksum;
+
+  private final long fileSize;
+
+  private final long fileTime;
+
+  private final long headerStart;
+
+  private final long headerEnd;
+
+  private final long archiveSize;
+
+  private final RpmHeader header;
+
+  private RpmPackage(final String location, final String checksum, final long fileSize, final long fileTime,
+                     final long headerStart, final long headerEnd, final long archiveSize, final RpmHeader header)
+  {
+    this.location = location;
+    this.checksum = checksum;
+    this.fileSize = fileSize;
+    this.fileTime = fileTime;
+    this.headerStart = headerStart;
+    this.headerEnd = headerEnd;
+    this.archiveSize = archiveSize;
+    this.header = header;
+  }
+
+  /**
+   * Reads the RPM file, calculating its checksum in same pass.
+   *
+   * @param file     the RPM file
+   * @param location the location (href) of package, relative to repository base
+   */
+  static RpmPackage read(final File file, final String location) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    try (InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(file)), digest)) {
+      final DataInputStream data = new DataInputStream(in);
+      final byte[] lead = new byte[LEAD_SIZE];
+      data.readFully(lead);
+      if ((lead[0] & 0xff) != 0xed || (lead[1] & 0xff) != 0xab || (lead[2] & 0xff) != 0xee
+          || (lead[3] & 0xff) != 0xdb) {
+        throw new IOException("Not an RPM file: " + file);
+      }
+      final RpmHeader signature = RpmHeader.read(data, true);
+      final RpmHeader header = RpmHeader.read(data, false);
+      // payload is not needed, just the checksum of whole file
+      ByteStreams.copy(in, ByteStreams.nullOutputStream());
+
+      final long headerStart = LEAD_SIZE + signature.getLength();
+      return new RpmPackage(
+          location, toHex(digest.digest()), file.length(), file.lastModified() / 1000, headerStart,
+          headerStart + header.getLength(), signature.getNumber(RpmHeader.SIG_PAYLOADSIZE, 0), header
+      );
+    }
+  }
+
+  String getChecksum() {
+    return checksum;
+  }
+
+  String getName() {
+    return header.getString(RpmHeader.NAME);
+  }
+
+  String getArch() {
+    // source packages have no source RPM
+    return header.getString(RpmHeader.SOURCERPM) == null ? "src" : header.getString(RpmHeader.ARCH);
+  }
+
+  // == primary.xml
+
+  String toPrimaryXml(final String baseUrl) {
+    final StringBuilder xml = new StringBuilder();
+    xml.append("<package type=\"rpm\">\n");
+    element(xml, "  ", "name", getName());
+    element(xml, "  ", "arch", getArch());
+    version(xml, "  ");
+    xml.append("  <checksum type=\"").append(CHECKSUM_TYPE).append("\" pkgid=\"YES\">").append(checksum)
+        .append("</checksum>\n");
+    element(xml, "  ", "summary", orNone(header.getString(RpmHeader.SUMMARY)));
+    element(xml, "  ", "description", orNone(header.getString(RpmHeader.DESCRIPTION)));
+    element(xml, "  ", "packager", nullToEmpty(header.getString(RpmHeader.PACKAGER)));
+    element(xml, "  ", "url", nullToEmpty(header.getString(RpmHeader.URL)));
+    xml.append("  <time file=\"").append(fileTime).append("\" build=\"")
+        .append(header.getNumber(RpmHeader.BUILDTIME, 0)).append("\"/>\n");
+    xml.append("  <size package=\"").append(fileSize).append("\" installed=\"")
+        .append(header.getNumber(RpmHeader.LONGSIZE, header.getNumber(RpmHeader.SIZE, 0)))
+        .append("\" archive=\"").append(archiveSize).append("\"/>\n");
+    xml.append("  <location");
+    if (baseUrl != null) {
+      attribute(xml, "xml:base", baseUrl);
+    }
+    attribute(xml, "href", location);
+    xml.append("/>\n");
+    xml.append("  <format>\n");
+    formatElement(xml, "rpm:license", header.getString(RpmHeader.LICENSE));
+    formatElement(xml, "rpm:vendor", header.getString(RpmHeader.VENDOR));
+    formatElement(xml, "rpm:group", header.getString(RpmHeader.GROUP));
+    formatElement(xml, "rpm:buildhost", header.getString(RpmHeader.BUILDHOST));
+    formatElement(xml, "rpm:sourcerpm", header.getString(RpmHeader.SOURCERPM));
+    xml.append("    <rpm:header-range start=\"").append(headerStart).append("\" end=\"").append(headerEnd)
+        .append("\"/>\n");
+
+    final List<Dependency> provides =
+        dependencies(RpmHeader.PROVIDENAME, RpmHeader.PROVIDEFLAGS, RpmHeader.PROVIDEVERSION);
+    dependencies(xml, "rpm:provides", provides);
+    requires(xml, provides);
+    dependencies(xml, "rpm:conflicts",
+        dependencies(RpmHeader.CONFLICTNAME, RpmHeader.CONFLICTFLAGS, RpmHeader.CONFLICTVERSION));
+    dependencies(xml, "rpm:obsoletes",
+        dependencies(RpmHeader.OBSOLETENAME, RpmHeader.OBSOLETEFLAGS, RpmHeader.OBSOLETEVERSION));
+    files(xml, "    ", true);
+    xml.append("  </format>\n");
+    xml.append("</package>\n");
+    return xml.toString();
+  }
+
+  private void requires(final StringBuilder xml, final List<Dependency> provides) {
+    final List<Dependency> requires =
+        dependencies(RpmHeader.REQUIRENAME, RpmHeader.REQUIREFLAGS, RpmHeader.REQUIREVERSION);
+    if (requires.isEmpty()) {
+      return;
+    }
+    final Set<String> provided = Sets.newHashSet();
+    final Set<String> providedEntries = Sets.newHashSet();
+    for (Dependency provide : provides) {
+      provided.add(provide.name);
+      providedEntries.add(provide.toXml(false));
+    }
+    for (FileEntry file : getFiles()) {
+      provided.add(file.path);
+    }
+    final Set<String> entries = new LinkedHashSet<String>();
+    for (Dependency require : requires) {
+      if (require.name.startsWith("rpmlib(")) {
+        continue;
+      }
+      // drop requirements satisfied by package itself
+      if (provided.contains(require.name) && (require.flags == null || providedEntries.contains(require.toXml(false)))) {
+        continue;
+      }
+      entries.add(require.toXml(require.pre));
+    }
+    xml.append("    <rpm:requires>\n");
+    for (String entry : entries) {
+      xml.append("      ").append(entry).append('\n');
+    }
+    xml.append("    </rpm:requires>\n");
+  }
+
+  private void dependencies(final StringBuilder xml, final String name, final List<Dependency> dependencies) {
+    if (dependencies.isEmpty()) {
+      return;
+    }
+    xml.append("    <").append(name).append(">\n");
+    for (Dependency dependency : dependencies) {
+      xml.append("      ").append(dependency.toXml(false)).append('\n');
+    }
+    xml.append("    </").append(name).append(">\n");
+  }
+
+  private List<Dependency> dependencies(final int nameTag, final int flagsTag, final int versionTag) {
+    final String[] names = header.getStrings(nameTag);
+    final long[] flags = header.getNumbers(flagsTag);
+    final String[] versions = header.getStrings(versionTag);
+    final List<Dependency> result = Lists.newArrayListWithCapacity(names.length);
+    for (int i = 0; i < names.length; i++) {
+      result.add(new Dependency(
+          names[i], i < flags.length ? (int) flags[i] : 0, i < versions.length ? versions[i] : null
+      ));
+    }
+    return result;
+  }
+
+  // == filelists.xml
+
+  String toFilelistsXml() {
+    final StringBuilder xml = new StringBuilder();
+    packageStart(xml);
+    files(xml, "    ", false);
+    xml.append("</package>\n");
+    return xml.toString();
+  }
+
+  private void files(final StringBuilder xml, final String indent, final boolean primaryOnly) {
+    final List<FileEntry> files = getFiles();
+    // files first, then directories, then ghosts
+    for (String type : new String[]{null, "dir", "ghost"}) {
+      for (FileEntry file : files) {
+        if ((type == null ? file.type == null : type.equals(file.type))
+            && (!primaryOnly || PRIMARY_FILES.matcher(file.path).matches())) {
+          xml.append(indent).append("<file");
+          if (type != null) {
+            attribute(xml, "type", type);
+          }
+          xml.append('>').append(escape(file.path)).append("</file>\n");
+        }
+      }
+    }
+  }
+
+  private List<FileEntry> getFiles() {
+    final String[] baseNames = header.getStrings(RpmHeader.BASENAMES);
+    final String[] dirNames = header.getStrings(RpmHeader.DIRNAMES);
+    final long[] dirIndexes = header.getNumbers(RpmHeader.DIRINDEXES);
+    final long[] modes = header.getNumbers(RpmHeader.FILEMODES);
+    final long[] flags = header.getNumbers(RpmHeader.FILEFLAGS);
+    final List<FileEntry> files = Lists.newArrayListWithCapacity(baseNames.length);
+    for (int i = 0; i < baseNames.length && i < dirIndexes.length; i++) {
+      final String path = dirNames[(int) dirIndexes[i]] + baseNames[i];
+      final String type;
+      if (i < flags.length && (flags[i] & RPMFILE_GHOST) != 0) {
+        type = "ghost";
+      }
+      else if (i < modes.length && (modes[i] & S_IFMT) == S_IFDIR) {
+        type = "dir";
+      }
+      else {
+        type = null;
+      }
+      files.add(new FileEntry(path, type));
+    }
+    return files;
+  }
+
+  // == other.xml
+
+  String toOtherXml() {
+    final StringBuilder xml = new StringBuilder();
+    packageStart(xml);
+    final long[] times = header.getNumbers(RpmHeader.CHANGELOGTIME);
+    final String[] authors = header.getStrings(RpmHeader.CHANGELOGNAME);
+    final String[] texts = header.getStrings(RpmHeader.CHANGELOGTEXT);
+    // oldest first, and entries with same time made unique by adding seconds, as createrepo does
+    long lastTime = 0;
+    long hack = 0;
+    for (int i = Math.min(times.length, Math.min(authors.length, texts.length)) - 1; i >= 0; i--) {
+      hack = times[i] == lastTime ? hack + 1 : 0;
+      lastTime = times[i];
+      xml.append("    <changelog");
+      attribute(xml, "author", authors[i]);
+      attribute(xml, "date", String.valueOf(times[i] + hack));
+      xml.append('>').append(escape(texts[i])).append("</changelog>\n");
+    }
+    xml.append("</package>\n");
+    return xml.toString();
+  }
+
+  // == helpers
+
+  private void packageStart(final StringBuilder xml) {
+    xml.append("<package");
+    attribute(xml, "pkgid", checksum);
+    attribute(xml, "name", getName());
+    attribute(xml, "arch", getArch());
+    xml.append(">\n");
+    version(xml, "    ");
+  }
+
+  private void version(final StringBuilder xml, final String indent) {
+    xml.append(indent).append("<version");
+    attribute(xml, "epoch", String.valueOf(header.getNumber(RpmHeader.EPOCH, 0)));
+    attribute(xml, "ver", header.getString(RpmHeader.VERSION));
+    attribute(xml, "rel", header.getString(RpmHeader.RELEASE));
+    xml.append("/>\n");
+  }
+
+  private static void element(final StringBuilder xml, final String indent, final String name, final String value) {
+    xml.append(indent).append('<').append(name).append('>').append(escape(value)).append("</").append(name)
+        .append(">\n");
+  }
+
+  private static void formatElement(final StringBuilder xml, final String name, final String value) {
+    if (value == null || value.isEmpty()) {
+      xml.append("    <").append(name).append("/>\n");
+    }
+    else {
+      element(xml, "    ", name, value);
+    }
+  }
+
+  private static void attribute(final StringBuilder xml, final String name, final String value) {
+    xml.append(' ').append(name).append("=\"").append(escape(value)).append('"');
+  }
+
+  private static String orNone(final String value) {
+    return value == null ? "(none)" : value;
+  }
+
+  private static String nullToEmpty(final String value) {
+    return value == null ? "" : value;
+  }
+
+  static String escape(final String value) {
+    if (value == null) {
+      return "";
+    }
+    final StringBuilder escaped = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '&':
+          escaped.append("&amp;");
+          break;
+        case '<':
+          escaped.append("&lt;");
+          break;
+        case '>':
+          escaped.append("&gt;");
+          break;
+        case '"':
+          escaped.append("&quot;");
+          break;
+        default:
+          // drop characters not allowed in XML
+          if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+            escaped.append(c);
+          }
+      }
+    }
+    return escaped.toString();
+  }
+
+  static String toHex(final byte[] bytes) {
+    final StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  private static class FileEntry
+  {
+    private final String path;
+
+    // null for regular files
+    private final String type;
+
+    private FileEntry(final String path, final String type) {
+      this.path = path;
+      this.type = type;
+    }
+  }
+
+  private static class Dependency
+  {
+    private final String name;
+
+    private final String flags;
+
+    private final boolean pre;
+
+    private final String epoch;
+
+    private final String version;
+
+    private final String release;
+
+    private Dependency(final String name, final int flags, final String evr) {
+      this.name = name;
+      this.pre = (flags & (RPMSENSE_PREREQ | RPMSENSE_SCRIPT_PRE | RPMSENSE_SCRIPT_POST)) != 0;
+      switch (flags & (RPMSENSE_LESS | RPMSENSE_GREATER | RPMSENSE_EQUAL)) {
+        case RPMSENSE_LESS:
+          this.flags = "LT";
+          break;
+        case RPMSENSE_GREATER:
+          this.flags = "GT";
+          break;
+        case RPMSENSE_EQUAL:
+          this.flags = "EQ";
+          break;
+        case RPMSENSE_LESS | RPMSENSE_EQUAL:
+          this.flags = "LE";
+          break;
+        case RPMSENSE_GREATER | RPMSENSE_EQUAL:
+          this.flags = "GE";
+          break;
+        default:
+          this.flags = null;
+      }
+      // [epoch:]version[-release], same parsing as yum
+      if (evr == null || evr.isEmpty()) {
+        this.epoch = null;
+        this.version = null;
+        this.release = null;
+      }
+      else {
+        final int colon = evr.indexOf(':');
+        final int dash = evr.indexOf('-');
+        this.epoch = colon > -1 && evr.substring(0, colon).matches("\\d+") ? evr.substring(0, colon) : "0";
+        if (dash > -1) {
+          this.version = dash > colon + 1 ? evr.substring(colon + 1, dash) : null;
+          this.release = evr.substring(dash + 1);
+        }
+        else {
+          this.version = evr.substring(colon + 1);
+          this.release = null;
+        }
+      }
+    }
+
+    private String toXml(final boolean withPre) {
+      final StringBuilder xml = new StringBuilder("<rpm:entry");
+      attribute(xml, "name", name);
+      if (flags != null) {
+        attribute(xml, "flags", flags);
+      }
+      if (epoch != null) {
+        attribute(xml, "epoch", epoch);
+      }
+      if (version != null) {
+        attribute(xml, "ver", version);
+      }
+      if (release != null) {
+        attribute(xml, "rel", release);
+      }
+      if (withPre) {
+        attribute(xml, "pre", "1");
+      }
+      return xml.append("/>").toString();
+    }
+  }
+}
@@ -33,6 +33,7 @@ import org.sonatype.nexus.proxy.repository.HostedRepository;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.rest.RepositoryURLBuilder;
 import org.sonatype.nexus.scheduling.AbstractNexusTask;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.nexus.util.file.DirSupport;
 import org.sonatype.nexus.yum.Yum;
 import org.sonatype.nexus.yum.YumGroup;
@@ -43,6 +44,7 @@ import org.sonatype.nexus.yum.internal.RepositoryUtils;
 import org.sonatype.nexus.yum.internal.RpmListWriter;
 import org.sonatype.nexus.yum.internal.RpmScanner;
 import org.sonatype.nexus.yum.internal.YumRepositoryImpl;
+import org.sonatype.nexus.yum.internal.createrepo.RepodataGenerator;
 import org.sonatype.scheduling.ScheduledTask;
 import org.sonatype.scheduling.schedules.RunNowSchedule;
 import org.sonatype.sisu.goodies.common.SimpleFormat;
@@ -57,6 +59,7 @@ import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
+import static org.apache.commons.io.FileUtils.readLines;
 import static org.apache.commons.io.FileUtils.writeStringToFile;
 import static org.apache.commons.lang.StringUtils.isBlank;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
@@ -66,7 +69,8 @@ import static org.sonatype.scheduling.TaskState.SLEEPING;
 import static org.sonatype.scheduling.TaskState.SUBMITTED;
 
 /**
- * Create a yum-repository directory via 'createrepo' command line tool.
+ * Create a yum-repository directory, using 'createrepo' command line tool or (if configured)
+ * {@link RepodataGenerator}.
  *
  * @since yum 3.0
  */
@@ -104,6 +108,15 @@ public class GenerateMetadataTask
 
   public static final String PARAM_YUM_GROUPS_DEFINITION_FILE = "yumGroupsDefinitionFile";
 
+  /**
+   * If {@code true}, metadata is generated by {@link RepodataGenerator} instead of 'createrepo' command line tool.
+   * Opt-in, as the generator does not create SQLite databases (and removes stale ones).
+   *
+   * @since 3.0
+   */
+  private static final boolean USE_REPODATA_GENERATOR = SystemPropertiesHelper.getBoolean(
+      GenerateMetadataTask.class.getName() + ".useRepodataGenerator", false);
+
   private final RepositoryRegistry repositoryRegistry;
 
   private final RepositoryURLBuilder repositoryURLBuilder;
@@ -167,7 +180,15 @@ public class GenerateMetadataTask
         DirSupport.mkdir(getRepoDir().toPath());
 
         File rpmListFile = createRpmListFile();
-        commandLineExecutor.exec(buildCreateRepositoryCommand(rpmListFile));
+        if (USE_REPODATA_GENERATOR) {
+          new RepodataGenerator(
+              new File(getRpmDir()), getRepoDir(), createCacheDir(), StringUtils.trimToNull(getRpmUrl()),
+              getYumGroupsFile()
+          ).generate(readLines(rpmListFile, "UTF-8"));
+        }
+        else {
+          commandLineExecutor.exec(buildCreateRepositoryCommand(rpmListFile));
+        }
 
         if (isUseAbsoluteUrls() && StringUtils.isNotBlank(getRpmUrl())) {
           replaceUrlInRepomdXml();
@@ -348,13 +369,23 @@ public class GenerateMetadataTask
     if (StringUtils.isNotBlank(getRpmUrl())) {
       commandLine.append(" --baseurl ").append(getRpmUrl());
     }
+    final File yumGroupsFile = getYumGroupsFile();
+    if (yumGroupsFile != null) {
+      commandLine.append(" --groupfile ").append(yumGroupsFile.getAbsolutePath());
+    }
+    commandLine.append(" ").append(getRpmDir());
+
+    return commandLine.toString();
+  }
+
+  private File getYumGroupsFile() {
     final String yumGroupsDefinitionFile = getYumGroupsDefinitionFile();
     if (yumGroupsDefinitionFile != null) {
       final File file = new File(getRepoDir().getAbsolutePath(), yumGroupsDefinitionFile);
       final String path = file.getAbsolutePath();
       if (file.exists()) {
         if (file.getName().toLowerCase().endsWith(".xml")) {
-          commandLine.append(" --groupfile ").append(path);
+          return file;
         }
         else {
           LOG.warn("Yum groups definition file '{}' must have an '.xml' extension, ignoring", path);
@@ -364,9 +395,7 @@ public class GenerateMetadataTask
         LOG.warn("Yum groups definition file '{}' doesn't exist, ignoring", path);
       }
     }
-    commandLine.append(" ").append(getRpmDir());
-
-    return commandLine.toString();
+    return null;
   }
 
   @Override
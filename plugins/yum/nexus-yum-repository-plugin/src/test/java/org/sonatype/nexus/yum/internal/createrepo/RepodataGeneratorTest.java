@@ -0,0 +1,176 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2007-2014 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.yum.internal.createrepo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.custommonkey.xmlunit.XMLUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * {@link RepodataGenerator} UTs.
+ */
+public class RepodataGeneratorTest
+    extends TestSupport
+{
+
+  private static final String SAMPLE = "sample/1.0/sample-1.0-1.x86_64.rpm";
+
+  private static final String TEST_ARTIFACT = "test-artifact/1.2/test-artifact-1.2-1.noarch.rpm";
+
+  private static final long LAST_MODIFIED = 1400000000000L;
+
+  private File rpmDir;
+
+  private File repoDir;
+
+  private File cacheDir;
+
+  @Before
+  public void prepare() throws Exception {
+    rpmDir = util.createTempDir("rpms");
+    repoDir = util.createTempDir("repo");
+    cacheDir = util.createTempDir("cache");
+    copyRpm("src/test/ut-resources/createrepo/rpms", SAMPLE);
+    copyRpm("src/test/ut-resources/rpms", TEST_ARTIFACT);
+    XMLUnit.setIgnoreWhitespace(true);
+  }
+
+  @Test
+  public void generateMetadata() throws Exception {
+    new RepodataGenerator(rpmDir, repoDir, cacheDir, null, null).generate(Arrays.asList(SAMPLE, TEST_ARTIFACT));
+
+    for (String name : new String[]{"primary", "filelists", "other"}) {
+      final String expected = Files.toString(
+          util.resolveFile("src/test/ut-resources/createrepo/repodata/" + name + ".xml"), Charsets.UTF_8
+      );
+      assertThat(name, XMLUnit.compareXML(expected, gunzip(name)).similar(), is(true));
+    }
+  }
+
+  @Test
+  public void pkgidIsSha256OfWholeRpm() throws Exception {
+    new RepodataGenerator(rpmDir, repoDir, cacheDir, null, null).generate(Arrays.asList(SAMPLE, TEST_ARTIFACT));
+
+    for (String location : new String[]{SAMPLE, TEST_ARTIFACT}) {
+      final String sha256 = Files.hash(new File(rpmDir, location), Hashing.sha256()).toString();
+      assertThat(gunzip("primary"), containsString("<checksum type=\"sha256\" pkgid=\"YES\">" + sha256 + "</checksum>"));
+      assertThat(gunzip("filelists"), containsString("pkgid=\"" + sha256 + "\""));
+      assertThat(gunzip("other"), containsString("pkgid=\"" + sha256 + "\""));
+    }
+  }
+
+  @Test
+  public void repomdDescribesMetadataFiles() throws Exception {
+    new RepodataGenerator(rpmDir, repoDir, cacheDir, "http://localhost/repo", null)
+        .generate(Collections.singletonList(TEST_ARTIFACT));
+
+    final String repomd = Files.toString(repodata("repomd.xml"), Charsets.UTF_8);
+    for (String name : new String[]{"primary", "filelists", "other"}) {
+      final File file = repodata(name + ".xml.gz");
+      final byte[] content = gunzip(name).getBytes(Charsets.UTF_8);
+      assertThat(repomd, containsString(
+          "<checksum type=\"sha256\">" + Files.hash(file, Hashing.sha256()) + "</checksum>"
+      ));
+      assertThat(repomd, containsString(
+          "<open-checksum type=\"sha256\">" + Hashing.sha256().hashBytes(content) + "</open-checksum>"
+      ));
+      assertThat(repomd, containsString(
+          "<location xml:base=\"http://localhost/repo\" href=\"repodata/" + name + ".xml.gz\"/>"
+      ));
+      assertThat(repomd, containsString("<size>" + file.length() + "</size>"));
+      assertThat(repomd, containsString("<open-size>" + content.length + "</open-size>"));
+    }
+    assertThat(gunzip("primary"), containsString("<location xml:base=\"http://localhost/repo\" href=\""
+        + TEST_ARTIFACT + "\"/>"));
+  }
+
+  @Test
+  public void unchangedRpmsAreReadFromCache() throws Exception {
+    final RepodataGenerator generator = new RepodataGenerator(rpmDir, repoDir, cacheDir, null, null);
+    generator.generate(Collections.singletonList(SAMPLE));
+    final String primary = gunzip("primary");
+
+    // same size and last modified, so cached metadata is used, although the content changed
+    final File rpm = new File(rpmDir, SAMPLE);
+    final byte[] content = Files.toByteArray(rpm);
+    content[content.length - 1]++;
+    Files.write(content, rpm);
+    rpm.setLastModified(LAST_MODIFIED);
+    generator.generate(Collections.singletonList(SAMPLE));
+    assertThat(gunzip("primary"), is(primary));
+
+    rpm.setLastModified(LAST_MODIFIED + 1000);
+    generator.generate(Collections.singletonList(SAMPLE));
+    assertThat(gunzip("primary"), is(not(primary)));
+  }
+
+  @Test
+  public void removedRpmsAreDroppedFromMetadataAndCache() throws Exception {
+    final RepodataGenerator generator = new RepodataGenerator(rpmDir, repoDir, cacheDir, null, null);
+    generator.generate(Arrays.asList(SAMPLE, TEST_ARTIFACT));
+    assertThat(cacheDir.list().length, is(2));
+
+    generator.generate(Collections.singletonList(TEST_ARTIFACT));
+    assertThat(cacheDir.list().length, is(1));
+    assertThat(gunzip("primary"), containsString("packages=\"1\""));
+    assertThat(gunzip("primary"), not(containsString("<name>sample</name>")));
+    assertThat(gunzip("filelists"), not(containsString("name=\"sample\"")));
+    assertThat(gunzip("other"), not(containsString("name=\"sample\"")));
+  }
+
+  @Test
+  public void missingAndInvalidRpmsAreSkipped() throws Exception {
+    Files.write("not a rpm".getBytes(Charsets.UTF_8), new File(rpmDir, "invalid.rpm"));
+
+    new RepodataGenerator(rpmDir, repoDir, cacheDir, null, null)
+        .generate(Arrays.asList("missing.rpm", "invalid.rpm", TEST_ARTIFACT));
+
+    assertThat(gunzip("primary"), containsString("packages=\"1\""));
+    assertThat(gunzip("primary"), containsString("<name>test-artifact</name>"));
+  }
+
+  private void copyRpm(final String sourceDir, final String location) throws Exception {
+    final File target = new File(rpmDir, location);
+    Files.createParentDirs(target);
+    Files.copy(util.resolveFile(sourceDir + "/" + location), target);
+    target.setLastModified(LAST_MODIFIED);
+  }
+
+  private File repodata(final String name) {
+    return new File(repoDir, RepodataGenerator.REPODATA_DIR + "/" + name);
+  }
+
+  private String gunzip(final String name) throws Exception {
+    try (InputStream in = new GZIPInputStream(new FileInputStream(repodata(name + ".xml.gz")))) {
+      return new String(ByteStreams.toByteArray(in), Charsets.UTF_8);
+    }
+  }
+}